@@ -273,6 +273,21 @@ if "%JAVA_VERSION%" GTR 11 (
 
 if "%JAVA_OPTS%" == "" set JAVA_OPTS=%DEFAULT_JAVA_OPTS%
 
+rem Use a class data sharing archive if enabled, the archive is created on the
+rem first run (at exit before Java 19) and reused by the next runs
+if not "%KARAF_CDS%" == "true" goto :KARAF_CDS_END
+    if %JAVA_VERSION% LSS 13 goto :KARAF_CDS_END
+    if "%KARAF_CDS_ARCHIVE%" == "" set "KARAF_CDS_ARCHIVE=%KARAF_DATA%\cds\karaf.jsa"
+    for %%F in ("%KARAF_CDS_ARCHIVE%") do if not exist "%%~dpF" mkdir "%%~dpF"
+    if %JAVA_VERSION% GEQ 19 (
+        set KARAF_CDS_OPTS=-XX:+AutoCreateSharedArchive -XX:SharedArchiveFile="%KARAF_CDS_ARCHIVE%"
+    ) else if exist "%KARAF_CDS_ARCHIVE%" (
+        set KARAF_CDS_OPTS=-XX:SharedArchiveFile="%KARAF_CDS_ARCHIVE%"
+    ) else (
+        set KARAF_CDS_OPTS=-XX:ArchiveClassesAtExit="%KARAF_CDS_ARCHIVE%"
+    )
+:KARAF_CDS_END
+
 if "%EXTRA_JAVA_OPTS%" == "" goto :KARAF_EXTRA_JAVA_OPTS_END
     set JAVA_OPTS=%JAVA_OPTS% %EXTRA_JAVA_OPTS%
 :KARAF_EXTRA_JAVA_OPTS_END
@@ -414,6 +429,11 @@ if "%KARAF_PROFILER%" == "" goto :RUN
         RD /S /Q "%KARAF_HOME%\lib"
         MOVE /Y "%KARAF_HOME%\lib.next" "%KARAF_HOME%\lib"
 
+        rem the class data sharing archive does not match the new classpath, dump it again
+        if not "%KARAF_CDS_OPTS%" == "" (
+            del /Q "%KARAF_CDS_ARCHIVE%" 2>NUL
+            if %JAVA_VERSION% LSS 19 set KARAF_CDS_OPTS=-XX:ArchiveClassesAtExit="%KARAF_CDS_ARCHIVE%"
+        )
         echo "Updating classpath..."
         set CLASSPATH=%CLASSPATH_INITIAL%
         pushd "%KARAF_HOME%\lib\boot"
@@ -425,7 +445,7 @@ if "%KARAF_PROFILER%" == "" goto :RUN
     if "%ROOT_INSTANCE_RUNNING%" == "false" SET IS_RUNNABLE=true
     if "%CHECK_ROOT_INSTANCE_RUNNING%" == "false" SET IS_RUNNABLE=true
     if "%IS_RUNNABLE%" == "true" (
-        "%JAVA%" %JAVA_OPTS% %OPTS% ^
+        "%JAVA%" %JAVA_OPTS% %KARAF_CDS_OPTS% %OPTS% ^
         --add-reads=java.xml=java.logging ^
         --add-exports=java.base/org.apache.karaf.specs.locator=java.xml,ALL-UNNAMED ^
         --patch-module java.base="%KARAF_HOME%\lib\endorsed\org.apache.karaf.specs.locator-@@project.version@@.jar" ^
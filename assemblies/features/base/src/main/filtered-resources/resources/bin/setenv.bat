@@ -60,4 +60,8 @@ rem Additional available Karaf options
 rem SET KARAF_OPTS
 rem Enable debug mode
 rem SET KARAF_DEBUG
+rem Enable the class data sharing archive to reduce the startup time (Java 13+)
+rem SET KARAF_CDS
+rem Class data sharing archive location, defaults to %KARAF_DATA%\cds\karaf.jsa
+rem SET KARAF_CDS_ARCHIVE
 
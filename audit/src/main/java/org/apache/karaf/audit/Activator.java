@@ -17,15 +17,18 @@
 package org.apache.karaf.audit;
 
 import com.conversantmedia.util.concurrent.DisruptorBlockingQueue;
+import org.apache.karaf.audit.index.IndexSearcher;
 import org.apache.karaf.audit.layout.GelfLayout;
 import org.apache.karaf.audit.layout.Rfc3164Layout;
 import org.apache.karaf.audit.layout.Rfc5424Layout;
 import org.apache.karaf.audit.layout.SimpleLayout;
 import org.apache.karaf.audit.logger.FileEventLogger;
 import org.apache.karaf.audit.logger.JulEventLogger;
+import org.apache.karaf.audit.logger.TcpEventLogger;
 import org.apache.karaf.audit.logger.UdpEventLogger;
 import org.apache.karaf.util.tracker.BaseActivator;
 import org.apache.karaf.util.tracker.annotation.Managed;
+import org.apache.karaf.util.tracker.annotation.ProvideService;
 import org.apache.karaf.util.tracker.annotation.RequireService;
 import org.apache.karaf.util.tracker.annotation.Services;
 import org.osgi.framework.Filter;
@@ -59,7 +62,10 @@ import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
 
-@Services(requires = @RequireService(EventAdmin.class))
+@Services(
+        requires = @RequireService(EventAdmin.class),
+        provides = @ProvideService(AuditSearch.class)
+)
 @Managed("org.apache.karaf.audit")
 public class Activator extends BaseActivator implements ManagedService {
 
@@ -68,6 +74,7 @@ public class Activator extends BaseActivator implements ManagedService {
     public static final String QUEUE_SIZE = "queue.size";
     public static final String RUNNER_IDLE_TIMEOUT = "runner.idle-timeout";
     public static final String RUNNER_FLUSH_TIMEOUT = "runner.flush-timeout";
+    public static final String RUNNER_BATCH_SIZE = "runner.batch-size";
     public static final String FILE_PREFIX = "file.";
     public static final String FILE_LAYOUT = FILE_PREFIX + "layout";
     public static final String FILE_ENABLED = FILE_PREFIX + "enabled";
@@ -76,6 +83,9 @@ public class Activator extends BaseActivator implements ManagedService {
     public static final String FILE_POLICY = FILE_PREFIX + "policy";
     public static final String FILE_FILES = FILE_PREFIX + "files";
     public static final String FILE_COMPRESS = FILE_PREFIX + "compress";
+    public static final String FILE_FORCE = FILE_PREFIX + "force";
+    public static final String FILE_FORCE_DELAY = FILE_PREFIX + "force.delay";
+    public static final String FILE_INDEX = FILE_PREFIX + "index";
     public static final String UDP_PREFIX = "udp.";
     public static final String UDP_LAYOUT = UDP_PREFIX + "layout";
     public static final String UDP_ENABLED = UDP_PREFIX + "enabled";
@@ -102,6 +112,7 @@ public class Activator extends BaseActivator implements ManagedService {
     private volatile Thread runner;
     private List<EventLogger> eventLoggers;
     private Filter filter;
+    private AuditMBeanImpl auditMBean;
 
     @Override
     protected void doStart() throws Exception {
@@ -109,6 +120,12 @@ public class Activator extends BaseActivator implements ManagedService {
         queue = createQueue();
         eventLoggers = createLoggers();
         filter = createFilter();
+        AuditSearch search = createSearch();
+        if (search != null) {
+            register(AuditSearch.class, search);
+        }
+        auditMBean = new AuditMBeanImpl(search);
+        registerMBean(auditMBean, "type=audit");
         final Dictionary<String, Object> props = new Hashtable<>();
         props.put(EventConstants.EVENT_TOPIC, getTopics());
         register(EventHandler.class, this::handleEvent, props);
@@ -117,6 +134,15 @@ public class Activator extends BaseActivator implements ManagedService {
         }
     }
 
+    private AuditSearch createSearch() {
+        for (EventLogger eventLogger : eventLoggers) {
+            if (eventLogger instanceof FileEventLogger && ((FileEventLogger) eventLogger).isIndexed()) {
+                return new IndexSearcher((FileEventLogger) eventLogger);
+            }
+        }
+        return null;
+    }
+
     private String[] getTopics() {
         return getString(TOPICS, "*").split("\\s*,\\s*");
     }
@@ -153,8 +179,11 @@ public class Activator extends BaseActivator implements ManagedService {
                 String policy = getString(FILE_POLICY, "size(8mb)");
                 int files = getInt(FILE_FILES, 32);
                 boolean compress = getBoolean(FILE_COMPRESS, true);
+                boolean force = getBoolean(FILE_FORCE, false);
+                long forceDelay = getLong(FILE_FORCE_DELAY, 0);
+                boolean index = getBoolean(FILE_INDEX, false);
                 EventLayout layout = createLayout(getString(FILE_LAYOUT, FILE_LAYOUT));
-                loggers.add(new FileEventLogger(path, encoding, policy, files, compress, this, layout, TimeZone.getDefault()));
+                loggers.add(new FileEventLogger(path, encoding, policy, files, compress, this, layout, TimeZone.getDefault(), force, forceDelay, index));
             }
             if (getBoolean(UDP_ENABLED, false)) {
                 String host = getString(UDP_HOST, "localhost");
@@ -168,7 +197,7 @@ public class Activator extends BaseActivator implements ManagedService {
                 int port = getInt(TCP_PORT, 0);
                 String encoding = getString(TCP_ENCODING, "UTF-8");
                 EventLayout layout = createLayout(getString(TCP_LAYOUT, TCP_LAYOUT));
-                loggers.add(new UdpEventLogger(host, port, encoding, layout));
+                loggers.add(new TcpEventLogger(host, port, encoding, layout));
             }
             if (getBoolean(JUL_ENABLED, false)) {
                 String logger = getString(Activator.JUL_LOGGER, "audit");
@@ -277,7 +306,7 @@ public class Activator extends BaseActivator implements ManagedService {
         try {
             EventImpl ev = new EventImpl(event);
             if (filter == null || filter.matches(ev.getFilterMap())) {
-                queue.put(new EventImpl(event));
+                queue.put(ev);
                 startRunner();
             }
         } catch (InterruptedException e) {
@@ -299,27 +328,20 @@ public class Activator extends BaseActivator implements ManagedService {
     private void consume() {
         long maxIdle = getLong(RUNNER_IDLE_TIMEOUT, TimeUnit.MINUTES.toMillis(1));
         long flushDelay = getLong(RUNNER_FLUSH_TIMEOUT, TimeUnit.MILLISECONDS.toMillis(100));
+        int batchSize = Math.max(1, getInt(RUNNER_BATCH_SIZE, 256));
         try {
             List<EventLogger> eventLoggers = this.eventLoggers;
             BlockingQueue<EventImpl> queue = this.queue;
+            List<EventImpl> batch = new ArrayList<>(batchSize);
             EventImpl event;
             while ((event = queue.poll(maxIdle, TimeUnit.MILLISECONDS)) != null) {
-                if (event == STOP_EVENT) {
-                    return;
-                }
-                for (EventLogger eventLogger : eventLoggers) {
-                    eventLogger.write(event);
-                }
-                if (flushDelay > 0) {
-                    while ((event = queue.poll(flushDelay, TimeUnit.MILLISECONDS)) != null) {
-                        if (event == STOP_EVENT) {
-                            return;
-                        }
-                        for (EventLogger eventLogger : eventLoggers) {
-                            eventLogger.write(event);
-                        }
+                do {
+                    batch.add(event);
+                    queue.drainTo(batch, batchSize - 1);
+                    if (write(eventLoggers, batch)) {
+                        return;
                     }
-                }
+                } while (flushDelay > 0 && (event = queue.poll(flushDelay, TimeUnit.MILLISECONDS)) != null);
                 for (EventLogger eventLogger : eventLoggers) {
                     eventLogger.flush();
                 }
@@ -331,14 +353,46 @@ public class Activator extends BaseActivator implements ManagedService {
         }
     }
 
+    /**
+     * Write a batch of events to all loggers and clear it.
+     *
+     * @return <code>true</code> if the batch contained the stop event
+     */
+    private boolean write(List<EventLogger> eventLoggers, List<EventImpl> batch) throws IOException {
+        int stop = batch.indexOf(STOP_EVENT);
+        List<EventImpl> events = stop >= 0 ? batch.subList(0, stop) : batch;
+        int size = events.size();
+        if (size > 0) {
+            for (EventLogger eventLogger : eventLoggers) {
+                eventLogger.write(events);
+            }
+            long now = System.nanoTime();
+            long total = 0;
+            long max = 0;
+            for (int i = 0; i < size; i++) {
+                long latency = now - events.get(i).received;
+                total += latency;
+                max = Math.max(max, latency);
+            }
+            AuditMBeanImpl auditMBean = this.auditMBean;
+            if (auditMBean != null) {
+                auditMBean.batch(size, total, max);
+            }
+        }
+        batch.clear();
+        return stop >= 0;
+    }
+
     static class EventImpl implements org.apache.karaf.audit.Event {
         private final Event event;
         private final long timestamp;
         private final String type;
         private final String subtype;
+        private final long received;
 
         EventImpl(Event event) {
             this.event = event;
+            this.received = System.nanoTime();
             this.timestamp = _timestamp();
             this.type = _type();
             this.subtype = _subtype();
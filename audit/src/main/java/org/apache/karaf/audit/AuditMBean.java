@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.audit;
+
+import javax.management.MBeanException;
+import java.util.List;
+
+/**
+ * Audit MBean, exposing the audit runner statistics.
+ */
+public interface AuditMBean {
+
+    /**
+     * @return The number of events written to the audit loggers.
+     */
+    long getEventCount();
+
+    /**
+     * @return The number of batches written to the audit loggers.
+     */
+    long getBatchCount();
+
+    /**
+     * @return The average number of events per batch.
+     */
+    double getAverageBatchSize();
+
+    /**
+     * @return The biggest batch written so far.
+     */
+    long getMaxBatchSize();
+
+    /**
+     * @return The average time in milliseconds between the reception of an event and its write.
+     */
+    double getAverageLatency();
+
+    /**
+     * @return The maximum time in milliseconds between the reception of an event and its write.
+     */
+    double getMaxLatency();
+
+    /**
+     * Reset the statistics.
+     */
+    void resetStatistics();
+
+    /**
+     * Search the indexed audit log.
+     *
+     * @param from The lower bound of the event timestamps in milliseconds, or 0.
+     * @param to The upper bound of the event timestamps in milliseconds, or 0.
+     * @param subject The user name, or null.
+     * @param type The event type, or null.
+     * @param subtype The event subtype, or null.
+     * @param target A part of the MBean object name or of the shell command, or null.
+     * @param limit The maximum number of records to return.
+     * @return The most recent matching records, in chronological order.
+     * @throws MBeanException In case of MBean failure.
+     */
+    List<String> search(long from, long to, String subject, String type, String subtype, String target, int limit) throws MBeanException;
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.audit;
+
+import org.apache.karaf.audit.index.Query;
+
+import javax.management.MBeanException;
+import javax.management.NotCompliantMBeanException;
+import javax.management.StandardMBean;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Implementation of the AuditMBean.
+ * The statistics are updated by the audit runner thread after each batch.
+ */
+public class AuditMBeanImpl extends StandardMBean implements AuditMBean {
+
+    private final LongAdder events = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAccumulator maxBatchSize = new LongAccumulator(Math::max, 0);
+    private final LongAdder totalLatency = new LongAdder();
+    private final LongAccumulator maxLatency = new LongAccumulator(Math::max, 0);
+
+    private final AuditSearch search;
+
+    public AuditMBeanImpl(AuditSearch search) throws NotCompliantMBeanException {
+        super(AuditMBean.class);
+        this.search = search;
+    }
+
+    /**
+     * Record a written batch.
+     *
+     * @param size the number of events in the batch
+     * @param latencies the sum of the events latencies in nanoseconds
+     * @param maxLatency the maximum event latency in nanoseconds
+     */
+    public void batch(int size, long latencies, long maxLatency) {
+        this.events.add(size);
+        this.batches.increment();
+        this.maxBatchSize.accumulate(size);
+        this.totalLatency.add(latencies);
+        this.maxLatency.accumulate(maxLatency);
+    }
+
+    @Override
+    public long getEventCount() {
+        return events.sum();
+    }
+
+    @Override
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    @Override
+    public double getAverageBatchSize() {
+        long nb = batches.sum();
+        return nb > 0 ? (double) events.sum() / nb : 0.0;
+    }
+
+    @Override
+    public long getMaxBatchSize() {
+        return maxBatchSize.get();
+    }
+
+    @Override
+    public double getAverageLatency() {
+        long nb = events.sum();
+        return nb > 0 ? toMillis(totalLatency.sum()) / nb : 0.0;
+    }
+
+    @Override
+    public double getMaxLatency() {
+        return toMillis(maxLatency.get());
+    }
+
+    @Override
+    public void resetStatistics() {
+        events.reset();
+        batches.reset();
+        maxBatchSize.reset();
+        totalLatency.reset();
+        maxLatency.reset();
+    }
+
+    @Override
+    public List<String> search(long from, long to, String subject, String type, String subtype, String target, int limit) throws MBeanException {
+        if (search == null) {
+            throw new MBeanException(null, "The audit file logger is not indexed (file.index = false)");
+        }
+        try {
+            return search.search(new Query(from, to, subject, type, subtype, target), limit);
+        } catch (Exception e) {
+            throw new MBeanException(null, e.toString());
+        }
+    }
+
+    private static double toMillis(long nanos) {
+        return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+}
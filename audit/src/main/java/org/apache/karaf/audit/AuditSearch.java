@@ -0,0 +1,38 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.audit;
+
+import org.apache.karaf.audit.index.Query;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Search the indexed audit log segments.
+ */
+public interface AuditSearch {
+
+    /**
+     * Search the audit log.
+     *
+     * @param query the search criteria
+     * @param limit the maximum number of records to return, the most recent ones being kept
+     * @return the matching records, in chronological order
+     */
+    List<String> search(Query query, int limit) throws IOException;
+
+}
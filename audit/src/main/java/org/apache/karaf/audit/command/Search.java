@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.audit.command;
+
+import org.apache.karaf.audit.AuditSearch;
+import org.apache.karaf.audit.index.Query;
+import org.apache.karaf.shell.api.action.Action;
+import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.Option;
+import org.apache.karaf.shell.api.action.lifecycle.Reference;
+import org.apache.karaf.shell.api.action.lifecycle.Service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+@Command(scope = "audit", name = "search", description = "Search the indexed audit log.")
+@Service
+public class Search implements Action {
+
+    @Option(name = "--from", description = "Only show events after the given date (yyyy-MM-dd, yyyy-MM-ddTHH:mm[:ss]) or duration ago (30m, 12h, 7d)")
+    String from;
+
+    @Option(name = "--to", description = "Only show events before the given date (yyyy-MM-dd, yyyy-MM-ddTHH:mm[:ss]) or duration ago (30m, 12h, 7d)")
+    String to;
+
+    @Option(name = "-u", aliases = { "--user" }, description = "Only show events for the given user")
+    String user;
+
+    @Option(name = "-t", aliases = { "--type" }, description = "Only show events of the given type (shell, jmx, login, ...)")
+    String type;
+
+    @Option(name = "-s", aliases = { "--subtype" }, description = "Only show events of the given subtype (executed, invoke, success, ...)")
+    String subtype;
+
+    @Option(name = "-o", aliases = { "--target" }, description = "Only show events whose MBean object name or shell command contains the given text")
+    String target;
+
+    @Option(name = "-n", aliases = { "--limit" }, description = "Maximum number of events to display, the most recent being kept")
+    int limit = 100;
+
+    @Reference
+    AuditSearch search;
+
+    @Override
+    public Object execute() throws Exception {
+        Query query = new Query(parse(from), parse(to), user, type, subtype, target);
+        for (String record : search.search(query, limit)) {
+            System.out.println(record);
+        }
+        return null;
+    }
+
+    static long parse(String str) {
+        if (str == null || str.isEmpty()) {
+            return 0;
+        }
+        String s = str.toLowerCase(Locale.ENGLISH);
+        if (s.matches("[0-9]+[smhd]")) {
+            long value = Long.parseLong(s.substring(0, s.length() - 1));
+            TimeUnit unit;
+            switch (s.charAt(s.length() - 1)) {
+                case 's':
+                    unit = TimeUnit.SECONDS;
+                    break;
+                case 'm':
+                    unit = TimeUnit.MINUTES;
+                    break;
+                case 'h':
+                    unit = TimeUnit.HOURS;
+                    break;
+                default:
+                    unit = TimeUnit.DAYS;
+                    break;
+            }
+            return System.currentTimeMillis() - unit.toMillis(value);
+        }
+        try {
+            if (str.indexOf('T') > 0) {
+                return LocalDateTime.parse(str).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            } else {
+                return LocalDate.parse(str).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            }
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Unable to parse date: " + str);
+        }
+    }
+
+}
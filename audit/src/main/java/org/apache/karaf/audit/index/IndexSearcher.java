@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.audit.index;
+
+import org.apache.karaf.audit.AuditSearch;
+import org.apache.karaf.audit.logger.FileEventLogger;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Search the segments written by a {@link FileEventLogger}.
+ * Only segments having an index are searched: the index header and
+ * dictionaries are used to skip segments which can not contain any
+ * match, and matching records are read directly at their offsets.
+ */
+public class IndexSearcher implements AuditSearch {
+
+    private final FileEventLogger logger;
+
+    public IndexSearcher(FileEventLogger logger) {
+        this.logger = logger;
+    }
+
+    @Override
+    public List<String> search(Query query, int limit) throws IOException {
+        Path path = logger.getPath();
+        String name = path.getFileName().toString();
+        int idx = name.lastIndexOf('.');
+        String prefix = (idx > 0 ? name.substring(0, idx) : name) + "-";
+
+        List<Segment> segments = new ArrayList<>();
+        List<Path> indexes;
+        try (Stream<Path> stream = Files.list(path.getParent())) {
+            indexes = stream
+                    .filter(p -> p.getFileName().toString().startsWith(prefix))
+                    .filter(p -> p.getFileName().toString().endsWith(SegmentIndex.SUFFIX))
+                    .collect(Collectors.toList());
+        }
+        for (Path index : indexes) {
+            String fileName = index.getFileName().toString();
+            Path segment = index.resolveSibling(fileName.substring(0, fileName.length() - SegmentIndex.SUFFIX.length()));
+            try {
+                SegmentIndex si = SegmentIndex.read(index, query);
+                if (si != null) {
+                    segments.add(new Segment(segment, si));
+                }
+            } catch (NoSuchFileException e) {
+                // the segment has been removed in the mean time
+            }
+        }
+        SegmentIndex active = logger.getIndex();
+        if (active != null) {
+            segments.add(new Segment(path, active));
+        }
+        segments.sort(Comparator.comparingLong((Segment s) -> s.index.minTimestamp()).reversed());
+
+        List<String> results = new ArrayList<>();
+        for (Segment segment : segments) {
+            if (limit > 0 && results.size() >= limit) {
+                break;
+            }
+            long[] matches = segment.index.find(query);
+            if (matches.length == 0) {
+                continue;
+            }
+            if (limit > 0 && matches.length / 2 > limit - results.size()) {
+                matches = Arrays.copyOfRange(matches, matches.length - 2 * (limit - results.size()), matches.length);
+            }
+            try {
+                results.addAll(0, read(segment.path, matches));
+            } catch (NoSuchFileException e) {
+                // the segment has been removed in the mean time
+            }
+        }
+        return results;
+    }
+
+    private List<String> read(Path segment, long[] matches) throws IOException {
+        Charset charset = logger.getEncoding();
+        List<String> records = new ArrayList<>();
+        if (segment.getFileName().toString().endsWith(".gz")) {
+            try (InputStream is = new GZIPInputStream(new BufferedInputStream(Files.newInputStream(segment)))) {
+                DataInputStream dis = new DataInputStream(is);
+                long position = 0;
+                for (int i = 0; i < matches.length; i += 2) {
+                    skip(dis, matches[i] - position);
+                    byte[] record = new byte[(int) matches[i + 1]];
+                    dis.readFully(record);
+                    position = matches[i] + record.length;
+                    records.add(decode(record, record.length, charset));
+                }
+            }
+        } else {
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+                long size = channel.size();
+                for (int i = 0; i < matches.length; i += 2) {
+                    long offset = matches[i];
+                    int length = (int) matches[i + 1];
+                    if (offset + length > size) {
+                        // not yet written
+                        break;
+                    }
+                    ByteBuffer bb = ByteBuffer.allocate(length);
+                    while (bb.hasRemaining()) {
+                        if (channel.read(bb, offset + bb.position()) < 0) {
+                            throw new EOFException();
+                        }
+                    }
+                    records.add(decode(bb.array(), length, charset));
+                }
+            }
+        }
+        return records;
+    }
+
+    private static void skip(InputStream is, long n) throws IOException {
+        while (n > 0) {
+            long skipped = is.skip(n);
+            if (skipped <= 0) {
+                if (is.read() < 0) {
+                    throw new EOFException();
+                }
+                skipped = 1;
+            }
+            n -= skipped;
+        }
+    }
+
+    private static String decode(byte[] record, int length, Charset charset) {
+        String str = new String(record, 0, length, charset);
+        return str.endsWith("\n") ? str.substring(0, str.length() - 1) : str;
+    }
+
+    private static class Segment {
+        final Path path;
+        final SegmentIndex index;
+
+        Segment(Path path, SegmentIndex index) {
+            this.path = path;
+            this.index = index;
+        }
+    }
+
+}
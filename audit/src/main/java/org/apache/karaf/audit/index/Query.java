@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.audit.index;
+
+/**
+ * Audit search criteria.  A <code>null</code> criterion matches everything.
+ */
+public class Query {
+
+    private final long from;
+    private final long to;
+    private final String subject;
+    private final String type;
+    private final String subtype;
+    private final String target;
+
+    /**
+     * @param from the lower bound (inclusive) of the event timestamps, or <code>0</code>
+     * @param to the upper bound (exclusive) of the event timestamps, or <code>0</code>
+     * @param subject the user name, or the <code>user@client</code> subject
+     * @param type the event type
+     * @param subtype the event subtype
+     * @param target a part of the MBean object name or of the shell command
+     */
+    public Query(long from, long to, String subject, String type, String subtype, String target) {
+        this.from = from;
+        this.to = to > 0 ? to : Long.MAX_VALUE;
+        this.subject = emptyToNull(subject);
+        this.type = emptyToNull(type);
+        this.subtype = emptyToNull(subtype);
+        this.target = emptyToNull(target);
+    }
+
+    private static String emptyToNull(String str) {
+        return str != null && !str.isEmpty() ? str : null;
+    }
+
+    boolean matchesRange(long min, long max) {
+        return max >= from && min < to;
+    }
+
+    boolean matchesTimestamp(long timestamp) {
+        return timestamp >= from && timestamp < to;
+    }
+
+    boolean matchesSubject(String value) {
+        return subject == null
+                || value != null && (value.equals(subject) || value.startsWith(subject + "@"));
+    }
+
+    boolean matchesType(String value) {
+        return type == null || type.equals(value);
+    }
+
+    boolean matchesSubtype(String value) {
+        return subtype == null || subtype.equals(value);
+    }
+
+    boolean matchesTarget(String value) {
+        return target == null || value != null && value.contains(target);
+    }
+
+}
@@ -0,0 +1,345 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.audit.index;
+
+import org.apache.karaf.audit.Event;
+import org.apache.karaf.jaas.boot.principal.ClientPrincipal;
+import org.apache.karaf.jaas.boot.principal.UserPrincipal;
+
+import javax.management.ObjectName;
+import javax.security.auth.Subject;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Compact index of the records of an audit log segment.
+ * <p>
+ * The index is kept in memory while the segment is written and stored
+ * in a sidecar file (the segment name followed by {@link #SUFFIX}) when
+ * the segment is rotated.  Subjects, types, subtypes and targets (the
+ * MBean object name or the shell command) are stored in dictionaries
+ * so that a query can discard a whole segment by only reading its header.
+ */
+public final class SegmentIndex {
+
+    public static final String SUFFIX = ".idx";
+
+    private static final int MAGIC = 0x4b414958; // KAIX
+    private static final int VERSION = 1;
+    private static final int MAX_TARGET_LENGTH = 1024;
+
+    private final Dictionary subjects = new Dictionary();
+    private final Dictionary types = new Dictionary();
+    private final Dictionary subtypes = new Dictionary();
+    private final Dictionary targets = new Dictionary();
+    private long minTimestamp = Long.MAX_VALUE;
+    private long maxTimestamp = Long.MIN_VALUE;
+    private long end;
+    private int count;
+    private long[] offsets = new long[256];
+    private long[] timestamps = new long[256];
+    private int[] lengths = new int[256];
+    private int[] keys = new int[256 * 4];
+
+    /**
+     * Index a record.
+     *
+     * @param offset the offset of the record in the uncompressed segment
+     * @param length the length of the record in bytes, including the line separator
+     * @param event the event
+     */
+    public synchronized void add(long offset, int length, Event event) {
+        if (count == offsets.length) {
+            int n = count * 2;
+            offsets = Arrays.copyOf(offsets, n);
+            timestamps = Arrays.copyOf(timestamps, n);
+            lengths = Arrays.copyOf(lengths, n);
+            keys = Arrays.copyOf(keys, n * 4);
+        }
+        long timestamp = event.timestamp();
+        offsets[count] = offset;
+        lengths[count] = length;
+        timestamps[count] = timestamp;
+        keys[count * 4] = subjects.id(subject(event.subject()));
+        keys[count * 4 + 1] = types.id(event.type());
+        keys[count * 4 + 2] = subtypes.id(event.subtype());
+        keys[count * 4 + 3] = targets.id(target(event));
+        minTimestamp = Math.min(minTimestamp, timestamp);
+        maxTimestamp = Math.max(maxTimestamp, timestamp);
+        end = offset + length;
+        count++;
+    }
+
+    /**
+     * The number of indexed records.
+     */
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * The offset of the end of the last indexed record.
+     */
+    public synchronized long end() {
+        return end;
+    }
+
+    public synchronized long minTimestamp() {
+        return minTimestamp;
+    }
+
+    public synchronized long maxTimestamp() {
+        return maxTimestamp;
+    }
+
+    /**
+     * Find the records matching the query, in ascending offset order.
+     *
+     * @return an array of <code>{offset, length}</code> pairs
+     */
+    public synchronized long[] find(Query query) {
+        if (count == 0 || !query.matchesRange(minTimestamp, maxTimestamp)) {
+            return new long[0];
+        }
+        boolean[] subject = subjects.matches(query::matchesSubject);
+        boolean[] type = types.matches(query::matchesType);
+        boolean[] subtype = subtypes.matches(query::matchesSubtype);
+        boolean[] target = targets.matches(query::matchesTarget);
+        if (subject == null || type == null || subtype == null || target == null) {
+            return new long[0];
+        }
+        long[] result = new long[16];
+        int nb = 0;
+        for (int i = 0; i < count; i++) {
+            if (query.matchesTimestamp(timestamps[i])
+                    && subject[keys[i * 4]]
+                    && type[keys[i * 4 + 1]]
+                    && subtype[keys[i * 4 + 2]]
+                    && target[keys[i * 4 + 3]]) {
+                if (nb + 2 > result.length) {
+                    result = Arrays.copyOf(result, result.length * 2);
+                }
+                result[nb++] = offsets[i];
+                result[nb++] = lengths[i];
+            }
+        }
+        return Arrays.copyOf(result, nb);
+    }
+
+    /**
+     * Atomically write this index to the given file.
+     */
+    public synchronized void write(Path path) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            dos.writeInt(MAGIC);
+            dos.writeInt(VERSION);
+            dos.writeLong(end);
+            dos.writeInt(count);
+            dos.writeLong(minTimestamp);
+            dos.writeLong(maxTimestamp);
+            subjects.write(dos);
+            types.write(dos);
+            subtypes.write(dos);
+            targets.write(dos);
+            for (int i = 0; i < count; i++) {
+                dos.writeLong(offsets[i]);
+                dos.writeInt(lengths[i]);
+                dos.writeLong(timestamps[i]);
+                for (int k = 0; k < 4; k++) {
+                    dos.writeInt(keys[i * 4 + k]);
+                }
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Read an index file.
+     */
+    public static SegmentIndex read(Path path) throws IOException {
+        try (InputStream is = Files.newInputStream(path)) {
+            return read(is, null);
+        }
+    }
+
+    /**
+     * Read an index file, stopping after the header and dictionaries
+     * if they show that no record can match the given query.
+     *
+     * @return the index, or <code>null</code> if no record can match
+     */
+    public static SegmentIndex read(Path path, Query query) throws IOException {
+        try (InputStream is = Files.newInputStream(path)) {
+            return read(is, query);
+        }
+    }
+
+    private static SegmentIndex read(InputStream is, Query query) throws IOException {
+        DataInputStream dis = new DataInputStream(new BufferedInputStream(is));
+        if (dis.readInt() != MAGIC || dis.readInt() != VERSION) {
+            throw new IOException("Unsupported audit index format");
+        }
+        SegmentIndex index = new SegmentIndex();
+        index.end = dis.readLong();
+        int count = dis.readInt();
+        index.minTimestamp = dis.readLong();
+        index.maxTimestamp = dis.readLong();
+        if (query != null && (count == 0 || !query.matchesRange(index.minTimestamp, index.maxTimestamp))) {
+            return null;
+        }
+        index.subjects.read(dis);
+        index.types.read(dis);
+        index.subtypes.read(dis);
+        index.targets.read(dis);
+        if (query != null
+                && (index.subjects.matches(query::matchesSubject) == null
+                    || index.types.matches(query::matchesType) == null
+                    || index.subtypes.matches(query::matchesSubtype) == null
+                    || index.targets.matches(query::matchesTarget) == null)) {
+            return null;
+        }
+        int cap = Math.max(count, 16);
+        index.offsets = new long[cap];
+        index.lengths = new int[cap];
+        index.timestamps = new long[cap];
+        index.keys = new int[cap * 4];
+        for (int i = 0; i < count; i++) {
+            index.offsets[i] = dis.readLong();
+            index.lengths[i] = dis.readInt();
+            index.timestamps[i] = dis.readLong();
+            for (int k = 0; k < 4; k++) {
+                index.keys[i * 4 + k] = dis.readInt();
+            }
+        }
+        index.count = count;
+        return index;
+    }
+
+    static String subject(Subject subject) {
+        if (subject == null) {
+            return null;
+        }
+        String up = null;
+        String cp = null;
+        for (Principal p : subject.getPrincipals()) {
+            if (p instanceof UserPrincipal) {
+                up = p.getName();
+            } else if (p instanceof ClientPrincipal) {
+                cp = p.getName();
+            }
+        }
+        String str = up != null ? up : "?";
+        return cp != null ? str + "@" + cp : str;
+    }
+
+    static String target(Event event) {
+        switch (event.type()) {
+            case Event.TYPE_JMX: {
+                Object params = event.getProperty("params");
+                if (params instanceof Object[]) {
+                    for (Object param : (Object[]) params) {
+                        if (param instanceof ObjectName) {
+                            return param.toString();
+                        }
+                    }
+                }
+                return null;
+            }
+            case Event.TYPE_SHELL: {
+                Object command = event.getProperty("command");
+                if (command == null) {
+                    command = event.getProperty("script");
+                }
+                if (command == null) {
+                    return null;
+                }
+                String str = command.toString();
+                return str.length() > MAX_TARGET_LENGTH ? str.substring(0, MAX_TARGET_LENGTH) : str;
+            }
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * A string dictionary where the <code>null</code> value has the id <code>0</code>.
+     */
+    static class Dictionary {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        Dictionary() {
+            values.add(null);
+        }
+
+        int id(String value) {
+            if (value == null) {
+                return 0;
+            }
+            Integer id = ids.get(value);
+            if (id == null) {
+                id = values.size();
+                ids.put(value, id);
+                values.add(value);
+            }
+            return id;
+        }
+
+        /**
+         * @return the matching ids or <code>null</code> if no value matches
+         */
+        boolean[] matches(Predicate<String> predicate) {
+            boolean[] matches = new boolean[values.size()];
+            boolean any = false;
+            for (int i = 0; i < matches.length; i++) {
+                matches[i] = predicate.test(values.get(i));
+                any |= matches[i];
+            }
+            return any ? matches : null;
+        }
+
+        void write(DataOutputStream dos) throws IOException {
+            dos.writeInt(values.size() - 1);
+            for (int i = 1; i < values.size(); i++) {
+                dos.writeUTF(values.get(i));
+            }
+        }
+
+        void read(DataInputStream dis) throws IOException {
+            int nb = dis.readInt();
+            for (int i = 0; i < nb; i++) {
+                id(dis.readUTF());
+            }
+        }
+    }
+
+}
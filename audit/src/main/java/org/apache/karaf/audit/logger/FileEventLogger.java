@@ -19,13 +19,13 @@ package org.apache.karaf.audit.logger;
 import org.apache.karaf.audit.Event;
 import org.apache.karaf.audit.EventLayout;
 import org.apache.karaf.audit.EventLogger;
+import org.apache.karaf.audit.index.SegmentIndex;
+import org.apache.karaf.audit.util.BatchEncoder;
 import org.apache.karaf.audit.util.FastDateFormat;
 
-import java.io.BufferedWriter;
-import java.io.Closeable;
-import java.io.Flushable;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -39,6 +39,7 @@ import java.util.TimeZone;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.zip.GZIPOutputStream;
 
@@ -50,15 +51,34 @@ public class FileEventLogger implements EventLogger {
     private final boolean compress;
     private final Executor executor;
     private final EventLayout layout;
+    private final BatchEncoder batch;
+    private final boolean force;
+    private final long forceDelay;
+    private final boolean indexed;
     private boolean daily;
     private long maxSize;
     private long size;
     private Path path;
-    private Writer writer;
+    private FileChannel channel;
+    private boolean dirty;
+    private long lastForce;
+    private volatile SegmentIndex index;
     private FastDateFormat fastDateFormat;
     private TimeZone timeZone;
 
     public FileEventLogger(String path, String encoding, String policy, int files, boolean compress, ThreadFactory factory, EventLayout layout, TimeZone timeZone) throws IOException {
+        this(path, encoding, policy, files, compress, factory, layout, timeZone, false, 0, false);
+    }
+
+    /**
+     * @param force whether written data should be forced to the storage device
+     * @param forceDelay the maximum delay in milliseconds between two forces while
+     *                   batches keep being written, or <code>0</code> to only force
+     *                   when the logger is flushed
+     * @param indexed whether a {@link SegmentIndex} should be maintained for each segment
+     */
+    public FileEventLogger(String path, String encoding, String policy, int files, boolean compress, ThreadFactory factory, EventLayout layout, TimeZone timeZone,
+                           boolean force, long forceDelay, boolean indexed) throws IOException {
         this.fastDateFormat = new FastDateFormat(timeZone, Locale.ENGLISH);
         this.timeZone = timeZone;
         this.path = Paths.get(path);
@@ -68,6 +88,11 @@ public class FileEventLogger implements EventLogger {
         this.compress = compress;
         this.executor = Executors.newSingleThreadExecutor(factory);
         this.layout = layout;
+        this.batch = new BatchEncoder(this.encoding);
+        this.force = force;
+        this.forceDelay = TimeUnit.MILLISECONDS.toNanos(forceDelay);
+        this.lastForce = System.nanoTime();
+        this.indexed = indexed;
         Files.createDirectories(this.path.getParent());
 
         for (String pol : policy.toLowerCase(Locale.ENGLISH).split("\\s+")) {
@@ -104,14 +129,52 @@ public class FileEventLogger implements EventLogger {
 
     @Override
     public void write(Event event) throws IOException {
+        append(event);
+        if (batch.size() >= BatchEncoder.DEFAULT_CHUNK_SIZE) {
+            writeBatch();
+        }
+    }
+
+    @Override
+    public void write(List<? extends Event> events) throws IOException {
+        for (Event event : events) {
+            append(event);
+        }
+        writeBatch();
+        if (force && forceDelay > 0 && System.nanoTime() - lastForce >= forceDelay) {
+            force();
+        }
+    }
+
+    private void append(Event event) throws IOException {
         long timestamp = event.timestamp();
-        if (writer == null) {
+        if (channel == null) {
             init();
         } else {
             check(timestamp);
         }
-        layout.format(event, writer);
-        writer.append("\n");
+        long offset = size;
+        int length = batch.encodeLine(layout.format(event));
+        size += length;
+        SegmentIndex index = this.index;
+        if (index != null) {
+            index.add(offset, length, event);
+        }
+    }
+
+    private void writeBatch() throws IOException {
+        if (channel != null && !batch.isEmpty()) {
+            batch.writeTo(channel);
+            dirty = true;
+        }
+    }
+
+    private void force() throws IOException {
+        if (channel != null && dirty) {
+            channel.force(false);
+            dirty = false;
+        }
+        lastForce = System.nanoTime();
     }
 
     private void init() throws IOException {
@@ -120,33 +183,85 @@ public class FileEventLogger implements EventLogger {
             size = Files.size(path);
             fastDateFormat.sameDay(Files.getLastModifiedTime(path).toMillis());
             if (trigger(timestamp)) {
+                SegmentIndex index = loadIndex(size);
                 Path temp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
-                Files.move(path, temp);
-                executor.execute(() -> rotate(temp, timestamp));
+                Files.move(path, temp, StandardCopyOption.REPLACE_EXISTING);
+                executor.execute(() -> rotate(temp, timestamp, index));
             }
         }
         fastDateFormat.sameDay(timestamp);
-        writer = new Writer(Files.newBufferedWriter(path, encoding, StandardOpenOption.CREATE, StandardOpenOption.APPEND));
-        size = 0;
+        open();
     }
 
-
     private void check(long timestamp) throws IOException {
         if (trigger(timestamp)) {
-            if (writer != null) {
-                writer.flush();
-                if (Files.size(path) == 0) {
+            if (channel != null) {
+                writeBatch();
+                if (channel.size() == 0) {
                     return;
                 }
-                writer.close();
+                if (force) {
+                    force();
+                }
+                channel.close();
             }
             Path temp = Files.createTempFile(path.getParent(), path.getFileName().toString() + ".", ".tmp");
             Files.delete(temp);
             Files.move(path, temp, StandardCopyOption.ATOMIC_MOVE);
-            executor.execute(() -> rotate(temp, timestamp));
-            writer = new Writer(Files.newBufferedWriter(path, encoding, StandardOpenOption.CREATE, StandardOpenOption.APPEND));
-            size = 0;
+            SegmentIndex index = this.index;
+            executor.execute(() -> rotate(temp, timestamp, index));
+            open();
+        }
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        size = channel.size();
+        dirty = false;
+        if (indexed) {
+            index = size == 0 ? new SegmentIndex() : loadIndex(size);
+        }
+    }
+
+    /**
+     * Load the index stored when the logger was closed, if it covers the whole segment.
+     */
+    private SegmentIndex loadIndex(long size) {
+        Path sidecar = path.resolveSibling(path.getFileName() + SegmentIndex.SUFFIX);
+        try {
+            if (Files.isRegularFile(sidecar)) {
+                SegmentIndex index = SegmentIndex.read(sidecar);
+                Files.delete(sidecar);
+                if (index.end() == size) {
+                    return index;
+                }
+            }
+        } catch (IOException e) {
+            // ignore, the segment will not be indexed
         }
+        return null;
+    }
+
+    /**
+     * The path of the current segment.
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    public Charset getEncoding() {
+        return encoding;
+    }
+
+    public boolean isIndexed() {
+        return indexed;
+    }
+
+    /**
+     * The index of the current segment, or <code>null</code> if it is not indexed.
+     */
+    public SegmentIndex getIndex() {
+        return index;
     }
 
     private boolean trigger(long timestamp) {
@@ -154,7 +269,7 @@ public class FileEventLogger implements EventLogger {
                 || daily && !fastDateFormat.sameDay(timestamp);
     }
 
-    private void rotate(Path path, long timestamp) {
+    private void rotate(Path path, long timestamp, SegmentIndex index) {
         try {
             // Compute final name
             String[] fix = getFileNameFix();
@@ -164,6 +279,7 @@ public class FileEventLogger implements EventLogger {
                     .map(Path::toString)
                     .filter(p -> p.startsWith(fix[0]))
                     .filter(p -> !p.endsWith(".tmp"))
+                    .filter(p -> !p.endsWith(SegmentIndex.SUFFIX))
                     .collect(Collectors.toList());
             String date = new FastDateFormat(timeZone, Locale.ENGLISH).getDate(timestamp, FastDateFormat.YYYY_MM_DD);
             List<String> sameDate = paths.stream()
@@ -186,12 +302,16 @@ public class FileEventLogger implements EventLogger {
             } else {
                 Files.move(path, finalPath);
             }
+            if (index != null) {
+                index.write(finalPath.resolveSibling(name + SegmentIndex.SUFFIX));
+            }
             // Check number of files
             if (files > 0 && paths.size() > files) {
                 Collections.sort(paths);
                 paths.subList(paths.size() - files, paths.size()).clear();
                 for (String p : paths) {
                     Files.delete(path.resolveSibling(p));
+                    Files.deleteIfExists(path.resolveSibling(p + SegmentIndex.SUFFIX));
                 }
             }
         } catch (IOException e) {
@@ -212,84 +332,26 @@ public class FileEventLogger implements EventLogger {
 
     @Override
     public void flush() throws IOException {
-        if (writer != null) {
-            writer.flush();
+        writeBatch();
+        if (force) {
+            force();
         }
     }
 
     @Override
     public void close() throws IOException {
-        if (writer != null) {
-            writer.close();
-        }
-    }
-
-    class Writer extends java.io.Writer implements Appendable, Closeable, Flushable {
-        private final BufferedWriter writer;
-
-        public Writer(BufferedWriter writer) {
-            this.writer = writer;
-        }
-
-        @Override
-        public void flush() throws IOException {
-            writer.flush();
-        }
-
-        @Override
-        public void close() throws IOException {
-            writer.close();
-        }
-
-        @Override
-        public void write(int c) throws IOException {
-            size += 1;
-            writer.write(c);
-        }
-
-        @Override
-        public void write(char[] cbuf, int off, int len) throws IOException {
-            size += len;
-            writer.write(cbuf, off, len);
-        }
-
-        @Override
-        public void write(String s, int off, int len) throws IOException {
-            size += len;
-            writer.write(s, off, len);
-        }
-
-        @Override
-        public void write(char[] cbuf) throws IOException {
-            size += cbuf.length;
-            writer.write(cbuf);
-        }
-
-        @Override
-        public void write(String str) throws IOException {
-            size += str.length();
-            writer.write(str);
-        }
-
-        @Override
-        public java.io.Writer append(CharSequence csq) throws IOException {
-            size += csq.length();
-            writer.append(csq);
-            return this;
-        }
-
-        @Override
-        public java.io.Writer append(CharSequence csq, int start, int end) throws IOException {
-            size += end - start;
-            writer.append(csq, start, end);
-            return this;
-        }
-
-        @Override
-        public java.io.Writer append(char c) throws IOException {
-            size += 1;
-            writer.append(c);
-            return this;
+        if (channel != null) {
+            try {
+                flush();
+                SegmentIndex index = this.index;
+                if (index != null && index.size() > 0) {
+                    index.write(path.resolveSibling(path.getFileName() + SegmentIndex.SUFFIX));
+                }
+            } finally {
+                channel.close();
+                channel = null;
+                index = null;
+            }
         }
     }
 }
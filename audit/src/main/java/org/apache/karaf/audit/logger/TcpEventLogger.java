@@ -19,49 +19,64 @@ package org.apache.karaf.audit.logger;
 import org.apache.karaf.audit.Event;
 import org.apache.karaf.audit.EventLayout;
 import org.apache.karaf.audit.EventLogger;
+import org.apache.karaf.audit.util.BatchEncoder;
 
-import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.net.Socket;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
 import java.nio.charset.Charset;
+import java.util.List;
 
 public class TcpEventLogger implements EventLogger {
 
     private final String host;
     private final int port;
-    private final Charset encoding;
     private final EventLayout layout;
-    private BufferedWriter writer;
+    private final BatchEncoder batch;
+    private SocketChannel channel;
 
     public TcpEventLogger(String host, int port, String encoding, EventLayout layout) throws IOException {
         this.host = host;
         this.port = port;
-        this.encoding = Charset.forName(encoding);
         this.layout = layout;
+        this.batch = new BatchEncoder(Charset.forName(encoding));
     }
 
     @Override
     public void write(Event event) throws IOException {
-        if (writer == null) {
-            Socket socket = new Socket(host, port);
-            this.writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), encoding));
+        batch.encodeLine(layout.format(event));
+        if (batch.size() >= BatchEncoder.DEFAULT_CHUNK_SIZE) {
+            flush();
         }
-        layout.format(event, writer);
-        writer.append("\n");
+    }
+
+    @Override
+    public void write(List<? extends Event> events) throws IOException {
+        for (Event event : events) {
+            batch.encodeLine(layout.format(event));
+        }
+        flush();
     }
 
     @Override
     public void close() throws IOException {
-        if (writer != null) {
-            writer.close();
+        try {
+            flush();
+        } finally {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
         }
     }
 
     @Override
     public void flush() throws IOException {
-        if (writer != null) {
-            writer.flush();
+        if (!batch.isEmpty()) {
+            if (channel == null) {
+                channel = SocketChannel.open(new InetSocketAddress(host, port));
+            }
+            batch.writeTo(channel);
         }
     }
 }
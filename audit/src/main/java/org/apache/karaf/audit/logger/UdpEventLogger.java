@@ -21,55 +21,47 @@ import org.apache.karaf.audit.EventLayout;
 import org.apache.karaf.audit.EventLogger;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
 import java.net.InetAddress;
-import java.net.SocketException;
-import java.net.UnknownHostException;
+import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
+import java.nio.channels.DatagramChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
 
 public class UdpEventLogger implements EventLogger {
 
-    private final InetAddress host;
-    private final int port;
+    private final InetSocketAddress target;
     private final CharsetEncoder encoder;
     private final EventLayout layout;
-    private final DatagramSocket dgram;
+    private final DatagramChannel channel;
 
-    private ByteBuffer bb = ByteBuffer.allocate(1024);
+    private ByteBuffer bb = ByteBuffer.allocateDirect(1024);
 
-    public UdpEventLogger(String host, int port, String encoding, EventLayout layout) throws SocketException, UnknownHostException {
+    public UdpEventLogger(String host, int port, String encoding, EventLayout layout) throws IOException {
         this.layout = layout;
-        this.host = InetAddress.getByName(host);
-        this.port = port;
+        this.target = new InetSocketAddress(InetAddress.getByName(host), port);
         this.encoder = Charset.forName(encoding).newEncoder();
-        this.dgram = new DatagramSocket();
+        this.channel = DatagramChannel.open();
     }
 
     @Override
     public void write(Event event) throws IOException {
         CharBuffer cb = layout.format(event);
-        int cap = (int) (cb.remaining() * encoder.averageBytesPerChar());
-        ByteBuffer bb;
-        if (this.bb.capacity() > cap) {
-            bb = this.bb;
-        } else {
-            bb = ByteBuffer.allocate(cap);
+        int cap = (int) (cb.remaining() * encoder.maxBytesPerChar());
+        if (bb.capacity() < cap) {
+            bb = ByteBuffer.allocateDirect(Math.max(cap, bb.capacity() * 2));
         }
+        bb.clear();
         encoder.reset();
-        encoder.encode(cb, bb, true);
-        if (cb.remaining() > 0) {
-            bb = ByteBuffer.allocate(bb.capacity() * 2);
-            cb.position(0);
-            encoder.reset();
-            encoder.encode(cb, bb, true);
+        CoderResult cr = encoder.encode(cb, bb, true);
+        if (cr.isError()) {
+            cr.throwException();
         }
-
-        dgram.send(new DatagramPacket(bb.array(), 0, bb.position(), host, port));
-        bb.position(0);
+        encoder.flush(bb);
+        bb.flip();
+        channel.send(bb, target);
     }
 
     @Override
@@ -78,7 +70,7 @@ public class UdpEventLogger implements EventLogger {
 
     @Override
     public void close() throws IOException {
-        dgram.close();
+        channel.close();
     }
 
 }
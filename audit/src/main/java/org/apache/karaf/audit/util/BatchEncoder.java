@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.audit.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+/**
+ * Encodes formatted events into a list of reusable direct byte buffers
+ * so that a whole batch can be written with a single gathering write.
+ */
+public final class BatchEncoder {
+
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    private final CharsetEncoder encoder;
+    private final byte[] eol;
+    private final int chunkSize;
+    private ByteBuffer[] chunks = new ByteBuffer[4];
+    private int allocated;
+    private int current;
+
+    public BatchEncoder(Charset charset) {
+        this(charset, DEFAULT_CHUNK_SIZE);
+    }
+
+    public BatchEncoder(Charset charset, int chunkSize) {
+        this.encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.eol = eol(charset);
+        this.chunkSize = chunkSize;
+        this.chunks[0] = ByteBuffer.allocateDirect(chunkSize);
+        this.allocated = 1;
+    }
+
+    private static byte[] eol(Charset charset) {
+        try {
+            ByteBuffer bb = charset.newEncoder().encode(CharBuffer.wrap("\n"));
+            byte[] b = new byte[bb.remaining()];
+            bb.get(b);
+            return b;
+        } catch (CharacterCodingException e) {
+            return new byte[] { '\n' };
+        }
+    }
+
+    /**
+     * Encode the given characters followed by a line separator.
+     *
+     * @return the number of bytes added to the batch
+     */
+    public int encodeLine(CharBuffer cb) throws IOException {
+        long before = size();
+        encoder.reset();
+        CoderResult cr;
+        while ((cr = encoder.encode(cb, chunks[current], true)).isOverflow()) {
+            next();
+        }
+        if (cr.isError()) {
+            cr.throwException();
+        }
+        while (encoder.flush(chunks[current]).isOverflow()) {
+            next();
+        }
+        for (byte b : eol) {
+            if (!chunks[current].hasRemaining()) {
+                next();
+            }
+            chunks[current].put(b);
+        }
+        return (int) (size() - before);
+    }
+
+    /**
+     * Number of bytes pending in this batch.
+     */
+    public long size() {
+        long size = 0;
+        for (int i = 0; i <= current; i++) {
+            size += chunks[i].position();
+        }
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return current == 0 && chunks[0].position() == 0;
+    }
+
+    /**
+     * Write all pending bytes to the channel using a gathering write
+     * and reset the batch.
+     *
+     * @return the number of bytes written
+     */
+    public long writeTo(GatheringByteChannel channel) throws IOException {
+        int nb = current + 1;
+        long total = 0;
+        for (int i = 0; i < nb; i++) {
+            chunks[i].flip();
+            total += chunks[i].remaining();
+        }
+        try {
+            long written = 0;
+            while (written < total) {
+                written += channel.write(chunks, 0, nb);
+            }
+            return total;
+        } finally {
+            clear();
+        }
+    }
+
+    public void clear() {
+        for (int i = 0; i <= current; i++) {
+            chunks[i].clear();
+        }
+        current = 0;
+    }
+
+    private void next() {
+        if (++current == allocated) {
+            if (allocated == chunks.length) {
+                chunks = Arrays.copyOf(chunks, chunks.length * 2);
+            }
+            chunks[allocated++] = ByteBuffer.allocateDirect(chunkSize);
+        }
+    }
+
+}
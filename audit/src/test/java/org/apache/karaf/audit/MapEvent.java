@@ -41,7 +41,7 @@ public class MapEvent implements Event {
 
     @Override
     public Subject subject() {
-        return null;
+        return (Subject) map.get("subject");
     }
 
     @Override
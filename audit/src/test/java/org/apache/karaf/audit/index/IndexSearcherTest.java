@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.audit.index;
+
+import org.apache.karaf.audit.Event;
+import org.apache.karaf.audit.MapEvent;
+import org.apache.karaf.audit.layout.SimpleLayout;
+import org.apache.karaf.audit.logger.FileEventLogger;
+import org.apache.karaf.jaas.boot.principal.UserPrincipal;
+import org.junit.Test;
+
+import javax.management.ObjectName;
+import javax.security.auth.Subject;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IndexSearcherTest {
+
+    private static final long TIMESTAMP = 1510902000000L;
+
+    @Test
+    public void testSearch() throws Exception {
+        Path path = Files.createTempDirectory("file-logger");
+        String file = path.resolve("file.log").toString();
+        FileEventLogger logger = new FileEventLogger(file, "UTF-8", "size(1kb)", 0, true,
+                Executors.defaultThreadFactory(), new SimpleLayout(), TimeZone.getTimeZone("GMT+01:00"), false, 0, true);
+
+        List<Event> events = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            events.add(jmx(i % 2 == 0 ? "alice" : "bob", "org.apache.karaf:type=bundle,name=root", TIMESTAMP + TimeUnit.MINUTES.toMillis(i)));
+            events.add(shell("carol", "bundle:list " + i, TIMESTAMP + TimeUnit.MINUTES.toMillis(i)));
+        }
+        events.add(jmx("alice", "org.apache.karaf:type=config,name=root", TIMESTAMP + TimeUnit.MINUTES.toMillis(100)));
+        logger.write(events);
+        logger.flush();
+
+        Thread.sleep(200);
+
+        List<String> indexes = Files.list(path).map(Path::toString)
+                .filter(p -> p.endsWith(SegmentIndex.SUFFIX))
+                .collect(Collectors.toList());
+        assertTrue(indexes.size() > 1);
+
+        IndexSearcher searcher = new IndexSearcher(logger);
+
+        List<String> all = searcher.search(new Query(0, 0, null, null, null, null), 0);
+        assertEquals(201, all.size());
+
+        List<String> alice = searcher.search(new Query(0, 0, "alice", Event.TYPE_JMX, null, "type=bundle"), 0);
+        assertEquals(50, alice.size());
+        for (String record : alice) {
+            assertTrue(record, record.contains(" alice jmx "));
+            assertTrue(record, record.contains("type=bundle"));
+        }
+
+        List<String> config = searcher.search(new Query(0, 0, null, null, null, "type=config"), 0);
+        assertEquals(1, config.size());
+
+        List<String> last = searcher.search(new Query(0, 0, "carol", null, "executed", null), 3);
+        assertEquals(3, last.size());
+        assertTrue(last.get(0), last.get(0).contains("bundle:list 97"));
+        assertTrue(last.get(2), last.get(2).contains("bundle:list 99"));
+
+        long from = TIMESTAMP + TimeUnit.MINUTES.toMillis(10);
+        long to = TIMESTAMP + TimeUnit.MINUTES.toMillis(20);
+        List<String> range = searcher.search(new Query(from, to, "carol", null, null, null), 0);
+        assertEquals(10, range.size());
+        assertTrue(range.get(0), range.get(0).contains("bundle:list 10"));
+
+        assertEquals(Collections.emptyList(), searcher.search(new Query(0, 0, "dave", null, null, null), 0));
+
+        logger.close();
+    }
+
+    private static Event jmx(String user, String objectName, long timestamp) throws Exception {
+        Map<String, Object> map = new HashMap<>();
+        map.put("subject", subject(user));
+        map.put("type", Event.TYPE_JMX);
+        map.put("subtype", "invoke");
+        map.put("method", "invoke");
+        map.put("params", new Object[] { new ObjectName(objectName), "start", new Object[0], new String[0] });
+        return new MapEvent(map, timestamp);
+    }
+
+    private static Event shell(String user, String command, long timestamp) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("subject", subject(user));
+        map.put("type", Event.TYPE_SHELL);
+        map.put("subtype", "executed");
+        map.put("command", command);
+        return new MapEvent(map, timestamp);
+    }
+
+    private static Subject subject(String user) {
+        Subject subject = new Subject();
+        subject.getPrincipals().add(new UserPrincipal(user));
+        return subject;
+    }
+
+}
@@ -258,6 +258,40 @@ public class EventLoggerTest {
         assertEquals(Arrays.asList("file-2017-11-17-2.log.gz", "file-2017-11-17.log.gz", "file.log"), paths);
     }
 
+    @Test
+    public void testFileBatch() throws Exception {
+        Map<String, Object> map = new HashMap<>();
+        map.put("type", Event.TYPE_SHELL);
+        map.put("subtype", "executed");
+        map.put("script", "a-script");
+
+        EventLayout layout = new GelfLayout();
+        Path path = Files.createTempDirectory("file-logger");
+        String file = path.resolve("file.log").toString();
+        EventLogger logger = new FileEventLogger(file, "UTF-8", "daily", 2, false, Executors.defaultThreadFactory(), layout, TimeZone.getTimeZone("GMT+01:00"), true, 10, false);
+
+        List<Event> events = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            events.add(new MapEvent(map, 1510902000000L + TimeUnit.MINUTES.toMillis(i)));
+        }
+        for (int i = 0; i < 3; i++) {
+            events.add(new MapEvent(map, 1510984800000L + TimeUnit.MINUTES.toMillis(i)));
+        }
+        logger.write(events);
+        logger.close();
+
+        Thread.sleep(100);
+
+        List<Path> paths = Files.list(path).sorted().collect(Collectors.toList());
+        assertEquals(3, paths.size());
+        assertEquals("file-2017-11-17.log", paths.get(0).getFileName().toString());
+        assertEquals("file-2017-11-18.log", paths.get(1).getFileName().toString());
+        assertEquals("file.log", paths.get(2).getFileName().toString());
+        assertEquals(1, Files.readAllLines(paths.get(0), StandardCharsets.UTF_8).size());
+        assertEquals(4, Files.readAllLines(paths.get(1), StandardCharsets.UTF_8).size());
+        assertEquals(3, Files.readAllLines(paths.get(2), StandardCharsets.UTF_8).size());
+    }
+
     private int getNewPort() throws IOException {
         try (ServerSocket socket = new ServerSocket()) {
             socket.setReuseAddress(true);
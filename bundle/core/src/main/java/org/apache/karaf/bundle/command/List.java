@@ -61,6 +61,18 @@ public class List extends BundlesCommand {
     @Option(name = "--no-ellipsis")
     boolean noEllipsis;
 
+    @Option(name = "--limit", description = "Maximum number of bundles to display", required = false, multiValued = false)
+    int limit = -1;
+
+    @Option(name = "--offset", description = "Number of bundles to skip, to display them page by page along with --limit", required = false, multiValued = false)
+    int offset;
+
+    @Option(name = "--output", description = "Output format: table, csv or json", required = false, multiValued = false)
+    String output = "table";
+
+    @Option(name = "--stream", description = "Print the bundles as they are listed, the column widths are computed on the first ones", required = false, multiValued = false)
+    boolean stream;
+
     @Reference
     BundleContext bundleContext;
 
@@ -84,7 +96,7 @@ public class List extends BundlesCommand {
         
         // Display active start level.
         FrameworkStartLevel fsl = this.bundleContext.getBundle(0).adapt(FrameworkStartLevel.class);
-        if (fsl != null) {
+        if (fsl != null && "table".equalsIgnoreCase(output)) {
             System.out.println("START LEVEL " + fsl.getStartLevel() + " , List Threshold: " + bundleLevelThreshold);
         }
 
@@ -92,6 +104,10 @@ public class List extends BundlesCommand {
         if (!noEllipsis && terminal != null && terminal.getWidth() > 0) {
             table.size(terminal.getWidth() - 1);
         }
+        table.limit(limit).offset(offset).output(output);
+        if (stream || table.isMachineOutput()) {
+            table.stream(System.out, !noFormat);
+        }
         table.column("ID").alignRight();
         table.column("State");
         table.column("Lvl").alignRight();
@@ -16,30 +16,51 @@
  */
 package org.apache.karaf.bundle.command.completers;
 
+import org.apache.karaf.shell.api.action.lifecycle.Destroy;
+import org.apache.karaf.shell.api.action.lifecycle.Init;
 import org.apache.karaf.shell.api.action.lifecycle.Reference;
 import org.apache.karaf.shell.api.action.lifecycle.Service;
-import org.apache.karaf.shell.api.console.CommandLine;
-import org.apache.karaf.shell.api.console.Completer;
-import org.apache.karaf.shell.api.console.Session;
-import org.apache.karaf.shell.support.completers.StringsCompleter;
+import org.apache.karaf.shell.api.console.Candidate;
+import org.apache.karaf.shell.support.completers.CachedCompleter;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.BundleListener;
 
 import java.util.List;
 
 @Service
-public class BundleSymbolicNameCompleter implements Completer {
+public class BundleSymbolicNameCompleter extends CachedCompleter implements BundleListener {
 
     @Reference
     private BundleContext bundleContext;
 
+    @Init
+    public void init() {
+        bundleContext.addBundleListener(this);
+    }
+
+    @Destroy
+    public void destroy() {
+        bundleContext.removeBundleListener(this);
+    }
+
     @Override
-    public int complete(Session session, CommandLine commandLine, List<String> candidates) {
-        StringsCompleter delegate = new StringsCompleter();
+    protected void loadCandidates(List<Candidate> candidates) {
         for (Bundle bundle : bundleContext.getBundles()) {
-            delegate.getStrings().add(bundle.getSymbolicName());
+            if (bundle.getSymbolicName() != null) {
+                candidates.add(new Candidate(bundle.getSymbolicName()));
+            }
+        }
+    }
+
+    @Override
+    public void bundleChanged(BundleEvent event) {
+        if (event.getType() == BundleEvent.INSTALLED
+                || event.getType() == BundleEvent.UNINSTALLED
+                || event.getType() == BundleEvent.UPDATED) {
+            invalidate();
         }
-        return delegate.complete(session, commandLine, candidates);
     }
 
 }
@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.client;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.karaf.util.json.JsonReader;
+import org.apache.karaf.util.json.JsonWriter;
+
+/**
+ * Executes commands with the <code>karaf-batch</code> SSH subsystem.
+ * <p>
+ * Each non empty line read is sent as a request, without waiting for the responses of the previous ones.
+ * The output of each command is printed as its response is received, and the failed commands are
+ * reported on the error stream with their exit status.
+ */
+public class BatchClient {
+
+    public static final String SUBSYSTEM = "karaf-batch";
+
+    private BatchClient() {
+    }
+
+    /**
+     * Send the commands and print the responses.
+     *
+     * @param commands the commands, one per line.
+     * @param responses the stream of the responses of the subsystem.
+     * @param requests the stream of the requests to the subsystem, closed once all the commands are sent.
+     * @param out the stream for the output of the commands.
+     * @param err the stream for the errors of the commands.
+     * @return the exit status of the last failed command, or 0 if all the commands succeeded.
+     * @throws IOException if the responses can not be read.
+     */
+    public static int run(BufferedReader commands, InputStream responses, OutputStream requests,
+                          PrintStream out, PrintStream err) throws IOException {
+        Map<Long, String> pending = new ConcurrentHashMap<>();
+        IOException[] failure = new IOException[1];
+        Thread sender = new Thread(() -> {
+            try (Writer writer = new OutputStreamWriter(requests, StandardCharsets.UTF_8)) {
+                long id = 0;
+                String line;
+                while ((line = commands.readLine()) != null) {
+                    if (line.trim().isEmpty()) {
+                        continue;
+                    }
+                    Map<String, Object> request = new LinkedHashMap<>();
+                    request.put("id", ++id);
+                    request.put("command", line);
+                    pending.put(id, line);
+                    JsonWriter.write(writer, request);
+                    writer.write('\n');
+                    writer.flush();
+                }
+            } catch (IOException e) {
+                failure[0] = e;
+            }
+        }, "Karaf client batch");
+        sender.setDaemon(true);
+        sender.start();
+
+        int exitStatus = 0;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(responses, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            Map<?, ?> response = (Map<?, ?>) JsonReader.read(new StringReader(line));
+            print(out, response.get("out"));
+            print(err, response.get("err"));
+            int status = response.get("status") instanceof Number ? ((Number) response.get("status")).intValue() : 1;
+            // numbers are parsed as doubles
+            Long id = response.get("id") instanceof Number ? ((Number) response.get("id")).longValue() : null;
+            String command = id != null ? pending.remove(id) : null;
+            if (status != 0) {
+                Object error = response.get("error");
+                err.println((command != null ? "Command " + id + " (" + command + ")" : "Request")
+                        + " failed with status " + status + (error != null ? ": " + error : ""));
+                exitStatus = status > 0 && status < 256 ? status : 1;
+            }
+        }
+        out.flush();
+        err.flush();
+        try {
+            sender.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        if (!pending.isEmpty()) {
+            err.println(pending.size() + " command(s) not executed, the connection has been closed");
+            return exitStatus != 0 ? exitStatus : 1;
+        }
+        return exitStatus;
+    }
+
+    private static void print(PrintStream stream, Object value) {
+        if (value instanceof String && !((String) value).isEmpty()) {
+            stream.print((String) value);
+            stream.flush();
+        }
+    }
+
+}
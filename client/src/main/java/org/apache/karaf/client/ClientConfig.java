@@ -43,6 +43,10 @@ public class ClientConfig {
     private String command;
     private boolean interactiveMode = false;
     private boolean inputPassword = false;
+    private boolean pipeline;
+    private boolean controlMaster;
+    private String controlPath;
+    private String controlCommand;
 
     private TypedProperties configuration;
 
@@ -144,6 +148,31 @@ public class ClientConfig {
                     case "-b":
                         batch = true;
                         break;
+                    case "-P":
+                        pipeline = true;
+                        break;
+                    case "-M":
+                        controlMaster = true;
+                        break;
+                    case "-S":
+                        if (args.length <= ++i) {
+                            System.err.println("miss the control file");
+                            System.exit(1);
+                        } else {
+                            controlPath = args[i];
+                        }
+                        break;
+                    case "-O":
+                        if (args.length <= ++i) {
+                            System.err.println("miss the control command");
+                            System.exit(1);
+                        } else if (!"check".equals(args[i]) && !"stop".equals(args[i])) {
+                            System.err.println("control command can only be check or stop");
+                            System.exit(1);
+                        } else {
+                            controlCommand = args[i];
+                        }
+                        break;
                     case "-f":
                         if (args.length <= ++i) {
                             System.err.println("miss the commands file");
@@ -226,6 +255,10 @@ public class ClientConfig {
         System.out.println("  -d [delay]    intra-retry delay (defaults to 2 seconds)");
         System.out.println("  -b            batch mode, specify multiple commands via standard input");
         System.out.println("  -f [file]     read commands from the specified file");
+        System.out.println("  -P            pipeline mode, execute each line of the standard input (or file) as a command on a single channel");
+        System.out.println("  -M            start a control master keeping the connection open for the next invocations");
+        System.out.println("  -S [file]     specify the control file of the control master");
+        System.out.println("  -O [command]  send a command (check or stop) to the control master");
         System.out.println("  -k [keyFile]  specify the private keyFile location when using key login, need have BouncyCastle registered as security provider using this flag");
         System.out.println("  -t [timeout]  define the client idle timeout (in milliseconds)");
         System.out.println("  [commands] [--]   commands to run");
@@ -393,6 +426,35 @@ public class ClientConfig {
         return file;
     }
 
+    public boolean isPipeline() {
+        return pipeline;
+    }
+
+    public boolean isControlMaster() {
+        return controlMaster;
+    }
+
+    public String getControlCommand() {
+        return controlCommand;
+    }
+
+    /**
+     * The control file of the control master, by default in the <code>.karaf</code> folder of the home
+     * directory and specific to the user, host and port, or <code>null</code> if the user is not known yet.
+     */
+    public String getControlPath() {
+        if (controlPath != null) {
+            return controlPath;
+        }
+        if (user == null || user.isEmpty()) {
+            return null;
+        }
+        // not in the shared temporary directory, where another user could create the file
+        String name = "client-" + user + "@" + host + "-" + port;
+        File dir = new File(System.getProperty("user.home"), ".karaf");
+        return new File(dir, name.replaceAll("[^A-Za-z0-9@._-]", "_")).getPath();
+    }
+
     public String getKeyFile() {
         return keyFile;
     }
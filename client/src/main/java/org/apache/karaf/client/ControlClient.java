@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.client;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * Sends a request to a running {@link ControlMaster}, reusing its connection.
+ */
+public class ControlClient implements Closeable {
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+
+    private ControlClient(Socket socket, String secret) throws IOException {
+        this.socket = socket;
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        ControlMaster.writeString(out, secret);
+    }
+
+    /**
+     * Connect to the control master.
+     *
+     * @param controlPath the control file of the master.
+     * @return the client, or <code>null</code> if no master is running or if the control file can not be trusted.
+     */
+    public static ControlClient connect(Path controlPath) {
+        if (!Files.isRegularFile(controlPath, LinkOption.NOFOLLOW_LINKS)) {
+            return null;
+        }
+        try {
+            checkControlFile(controlPath);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            return null;
+        }
+        Socket socket = new Socket();
+        try {
+            List<String> lines = Files.readAllLines(controlPath, StandardCharsets.UTF_8);
+            int port = Integer.parseInt(lines.get(0).trim());
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 5000);
+            return new ControlClient(socket, lines.get(1).trim());
+        } catch (Exception e) {
+            // stale control file
+            close(socket);
+            return null;
+        }
+    }
+
+    /**
+     * Check that the control file is owned by the current user and only readable by its owner, as OpenSSH
+     * does: the commands would otherwise be sent to the master of another user, who could send back any output.
+     *
+     * @param controlPath the control file of the master.
+     * @throws IOException if the control file has a bad owner or permissions.
+     */
+    static void checkControlFile(Path controlPath) throws IOException {
+        if (!FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            return;
+        }
+        UserPrincipal owner = Files.getOwner(controlPath, LinkOption.NOFOLLOW_LINKS);
+        UserPrincipal user = controlPath.getFileSystem().getUserPrincipalLookupService()
+                .lookupPrincipalByName(System.getProperty("user.name"));
+        if (!owner.equals(user)
+                || !Files.getPosixFilePermissions(controlPath, LinkOption.NOFOLLOW_LINKS)
+                        .equals(EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE))) {
+            throw new IOException("Bad owner or permissions on control file " + controlPath);
+        }
+    }
+
+    /**
+     * Execute a command on an exec channel of the master.
+     *
+     * @param command the command.
+     * @param stdout the stream for the output of the command.
+     * @param stderr the stream for the errors of the command.
+     * @return the exit status of the command.
+     * @throws IOException if the connection with the master is lost.
+     */
+    public int execute(String command, OutputStream stdout, OutputStream stderr) throws IOException {
+        out.writeByte(ControlMaster.EXEC);
+        ControlMaster.writeString(out, command);
+        out.flush();
+        byte[] buffer = new byte[8192];
+        while (true) {
+            byte type = in.readByte();
+            if (type == ControlMaster.EXIT) {
+                return in.readInt();
+            }
+            OutputStream stream = type == ControlMaster.ERR ? stderr : stdout;
+            int length = in.readInt();
+            while (length > 0) {
+                int read = in.read(buffer, 0, Math.min(length, buffer.length));
+                if (read < 0) {
+                    throw new IOException("Connection to the control master lost");
+                }
+                stream.write(buffer, 0, read);
+                length -= read;
+            }
+            stream.flush();
+        }
+    }
+
+    /**
+     * Execute commands on a <code>karaf-batch</code> channel of the master.
+     *
+     * @see BatchClient#run(BufferedReader, java.io.InputStream, OutputStream, PrintStream, PrintStream)
+     */
+    public int batch(BufferedReader commands, PrintStream stdout, PrintStream stderr) throws IOException {
+        out.writeByte(ControlMaster.BATCH);
+        out.flush();
+        OutputStream requests = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                out.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                out.flush();
+                socket.shutdownOutput();
+            }
+        };
+        return BatchClient.run(commands, in, requests, stdout, stderr);
+    }
+
+    /**
+     * Check that the master is running.
+     */
+    public boolean check() {
+        return request(ControlMaster.CHECK);
+    }
+
+    /**
+     * Stop the master.
+     */
+    public boolean stop() {
+        return request(ControlMaster.STOP);
+    }
+
+    private boolean request(byte request) {
+        try {
+            out.writeByte(request);
+            out.flush();
+            return in.readByte() == ControlMaster.EXIT && in.readInt() == 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void close() {
+        close(socket);
+    }
+
+    private static void close(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+}
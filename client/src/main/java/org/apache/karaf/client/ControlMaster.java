@@ -0,0 +1,296 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.client;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.EnumSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.sshd.client.channel.ChannelExec;
+import org.apache.sshd.client.channel.ChannelSubsystem;
+import org.apache.sshd.client.channel.ClientChannelEvent;
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.common.util.io.input.NoCloseInputStream;
+import org.apache.sshd.common.util.io.output.NoCloseOutputStream;
+import org.apache.sshd.common.util.io.output.NullOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps an authenticated connection open and executes the commands of the following client
+ * invocations on it, in the spirit of the OpenSSH <code>ControlMaster</code>.
+ * <p>
+ * The master listens on a loopback port, published with a random secret in the control file,
+ * readable by its owner only.  A loopback TCP port is used rather than a Unix domain socket, as
+ * OpenSSH does, so that the master works the same way on Windows: the client runs on Java 11, and
+ * Unix domain socket channels are only available from Java 16.
+ * A client connects to the port, sends the secret and a request:
+ * <ul>
+ *     <li>{@link #EXEC} executes a command on a new exec channel and streams back its output and exit status,</li>
+ *     <li>{@link #BATCH} opens a <code>karaf-batch</code> channel and relays the requests and responses,</li>
+ *     <li>{@link #CHECK} checks that the master is running,</li>
+ *     <li>{@link #STOP} stops the master.</li>
+ * </ul>
+ * The requests are executed concurrently, each one on its own channel.  The master stops when the
+ * connection is closed, or when no request has been received during the idle timeout.
+ */
+public class ControlMaster {
+
+    static final byte EXEC = 'E';
+    static final byte BATCH = 'B';
+    static final byte CHECK = 'C';
+    static final byte STOP = 'S';
+
+    static final byte OUT = 'O';
+    static final byte ERR = 'R';
+    static final byte EXIT = 'X';
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ControlMaster.class);
+
+    private final ClientSession session;
+    private final Path controlPath;
+    private final long idleTimeout;
+    private final String secret;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final AtomicInteger active = new AtomicInteger();
+    private volatile long lastActivity = System.currentTimeMillis();
+    private volatile boolean stopped;
+
+    public ControlMaster(ClientSession session, Path controlPath, long idleTimeout) {
+        this.session = session;
+        this.controlPath = controlPath;
+        this.idleTimeout = idleTimeout;
+        byte[] bytes = new byte[24];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        this.secret = sb.toString();
+    }
+
+    /**
+     * Serve the requests until the master is stopped.
+     *
+     * @throws IOException if the control file can not be written.
+     */
+    public void run() throws IOException {
+        Thread cleanup = new Thread(this::deleteControlFile);
+        try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            server.setSoTimeout(1000);
+            writeControlFile(server.getLocalPort());
+            Runtime.getRuntime().addShutdownHook(cleanup);
+            while (!stopped && session.isOpen()) {
+                Socket socket;
+                try {
+                    socket = server.accept();
+                } catch (SocketTimeoutException e) {
+                    if (idleTimeout > 0 && active.get() == 0
+                            && System.currentTimeMillis() - lastActivity > idleTimeout) {
+                        break;
+                    }
+                    continue;
+                }
+                active.incrementAndGet();
+                executor.execute(() -> handle(socket));
+            }
+        } finally {
+            stopped = true;
+            executor.shutdownNow();
+            deleteControlFile();
+            try {
+                Runtime.getRuntime().removeShutdownHook(cleanup);
+            } catch (IllegalStateException e) {
+                // shutting down
+            }
+        }
+    }
+
+    private void writeControlFile(int port) throws IOException {
+        Files.deleteIfExists(controlPath);
+        // the secret gives access to the connection, the file is only readable by its owner
+        boolean posix = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+        if (controlPath.getParent() != null && !Files.isDirectory(controlPath.getParent())) {
+            if (posix) {
+                Files.createDirectories(controlPath.getParent(), PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+            } else {
+                Files.createDirectories(controlPath.getParent());
+            }
+        }
+        if (posix) {
+            Files.createFile(controlPath, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+            Files.createFile(controlPath);
+        }
+        try (Writer writer = Files.newBufferedWriter(controlPath, StandardCharsets.UTF_8)) {
+            writer.write(port + "\n" + secret + "\n");
+        }
+    }
+
+    private void deleteControlFile() {
+        try {
+            Files.deleteIfExists(controlPath);
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    private void handle(Socket socket) {
+        try (Socket s = socket) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+            byte[] token = readString(in).getBytes(StandardCharsets.UTF_8);
+            if (!MessageDigest.isEqual(token, secret.getBytes(StandardCharsets.UTF_8))) {
+                LOGGER.warn("Invalid control request from {}", s.getRemoteSocketAddress());
+                return;
+            }
+            byte request = in.readByte();
+            switch (request) {
+                case EXEC:
+                    execute(readString(in), in, out);
+                    break;
+                case BATCH:
+                    batch(in, s.getOutputStream());
+                    break;
+                case CHECK:
+                    exit(out, 0);
+                    break;
+                case STOP:
+                    stopped = true;
+                    exit(out, 0);
+                    break;
+                default:
+                    LOGGER.warn("Unknown control request {}", request);
+                    break;
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Error processing control request", e);
+        } finally {
+            lastActivity = System.currentTimeMillis();
+            active.decrementAndGet();
+        }
+    }
+
+    private void execute(String command, DataInputStream in, DataOutputStream out) throws IOException {
+        ChannelExec channel = session.createExecChannel(command + "\n");
+        channel.setIn(new ByteArrayInputStream(new byte[0]));
+        channel.setAgentForwarding(true);
+        channel.setOut(new FrameOutputStream(out, OUT));
+        channel.setErr(new FrameOutputStream(out, ERR));
+        channel.open().verify();
+        // the client closes its connection when it is interrupted
+        Thread watcher = new Thread(() -> {
+            try {
+                while (in.read() >= 0) {
+                    // ignore
+                }
+            } catch (IOException e) {
+                // closed
+            }
+            channel.close(true);
+        }, "Karaf client control");
+        watcher.setDaemon(true);
+        watcher.start();
+        channel.waitFor(EnumSet.of(ClientChannelEvent.CLOSED), 0);
+        exit(out, channel.getExitStatus() != null ? channel.getExitStatus() : 0);
+    }
+
+    private void batch(DataInputStream in, OutputStream out) throws IOException {
+        ChannelSubsystem channel = session.createSubsystemChannel(BatchClient.SUBSYSTEM);
+        channel.setIn(new NoCloseInputStream(in));
+        channel.setOut(new NoCloseOutputStream(out));
+        channel.setErr(new NullOutputStream());
+        channel.open().verify();
+        channel.waitFor(EnumSet.of(ClientChannelEvent.CLOSED), 0);
+    }
+
+    private static void exit(DataOutputStream out, int status) throws IOException {
+        synchronized (out) {
+            out.writeByte(EXIT);
+            out.writeInt(status);
+            out.flush();
+        }
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > 16 * 1024 * 1024) {
+            throw new IOException("Invalid control request");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Send the output of a command to the client in frames.
+     */
+    private static class FrameOutputStream extends OutputStream {
+        private final DataOutputStream out;
+        private final byte type;
+
+        FrameOutputStream(DataOutputStream out, byte type) {
+            this.out = out;
+            this.type = type;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            synchronized (out) {
+                out.writeByte(type);
+                out.writeInt(len);
+                out.write(b, off, len);
+                out.flush();
+            }
+        }
+    }
+
+}
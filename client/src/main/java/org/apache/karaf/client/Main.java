@@ -26,6 +26,8 @@ import java.io.InputStreamReader;
 import java.io.Reader;
 import java.lang.reflect.Proxy;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.security.KeyPair;
 import java.time.Duration;
@@ -43,6 +45,7 @@ import org.apache.sshd.client.SshClient;
 import org.apache.sshd.client.auth.keyboard.UserInteraction;
 import org.apache.sshd.client.channel.ChannelExec;
 import org.apache.sshd.client.channel.ChannelShell;
+import org.apache.sshd.client.channel.ChannelSubsystem;
 import org.apache.sshd.client.channel.ClientChannelEvent;
 import org.apache.sshd.client.channel.PtyCapableChannelSession;
 import org.apache.sshd.client.future.ConnectFuture;
@@ -73,7 +76,9 @@ public class Main {
         ClientConfig config = new ClientConfig(args);
         SimpleLogger.setLevel(config.getLevel());
 
-        if (config.getFile() != null) {
+        if (config.isPipeline()) {
+            // commands are read one line at a time
+        } else if (config.getFile() != null) {
             StringBuilder sb = new StringBuilder();
             sb.setLength(0);
             try (Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(config.getFile())))) {
@@ -92,6 +97,15 @@ public class Main {
             config.setCommand(sb.toString());
         }
 
+        try {
+            Integer exitStatus = runWithControlMaster(config);
+            if (exitStatus != null) {
+                System.exit(exitStatus);
+            }
+        } catch (Throwable t) {
+            handleError(config, t);
+        }
+
         try (SshClient client = ClientBuilder.builder().build()) {
             FilePasswordProvider passwordProvider = null;
             final Console console = System.console();
@@ -172,6 +186,24 @@ public class Main {
             }
             session.auth().verify();
 
+            if (config.isControlMaster()) {
+                Path controlPath = Paths.get(config.getControlPath());
+                if (console != null) {
+                    console.printf("Control master started, using control file %s\n", controlPath);
+                }
+                new ControlMaster(session, controlPath, config.getIdleTimeout()).run();
+                System.exit(0);
+            }
+            if (config.isPipeline()) {
+                ChannelSubsystem channel = session.createSubsystemChannel(BatchClient.SUBSYSTEM);
+                channel.setErr(new NoCloseOutputStream(System.err));
+                channel.open().verify();
+                int exitStatus = BatchClient.run(openCommands(config), channel.getInvertedOut(), channel.getInvertedIn(),
+                        System.out, System.err);
+                channel.close(false);
+                System.exit(exitStatus);
+            }
+
             int exitStatus = 0;
             String type = System.getProperty(TerminalBuilder.PROP_TYPE);
             if (type == null) {
@@ -328,13 +360,56 @@ public class Main {
             }
             System.exit(exitStatus);
         } catch (Throwable t) {
-            if (config.getLevel() > SimpleLogger.WARN) {
-                t.printStackTrace();
-            } else {
-                System.err.println(t.getMessage());
+            handleError(config, t);
+        }
+    }
+
+    private static void handleError(ClientConfig config, Throwable t) {
+        if (config.getLevel() > SimpleLogger.WARN) {
+            t.printStackTrace();
+        } else {
+            System.err.println(t.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /**
+     * Execute the commands, or the control command, with a running control master.
+     *
+     * @return the exit status, or <code>null</code> if no control master is running and a new connection is needed.
+     */
+    private static Integer runWithControlMaster(ClientConfig config) throws IOException {
+        String controlPath = config.getControlPath();
+        if (controlPath == null) {
+            return null;
+        }
+        try (ControlClient control = ControlClient.connect(Paths.get(controlPath))) {
+            if (config.getControlCommand() != null) {
+                boolean running = control != null && ("stop".equals(config.getControlCommand()) ? control.stop() : control.check());
+                System.err.println(running ? "Control master running (" + controlPath + ")" : "No control master running (" + controlPath + ")");
+                return running ? 0 : 255;
+            }
+            if (control == null) {
+                return null;
+            }
+            if (config.isControlMaster()) {
+                System.err.println("A control master is already running (" + controlPath + ")");
+                return 1;
             }
-            System.exit(1);
+            if (config.isPipeline()) {
+                return control.batch(openCommands(config), System.out, System.err);
+            } else if (config.getCommand().length() > 0) {
+                return control.execute(config.getCommand(), System.out, System.err);
+            }
+            return null;
+        }
+    }
+
+    private static BufferedReader openCommands(ClientConfig config) throws IOException {
+        if (config.getFile() != null) {
+            return new BufferedReader(new InputStreamReader(new FileInputStream(config.getFile()), StandardCharsets.UTF_8));
         }
+        return new BufferedReader(new InputStreamReader(System.in));
     }
 
     private static void addMode(Map<PtyMode, Integer> modes, PtyMode mode, Attributes attributes, ControlChar ctrl) {
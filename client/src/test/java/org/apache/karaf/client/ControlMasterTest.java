@@ -0,0 +1,290 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.client;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.karaf.util.json.JsonReader;
+import org.apache.karaf.util.json.JsonWriter;
+import org.apache.sshd.client.SshClient;
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.common.session.Session;
+import org.apache.sshd.common.session.SessionListener;
+import org.apache.sshd.server.Environment;
+import org.apache.sshd.server.ExitCallback;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.auth.password.AcceptAllPasswordAuthenticator;
+import org.apache.sshd.server.channel.ChannelSession;
+import org.apache.sshd.server.command.Command;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.apache.sshd.server.subsystem.SubsystemFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class ControlMasterTest {
+
+    private final AtomicInteger sessions = new AtomicInteger();
+    private SshServer server;
+    private SshClient client;
+    private Path controlPath;
+    private Thread master;
+
+    @Before
+    public void setUp() throws Exception {
+        server = SshServer.setUpDefaultServer();
+        server.setHost("localhost");
+        server.setPort(0);
+        server.setKeyPairProvider(new SimpleGeneratorHostKeyProvider());
+        server.setPasswordAuthenticator(AcceptAllPasswordAuthenticator.INSTANCE);
+        server.setCommandFactory((channel, command) -> new TestCommand(command.trim()));
+        server.setSubsystemFactories(Collections.singletonList(new SubsystemFactory() {
+            @Override
+            public String getName() {
+                return BatchClient.SUBSYSTEM;
+            }
+
+            @Override
+            public Command createSubsystem(ChannelSession channel) {
+                return new TestCommand(null);
+            }
+        }));
+        server.addSessionListener(new SessionListener() {
+            @Override
+            public void sessionCreated(Session session) {
+                sessions.incrementAndGet();
+            }
+        });
+        server.start();
+
+        client = SshClient.setUpDefaultClient();
+        client.start();
+        ClientSession session = client.connect("karaf", "localhost", server.getPort()).verify().getSession();
+        session.addPasswordIdentity("karaf");
+        session.auth().verify();
+
+        controlPath = Files.createTempDirectory(Paths.get("target"), "control").resolve("master");
+        ControlMaster controlMaster = new ControlMaster(session, controlPath, 0);
+        master = new Thread(() -> {
+            try {
+                controlMaster.run();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        master.start();
+        for (int i = 0; i < 100 && !Files.exists(controlPath); i++) {
+            Thread.sleep(50);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (ControlClient control = ControlClient.connect(controlPath)) {
+            if (control != null) {
+                control.stop();
+            }
+        }
+        master.join(5000);
+        client.stop();
+        server.stop();
+    }
+
+    @Test
+    public void testExecute() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+            try (ControlClient control = ControlClient.connect(controlPath)) {
+                assertEquals(0, control.execute("echo hello", out, err));
+            }
+            assertEquals("hello\n", out.toString("UTF-8"));
+            assertEquals("", err.toString("UTF-8"));
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        try (ControlClient control = ControlClient.connect(controlPath)) {
+            assertEquals(3, control.execute("fail", out, err));
+        }
+        assertEquals("failed\n", err.toString("UTF-8"));
+
+        // all the commands used the connection of the master
+        assertEquals(1, sessions.get());
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        int status;
+        try (ControlClient control = ControlClient.connect(controlPath)) {
+            status = control.batch(new BufferedReader(new StringReader("echo a\n\nfail\necho b\n")),
+                    new PrintStream(out, true), new PrintStream(err, true));
+        }
+        assertEquals(3, status);
+        assertEquals("a\nb\n", out.toString("UTF-8"));
+        assertEquals("failed\nCommand 2 (fail) failed with status 3: boom\n", err.toString("UTF-8"));
+        assertEquals(1, sessions.get());
+    }
+
+    @Test
+    public void testCheckAndStop() throws Exception {
+        try (ControlClient control = ControlClient.connect(controlPath)) {
+            assertTrue(control.check());
+        }
+        try (ControlClient control = ControlClient.connect(controlPath)) {
+            assertTrue(control.stop());
+        }
+        master.join(5000);
+        assertFalse(master.isAlive());
+        assertFalse(Files.exists(controlPath));
+        assertNull(ControlClient.connect(controlPath));
+    }
+
+    @Test
+    public void testControlFilePermissions() throws Exception {
+        assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+        assertEquals(PosixFilePermissions.fromString("rw-------"), Files.getPosixFilePermissions(controlPath));
+
+        // a copy of the control file readable by other users is not trusted
+        Path copy = controlPath.resolveSibling("copy");
+        Files.copy(controlPath, copy);
+        Files.setPosixFilePermissions(copy, PosixFilePermissions.fromString("rw-r--r--"));
+        assertNull(ControlClient.connect(copy));
+
+        Files.setPosixFilePermissions(copy, PosixFilePermissions.fromString("rw-------"));
+        try (ControlClient control = ControlClient.connect(copy)) {
+            assertTrue(control.check());
+        }
+    }
+
+    /**
+     * Executes <code>echo</code> and <code>fail</code> commands, or the batch requests when created without command.
+     */
+    static class TestCommand implements Command {
+        private final String command;
+        private InputStream in;
+        private OutputStream out;
+        private OutputStream err;
+        private ExitCallback callback;
+
+        TestCommand(String command) {
+            this.command = command;
+        }
+
+        @Override
+        public void setInputStream(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public void setOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void setErrorStream(OutputStream err) {
+            this.err = err;
+        }
+
+        @Override
+        public void setExitCallback(ExitCallback callback) {
+            this.callback = callback;
+        }
+
+        @Override
+        public void start(ChannelSession channel, Environment env) {
+            new Thread(() -> {
+                try {
+                    if (command != null) {
+                        Map<String, Object> result = execute(command);
+                        out.write(((String) result.get("out")).getBytes(StandardCharsets.UTF_8));
+                        err.write(((String) result.get("err")).getBytes(StandardCharsets.UTF_8));
+                        out.flush();
+                        err.flush();
+                        callback.onExit((Integer) result.get("status"));
+                    } else {
+                        batch();
+                        callback.onExit(0);
+                    }
+                } catch (IOException e) {
+                    callback.onExit(1, e.getMessage());
+                }
+            }).start();
+        }
+
+        private void batch() throws IOException {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Map<?, ?> request = (Map<?, ?>) JsonReader.read(new StringReader(line));
+                Map<String, Object> response = new LinkedHashMap<>();
+                response.put("id", ((Number) request.get("id")).longValue());
+                response.putAll(execute((String) request.get("command")));
+                JsonWriter.write(writer, response);
+                writer.write('\n');
+                writer.flush();
+            }
+        }
+
+        private static Map<String, Object> execute(String command) {
+            Map<String, Object> result = new LinkedHashMap<>();
+            if (command.startsWith("echo ")) {
+                result.put("status", 0);
+                result.put("out", command.substring(5) + "\n");
+                result.put("err", "");
+            } else {
+                result.put("status", 3);
+                result.put("out", "");
+                result.put("err", "failed\n");
+                result.put("error", "boom");
+            }
+            return result;
+        }
+
+        @Override
+        public void destroy(ChannelSession channel) {
+        }
+    }
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.config.command;
+
+import org.apache.karaf.config.core.ConfigBatch;
+import org.apache.karaf.shell.api.action.Argument;
+import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.Completion;
+import org.apache.karaf.shell.api.action.lifecycle.Service;
+import org.apache.karaf.shell.support.completers.StringsCompleter;
+
+@Command(scope = "config", name = "batch", description = "Starts, commits or cancels a batch of configuration changes.", detailedDescription = "classpath:batch.txt")
+@Service
+public class BatchCommand extends ConfigCommandSupport {
+
+    @Argument(index = 0, name = "action", description = "The action to perform (begin, commit or cancel). Without action, the configurations changed in the current batch are displayed.", required = false, multiValued = false)
+    @Completion(value = StringsCompleter.class, values = { "begin", "commit", "cancel" })
+    String action;
+
+    @Override
+    protected Object doExecute() throws Exception {
+        ConfigBatch batch = getBatch();
+        if (action == null) {
+            if (batch == null) {
+                System.err.println("No batch has been started. Run config:batch begin first.");
+            } else {
+                batch.getPids().forEach(System.out::println);
+            }
+            return null;
+        }
+        switch (action) {
+            case "begin":
+                if (batch != null) {
+                    System.err.println("A batch has already been started. Commit or cancel it first.");
+                } else {
+                    session.put(PROPERTY_BATCH, configRepository.batch());
+                }
+                break;
+            case "commit":
+                if (batch == null) {
+                    System.err.println("No batch has been started. Run config:batch begin first.");
+                } else {
+                    session.put(PROPERTY_BATCH, null);
+                    batch.commit();
+                }
+                break;
+            case "cancel":
+                if (batch != null) {
+                    batch.cancel();
+                    session.put(PROPERTY_BATCH, null);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown action " + action + ", expected begin, commit or cancel");
+        }
+        return null;
+    }
+
+}
@@ -19,6 +19,7 @@ package org.apache.karaf.config.command;
 import java.util.Arrays;
 
 import org.apache.felix.utils.properties.TypedProperties;
+import org.apache.karaf.config.core.ConfigBatch;
 import org.apache.karaf.config.core.ConfigRepository;
 import org.apache.karaf.shell.api.action.Action;
 import org.apache.karaf.shell.api.action.lifecycle.Reference;
@@ -37,6 +38,7 @@ public abstract class ConfigCommandSupport implements Action {
     public static final String PROPERTY_FACTORY = "ConfigCommand.Factory";
     public static final String PROPERTY_ALIAS = "ConfigCommand.Alias";
     public static final String PROPERTY_TYPE = "ConfigCommand.Type";
+    public static final String PROPERTY_BATCH = "ConfigCommand.Batch";
 
     @Reference
     protected ConfigRepository configRepository;
@@ -55,6 +57,13 @@ public abstract class ConfigCommandSupport implements Action {
         return (TypedProperties) this.session.get(PROPERTY_CONFIG_PROPS);
     }
 
+    /**
+     * @return the batch started with <code>config:batch begin</code> in this session, or <code>null</code>.
+     */
+    protected ConfigBatch getBatch() {
+        return (ConfigBatch) this.session.get(PROPERTY_BATCH);
+    }
+
     public void setConfigRepository(ConfigRepository configRepository) {
         this.configRepository = configRepository;
     }
@@ -17,6 +17,7 @@
 package org.apache.karaf.config.command;
 
 import org.apache.karaf.config.command.completers.ConfigurationCompleter;
+import org.apache.karaf.config.core.ConfigBatch;
 import org.apache.felix.utils.properties.TypedProperties;
 import org.apache.karaf.shell.api.action.Completion;
 import org.apache.karaf.shell.api.action.Option;
@@ -40,7 +41,12 @@ public abstract class ConfigPropertyCommandSupport extends ConfigCommandSupport
             }
             propertyAction(props);
             if(requiresUpdate(pid)) {
-                this.configRepository.update(pid, props);
+                ConfigBatch batch = getBatch();
+                if (batch != null) {
+                    batch.update(pid, props);
+                } else {
+                    this.configRepository.update(pid, props);
+                }
             }
         }
         return null;
@@ -73,7 +79,8 @@ public abstract class ConfigPropertyCommandSupport extends ConfigCommandSupport
     @Override
     protected TypedProperties getEditedProps() throws Exception {
         if (pid != null) {
-            return this.configRepository.getConfig(pid);
+            ConfigBatch batch = getBatch();
+            return batch != null ? batch.getConfig(pid) : this.configRepository.getConfig(pid);
         }
         else {
             return super.getEditedProps();
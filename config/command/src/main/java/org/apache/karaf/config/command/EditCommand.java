@@ -72,7 +72,7 @@ public class EditCommand extends ConfigCommandSupport {
             System.err.println("The --alias only works in case of a factory configuration. Add the --factory option.");
         }
 
-        TypedProperties props = this.configRepository.getConfig(pid);
+        TypedProperties props = getBatch() != null ? getBatch().getConfig(pid) : this.configRepository.getConfig(pid);
         this.session.put(PROPERTY_CONFIG_PID, pid);
         this.session.put(PROPERTY_FACTORY, factory);
         if (suffix == null) {
@@ -38,6 +38,8 @@ public class UpdateCommand extends ConfigCommandSupport {
         if (isFactory) {
             String alias = (String) this.session.get(PROPERTY_ALIAS);
             this.configRepository.createFactoryConfiguration(pid, alias, props, suffix);
+        } else if (getBatch() != null) {
+            getBatch().update(pid, props, suffix != null ? suffix : "cfg");
         } else {
         	this.configRepository.update(pid, props, suffix);
         }
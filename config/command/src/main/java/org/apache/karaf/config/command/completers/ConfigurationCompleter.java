@@ -19,18 +19,15 @@
 
 package org.apache.karaf.config.command.completers;
 
-import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
 
 import org.apache.karaf.shell.api.action.lifecycle.Destroy;
 import org.apache.karaf.shell.api.action.lifecycle.Init;
 import org.apache.karaf.shell.api.action.lifecycle.Reference;
 import org.apache.karaf.shell.api.action.lifecycle.Service;
-import org.apache.karaf.shell.api.console.CommandLine;
+import org.apache.karaf.shell.api.console.Candidate;
 import org.apache.karaf.shell.api.console.Completer;
-import org.apache.karaf.shell.api.console.Session;
-import org.apache.karaf.shell.support.completers.StringsCompleter;
+import org.apache.karaf.shell.support.completers.CachedCompleter;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.cm.Configuration;
@@ -45,9 +42,7 @@ import org.osgi.service.cm.ConfigurationListener;
  *
  */
 @Service
-public class ConfigurationCompleter implements Completer, ConfigurationListener {
-
-    private final StringsCompleter delegate = new StringsCompleter();
+public class ConfigurationCompleter extends CachedCompleter implements ConfigurationListener {
 
     @Reference
     private ConfigurationAdmin admin;
@@ -64,23 +59,6 @@ public class ConfigurationCompleter implements Completer, ConfigurationListener
     @Init
     public void init() {
         registration = bundleContext.registerService(ConfigurationListener.class, this, null);
-
-        Configuration[] configs;
-        try {
-            configs = admin.listConfigurations(null);
-            if (configs == null) {
-                return;
-            }
-        } catch (Exception e) {
-            return;
-        }
-
-        Collection<String> pids = new ArrayList<>();
-        for (Configuration config : configs) {
-            pids.add(config.getPid());
-        }
-
-        delegate.getStrings().addAll(pids);
     }
 
     @Destroy
@@ -88,16 +66,20 @@ public class ConfigurationCompleter implements Completer, ConfigurationListener
         registration.unregister();
     }
 
-    public int complete(final Session session, final CommandLine commandLine, final List<String> candidates) {
-        return delegate.complete(session, commandLine, candidates);
+    @Override
+    protected void loadCandidates(List<Candidate> candidates) throws Exception {
+        Configuration[] configs = admin.listConfigurations(null);
+        if (configs != null) {
+            for (Configuration config : configs) {
+                candidates.add(new Candidate(config.getPid()));
+            }
+        }
     }
 
     public void configurationEvent(ConfigurationEvent configurationEvent) {
-        String pid = configurationEvent.getPid();
-        if (configurationEvent.getType() == ConfigurationEvent.CM_DELETED) {
-            delegate.getStrings().remove(pid);
-        } else if (configurationEvent.getType() == ConfigurationEvent.CM_UPDATED) {
-            delegate.getStrings().add(pid);
+        if (configurationEvent.getType() == ConfigurationEvent.CM_DELETED
+                || configurationEvent.getType() == ConfigurationEvent.CM_UPDATED) {
+            invalidate();
         }
     }
 }
@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.config.command;
+
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+
+import org.apache.felix.utils.properties.TypedProperties;
+import org.apache.karaf.config.core.ConfigBatch;
+import org.apache.karaf.config.core.ConfigRepository;
+import org.easymock.EasyMock;
+
+import junit.framework.TestCase;
+
+/**
+ * Test cases for {@link BatchCommand}
+ */
+public class BatchCommandTest extends TestCase {
+
+    private static final String PID = "myPid";
+
+    private ConfigRepository configRepo;
+    private ConfigBatch batch;
+    private MockCommandSession session;
+
+    @Override
+    protected void setUp() throws Exception {
+        configRepo = EasyMock.createMock(ConfigRepository.class);
+        batch = EasyMock.createMock(ConfigBatch.class);
+        session = new MockCommandSession();
+    }
+
+    public void testBeginSetCommit() throws Exception {
+        TypedProperties props = new TypedProperties();
+        expect(configRepo.batch()).andReturn(batch);
+        expect(batch.getConfig(PID)).andReturn(props);
+        batch.update(PID, props);
+        EasyMock.expectLastCall();
+        batch.commit();
+        EasyMock.expectLastCall();
+        replay(configRepo, batch);
+
+        batch("begin");
+        assertSame(batch, session.get(ConfigCommandSupport.PROPERTY_BATCH));
+
+        PropSetCommand set = new PropSetCommand();
+        set.setConfigRepository(configRepo);
+        set.setSession(session);
+        set.pid = PID;
+        set.prop = "foo";
+        set.value = "bar";
+        set.execute();
+        assertEquals("bar", props.get("foo"));
+
+        batch("commit");
+        assertNull(session.get(ConfigCommandSupport.PROPERTY_BATCH));
+        verify(configRepo, batch);
+    }
+
+    public void testCancel() throws Exception {
+        expect(configRepo.batch()).andReturn(batch);
+        batch.cancel();
+        EasyMock.expectLastCall();
+        replay(configRepo, batch);
+
+        batch("begin");
+        batch("cancel");
+        assertNull(session.get(ConfigCommandSupport.PROPERTY_BATCH));
+        verify(configRepo, batch);
+    }
+
+    private void batch(String action) throws Exception {
+        BatchCommand command = new BatchCommand();
+        command.setConfigRepository(configRepo);
+        command.setSession(session);
+        command.action = action;
+        command.execute();
+    }
+
+}
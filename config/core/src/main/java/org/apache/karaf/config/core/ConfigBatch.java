@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.config.core;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.felix.utils.properties.TypedProperties;
+import org.osgi.framework.InvalidSyntaxException;
+
+/**
+ * A set of configuration updates staged in memory and applied together.
+ * <p>
+ * On {@link #commit()}, each configuration file is written once, all the files being written to temporary
+ * files before being moved in place, and each configuration is updated once in the ConfigurationAdmin.
+ * A batch is not thread safe.
+ */
+public interface ConfigBatch {
+
+    /**
+     * Get the properties of a configuration, including the changes staged in this batch.
+     *
+     * @param pid the configuration pid.
+     * @return a copy of the configuration properties.
+     * @throws IOException if the configuration can't be read.
+     * @throws InvalidSyntaxException if the pid is invalid.
+     */
+    TypedProperties getConfig(String pid) throws IOException, InvalidSyntaxException;
+
+    /**
+     * Stage the update of a configuration, replacing its properties.
+     *
+     * @param pid the configuration pid.
+     * @param properties the new properties.
+     */
+    void update(String pid, Map<String, Object> properties);
+
+    /**
+     * Stage the update of a configuration, replacing its properties.
+     *
+     * @param pid the configuration pid.
+     * @param properties the new properties.
+     * @param suffix the configuration file suffix, used if the configuration does not have a file yet.
+     */
+    void update(String pid, Map<String, Object> properties, String suffix);
+
+    /**
+     * @return the pids of the configurations staged in this batch.
+     */
+    Set<String> getPids();
+
+    /**
+     * Write the configuration files and update the configurations.  The batch is empty afterwards.
+     *
+     * @throws IOException if a configuration file can't be written, in which case no file has been modified.
+     */
+    void commit() throws IOException;
+
+    /**
+     * Discard the staged changes.
+     */
+    void cancel();
+
+}
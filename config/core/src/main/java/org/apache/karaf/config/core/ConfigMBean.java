@@ -130,6 +130,15 @@ public interface ConfigMBean {
      */
     void append(String pid, Map<String, String> properties) throws MBeanException;
 
+    /**
+     * Add, update or delete properties in several configurations at once.  Each configuration file
+     * is written once and each configuration is updated once.
+     *
+     * @param properties the properties to set, by configuration PID. A <code>null</code> value deletes the property.
+     * @throws MBeanException in case of MBean failure.
+     */
+    void batch(Map<String, Map<String, String>> properties) throws MBeanException;
+
     /**
      * Delete properties from a configuration.
      *
@@ -45,4 +45,11 @@ public interface ConfigRepository {
 
     String createFactoryConfiguration(String factoryPid, String alias, Map<String, Object> properties, String suffix) throws IOException;
 
+    /**
+     * Start a batch of configuration updates, applied when the batch is committed.
+     *
+     * @return a new batch.
+     */
+    ConfigBatch batch();
+
 }
@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.config.core.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.felix.utils.properties.TypedProperties;
+import org.apache.karaf.config.core.ConfigBatch;
+import org.osgi.framework.InvalidSyntaxException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class ConfigBatchImpl implements ConfigBatch {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConfigBatchImpl.class);
+
+    private final ConfigRepositoryImpl repository;
+    private final Map<String, Staged> staged = new LinkedHashMap<>();
+
+    public ConfigBatchImpl(ConfigRepositoryImpl repository) {
+        this.repository = repository;
+    }
+
+    @Override
+    public TypedProperties getConfig(String pid) throws IOException, InvalidSyntaxException {
+        Staged s = staged.get(pid);
+        if (s != null) {
+            TypedProperties props = new TypedProperties();
+            props.putAll(s.properties);
+            return props;
+        }
+        return repository.getConfig(pid);
+    }
+
+    @Override
+    public void update(String pid, Map<String, Object> properties) {
+        update(pid, properties, "cfg");
+    }
+
+    @Override
+    public void update(String pid, Map<String, Object> properties, String suffix) {
+        Staged previous = staged.get(pid);
+        // keep the suffix of the first update, as the file name is computed from it
+        staged.put(pid, new Staged(new LinkedHashMap<>(properties), previous != null ? previous.suffix : suffix));
+    }
+
+    @Override
+    public Set<String> getPids() {
+        return Collections.unmodifiableSet(staged.keySet());
+    }
+
+    @Override
+    public void commit() throws IOException {
+        LOGGER.trace("Committing configurations {}", staged.keySet());
+        List<ConfigRepositoryImpl.PendingUpdate> updates = new ArrayList<>();
+        try {
+            for (Map.Entry<String, Staged> entry : staged.entrySet()) {
+                ConfigRepositoryImpl.PendingUpdate update = repository.prepare(entry.getKey(), entry.getValue().properties, entry.getValue().suffix);
+                updates.add(update);
+                update.write();
+            }
+        } catch (IOException | RuntimeException e) {
+            updates.forEach(ConfigRepositoryImpl.PendingUpdate::discard);
+            throw e;
+        }
+        try {
+            for (ConfigRepositoryImpl.PendingUpdate update : updates) {
+                update.move();
+            }
+        } catch (IOException e) {
+            // only possible if the etc folder is not writable anymore
+            updates.forEach(ConfigRepositoryImpl.PendingUpdate::discard);
+            throw e;
+        }
+        staged.clear();
+        IOException failure = null;
+        for (ConfigRepositoryImpl.PendingUpdate update : updates) {
+            try {
+                update.apply();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    @Override
+    public void cancel() {
+        staged.clear();
+    }
+
+    private static class Staged {
+        final Map<String, Object> properties;
+        final String suffix;
+
+        Staged(Map<String, Object> properties, String suffix) {
+            this.properties = properties;
+            this.suffix = suffix;
+        }
+    }
+
+}
@@ -29,6 +29,7 @@ import javax.management.NotCompliantMBeanException;
 import javax.management.StandardMBean;
 
 import org.apache.felix.utils.properties.TypedProperties;
+import org.apache.karaf.config.core.ConfigBatch;
 import org.apache.karaf.config.core.ConfigMBean;
 import org.apache.karaf.config.core.ConfigRepository;
 import org.apache.karaf.util.StreamUtils;
@@ -234,6 +235,27 @@ public class ConfigMBeanImpl extends StandardMBean implements ConfigMBean {
         }
     }
 
+    @Override
+    public void batch(Map<String, Map<String, String>> properties) throws MBeanException {
+        try {
+            ConfigBatch batch = configRepo.batch();
+            for (Map.Entry<String, Map<String, String>> entry : properties.entrySet()) {
+                TypedProperties props = batch.getConfig(entry.getKey());
+                for (Map.Entry<String, String> property : entry.getValue().entrySet()) {
+                    if (property.getValue() != null) {
+                        props.put(property.getKey(), property.getValue());
+                    } else {
+                        props.remove(property.getKey());
+                    }
+                }
+                batch.update(entry.getKey(), props);
+            }
+            batch.commit();
+        } catch (Exception e) {
+            throw new MBeanException(null, e.toString());
+        }
+    }
+
     @Override
     public void delete(String pid, List<String> properties) throws MBeanException {
         try {
@@ -24,7 +24,11 @@ import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
 import java.util.Dictionary;
 import java.util.Enumeration;
 import java.util.Hashtable;
@@ -32,6 +36,7 @@ import java.util.Map;
 
 import org.apache.felix.cm.json.io.Configurations;
 import org.apache.felix.utils.properties.TypedProperties;
+import org.apache.karaf.config.core.ConfigBatch;
 import org.apache.karaf.config.core.ConfigRepository;
 import org.osgi.framework.Constants;
 import org.osgi.framework.InvalidSyntaxException;
@@ -62,20 +67,29 @@ public class ConfigRepositoryImpl implements ConfigRepository {
      */
     @Override
     public void update(String pid, Map<String, Object> properties, String suffix) throws IOException {
+        LOGGER.trace("Updating configuration {}", pid);
+        PendingUpdate update = prepare(pid, properties, suffix);
+        store(update.props, update.file);
+        update.apply();
+    }
+
+    @Override
+    public ConfigBatch batch() {
+        return new ConfigBatchImpl(this);
+    }
+
+    /**
+     * Compute the new content of a configuration file, without writing it.
+     */
+    PendingUpdate prepare(String pid, Map<String, Object> properties, String suffix) throws IOException {
         try {
-            LOGGER.trace("Updating configuration {}", pid);
             Configuration cfg = configAdmin.getConfiguration(pid, "?");
             Dictionary<String, Object> dict = cfg.getProcessedProperties(null);
             TypedProperties props = new TypedProperties();
             File file = getCfgFileFromProperties(dict);
-            if (file != null) {
-                props = load(file);
-                props.putAll(properties);
-                props.keySet().retainAll(properties.keySet());
-                store(props, file);
-                props.clear();
+            boolean existing = file != null;
+            if (existing) {
                 props = load(file);
-                props.put(FILEINSTALL_FILE_NAME, file.toURI().toString());
             } else {
                 if (properties.containsKey(FILEINSTALL_FILE_NAME)) {
                     file = getCfgFileFromProperty(properties.get(FILEINSTALL_FILE_NAME));
@@ -83,17 +97,69 @@ public class ConfigRepositoryImpl implements ConfigRepository {
                 if (file == null) {
                     file = generateConfigFilename(cfg, suffix);
                 }
-                props.putAll(properties);
-                props.keySet().retainAll(properties.keySet());
-                store(props, file);
-                props.put(FILEINSTALL_FILE_NAME, file.toURI().toString());
             }
-            cfg.update(new Hashtable<>(props));
+            props.putAll(properties);
+            props.keySet().retainAll(properties.keySet());
+            return new PendingUpdate(cfg, file, props, existing);
         } catch (URISyntaxException e) {
             throw new IOException("Error updating config", e);
         }
     }
-    
+
+    /**
+     * A configuration update, either written in place with {@link #store(TypedProperties, File)},
+     * or, within a batch, first written to a temporary file and then moved in place.  The configuration
+     * is updated last.
+     */
+    final class PendingUpdate {
+        final Configuration cfg;
+        final File file;
+        final TypedProperties props;
+        final boolean reload;
+        File target;
+        File temp;
+
+        PendingUpdate(Configuration cfg, File file, TypedProperties props, boolean reload) {
+            this.cfg = cfg;
+            this.file = file;
+            this.props = props;
+            this.reload = reload;
+        }
+
+        void write() throws IOException {
+            // replace the file a symbolic link points to rather than the link itself
+            target = file.exists() ? file.toPath().toRealPath().toFile() : file;
+            temp = storeTemp(props, target);
+            try {
+                copyAttributes(target, temp);
+            } catch (IOException | RuntimeException e) {
+                discard();
+                throw e;
+            }
+        }
+
+        void move() throws IOException {
+            moveTemp(temp, target);
+            temp = null;
+        }
+
+        void discard() {
+            if (temp != null) {
+                temp.delete();
+                temp = null;
+            }
+        }
+
+        void apply() throws IOException {
+            TypedProperties props = this.props;
+            if (reload) {
+                props = load(file);
+            }
+            props.put(FILEINSTALL_FILE_NAME, file.toURI().toString());
+            cfg.update(new Hashtable<>(props));
+        }
+    }
+
     private static File generateConfigFilename(Configuration cfg, String suffix) {
         final String pid = cfg.getPid();
         final String factoryPid = cfg.getFactoryPid();
@@ -239,10 +305,69 @@ public class ConfigRepositoryImpl implements ConfigRepository {
 
     void store(TypedProperties properties, File file) throws IOException {
         if (file.toURI().toString().endsWith(".json")) {
-            Configurations.buildWriter().build(new FileWriter(file)).writeConfiguration(new Hashtable<>(properties));
+            try (FileWriter writer = new FileWriter(file)) {
+                Configurations.buildWriter().build(writer).writeConfiguration(new Hashtable<>(properties));
+            }
         } else {
             properties.save(file);
         }
     }
 
+    /**
+     * Write the properties to a temporary file in the directory of the given file.  The name of the temporary
+     * file ends with <code>.tmp</code> so that it is ignored by fileinstall.
+     */
+    File storeTemp(TypedProperties properties, File file) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        File temp = new File(dir, "." + file.getName() + ".tmp");
+        try {
+            if (file.toURI().toString().endsWith(".json")) {
+                try (FileWriter writer = new FileWriter(temp)) {
+                    Configurations.buildWriter().build(writer).writeConfiguration(new Hashtable<>(properties));
+                }
+            } else {
+                properties.save(temp);
+            }
+        } catch (IOException | RuntimeException e) {
+            temp.delete();
+            throw e;
+        }
+        return temp;
+    }
+
+    /**
+     * Give the temporary file the permissions, owner and group of the file it replaces.
+     */
+    static void copyAttributes(File file, File temp) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        PosixFileAttributeView view = Files.getFileAttributeView(file.toPath(), PosixFileAttributeView.class);
+        PosixFileAttributeView tempView = Files.getFileAttributeView(temp.toPath(), PosixFileAttributeView.class);
+        if (view == null || tempView == null) {
+            return;
+        }
+        PosixFileAttributes attributes = view.readAttributes();
+        tempView.setPermissions(attributes.permissions());
+        PosixFileAttributes tempAttributes = tempView.readAttributes();
+        try {
+            if (!attributes.owner().equals(tempAttributes.owner())) {
+                tempView.setOwner(attributes.owner());
+            }
+            if (!attributes.group().equals(tempAttributes.group())) {
+                tempView.setGroup(attributes.group());
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Unable to keep the owner of configuration file {}: {}", file, e.getMessage());
+        }
+    }
+
+    static void moveTemp(File temp, File file) throws IOException {
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
 }
@@ -23,56 +23,83 @@ import org.osgi.service.cm.ConfigurationPlugin;
 
 import java.util.*;
 
+/**
+ * Override the configuration properties with the environment variables and the system properties.
+ * <p>
+ * For a <code>key</code> of the <code>pid</code> configuration, the <code>PID_KEY</code> environment variable (upper case,
+ * with <code>.</code>, <code>-</code> and <code>~</code> replaced by <code>_</code>) and the <code>pid.key</code> system property
+ * are looked up, the environment variable taking precedence.
+ * <p>
+ * The names of the environment variables are indexed once, as the environment does not change, so that the configurations
+ * without environment overrides do not pay a lookup per property.  The system properties can change at any time and are
+ * looked up directly.
+ */
 public class KarafConfigurationPlugin implements ConfigurationPlugin {
 
     public static final String PLUGIN_ID = "org.apache.karaf.config.plugin";
     public static final int PLUGIN_RANKING = 500;
 
+    private final NavigableMap<String, String> environment;
+
+    public KarafConfigurationPlugin() {
+        this(System.getenv());
+    }
+
+    KarafConfigurationPlugin(Map<String, String> environment) {
+        this.environment = new TreeMap<>(environment);
+    }
+
     @Override
     public void modifyConfiguration(ServiceReference<?> reference, Dictionary<String, Object> properties) {
-        final Object pid = properties.get(Constants.SERVICE_PID);
-        for (Enumeration<String> keys = properties.keys(); keys.hasMoreElements(); ) {
-            String key = keys.nextElement();
+        final String pid = String.valueOf(properties.get(Constants.SERVICE_PID));
 
-            // looking for env variable and system property matching key (pid.key).toUpperCase().replace('.', '_').replace('-', '_').replace('~', '_')
-            String env = (pid + "." + key).toUpperCase().replaceAll("\\.", "_").replace("-", "_").replace("~", "_");
-            String sys = pid + "." + key;
+        // looking for env variable and system property matching key (pid.key).toUpperCase().replace('.', '_').replace('-', '_').replace('~', '_')
+        final String envPrefix = toEnvironmentName(pid) + "_";
+        final NavigableMap<String, String> env = environment.subMap(envPrefix, true, envPrefix + Character.MAX_VALUE, true);
+        final String sysPrefix = pid + ".";
 
-            if (System.getenv(env) != null) {
+        Map<String, String> variables = null;
+        for (Enumeration<String> keys = properties.keys(); keys.hasMoreElements(); ) {
+            String key = keys.nextElement();
 
-                String value = System.getenv(env);
+            String value = env.isEmpty() ? null : env.get(envPrefix + toEnvironmentName(key));
+            if (value == null) {
+                value = System.getProperty(sysPrefix + key);
+            }
+            if (value == null) {
+                continue;
+            }
 
-                if (value.startsWith("[") && value.endsWith("]")) {
-                    String[] values = value.substring(1, value.length() - 1).split(",");
-                    values = Arrays.stream(values).<String>map(e -> InterpolationHelper.substVars(e, null,null, convertDictionaryToMap(properties))).toArray(String[]::new);
-                    properties.put(key, values);
+            if (variables == null) {
+                variables = convertDictionaryToMap(properties);
+            }
+            final Map<String, String> vars = variables;
+            Object newValue;
+            if (value.startsWith("[") && value.endsWith("]")) {
+                String[] values = value.substring(1, value.length() - 1).split(",");
+                newValue = Arrays.stream(values).<String>map(e -> InterpolationHelper.substVars(e, null, null, vars)).toArray(String[]::new);
+            } else {
+                value = InterpolationHelper.substVars(value, null, null, vars);
+                if (properties.get(key) != null && (properties.get(key) instanceof Number)) {
+                    newValue = Integer.parseInt(value);
                 } else {
-                    value = InterpolationHelper.substVars(value, null,null, convertDictionaryToMap(properties));
-                    if (properties.get(key) != null && (properties.get(key) instanceof Number)) {
-                        properties.put(key, Integer.parseInt(value));
-                    } else {
-                        properties.put(key, value);
-                    }
+                    newValue = value;
                 }
-                
-            } else if (System.getProperty(sys) != null) {
-
-                String value = System.getProperty(sys);
+            }
+            properties.put(key, newValue);
+            variables.put(key, newValue.toString());
+        }
+    }
 
-                if (value.startsWith("[") && value.endsWith("]")) {
-                    String[] values= value.substring(1, value.length() - 1).split(",");
-                    values = Arrays.stream(values).<String>map(e -> InterpolationHelper.substVars(e, null,null, convertDictionaryToMap(properties))).toArray(String[]::new);
-                    properties.put(key, values);
-                } else {
-                    value = InterpolationHelper.substVars(value, null,null, convertDictionaryToMap(properties));
-                    if (properties.get(key) != null && (properties.get(key) instanceof Number)) {
-                        properties.put(key, Integer.parseInt(value));
-                    } else {
-                        properties.put(key, value);
-                    }
-                }
+    static String toEnvironmentName(String name) {
+        char[] chars = name.toUpperCase().toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            char c = chars[i];
+            if (c == '.' || c == '-' || c == '~') {
+                chars[i] = '_';
             }
         }
+        return new String(chars);
     }
 
     private static Map<String, String> convertDictionaryToMap(Dictionary<String, Object> dictionary) {
@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.config.core.impl;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.Hashtable;
+
+import org.apache.felix.utils.properties.TypedProperties;
+import org.apache.karaf.config.core.ConfigBatch;
+import org.easymock.Capture;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.osgi.service.cm.Configuration;
+import org.osgi.service.cm.ConfigurationAdmin;
+
+import static org.easymock.EasyMock.*;
+
+public class ConfigBatchImplTest {
+
+    private static final String FILE_INSTALL_FILENAME = "felix.fileinstall.filename";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ConfigurationAdmin admin;
+    private Configuration cfgA;
+    private Configuration cfgB;
+    private File fileA;
+
+    @Before
+    public void setUp() throws Exception {
+        System.setProperty("karaf.etc", folder.getRoot().getPath());
+        fileA = new File(folder.getRoot(), "a.cfg");
+        Files.write(fileA.toPath(), "# comment\nfoo = 0\n".getBytes(StandardCharsets.UTF_8));
+
+        Dictionary<String, Object> propsA = new Hashtable<>();
+        propsA.put("foo", "0");
+        propsA.put(FILE_INSTALL_FILENAME, fileA.toURI().toString());
+
+        admin = createMock(ConfigurationAdmin.class);
+        cfgA = createMock(Configuration.class);
+        cfgB = createMock(Configuration.class);
+        expect(admin.getConfiguration(eq("a"), anyString())).andReturn(cfgA).anyTimes();
+        expect(admin.getConfiguration(eq("a"), isNull())).andReturn(cfgA).anyTimes();
+        expect(admin.getConfiguration(eq("b"), anyString())).andReturn(cfgB).anyTimes();
+        expect(admin.getConfiguration(eq("b"), isNull())).andReturn(cfgB).anyTimes();
+        expect(cfgA.getProcessedProperties(null)).andReturn(propsA).anyTimes();
+        expect(cfgB.getProcessedProperties(null)).andReturn(null).anyTimes();
+        expect(cfgB.getPid()).andReturn("b").anyTimes();
+        expect(cfgB.getFactoryPid()).andReturn(null).anyTimes();
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty("karaf.etc");
+    }
+
+    @Test
+    public void testCommit() throws Exception {
+        Capture<Dictionary<String, ?>> updateA = newCapture();
+        Capture<Dictionary<String, ?>> updateB = newCapture();
+        cfgA.update(capture(updateA));
+        expectLastCall().once();
+        cfgB.update(capture(updateB));
+        expectLastCall().once();
+        replay(admin, cfgA, cfgB);
+
+        ConfigBatch batch = new ConfigRepositoryImpl(admin).batch();
+        for (int i = 1; i <= 3; i++) {
+            TypedProperties props = batch.getConfig("a");
+            props.put("foo", Integer.toString(i));
+            props.put("bar" + i, "x");
+            batch.update("a", props);
+        }
+        batch.update("b", Collections.singletonMap("baz", "y"));
+        Assert.assertEquals("3", batch.getConfig("a").get("foo"));
+        Assert.assertEquals(2, batch.getPids().size());
+
+        // nothing is written before the commit
+        Assert.assertEquals("# comment\nfoo = 0\n", new String(Files.readAllBytes(fileA.toPath()), StandardCharsets.UTF_8));
+        Assert.assertFalse(new File(folder.getRoot(), "b.cfg").exists());
+
+        batch.commit();
+
+        verify(admin, cfgA, cfgB);
+        Assert.assertTrue(batch.getPids().isEmpty());
+        Assert.assertEquals("3", updateA.getValue().get("foo"));
+        Assert.assertEquals("x", updateA.getValue().get("bar1"));
+        Assert.assertEquals("x", updateA.getValue().get("bar3"));
+        Assert.assertEquals("y", updateB.getValue().get("baz"));
+        Assert.assertEquals(new File(folder.getRoot(), "b.cfg").toURI().toString(), updateB.getValue().get(FILE_INSTALL_FILENAME));
+        String a = new String(Files.readAllBytes(fileA.toPath()), StandardCharsets.UTF_8);
+        Assert.assertTrue(a.startsWith("# comment\n"));
+        Assert.assertTrue(a.contains("bar2 = x"));
+        Assert.assertArrayEquals(new String[] { "a.cfg", "b.cfg" }, sortedFiles());
+    }
+
+    @Test
+    public void testFailedCommit() throws Exception {
+        replay(admin, cfgA, cfgB);
+
+        ConfigBatch batch = new ConfigRepositoryImpl(admin).batch();
+        TypedProperties props = batch.getConfig("a");
+        props.put("foo", "1");
+        batch.update("a", props);
+        batch.update("b", Collections.singletonMap(FILE_INSTALL_FILENAME,
+                new File(folder.getRoot(), "missing/b.cfg").toURI().toString()));
+        try {
+            batch.commit();
+            Assert.fail("Expected an IOException");
+        } catch (java.io.IOException e) {
+            // expected
+        }
+
+        // no configuration has been updated and no file has been modified
+        verify(admin, cfgA, cfgB);
+        Assert.assertEquals("# comment\nfoo = 0\n", new String(Files.readAllBytes(fileA.toPath()), StandardCharsets.UTF_8));
+        Assert.assertArrayEquals(new String[] { "a.cfg" }, sortedFiles());
+    }
+
+    @Test
+    public void testCommitKeepsLinkAndPermissions() throws Exception {
+        Assume.assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+        Path real = linkToRealFile();
+        cfgA.update(anyObject());
+        expectLastCall().once();
+        replay(admin, cfgA, cfgB);
+
+        ConfigBatch batch = new ConfigRepositoryImpl(admin).batch();
+        TypedProperties props = batch.getConfig("a");
+        props.put("foo", "1");
+        batch.update("a", props);
+        batch.commit();
+
+        verify(admin, cfgA, cfgB);
+        assertLinkAndPermissions(real);
+    }
+
+    @Test
+    public void testUpdateKeepsLinkAndPermissions() throws Exception {
+        Assume.assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+        Path real = linkToRealFile();
+        cfgA.update(anyObject());
+        expectLastCall().once();
+        replay(admin, cfgA, cfgB);
+
+        new ConfigRepositoryImpl(admin).update("a", Collections.singletonMap("foo", "1"));
+
+        verify(admin, cfgA, cfgB);
+        assertLinkAndPermissions(real);
+    }
+
+    private Path linkToRealFile() throws Exception {
+        Path real = folder.newFolder("real").toPath().resolve("a.cfg");
+        Files.move(fileA.toPath(), real);
+        Files.setPosixFilePermissions(real, PosixFilePermissions.fromString("rw-r-----"));
+        Files.createSymbolicLink(fileA.toPath(), real);
+        return real;
+    }
+
+    private void assertLinkAndPermissions(Path real) throws Exception {
+        Assert.assertTrue(Files.isSymbolicLink(fileA.toPath()));
+        Assert.assertTrue(new String(Files.readAllBytes(real), StandardCharsets.UTF_8).contains("foo = 1"));
+        Assert.assertEquals("rw-r-----", PosixFilePermissions.toString(Files.getPosixFilePermissions(real)));
+        Assert.assertArrayEquals(new String[] { "a.cfg" }, real.getParent().toFile().list());
+    }
+
+    private String[] sortedFiles() {
+        String[] files = folder.getRoot().list();
+        java.util.Arrays.sort(files);
+        return files;
+    }
+
+}
@@ -20,8 +20,11 @@ import org.junit.Assert;
 import org.junit.Test;
 import org.osgi.framework.Constants;
 
+import java.util.Collections;
 import java.util.Dictionary;
+import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.Map;
 
 public class KarafConfigurationPluginTest {
 
@@ -58,4 +61,75 @@ public class KarafConfigurationPluginTest {
         Assert.assertEquals("bar", properties.get("foo"));
     }
 
+    @Test
+    public void testEnvironment() throws Exception {
+        System.setProperty("org.apache.karaf.log.size", "10");
+        Map<String, String> env = new HashMap<>();
+        env.put("ORG_APACHE_KARAF_LOG_SIZE", "20");
+        env.put("ORG_APACHE_KARAF_LOG_MAX_COUNT", "${foo}0");
+        env.put("ORG_APACHE_KARAF_LOGGING_SIZE", "30");
+        KarafConfigurationPlugin plugin = new KarafConfigurationPlugin(env);
+        Dictionary<String, Object> properties = new Hashtable<>();
+        properties.put(Constants.SERVICE_PID, "org.apache.karaf.log");
+        properties.put("size", 5);
+        properties.put("max-count", "1");
+        properties.put("foo", "bar");
+        plugin.modifyConfiguration(null, properties);
+
+        // the environment takes precedence over the system properties
+        Assert.assertEquals(20, properties.get("size"));
+        Assert.assertEquals("bar0", properties.get("max-count"));
+        Assert.assertEquals("bar", properties.get("foo"));
+        System.clearProperty("org.apache.karaf.log.size");
+    }
+
+    @Test
+    public void testNoOverride() throws Exception {
+        KarafConfigurationPlugin plugin = new KarafConfigurationPlugin(Collections.singletonMap("ORG_APACHE_KARAF_LOG_SIZE", "20"));
+        Dictionary<String, Object> properties = new Hashtable<>();
+        properties.put(Constants.SERVICE_PID, "org.apache.karaf.other");
+        properties.put("size", "${foo}");
+        properties.put("foo", "bar");
+        plugin.modifyConfiguration(null, properties);
+
+        Assert.assertEquals("${foo}", properties.get("size"));
+        Assert.assertEquals("bar", properties.get("foo"));
+    }
+
+    @Test
+    public void testSystemPropertyChanges() throws Exception {
+        KarafConfigurationPlugin plugin = new KarafConfigurationPlugin(Collections.emptyMap());
+        System.setProperty("org.apache.karaf.refresh.foo", "baz");
+        try {
+            Dictionary<String, Object> properties = new Hashtable<>();
+            properties.put(Constants.SERVICE_PID, "org.apache.karaf.refresh");
+            properties.put("foo", "bar");
+            plugin.modifyConfiguration(null, properties);
+            Assert.assertEquals("baz", properties.get("foo"));
+
+            // values are not cached
+            System.setProperty("org.apache.karaf.refresh.foo", "qux");
+            plugin.modifyConfiguration(null, properties);
+            Assert.assertEquals("qux", properties.get("foo"));
+
+            // a property replaced by another one, without changing the number of properties
+            System.clearProperty("org.apache.karaf.refresh.foo");
+            System.setProperty("org.apache.karaf.refresh.bar", "quux");
+            properties.put("foo", "bar");
+            properties.put("bar", "foo");
+            plugin.modifyConfiguration(null, properties);
+            Assert.assertEquals("bar", properties.get("foo"));
+            Assert.assertEquals("quux", properties.get("bar"));
+        } finally {
+            System.clearProperty("org.apache.karaf.refresh.foo");
+            System.clearProperty("org.apache.karaf.refresh.bar");
+        }
+    }
+
+    @Test
+    public void testEnvironmentName() {
+        Assert.assertEquals("ORG_APACHE_KARAF_SHELL_SSH_PORT", KarafConfigurationPlugin.toEnvironmentName("org.apache.karaf.shell.ssh-port"));
+        Assert.assertEquals("FOO_BAR", KarafConfigurationPlugin.toEnvironmentName("foo~bar"));
+    }
+
 }
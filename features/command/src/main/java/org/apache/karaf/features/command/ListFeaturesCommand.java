@@ -57,6 +57,18 @@ public class ListFeaturesCommand extends FeaturesCommandSupport {
     @Option(name = "--no-format", description = "Disable table rendered output", required = false, multiValued = false)
     boolean noFormat;
 
+    @Option(name = "--limit", description = "Maximum number of features to display", required = false, multiValued = false)
+    int limit = -1;
+
+    @Option(name = "--offset", description = "Number of features to skip, to display them page by page along with --limit", required = false, multiValued = false)
+    int offset;
+
+    @Option(name = "--output", description = "Output format: table, csv or json", required = false, multiValued = false)
+    String output = "table";
+
+    @Option(name = "--stream", description = "Print the features as they are listed, the column widths are computed on the first ones", required = false, multiValued = false)
+    boolean stream;
+
     protected void doExecute(FeaturesService featuresService) throws Exception {
         boolean needsLegend = false;
 
@@ -71,6 +83,10 @@ public class ListFeaturesCommand extends FeaturesCommandSupport {
             table.column("Blacklisted");
         }
         table.emptyTableText(onlyInstalled ? "No features installed" : "No features available");
+        table.limit(limit).offset(offset).output(output);
+        if (stream || table.isMachineOutput()) {
+            table.stream(System.out, !noFormat);
+        }
 
         if (repository != null) {
             List<Feature> features = Arrays.asList(featuresService.getRepository(repository).getFeatures());
@@ -87,7 +103,7 @@ public class ListFeaturesCommand extends FeaturesCommandSupport {
 
         table.print(System.out, !noFormat);
 
-        if (needsLegend) {
+        if (needsLegend && !table.isMachineOutput()) {
             System.out.println("* Installed via deploy directory");
         }
 
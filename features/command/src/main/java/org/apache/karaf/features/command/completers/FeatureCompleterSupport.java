@@ -16,21 +16,28 @@
  */
 package org.apache.karaf.features.command.completers;
 
-import java.util.ArrayList;
 import java.util.List;
 
+import org.apache.karaf.features.DeploymentEvent;
+import org.apache.karaf.features.DeploymentListener;
 import org.apache.karaf.features.Feature;
+import org.apache.karaf.features.FeatureEvent;
+import org.apache.karaf.features.FeaturesListener;
 import org.apache.karaf.features.FeaturesService;
+import org.apache.karaf.features.RepositoryEvent;
+import org.apache.karaf.shell.api.action.lifecycle.Destroy;
+import org.apache.karaf.shell.api.action.lifecycle.Init;
 import org.apache.karaf.shell.api.action.lifecycle.Reference;
 import org.apache.karaf.shell.api.console.Candidate;
-import org.apache.karaf.shell.api.console.CommandLine;
-import org.apache.karaf.shell.api.console.Completer;
-import org.apache.karaf.shell.api.console.Session;
+import org.apache.karaf.shell.support.completers.CachedCompleter;
 
 /**
  * Base completer for feature commands.
+ * <p>
+ * Listing the features of all repositories can be slow, so the candidates are cached
+ * and reloaded in the background when a repository is added or removed or after a deployment.
  */
-public abstract class FeatureCompleterSupport implements Completer {
+public abstract class FeatureCompleterSupport extends CachedCompleter implements FeaturesListener, DeploymentListener {
 
     /**
      * Feature service.
@@ -42,26 +49,41 @@ public abstract class FeatureCompleterSupport implements Completer {
         this.featuresService = featuresService;
     }
 
+    @Init
+    public void init() {
+        featuresService.registerListener((FeaturesListener) this);
+        featuresService.registerListener((DeploymentListener) this);
+    }
+
+    @Destroy
+    public void destroy() {
+        featuresService.unregisterListener((FeaturesListener) this);
+        featuresService.unregisterListener((DeploymentListener) this);
+    }
+
     @Override
-    public int complete(Session session, final CommandLine commandLine, final List<String> candidates) {
-        List<Candidate> cands = new ArrayList<>();
-        completeCandidates(session, commandLine, cands);
-        for (Candidate cand : cands) {
-            candidates.add(cand.value());
+    protected void loadCandidates(List<Candidate> candidates) throws Exception {
+        for (Feature feature : featuresService.listFeatures()) {
+            if (acceptsFeature(feature)) {
+                add(candidates, feature);
+            }
         }
-        return candidates.isEmpty() ? -1 : 0;
     }
 
     @Override
-    public void completeCandidates(Session session, CommandLine commandLine, List<Candidate> candidates) {
-        try {
-            for (Feature feature : featuresService.listFeatures()) {
-                if (acceptsFeature(feature)) {
-                    add(candidates, feature);
-                }
-            }
-        } catch (Exception e) {
-            // Ignore
+    public void featureEvent(FeatureEvent event) {
+        invalidate();
+    }
+
+    @Override
+    public void repositoryEvent(RepositoryEvent event) {
+        invalidate();
+    }
+
+    @Override
+    public void deploymentEvent(DeploymentEvent event) {
+        if (event == DeploymentEvent.DEPLOYMENT_FINISHED) {
+            invalidate();
         }
     }
 
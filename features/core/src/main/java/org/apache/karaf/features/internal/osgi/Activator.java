@@ -209,9 +209,13 @@ public class Activator extends BaseActivator {
         String[] featuresRepositories = getStringArray("featuresRepositories", "");
         String featuresBoot = getString("featuresBoot", "");
         boolean featuresBootAsynchronous = getBoolean("featuresBootAsynchronous", false);
+        String bootSnapshot = getString("bootSnapshot",
+                new File(System.getProperty("karaf.etc"), "features-boot-snapshot.json").getPath());
+        boolean bootSnapshotCapture = getBoolean("bootSnapshotCapture", false);
         BootFeaturesInstaller bootFeaturesInstaller = new BootFeaturesInstaller(
                 bundleContext, featuresService, new SystemExitManager(),
-                featuresRepositories, featuresBoot, featuresBootAsynchronous);
+                featuresRepositories, featuresBoot, featuresBootAsynchronous,
+                bootSnapshot.isEmpty() ? null : new File(bootSnapshot), bootSnapshotCapture);
         bootFeaturesInstaller.start();
     }
 
@@ -32,12 +32,23 @@ public class BootFeaturesInstaller {
     private static final Logger LOGGER = LoggerFactory.getLogger(BootFeaturesInstaller.class);
     private static final String REQUIRE_SUCCESSFUL_BOOT = "karaf.require.successful.features.boot";
 
+    /**
+     * Properties of the {@link BootFinished} service describing the boot stages:
+     * the installed features, the start time (epoch millis) and the duration (ms)
+     * of each stage.  Used by the startup profiler of the launcher.
+     */
+    static final String BOOT_FEATURES_STAGES = "boot.features.stages";
+    static final String BOOT_FEATURES_STARTS = "boot.features.starts";
+    static final String BOOT_FEATURES_DURATIONS = "boot.features.durations";
+
     private final FeaturesServiceImpl featuresService;
     private final BundleContext bundleContext;
     private final ExitManager exitManager;
     private final String[] repositories;
     private final String features;
     private final boolean asynchronous;
+    private final File bootSnapshot;
+    private final boolean bootSnapshotCapture;
     
     /**
      * The Unix separator character.
@@ -60,12 +71,29 @@ public class BootFeaturesInstaller {
                                  String[] repositories,
                                  String features,
                                  boolean asynchronous) {
+        this(bundleContext, featuresService, exitManager, repositories, features, asynchronous, null, false);
+    }
+
+    /**
+     * @param bootSnapshot the boot snapshot file, or <code>null</code>
+     * @param bootSnapshotCapture whether the boot snapshot is written after a successful boot
+     */
+    public BootFeaturesInstaller(BundleContext bundleContext,
+                                 FeaturesServiceImpl featuresService,
+                                 ExitManager exitManager,
+                                 String[] repositories,
+                                 String features,
+                                 boolean asynchronous,
+                                 File bootSnapshot,
+                                 boolean bootSnapshotCapture) {
         this.bundleContext = bundleContext;
         this.featuresService = featuresService;
         this.exitManager = exitManager;
         this.repositories = repositories;
         this.features = features;
         this.asynchronous = asynchronous;
+        this.bootSnapshot = bootSnapshot;
+        this.bootSnapshotCapture = bootSnapshotCapture;
     }
 
     /**
@@ -73,7 +101,7 @@ public class BootFeaturesInstaller {
      */
     public void start() {
         if (featuresService.isBootDone()) {
-            publishBootFinished();
+            publishBootFinished(new Hashtable<>());
             return;
         }
 
@@ -92,7 +120,26 @@ public class BootFeaturesInstaller {
 
     protected void installBootFeatures(boolean quitIfUnsuccessful) {
         try {
+            List<String> stages = new ArrayList<>();
+            List<Long> starts = new ArrayList<>();
+            List<Long> durations = new ArrayList<>();
+
+            String checksum = bootSnapshot != null ? featuresService.getBootChecksum(repositories, features) : null;
+            long start = System.currentTimeMillis();
+            if (restoreBootSnapshot(checksum)) {
+                featuresService.bootDone();
+                Hashtable<String, Object> props = new Hashtable<>();
+                props.put(BOOT_FEATURES_STAGES, new String[] {"snapshot"});
+                props.put(BOOT_FEATURES_STARTS, new long[] {start});
+                props.put(BOOT_FEATURES_DURATIONS, new long[] {System.currentTimeMillis() - start});
+                publishBootFinished(props);
+                return;
+            }
+
             addRepositories(quitIfUnsuccessful);
+            stages.add("repositories");
+            starts.add(start);
+            durations.add(System.currentTimeMillis() - start);
 
             List<Set<String>> stagedFeatures = parseBootFeatures(features);
             for (Set<String> features : stagedFeatures) {
@@ -102,10 +149,22 @@ public class BootFeaturesInstaller {
                 } else {
                     options = EnumSet.of(FeaturesService.Option.NoFailOnFeatureNotFound);
                 }
+                start = System.currentTimeMillis();
                 featuresService.installFeatures(features, options);
+                stages.add(String.join(",", features));
+                starts.add(start);
+                durations.add(System.currentTimeMillis() - start);
+                LOGGER.debug("Boot features {} installed in {} ms", features, durations.get(durations.size() - 1));
             }
             featuresService.bootDone();
-            publishBootFinished();
+            if (bootSnapshot != null && bootSnapshotCapture) {
+                captureBootSnapshot(checksum);
+            }
+            Hashtable<String, Object> props = new Hashtable<>();
+            props.put(BOOT_FEATURES_STAGES, stages.toArray(new String[0]));
+            props.put(BOOT_FEATURES_STARTS, starts.stream().mapToLong(Long::longValue).toArray());
+            props.put(BOOT_FEATURES_DURATIONS, durations.stream().mapToLong(Long::longValue).toArray());
+            publishBootFinished(props);
         } catch (Throwable e) {
             // Special handling in case the bundle has been refreshed.
             // In such a case, simply exits without logging any exception
@@ -126,6 +185,39 @@ public class BootFeaturesInstaller {
         }
     }
 
+    /**
+     * Install the boot snapshot if it exists and has been captured with the same boot configuration.
+     *
+     * @return <code>true</code> if the snapshot has been installed
+     */
+    private boolean restoreBootSnapshot(String checksum) {
+        if (bootSnapshot == null || !bootSnapshot.isFile()) {
+            return false;
+        }
+        try {
+            BootSnapshot snapshot = BootSnapshot.load(bootSnapshot);
+            if (!checksum.equals(snapshot.checksum)) {
+                LOGGER.info("Boot snapshot {} does not match the boot configuration, provisioning boot features", bootSnapshot);
+                return false;
+            }
+            LOGGER.info("Installing boot snapshot {}", bootSnapshot);
+            featuresService.restoreBootSnapshot(snapshot);
+            return true;
+        } catch (Exception e) {
+            LOGGER.warn("Error installing boot snapshot " + bootSnapshot + ", provisioning boot features", e);
+            return false;
+        }
+    }
+
+    private void captureBootSnapshot(String checksum) {
+        try {
+            featuresService.createBootSnapshot(checksum).save(bootSnapshot);
+            LOGGER.info("Boot snapshot written to {}", bootSnapshot);
+        } catch (Exception e) {
+            LOGGER.warn("Error writing boot snapshot " + bootSnapshot, e);
+        }
+    }
+
     private void addRepositories(boolean quitIfUnsuccessful) {
         for (String repo : repositories) {
             repo = repo.trim();
@@ -181,11 +273,11 @@ public class BootFeaturesInstaller {
         return stages;
     }
 
-    private void publishBootFinished() {
+    private void publishBootFinished(Hashtable<String, Object> props) {
         if (bundleContext != null) {
             BootFinished bootFinished = new BootFinished() {
             };
-            bundleContext.registerService(BootFinished.class, bootFinished, new Hashtable<String, String>());
+            bundleContext.registerService(BootFinished.class, bootFinished, props);
         }
     }
 
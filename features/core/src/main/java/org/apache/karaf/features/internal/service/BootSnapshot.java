@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.features.internal.service;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.karaf.util.json.JsonReader;
+import org.apache.karaf.util.json.JsonWriter;
+
+import static org.apache.karaf.features.internal.service.StateStorage.toStringSet;
+import static org.apache.karaf.features.internal.service.StateStorage.toStringStringSetMap;
+import static org.apache.karaf.features.internal.service.StateStorage.toStringStringStringMapMap;
+
+/**
+ * <p>A frozen result of the boot features provisioning: the features {@link State} and the bundles installed
+ * by the features service with their region, start level and wiring.</p>
+ * <p>A snapshot is captured after a successful boot and can be shipped in <code>etc</code> of an image, so that
+ * containers starting with an empty <code>data</code> folder install the bundles directly instead of loading
+ * the repositories and resolving the boot features. The snapshot is only used if its checksum matches the
+ * current boot configuration.</p>
+ */
+@SuppressWarnings({
+    "rawtypes", "unchecked"
+   })
+public class BootSnapshot {
+
+    /** Checksum of the boot configuration the snapshot has been captured with */
+    public String checksum;
+
+    /** Features state, bundle ids are not used */
+    public final State state = new State();
+
+    /** Region policies, as given to {@link BundleInstallSupport#replaceDigraph} */
+    public final Map<String, Map<String, Map<String, Set<String>>>> policies = new HashMap<>();
+
+    /** Ids of the installed features providing configurations or libraries */
+    public final Set<String> configuredFeatures = new TreeSet<>();
+
+    /** Bundles installed by the features service, in installation order */
+    public final List<BundleEntry> bundles = new ArrayList<>();
+
+    public static class BundleEntry {
+        public String location;
+        public String region;
+        public int startLevel;
+        public boolean start;
+        /** Locations of the bundles providing capabilities to this bundle */
+        public final Set<String> providers = new TreeSet<>();
+        /** Locations of the hosts, for fragments */
+        public final Set<String> hosts = new TreeSet<>();
+    }
+
+    public static BootSnapshot load(File file) throws IOException {
+        try (InputStream is = new FileInputStream(file)) {
+            return load(is);
+        }
+    }
+
+    public static BootSnapshot load(InputStream is) throws IOException {
+        Map json = (Map) JsonReader.read(is);
+        BootSnapshot snapshot = new BootSnapshot();
+        snapshot.checksum = (String) json.get("checksum");
+        snapshot.state.repositories.addAll(toStringSet((Collection) json.get("repositories")));
+        snapshot.state.requirements.putAll(toStringStringSetMap((Map) json.get("features")));
+        snapshot.state.installedFeatures.putAll(toStringStringSetMap((Map) json.get("installed")));
+        snapshot.state.stateFeatures.putAll(toStringStringStringMapMap((Map) json.get("state")));
+        snapshot.configuredFeatures.addAll(toStringSet((Collection) json.get("configured")));
+        Map<String, Map> policies = (Map) json.get("policies");
+        for (Map.Entry<String, Map> entry : policies.entrySet()) {
+            Map<String, Map<String, Set<String>>> policy = new HashMap<>();
+            for (Map.Entry<String, Map> edge : ((Map<String, Map>) entry.getValue()).entrySet()) {
+                policy.put(edge.getKey(), toStringStringSetMap(edge.getValue()));
+            }
+            snapshot.policies.put(entry.getKey(), policy);
+        }
+        for (Map bundle : (Collection<Map>) json.get("bundles")) {
+            BundleEntry entry = new BundleEntry();
+            entry.location = (String) bundle.get("location");
+            entry.region = (String) bundle.get("region");
+            entry.startLevel = (int) StateStorage.toLong(bundle.get("startLevel"));
+            entry.start = (Boolean) bundle.get("start");
+            entry.providers.addAll(toStringSet((Collection) bundle.get("providers")));
+            entry.hosts.addAll(toStringSet((Collection) bundle.get("hosts")));
+            snapshot.bundles.add(entry);
+        }
+        return snapshot;
+    }
+
+    public void save(File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (OutputStream os = new FileOutputStream(temp)) {
+            save(os);
+        }
+        if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))) {
+            throw new IOException("Unable to write " + file);
+        }
+    }
+
+    public void save(OutputStream os) throws IOException {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("checksum", checksum);
+        json.put("repositories", state.repositories);
+        json.put("features", state.requirements);
+        json.put("installed", state.installedFeatures);
+        json.put("state", state.stateFeatures);
+        json.put("configured", configuredFeatures);
+        json.put("policies", policies);
+        List<Map<String, Object>> list = new ArrayList<>();
+        for (BundleEntry entry : bundles) {
+            Map<String, Object> bundle = new LinkedHashMap<>();
+            bundle.put("location", entry.location);
+            bundle.put("region", entry.region);
+            bundle.put("startLevel", entry.startLevel);
+            bundle.put("start", entry.start);
+            bundle.put("providers", entry.providers);
+            bundle.put("hosts", entry.hosts);
+            list.add(bundle);
+        }
+        json.put("bundles", list);
+        JsonWriter.write(os, json);
+    }
+
+    /**
+     * Compute the checksum of the boot configuration: the boot repositories and features, the given
+     * configuration files (overrides, blacklist, features processing) and the Karaf version.
+     *
+     * @param repositories the boot repositories
+     * @param features the boot features
+     * @param files the URLs of the configuration files, missing files are ignored
+     * @return the hexadecimal SHA-256 checksum
+     */
+    public static String checksum(String[] repositories, String features, Collection<String> files) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            update(digest, System.getProperty("karaf.version"));
+            if (repositories != null) {
+                for (String repository : repositories) {
+                    update(digest, repository.trim());
+                }
+            }
+            update(digest, features != null ? features.replaceAll("\\s+", "") : null);
+            for (String file : files) {
+                update(digest, file);
+                if (file != null) {
+                    try (InputStream is = new URL(file).openStream()) {
+                        byte[] buffer = new byte[8192];
+                        int l;
+                        while ((l = is.read(buffer)) > 0) {
+                            digest.update(buffer, 0, l);
+                        }
+                    } catch (IOException e) {
+                        // missing file
+                    }
+                }
+            }
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest.digest()) {
+                sb.append(String.format("%02x", b & 0xff));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        if (value != null) {
+            digest.update(value.getBytes(StandardCharsets.UTF_8));
+        }
+        digest.update((byte) 0);
+    }
+
+}
@@ -215,8 +215,11 @@ public class BundleInstallSupportImpl implements BundleInstallSupport {
                     for (Wire wire : wires) {
                         wired.add(wire.getProvider());
                         if (HostNamespace.HOST_NAMESPACE.equals(wire.getRequirement().getNamespace())) {
-                            for (Wire hostWire : wiring.get(wire.getProvider())) {
-                                wired.add(hostWire.getProvider());
+                            List<Wire> hostWires = wiring.get(wire.getProvider());
+                            if (hostWires != null) {
+                                for (Wire hostWire : hostWires) {
+                                    wired.add(hostWire.getProvider());
+                                }
                             }
                         }
                     }
@@ -28,6 +28,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Dictionary;
 import java.util.EnumSet;
 import java.util.Enumeration;
@@ -42,6 +43,7 @@ import java.util.Set;
 import java.util.StringJoiner;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -52,8 +54,10 @@ import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import org.apache.felix.utils.resource.RequirementImpl;
 import org.apache.felix.utils.version.VersionCleaner;
 import org.apache.karaf.features.BundleInfo;
+import org.apache.karaf.features.Conditional;
 import org.apache.karaf.features.DeploymentEvent;
 import org.apache.karaf.features.DeploymentListener;
 import org.apache.karaf.features.Feature;
@@ -65,21 +69,33 @@ import org.apache.karaf.features.Repository;
 import org.apache.karaf.features.RepositoryEvent;
 import org.apache.karaf.features.internal.download.DownloadManager;
 import org.apache.karaf.features.internal.download.DownloadManagers;
+import org.apache.karaf.features.internal.download.Downloader;
+import org.apache.karaf.features.internal.download.StreamProvider;
 import org.apache.karaf.features.internal.model.Features;
 import org.apache.karaf.features.internal.model.JacksonUtil;
 import org.apache.karaf.features.internal.model.JaxbUtil;
 import org.apache.karaf.features.internal.region.DigraphHelper;
 import org.apache.karaf.features.internal.service.BundleInstallSupport.FrameworkInfo;
+import org.apache.karaf.features.internal.util.MultiException;
 import org.apache.karaf.util.ThreadUtils;
 import org.apache.karaf.util.json.JsonReader;
 import org.apache.karaf.util.json.JsonWriter;
 import org.apache.karaf.util.collections.CopyOnWriteArrayIdentityList;
+import org.eclipse.equinox.region.Region;
 import org.eclipse.equinox.region.RegionDigraph;
 import org.ops4j.pax.url.mvn.MavenResolver;
 import org.ops4j.pax.url.mvn.MavenResolvers;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleException;
 import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.namespace.HostNamespace;
+import org.osgi.framework.namespace.PackageNamespace;
+import org.osgi.framework.startlevel.BundleStartLevel;
+import org.osgi.framework.wiring.BundleRevision;
+import org.osgi.framework.wiring.BundleWire;
+import org.osgi.framework.wiring.BundleWiring;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
 import org.osgi.resource.Resource;
 import org.osgi.resource.Wire;
 import org.osgi.service.cm.Configuration;
@@ -256,6 +272,319 @@ public class FeaturesServiceImpl implements FeaturesService, Deployer.DeployCall
         }
     }
 
+    //
+    // Boot snapshot support
+    //
+
+    String getBootChecksum(String[] repositories, String features) {
+        return BootSnapshot.checksum(repositories, features,
+                Arrays.asList(cfg.overrides, cfg.blacklisted, cfg.featureModifications, cfg.featureProcessingVersions));
+    }
+
+    /**
+     * Capture the bundles installed by this service, their wiring and the current state.
+     */
+    BootSnapshot createBootSnapshot(String checksum) throws Exception {
+        BootSnapshot snapshot = new BootSnapshot();
+        snapshot.checksum = checksum;
+        Map<String, Set<Long>> managed;
+        synchronized (lock) {
+            snapshot.state.repositories.addAll(state.repositories);
+            snapshot.state.requirements.putAll(copy(state.requirements));
+            snapshot.state.installedFeatures.putAll(copy(state.installedFeatures));
+            snapshot.state.stateFeatures.putAll(copy(state.stateFeatures));
+            managed = copy(state.managedBundles);
+        }
+        Map<String, Feature> featuresById = getFeaturesById();
+        Set<String> installed = flatten(snapshot.state.installedFeatures);
+        for (String id : installed) {
+            Feature feature = featuresById.get(id);
+            if (feature != null && (hasConfigsOrLibraries(feature)
+                    || feature.getConditional().stream()
+                        .map(Conditional::asFeature)
+                        .anyMatch(cond -> installed.contains(cond.getId()) && hasConfigsOrLibraries(cond)))) {
+                snapshot.configuredFeatures.add(id);
+            }
+        }
+        RegionDigraph digraph = installSupport.getDiGraphCopy();
+        for (Region region : digraph.getRegions()) {
+            Map<String, Map<String, Set<String>>> policy = new HashMap<>();
+            for (RegionDigraph.FilteredRegion fr : region.getEdges()) {
+                Map<String, Set<String>> filters = new HashMap<>();
+                for (Map.Entry<String, Collection<String>> entry : fr.getFilter().getSharingPolicy().entrySet()) {
+                    filters.put(entry.getKey(), new TreeSet<>(entry.getValue()));
+                }
+                policy.put(fr.getRegion().getName(), filters);
+            }
+            snapshot.policies.put(region.getName(), policy);
+        }
+        List<Bundle> bundles = new ArrayList<>();
+        Map<Bundle, String> regions = new HashMap<>();
+        FrameworkInfo info = installSupport.getInfo();
+        for (Map.Entry<String, Set<Long>> entry : managed.entrySet()) {
+            for (long id : entry.getValue()) {
+                Bundle bundle = info.bundles.get(id);
+                if (bundle != null) {
+                    bundles.add(bundle);
+                    regions.put(bundle, entry.getKey());
+                }
+            }
+        }
+        bundles.sort(Comparator.comparingLong(Bundle::getBundleId));
+        for (Bundle bundle : bundles) {
+            BootSnapshot.BundleEntry entry = new BootSnapshot.BundleEntry();
+            entry.location = bundle.getLocation();
+            entry.region = regions.get(bundle);
+            BundleStartLevel bsl = bundle.adapt(BundleStartLevel.class);
+            entry.startLevel = bsl.getStartLevel();
+            entry.start = bsl.isPersistentlyStarted();
+            BundleWiring wiring = bundle.adapt(BundleWiring.class);
+            if (wiring != null) {
+                for (BundleWire wire : wiring.getRequiredWires(null)) {
+                    String provider = wire.getProvider().getBundle().getLocation();
+                    if (HostNamespace.HOST_NAMESPACE.equals(wire.getRequirement().getNamespace())) {
+                        entry.hosts.add(provider);
+                    } else {
+                        entry.providers.add(provider);
+                    }
+                }
+            }
+            snapshot.bundles.add(entry);
+        }
+        return snapshot;
+    }
+
+    private static boolean hasConfigsOrLibraries(Feature feature) {
+        return !feature.getConfigurations().isEmpty()
+                || !feature.getConfigurationFiles().isEmpty()
+                || !feature.getLibraries().isEmpty();
+    }
+
+    /**
+     * Install the bundles of a boot snapshot without resolving the features.  The bundles are
+     * resolved with the captured wiring.  If anything goes wrong, the installed bundles are
+     * uninstalled so that the boot features can be provisioned normally.
+     */
+    void restoreBootSnapshot(BootSnapshot snapshot) throws Exception {
+        callListeners(DeploymentEvent.DEPLOYMENT_STARTED);
+        Map<String, Bundle> bundlesByLocation = new HashMap<>();
+        for (Bundle bundle : installSupport.getInfo().bundles.values()) {
+            bundlesByLocation.put(bundle.getLocation(), bundle);
+        }
+        Map<String, StreamProvider> providers = new ConcurrentHashMap<>();
+        List<Bundle> installed = new ArrayList<>();
+        // regions before the restore, put back if it fails
+        RegionDigraph previous = installSupport.getDiGraphCopy();
+        boolean replaced = false;
+        try (DownloadManager manager = createDownloadManager()) {
+            Downloader downloader = manager.createDownloader();
+            for (BootSnapshot.BundleEntry entry : snapshot.bundles) {
+                if (!bundlesByLocation.containsKey(entry.location)) {
+                    downloader.download(entry.location, provider -> providers.put(entry.location, provider));
+                }
+            }
+            downloader.await();
+
+            Map<String, Set<Long>> managed = new HashMap<>();
+            Set<Bundle> toResolve = new LinkedHashSet<>();
+            List<Bundle> toStart = new ArrayList<>();
+            print("Installing bundles:", false);
+            for (BootSnapshot.BundleEntry entry : snapshot.bundles) {
+                Bundle bundle = bundlesByLocation.get(entry.location);
+                if (bundle == null) {
+                    print("  " + entry.location, false);
+                    try (InputStream is = providers.get(entry.location).open()) {
+                        bundle = installSupport.installBundle(entry.region, entry.location, is);
+                    }
+                    installed.add(bundle);
+                    bundlesByLocation.put(entry.location, bundle);
+                }
+                addToMapSet(managed, entry.region, bundle.getBundleId());
+                toResolve.add(bundle);
+                if (entry.start) {
+                    toStart.add(bundle);
+                }
+            }
+            // Set start levels after install to avoid starting before all bundles are installed
+            for (BootSnapshot.BundleEntry entry : snapshot.bundles) {
+                installSupport.setBundleStartLevel(bundlesByLocation.get(entry.location), entry.startLevel);
+            }
+
+            // Regions
+            Map<String, Set<Long>> regions = new HashMap<>();
+            for (Region region : installSupport.getDiGraphCopy().getRegions()) {
+                regions.put(region.getName(), new HashSet<>(region.getBundleIds()));
+            }
+            for (Set<Long> ids : regions.values()) {
+                ids.removeAll(flatten(managed));
+            }
+            add(regions, managed);
+            Map<String, Map<String, Map<String, Set<String>>>> policies = copy(snapshot.policies);
+            for (String name : regions.keySet()) {
+                policies.computeIfAbsent(name, k -> new HashMap<>());
+            }
+            installSupport.replaceDigraph(policies, regions);
+            replaced = true;
+
+            // State
+            State newState = new State();
+            newState.requirements.putAll(snapshot.state.requirements);
+            newState.installedFeatures.putAll(snapshot.state.installedFeatures);
+            newState.stateFeatures.putAll(snapshot.state.stateFeatures);
+            newState.managedBundles.putAll(managed);
+            synchronized (lock) {
+                state.repositories.addAll(snapshot.state.repositories);
+                saveState(newState);
+            }
+
+            // Configurations and libraries, repositories are only loaded if needed
+            if (!snapshot.configuredFeatures.isEmpty()) {
+                Map<String, Feature> featuresById = getFeaturesById();
+                Set<String> installedIds = flatten(snapshot.state.installedFeatures);
+                for (String id : snapshot.configuredFeatures) {
+                    Feature feature = featuresById.get(id);
+                    if (feature == null) {
+                        throw new IllegalStateException("Could not find feature " + id);
+                    }
+                    installConfigs(feature);
+                    installLibraries(feature);
+                    for (Conditional cond : feature.getConditional()) {
+                        Feature condFeature = cond.asFeature();
+                        if (installedIds.contains(condFeature.getId())) {
+                            installConfigs(condFeature);
+                            installLibraries(condFeature);
+                        }
+                    }
+                }
+            }
+
+            callListeners(DeploymentEvent.BUNDLES_INSTALLED);
+            resolveBundles(toResolve, snapshot, bundlesByLocation);
+            callListeners(DeploymentEvent.BUNDLES_RESOLVED);
+
+            print("Starting bundles:", false);
+            List<Exception> exceptions = new ArrayList<>();
+            for (Bundle bundle : toStart) {
+                if ((bundle.adapt(BundleRevision.class).getTypes() & BundleRevision.TYPE_FRAGMENT) == 0) {
+                    print("  " + bundle.getSymbolicName() + "/" + bundle.getVersion(), false);
+                    try {
+                        installSupport.startBundle(bundle);
+                    } catch (BundleException e) {
+                        exceptions.add(e);
+                    }
+                }
+            }
+            if (!exceptions.isEmpty()) {
+                throw new MultiException("Error starting bundles", exceptions);
+            }
+        } catch (Exception e) {
+            for (Bundle bundle : installed) {
+                try {
+                    installSupport.uninstall(bundle);
+                } catch (BundleException | IllegalStateException e2) {
+                    e.addSuppressed(e2);
+                }
+            }
+            if (replaced) {
+                try {
+                    installSupport.replaceDigraph(DigraphHelper.getPolicies(previous), DigraphHelper.getBundlesPerRegion(previous));
+                } catch (BundleException | InvalidSyntaxException | RuntimeException e2) {
+                    e.addSuppressed(e2);
+                }
+            }
+            synchronized (lock) {
+                state.repositories.clear();
+                saveState(new State());
+            }
+            throw e;
+        }
+        for (Map.Entry<String, Set<String>> entry : snapshot.state.installedFeatures.entrySet()) {
+            for (String id : entry.getValue()) {
+                Feature feature = org.apache.karaf.features.internal.model.Feature.valueOf(id);
+                callListeners(new FeatureEvent(FeatureEvent.EventType.FeatureInstalled, feature, entry.getKey(), false));
+            }
+        }
+        callListeners(DeploymentEvent.DEPLOYMENT_FINISHED);
+    }
+
+    /**
+     * Resolve the bundles, restricting the candidates to the captured providers.
+     */
+    private void resolveBundles(Set<Bundle> bundles, BootSnapshot snapshot, Map<String, Bundle> bundlesByLocation) {
+        Map<Resource, Bundle> resToBnd = new HashMap<>();
+        for (Bundle bundle : bundlesByLocation.values()) {
+            BundleRevision revision = bundle.adapt(BundleRevision.class);
+            if (revision != null) {
+                resToBnd.put(revision, bundle);
+            }
+        }
+        installSupport.resolveBundles(bundles, getSnapshotWiring(snapshot, bundlesByLocation), resToBnd);
+    }
+
+    /**
+     * Compute the wiring captured by the snapshot.  Bundles whose providers or hosts are
+     * missing are left out so that the framework resolves them freely.
+     */
+    static Map<Resource, List<Wire>> getSnapshotWiring(BootSnapshot snapshot, Map<String, Bundle> bundlesByLocation) {
+        Map<Resource, List<Wire>> wiring = new HashMap<>();
+        for (Bundle bundle : bundlesByLocation.values()) {
+            BundleRevision revision = bundle.adapt(BundleRevision.class);
+            if (revision != null) {
+                wiring.put(revision, new ArrayList<>());
+            }
+        }
+        for (BootSnapshot.BundleEntry entry : snapshot.bundles) {
+            BundleRevision requirer = bundlesByLocation.get(entry.location).adapt(BundleRevision.class);
+            List<Wire> wires = new ArrayList<>();
+            boolean complete = true;
+            for (String location : entry.providers) {
+                complete &= addWire(wires, requirer, bundlesByLocation.get(location), PackageNamespace.PACKAGE_NAMESPACE);
+            }
+            for (String location : entry.hosts) {
+                complete &= addWire(wires, requirer, bundlesByLocation.get(location), HostNamespace.HOST_NAMESPACE);
+            }
+            if (complete) {
+                wiring.put(requirer, wires);
+            } else {
+                // let the framework resolve this bundle freely
+                wiring.remove(requirer);
+            }
+        }
+        // fragments attached to a host resolved freely are resolved freely too,
+        // a fragment can not be a host so a single pass is enough
+        wiring.values().removeIf(wires -> wires.stream().anyMatch(wire ->
+                HostNamespace.HOST_NAMESPACE.equals(wire.getRequirement().getNamespace())
+                        && !wiring.containsKey(wire.getProvider())));
+        return wiring;
+    }
+
+    private static boolean addWire(List<Wire> wires, BundleRevision requirer, Bundle provider, String namespace) {
+        BundleRevision revision = provider != null ? provider.adapt(BundleRevision.class) : null;
+        if (revision == null) {
+            return false;
+        }
+        Requirement requirement = new RequirementImpl(requirer, namespace, emptyMap(), emptyMap());
+        wires.add(new Wire() {
+            @Override
+            public Capability getCapability() {
+                return null;
+            }
+            @Override
+            public Requirement getRequirement() {
+                return requirement;
+            }
+            @Override
+            public Resource getProvider() {
+                return revision;
+            }
+            @Override
+            public Resource getRequirer() {
+                return requirer;
+            }
+        });
+        return true;
+    }
+
     //
     // Listeners support
     //
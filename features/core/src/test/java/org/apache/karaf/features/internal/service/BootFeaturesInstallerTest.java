@@ -16,6 +16,8 @@
  */
 package org.apache.karaf.features.internal.service;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -36,10 +38,12 @@ import org.junit.Test;
 
 import static java.util.Arrays.asList;
 import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.aryEq;
 import static org.easymock.EasyMock.capture;
 import static org.easymock.EasyMock.createMock;
 import static org.easymock.EasyMock.createStrictMock;
 import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.expectLastCall;
 import static org.easymock.EasyMock.newCapture;
 import static org.easymock.EasyMock.replay;
@@ -181,6 +185,55 @@ public class BootFeaturesInstallerTest extends TestBase {
         }
     }
 
+    @Test
+    public void testBootSnapshot() throws Exception {
+        File file = createBootSnapshot("checksum");
+        try {
+            FeaturesServiceImpl impl = createMock(FeaturesServiceImpl.class);
+            expect(impl.getBootChecksum(aryEq(new String[0]), eq("config,standard"))).andReturn("checksum");
+            impl.restoreBootSnapshot(anyObject());
+            expectLastCall();
+            impl.bootDone();
+            expectLastCall();
+
+            replay(impl);
+            BootFeaturesInstaller bootFeatures = new BootFeaturesInstaller(null, impl, null, new String[0], "config,standard", false, file, false);
+            bootFeatures.installBootFeatures(false);
+            verify(impl);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testBootSnapshotChecksumMismatch() throws Exception {
+        File file = createBootSnapshot("other");
+        try {
+            FeaturesServiceImpl impl = createMock(FeaturesServiceImpl.class);
+            expect(impl.getBootChecksum(aryEq(new String[0]), eq("config,standard"))).andReturn("checksum");
+            impl.installFeatures(setOf("config", "standard"), EnumSet.of(Option.NoFailOnFeatureNotFound));
+            expectLastCall();
+            impl.bootDone();
+            expectLastCall();
+            expect(impl.createBootSnapshot("checksum")).andReturn(new BootSnapshot());
+
+            replay(impl);
+            BootFeaturesInstaller bootFeatures = new BootFeaturesInstaller(null, impl, null, new String[0], "config,standard", false, file, true);
+            bootFeatures.installBootFeatures(false);
+            verify(impl);
+        } finally {
+            file.delete();
+        }
+    }
+
+    private File createBootSnapshot(String checksum) throws IOException {
+        File file = File.createTempFile("features-boot-snapshot", ".json");
+        BootSnapshot snapshot = new BootSnapshot();
+        snapshot.checksum = checksum;
+        snapshot.save(file);
+        return file;
+    }
+
     private static class MockedExitManager implements ExitManager {
 
         public boolean exitCalled;
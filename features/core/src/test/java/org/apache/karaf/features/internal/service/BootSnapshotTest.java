@@ -0,0 +1,212 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.features.internal.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.karaf.features.internal.download.DownloadManager;
+import org.apache.karaf.features.internal.download.Downloader;
+import org.easymock.Capture;
+import org.easymock.CaptureType;
+import org.easymock.EasyMock;
+import org.eclipse.equinox.region.Region;
+import org.eclipse.equinox.region.RegionDigraph;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.wiring.BundleRevision;
+import org.osgi.resource.Resource;
+import org.osgi.resource.Wire;
+
+import static org.easymock.EasyMock.expect;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BootSnapshotTest {
+
+    @Test
+    public void testStoreLoad() throws Exception {
+        BootSnapshot snapshot = new BootSnapshot();
+        snapshot.checksum = "abc";
+        snapshot.state.repositories.add("mvn:org.apache.karaf.features/standard/4.4.0/xml/features");
+        snapshot.state.requirements.put("root", Collections.singleton("feature:ssh"));
+        snapshot.state.installedFeatures.put("root", Collections.singleton("ssh/4.4.0"));
+        snapshot.state.stateFeatures.put("root", Collections.singletonMap("ssh/4.4.0", "Started"));
+        snapshot.configuredFeatures.add("ssh/4.4.0");
+        Map<String, Map<String, Set<String>>> policy = new HashMap<>();
+        policy.put("root", Collections.singletonMap("osgi.wiring.package", Collections.singleton("(osgi.wiring.package=*)")));
+        snapshot.policies.put("app", policy);
+        snapshot.policies.put("root", new HashMap<>());
+        BootSnapshot.BundleEntry entry = new BootSnapshot.BundleEntry();
+        entry.location = "mvn:org.apache.sshd/sshd-osgi/2.9.2";
+        entry.region = "root";
+        entry.startLevel = 30;
+        entry.start = true;
+        entry.providers.add("System Bundle");
+        snapshot.bundles.add(entry);
+        BootSnapshot.BundleEntry fragment = new BootSnapshot.BundleEntry();
+        fragment.location = "mvn:org.apache.sshd/sshd-fragment/2.9.2";
+        fragment.region = "root";
+        fragment.startLevel = 30;
+        fragment.hosts.add(entry.location);
+        snapshot.bundles.add(fragment);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        snapshot.save(baos);
+        BootSnapshot loaded = BootSnapshot.load(new ByteArrayInputStream(baos.toByteArray()));
+
+        assertEquals(snapshot.checksum, loaded.checksum);
+        assertEquals(snapshot.state.repositories, loaded.state.repositories);
+        assertEquals(snapshot.state.requirements, loaded.state.requirements);
+        assertEquals(snapshot.state.installedFeatures, loaded.state.installedFeatures);
+        assertEquals(snapshot.state.stateFeatures, loaded.state.stateFeatures);
+        assertEquals(snapshot.configuredFeatures, loaded.configuredFeatures);
+        assertEquals(snapshot.policies, loaded.policies);
+        assertEquals(2, loaded.bundles.size());
+        assertEquals(entry.location, loaded.bundles.get(0).location);
+        assertEquals(entry.region, loaded.bundles.get(0).region);
+        assertEquals(30, loaded.bundles.get(0).startLevel);
+        assertTrue(loaded.bundles.get(0).start);
+        assertEquals(entry.providers, loaded.bundles.get(0).providers);
+        assertFalse(loaded.bundles.get(1).start);
+        assertEquals(fragment.hosts, loaded.bundles.get(1).hosts);
+    }
+
+    @Test
+    public void testChecksum() throws Exception {
+        File overrides = File.createTempFile("overrides", ".properties");
+        try {
+            String url = overrides.toURI().toString();
+            String missing = new File(overrides.getParentFile(), "missing.properties").toURI().toString();
+            String[] repositories = {"mvn:org.apache.karaf.features/standard/4.4.0/xml/features"};
+            String checksum = BootSnapshot.checksum(repositories, "(shell, ssh)", Collections.singletonList(url));
+
+            assertEquals(checksum, BootSnapshot.checksum(repositories, " ( shell,ssh )", Collections.singletonList(url)));
+            assertNotEquals(checksum, BootSnapshot.checksum(repositories, "(shell), ssh", Collections.singletonList(url)));
+            assertNotEquals(checksum, BootSnapshot.checksum(new String[0], "(shell, ssh)", Collections.singletonList(url)));
+            assertNotEquals(checksum, BootSnapshot.checksum(repositories, "(shell, ssh)", Collections.singletonList(missing)));
+
+            Files.write(overrides.toPath(), "mvn:org.apache.sshd/sshd-osgi/2.9.3".getBytes());
+            assertNotEquals(checksum, BootSnapshot.checksum(repositories, "(shell, ssh)", Collections.singletonList(url)));
+        } finally {
+            overrides.delete();
+        }
+    }
+
+    @Test
+    public void testWiringWithoutHost() {
+        Map<String, Bundle> bundles = new HashMap<>();
+        BundleRevision provider = mockBundle(bundles, "provider");
+        BundleRevision host = mockBundle(bundles, "host");
+        BundleRevision fragment = mockBundle(bundles, "fragment");
+        BundleRevision other = mockBundle(bundles, "other");
+
+        BootSnapshot snapshot = new BootSnapshot();
+        snapshot.bundles.add(entry("provider"));
+        BootSnapshot.BundleEntry hostEntry = entry("host");
+        hostEntry.providers.add("provider");
+        hostEntry.providers.add("missing");
+        snapshot.bundles.add(hostEntry);
+        BootSnapshot.BundleEntry fragmentEntry = entry("fragment");
+        fragmentEntry.hosts.add("host");
+        snapshot.bundles.add(fragmentEntry);
+        BootSnapshot.BundleEntry otherEntry = entry("other");
+        otherEntry.providers.add("provider");
+        snapshot.bundles.add(otherEntry);
+
+        Map<Resource, List<Wire>> wiring = FeaturesServiceImpl.getSnapshotWiring(snapshot, bundles);
+
+        // the host has a missing provider, so neither the host nor its fragment are constrained
+        assertFalse(wiring.containsKey(host));
+        assertFalse(wiring.containsKey(fragment));
+        assertTrue(wiring.get(provider).isEmpty());
+        assertEquals(1, wiring.get(other).size());
+        assertEquals(provider, wiring.get(other).get(0).getProvider());
+    }
+
+    @Test
+    public void testRestoreFailureRestoresRegions() throws Exception {
+        Region root = EasyMock.createMock(Region.class);
+        expect(root.getName()).andReturn("root").anyTimes();
+        expect(root.getBundleIds()).andReturn(Collections.singleton(0L)).anyTimes();
+        RegionDigraph digraph = EasyMock.createMock(RegionDigraph.class);
+        expect(digraph.getRegions()).andReturn(Collections.singleton(root)).anyTimes();
+        expect(digraph.getEdges(root)).andReturn(Collections.emptySet()).anyTimes();
+
+        BundleInstallSupport installSupport = EasyMock.niceMock(BundleInstallSupport.class);
+        expect(installSupport.getInfo()).andReturn(new BundleInstallSupport.FrameworkInfo()).anyTimes();
+        expect(installSupport.getDiGraphCopy()).andReturn(digraph).anyTimes();
+        Capture<Map<String, Map<String, Map<String, Set<String>>>>> policies = Capture.newInstance(CaptureType.ALL);
+        Capture<Map<String, Set<Long>>> regions = Capture.newInstance(CaptureType.ALL);
+        installSupport.replaceDigraph(EasyMock.capture(policies), EasyMock.capture(regions));
+        EasyMock.expectLastCall().times(2);
+        installSupport.resolveBundles(EasyMock.anyObject(), EasyMock.anyObject(), EasyMock.anyObject());
+        EasyMock.expectLastCall().andThrow(new IllegalStateException("boom"));
+        DownloadManager manager = EasyMock.niceMock(DownloadManager.class);
+        expect(manager.createDownloader()).andReturn(EasyMock.niceMock(Downloader.class));
+        EasyMock.replay(root, digraph, installSupport, manager);
+
+        FeaturesServiceImpl impl = new FeaturesServiceImpl(new FeaturesServiceImplTest.Storage(), null, null, null, installSupport, null,
+                new FeaturesServiceConfig()) {
+            @Override
+            protected DownloadManager createDownloadManager() {
+                return manager;
+            }
+        };
+        BootSnapshot snapshot = new BootSnapshot();
+        snapshot.policies.put("other", new HashMap<>());
+        try {
+            impl.restoreBootSnapshot(snapshot);
+            fail("Expected an exception");
+        } catch (IllegalStateException e) {
+            assertEquals("boom", e.getMessage());
+        }
+
+        // the regions of the snapshot are replaced by the previous ones
+        EasyMock.verify(installSupport);
+        assertTrue(policies.getValues().get(0).containsKey("other"));
+        assertEquals(Collections.singletonMap("root", Collections.emptyMap()), policies.getValues().get(1));
+        assertEquals(Collections.singletonMap("root", Collections.singleton(0L)), regions.getValues().get(1));
+    }
+
+    private static BootSnapshot.BundleEntry entry(String location) {
+        BootSnapshot.BundleEntry entry = new BootSnapshot.BundleEntry();
+        entry.location = location;
+        entry.region = "root";
+        return entry;
+    }
+
+    private static BundleRevision mockBundle(Map<String, Bundle> bundles, String location) {
+        Bundle bundle = EasyMock.createMock(Bundle.class);
+        BundleRevision revision = EasyMock.createMock(BundleRevision.class);
+        expect(bundle.adapt(BundleRevision.class)).andReturn(revision).anyTimes();
+        EasyMock.replay(bundle, revision);
+        bundles.put(location, bundle);
+        return revision;
+    }
+
+}
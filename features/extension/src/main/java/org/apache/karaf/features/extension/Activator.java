@@ -16,7 +16,12 @@
  */
 package org.apache.karaf.features.extension;
 
+import java.io.UncheckedIOException;
 import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
@@ -28,19 +33,32 @@ import org.osgi.framework.wiring.FrameworkWiring;
 
 public class Activator implements BundleActivator, SynchronousBundleListener {
     private static final String WIRING_PATH = "wiring";
+    private static final String WIRING_STORE = "wiring.bin";
+    /** Delay in ms before writing the store, so that a burst of resolutions is written once */
+    private static final long SAVE_DELAY = 1000;
     private StoredWiringResolver resolver;
     private BundleContext context;
+    private ScheduledExecutorService executor;
+    private ScheduledFuture<?> pendingSave;
 
     @Override
     public void start(BundleContext context) throws Exception {
         this.context = context;
-        resolver = new StoredWiringResolver(context.getDataFile(WIRING_PATH).toPath());
+        resolver = new StoredWiringResolver(context.getDataFile(WIRING_STORE).toPath(),
+                                            context.getDataFile(WIRING_PATH).toPath());
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Karaf Wiring Store");
+            thread.setDaemon(true);
+            return thread;
+        });
         context.addBundleListener(this);
     }
 
     @Override
     public void stop(BundleContext context) throws Exception {
         context.removeBundleListener(this);
+        executor.shutdownNow();
+        save();
     }
 
     @Override
@@ -49,8 +67,25 @@ public class Activator implements BundleActivator, SynchronousBundleListener {
             resolveAll();
         } else if (event.getType() == BundleEvent.RESOLVED) {
             resolver.update(event.getBundle());
+            scheduleSave();
         } else if (event.getType() == BundleEvent.UNRESOLVED) {
             resolver.delete(event.getBundle());
+            scheduleSave();
+        }
+    }
+
+    private synchronized void scheduleSave() {
+        // a save which has already started may not see the latest change
+        if ((pendingSave == null || pendingSave.getDelay(TimeUnit.MILLISECONDS) <= 0) && !executor.isShutdown()) {
+            pendingSave = executor.schedule(this::save, SAVE_DELAY, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void save() {
+        try {
+            resolver.save();
+        } catch (UncheckedIOException e) {
+            // the wiring is only used to speed up the framework startup
         }
     }
 
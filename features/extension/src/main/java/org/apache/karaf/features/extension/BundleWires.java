@@ -16,141 +16,216 @@
  */
 package org.apache.karaf.features.extension;
 
-import static java.nio.file.StandardOpenOption.CREATE;
-import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
-import static java.nio.file.StandardOpenOption.WRITE;
-
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.DataOutput;
 import java.io.IOException;
-import java.io.UncheckedIOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.util.Collection;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
-import java.util.Set;
-import java.util.stream.Collectors;
 
 import org.osgi.framework.Bundle;
 import org.osgi.framework.Constants;
 import org.osgi.framework.namespace.HostNamespace;
 import org.osgi.framework.wiring.BundleCapability;
-import org.osgi.framework.wiring.BundleRequirement;
 import org.osgi.framework.wiring.BundleWire;
 import org.osgi.framework.wiring.BundleWiring;
 import org.osgi.resource.Namespace;
 import org.osgi.resource.Requirement;
 
+/**
+ * The wires of a bundle, indexed by requirement namespace and filter so that
+ * looking up the wires of a requirement does not allocate.
+ */
 class BundleWires {
-    long bundleId;
-    Map<String, Set<String>> wiring = new HashMap<>();
+    private static final String NO_FILTER = "";
+    private static final long[] NO_HOSTS = new long[0];
+
+    final long bundleId;
+    /** namespace -&gt; filter -&gt; wires */
+    final Map<String, Map<String, Wires>> wiring = new HashMap<>();
+    private long[] hosts = NO_HOSTS;
 
     BundleWires(Bundle bundle) {
         this.bundleId = bundle.getBundleId();
         for (BundleWire wire : bundle.adapt(BundleWiring.class).getRequiredWires(null)) {
-            String requirementId = getRequirementId(wire.getRequirement());
-            String capabilityId = getCapabilityId(wire.getCapability());
-
-            Set<String> capabilityIds = this.wiring.computeIfAbsent( requirementId, key -> new HashSet<>() );
-            capabilityIds.add(capabilityId);
+            Requirement requirement = wire.getRequirement();
+            BundleCapability capability = wire.getCapability();
+            Object v = capability.getAttributes().get(Constants.VERSION_ATTRIBUTE);
+            add(requirement.getNamespace(),
+                requirement.getDirectives().get(Namespace.REQUIREMENT_FILTER_DIRECTIVE),
+                capability.getRevision().getBundle().getBundleId(),
+                v != null ? v.toString() : null);
         }
     }
 
+    /**
+     * Read the legacy text format: a requirement line (<code>namespace[; filter]</code>)
+     * followed by a capability line (<code>bundleId[; version=version]</code>).
+     */
     BundleWires(long bundleId, BufferedReader reader) throws IOException {
         this.bundleId = bundleId;
         while (true) {
             String key = reader.readLine();
             String val = reader.readLine();
             if (key != null && val != null) {
-                Set<String> capabilityIds = this.wiring.computeIfAbsent( key, k -> new HashSet<>() );
-                capabilityIds.add(val);
+                int idx = key.indexOf("; ");
+                String namespace = idx > 0 ? key.substring(0, idx) : key;
+                String filter = idx > 0 ? key.substring(idx + 2) : null;
+                idx = val.indexOf(';');
+                long id = Long.parseLong((idx > 0 ? val.substring(0, idx) : val).trim());
+                String version = null;
+                if (idx > 0) {
+                    version = val.substring(idx + 1).trim();
+                    if (version.startsWith(Constants.VERSION_ATTRIBUTE + "=")) {
+                        version = version.substring(Constants.VERSION_ATTRIBUTE.length() + 1);
+                    }
+                }
+                add(namespace, filter, id, version);
             } else {
                 break;
             }
         }
     }
 
-    void save(Path path) {
-        try {
-            Files.createDirectories(path);
-            Path file = path.resolve(Long.toString(this.bundleId));
-            Files.createDirectories(file.getParent());
-            try (BufferedWriter fw = Files.newBufferedWriter(file, TRUNCATE_EXISTING, WRITE, CREATE)) {
-                for (Map.Entry<String, Set<String>> wires : wiring.entrySet()) {
-                    String requirementId = wires.getKey();
-                    Set<String> capabilityIds = wires.getValue();
-
-                    for ( String capabilityId : capabilityIds ) {
-                        fw.append( requirementId ).append( '\n' );
-                        fw.append( capabilityId ).append( '\n' );
-                    }
+    private BundleWires(long bundleId) {
+        this.bundleId = bundleId;
+    }
+
+    private void add(String namespace, String filter, long id, String version) {
+        wiring.computeIfAbsent(namespace, k -> new HashMap<>())
+            .computeIfAbsent(filter != null ? filter : NO_FILTER, k -> new Wires())
+            .add(id, version);
+        if (HostNamespace.HOST_NAMESPACE.equals(namespace)) {
+            for (long host : hosts) {
+                if (host == id) {
+                    return;
                 }
             }
-        } catch (IOException e) {
-            throw new UncheckedIOException(e);
+            hosts = Arrays.copyOf(hosts, hosts.length + 1);
+            hosts[hosts.length - 1] = id;
         }
     }
 
-    void delete(Path path) {
-        try {
-            Files.createDirectories(path);
-            Path file = path.resolve(Long.toString(this.bundleId));
-            Files.deleteIfExists(file);
-        } catch (IOException e) {
-            throw new UncheckedIOException(e);
-        }
+    long[] getFragmentHosts() {
+        return hosts;
     }
 
-    long[] getFragmentHosts() {
-        return wiring.entrySet().stream() //
-            .filter(e -> e.getKey().startsWith(HostNamespace.HOST_NAMESPACE)) //
-            .map(Map.Entry::getValue) //
-            .flatMap( Set::stream ) //
-            .mapToLong(this::getBundleId).toArray();
+    /**
+     * @return the wires of the requirement, or <code>null</code> if the requirement is not wired
+     */
+    Wires getWires(Requirement requirement) {
+        String filter = requirement.getDirectives().get(Namespace.REQUIREMENT_FILTER_DIRECTIVE);
+        Map<String, Wires> wires = wiring.get(requirement.getNamespace());
+        return wires != null ? wires.get(filter != null ? filter : NO_FILTER) : null;
     }
-    
-    private long getBundleId(String value) {
-        int idx = value.indexOf(';');
-        if (idx > 0) {
-            value = value.substring(0, idx);
+
+    /**
+     * Check whether the capability is allowed for a requirement.
+     *
+     * @param wires the wires of the requirement, as returned by {@link #getWires(Requirement)}
+     * @param capabilityBundleId the id of the bundle providing the capability
+     * @param capability the capability
+     */
+    boolean isWired(Wires wires, long capabilityBundleId, BundleCapability capability) {
+        if (wires == null) {
+            // if the bundle has no wirings to the capability check if itself satisfies it
+            return capabilityBundleId == bundleId;
         }
-        return Long.parseLong(value.trim());
+        return wires.contains(capabilityBundleId, capability);
     }
 
-    Set<BundleCapability> filterCandidates( BundleRequirement requirement, Collection<BundleCapability> candidates) {
-        Set<String> wiredCapabilityIds = wiring.get(getRequirementId(requirement));
-
-        return candidates.stream() //
-            .filter( capability -> isCapabilityWiredToBundle( wiredCapabilityIds, capability ) ) //
-            .collect( Collectors.toSet() );
+    void write(DataOutput out, Map<String, Integer> strings) throws IOException {
+        out.writeLong(bundleId);
+        int count = 0;
+        for (Map<String, Wires> wires : wiring.values()) {
+            count += wires.size();
+        }
+        out.writeInt(count);
+        for (Map.Entry<String, Map<String, Wires>> ns : wiring.entrySet()) {
+            for (Map.Entry<String, Wires> flt : ns.getValue().entrySet()) {
+                Wires wires = flt.getValue();
+                out.writeInt(strings.get(ns.getKey()));
+                out.writeInt(strings.get(flt.getKey()));
+                out.writeInt(wires.size);
+                for (int i = 0; i < wires.size; i++) {
+                    out.writeLong(wires.bundleIds[i]);
+                    out.writeInt(wires.versions[i] != null ? strings.get(wires.versions[i]) : -1);
+                }
+            }
+        }
     }
 
-    private boolean isCapabilityWiredToBundle( Set<String> capabilityIds, BundleCapability capability) {
-        return
-            // is this bundle wired to the candidate capability?
-            (capabilityIds != null && capabilityIds.contains(getCapabilityId(capability)))
-            // if not and the bundle has no wirings to the capability check if itself satisfies it
-            || (capabilityIds == null && capability.getRevision().getBundle().getBundleId() == this.bundleId);
+    void collectStrings(Map<String, Integer> strings) {
+        for (Map.Entry<String, Map<String, Wires>> ns : wiring.entrySet()) {
+            strings.putIfAbsent(ns.getKey(), strings.size());
+            for (Map.Entry<String, Wires> flt : ns.getValue().entrySet()) {
+                strings.putIfAbsent(flt.getKey(), strings.size());
+                Wires wires = flt.getValue();
+                for (int i = 0; i < wires.size; i++) {
+                    if (wires.versions[i] != null) {
+                        strings.putIfAbsent(wires.versions[i], strings.size());
+                    }
+                }
+            }
+        }
     }
 
-    private String getRequirementId(Requirement requirement) {
-        String filter = requirement.getDirectives().get(Namespace.REQUIREMENT_FILTER_DIRECTIVE);
-        if (filter != null) {
-            return requirement.getNamespace() + "; " + filter;
-        } else {
-            return requirement.getNamespace();
+    static BundleWires read(ByteBuffer buffer, String[] strings) {
+        BundleWires bw = new BundleWires(buffer.getLong());
+        int count = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+            String namespace = strings[buffer.getInt()];
+            String filter = strings[buffer.getInt()];
+            int size = buffer.getInt();
+            for (int j = 0; j < size; j++) {
+                long id = buffer.getLong();
+                int version = buffer.getInt();
+                bw.add(namespace, filter, id, version >= 0 ? strings[version] : null);
+            }
         }
+        return bw;
     }
 
-    private String getCapabilityId(BundleCapability capability) {
-        StringBuilder sb = new StringBuilder(64);
-        sb.append(capability.getRevision().getBundle().getBundleId());
-        Object v = capability.getAttributes().get(Constants.VERSION_ATTRIBUTE);
-        if (v != null) {
-            sb.append("; version=").append(v.toString());
+    /**
+     * The capabilities a requirement is wired to, as bundle ids and versions.
+     */
+    static class Wires {
+        long[] bundleIds = new long[1];
+        String[] versions = new String[1];
+        int size;
+
+        void add(long id, String version) {
+            for (int i = 0; i < size; i++) {
+                if (bundleIds[i] == id && (version != null ? version.equals(versions[i]) : versions[i] == null)) {
+                    return;
+                }
+            }
+            if (size == bundleIds.length) {
+                bundleIds = Arrays.copyOf(bundleIds, size * 2);
+                versions = Arrays.copyOf(versions, size * 2);
+            }
+            bundleIds[size] = id;
+            versions[size] = version;
+            size++;
+        }
+
+        boolean contains(long id, BundleCapability capability) {
+            String version = null;
+            boolean versionComputed = false;
+            for (int i = 0; i < size; i++) {
+                if (bundleIds[i] == id) {
+                    if (!versionComputed) {
+                        Object v = capability.getAttributes().get(Constants.VERSION_ATTRIBUTE);
+                        version = v != null ? v.toString() : null;
+                        versionComputed = true;
+                    }
+                    if (version != null ? version.equals(versions[i]) : versions[i] == null) {
+                        return true;
+                    }
+                }
+            }
+            return false;
         }
-        return sb.toString();
     }
 }
@@ -22,10 +22,9 @@ import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.stream.Stream;
 
 import org.osgi.framework.Bundle;
 import org.osgi.framework.hooks.resolver.ResolverHook;
@@ -39,18 +38,42 @@ import org.osgi.resource.Capability;
 import org.osgi.resource.Resource;
 
 class StoredWiringResolver implements ResolverHook {
-    final Map<Long, BundleWires> wiring = new HashMap<>();
-    private Path path;
+    LongMap<BundleWires> wiring = new LongMap<>();
+    private final Path path;
+    private final Path legacyPath;
+    private boolean dirty;
 
-    StoredWiringResolver(Path path) {
+    /**
+     * @param path the wiring store file
+     * @param legacyPath the folder containing one text file per bundle, migrated to the store
+     */
+    StoredWiringResolver(Path path, Path legacyPath) {
         this.path = path;
+        this.legacyPath = legacyPath;
         load();
     }
 
-    void load() {
-        try {
-            Files.createDirectories(path);
-            Files.list(path).forEach(p -> {
+    synchronized void load() {
+        wiring = new LongMap<>();
+        dirty = false;
+        if (Files.isRegularFile(path)) {
+            try {
+                wiring = WiringStore.load(path);
+            } catch (IOException e) {
+                // the wiring will be computed again by the framework
+                deleteQuietly(path);
+            }
+        } else if (legacyPath != null && Files.isDirectory(legacyPath)) {
+            loadLegacy();
+            dirty = true;
+            save();
+            deleteQuietly(legacyPath);
+        }
+    }
+
+    private void loadLegacy() {
+        try (Stream<Path> files = Files.list(legacyPath)) {
+            files.forEach(p -> {
                 String name = p.getFileName().toString();
                 if (name.matches("[0-9]+")) {
                     long id = Long.parseLong(name);
@@ -66,6 +89,34 @@ class StoredWiringResolver implements ResolverHook {
         }
     }
 
+    /**
+     * Write the store if the wiring has changed since the last save.
+     */
+    synchronized void save() {
+        if (dirty) {
+            try {
+                WiringStore.save(path, wiring);
+                dirty = false;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> files = Files.walk(path)) {
+                    files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+                }
+            } else {
+                Files.deleteIfExists(path);
+            }
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
     @Override
     public void filterResolvable(Collection<BundleRevision> candidates) {
     }
@@ -77,43 +128,50 @@ class StoredWiringResolver implements ResolverHook {
 
     @Override
     public void filterMatches(BundleRequirement requirement, Collection<BundleCapability> candidates) {
-        long[] requirementSourceBundleIds = getRequirementBundleIds(requirement);
-
-        Set<BundleCapability> goodCapabilityCandidates = new HashSet<>();
-        for ( long requirementBundleId : requirementSourceBundleIds ) {
-            BundleWires bundleWires = wiring.get(requirementBundleId);
-
-            goodCapabilityCandidates.addAll( bundleWires.filterCandidates( requirement, candidates ) );
+        BundleRevision revision = requirement.getRevision();
+        BundleWires source = wiring.get(revision.getBundle().getBundleId());
+        if (source == null) {
+            return;
         }
-
-        candidates.retainAll( goodCapabilityCandidates );
-    }
-
-    @Override
-    public void end() {
-    }
-
-    /**
-     * Retrieves the id of the bundle declaring the requirement.
-     *
-     * In the case of fragment bundles the wiring is made from each Host bundle it is attached,
-     * except the osgi.wiring.host requirement itself.
-     *
-     * @param requirement the requirement being resolved
-     *
-     * @return the ids of the bundles owning the requirement
-     */
-    private long[] getRequirementBundleIds(BundleRequirement requirement) {
-        long sourceId = requirement.getRevision().getBundle().getBundleId();
-
-        if (isFragment(requirement.getRevision())
+        // In the case of fragment bundles the wiring is made from each Host bundle it is attached,
+        // except the osgi.wiring.host requirement itself.
+        if (isFragment(revision)
             && !requirement.getNamespace().equals(HostNamespace.HOST_NAMESPACE)
             && !requirement.getNamespace().equals(ExecutionEnvironmentNamespace.EXECUTION_ENVIRONMENT_NAMESPACE)) {
+            filterFragmentMatches(source.getFragmentHosts(), requirement, candidates);
+            return;
+        }
+        BundleWires.Wires wires = source.getWires(requirement);
+        for (Iterator<BundleCapability> it = candidates.iterator(); it.hasNext(); ) {
+            BundleCapability capability = it.next();
+            if (!source.isWired(wires, capability.getRevision().getBundle().getBundleId(), capability)) {
+                it.remove();
+            }
+        }
+    }
 
-            return wiring.get(sourceId).getFragmentHosts();
+    private void filterFragmentMatches(long[] hosts, BundleRequirement requirement, Collection<BundleCapability> candidates) {
+        BundleWires[] sources = new BundleWires[hosts.length];
+        BundleWires.Wires[] wires = new BundleWires.Wires[hosts.length];
+        for (int i = 0; i < hosts.length; i++) {
+            sources[i] = wiring.get(hosts[i]);
+            wires[i] = sources[i] != null ? sources[i].getWires(requirement) : null;
+        }
+        for (Iterator<BundleCapability> it = candidates.iterator(); it.hasNext(); ) {
+            BundleCapability capability = it.next();
+            long id = capability.getRevision().getBundle().getBundleId();
+            boolean wired = false;
+            for (int i = 0; i < hosts.length && !wired; i++) {
+                wired = sources[i] != null && sources[i].isWired(wires[i], id, capability);
+            }
+            if (!wired) {
+                it.remove();
+            }
         }
+    }
 
-        return new long[] { sourceId };
+    @Override
+    public void end() {
     }
 
     private static boolean isFragment(Resource resource) {
@@ -127,14 +185,17 @@ class StoredWiringResolver implements ResolverHook {
     }
 
     synchronized void update(Bundle bundle) {
-        BundleWires bw = new BundleWires(bundle);
-        bw.save(path);
-        wiring.put(bundle.getBundleId(), bw);
+        wiring.put(bundle.getBundleId(), new BundleWires(bundle));
+        dirty = true;
     }
 
     synchronized void delete(Bundle bundle) {
-        if (wiring.get(bundle.getBundleId()) != null) {
-            wiring.remove(bundle.getBundleId()).delete(path);
+        if (wiring.remove(bundle.getBundleId()) != null) {
+            dirty = true;
         }
     }
+
+    synchronized boolean isDirty() {
+        return dirty;
+    }
 }
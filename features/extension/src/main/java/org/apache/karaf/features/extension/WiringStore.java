@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.features.extension;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Single file storage of the wiring of all bundles.
+ * <p>
+ * The file starts with a table of the strings (namespaces, filters and
+ * versions) followed by the wires of each bundle referencing the strings by
+ * index.  It is read at once into a heap buffer, so that the file is not
+ * kept open or mapped, and written atomically by replacing the whole file.
+ */
+final class WiringStore {
+
+    private static final int MAGIC = 0x4B574952;
+    private static final int VERSION = 1;
+
+    private WiringStore() {
+    }
+
+    static LongMap<BundleWires> load(Path file) throws IOException {
+        return read(ByteBuffer.wrap(Files.readAllBytes(file)));
+    }
+
+    static LongMap<BundleWires> read(ByteBuffer buffer) throws IOException {
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("Unsupported wiring store format");
+            }
+            String[] strings = new String[buffer.getInt()];
+            for (int i = 0; i < strings.length; i++) {
+                byte[] bytes = new byte[buffer.getInt()];
+                buffer.get(bytes);
+                strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            int count = buffer.getInt();
+            LongMap<BundleWires> wiring = new LongMap<>(count);
+            for (int i = 0; i < count; i++) {
+                BundleWires bw = BundleWires.read(buffer, strings);
+                wiring.put(bw.bundleId, bw);
+            }
+            return wiring;
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupted wiring store", e);
+        }
+    }
+
+    static void save(Path file, LongMap<BundleWires> wiring) throws IOException {
+        List<BundleWires> bundles = new ArrayList<>(wiring.size());
+        wiring.forEach(bundles::add);
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        for (BundleWires bw : bundles) {
+            bw.collectStrings(strings);
+        }
+        Files.createDirectories(file.getParent());
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(strings.size());
+            for (String str : strings.keySet()) {
+                byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            out.writeInt(bundles.size());
+            for (BundleWires bw : bundles) {
+                bw.write(out, strings);
+            }
+        }
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -20,13 +20,13 @@ import static org.easymock.EasyMock.expect;
 import static org.junit.Assert.assertEquals;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.nio.ByteBuffer;
 import java.util.*;
-import java.util.Map.Entry;
 import java.util.stream.Collectors;
 import java.util.stream.LongStream;
 
@@ -48,7 +48,6 @@ import org.osgi.resource.Namespace;
 
 public class BundleWiresTest {
 
-    private static final Path BASE_PATH = new File("target/bundles").toPath();
     private static final String targetBundleVersion = "1.0.1";
     private static final int targetBundleId = 2;
     private static final String packageFilter = "(&(osgi.wiring.package=org.osgi.framework)(version>=1.6.0)(!(version>=2.0.0)))";
@@ -65,21 +64,29 @@ public class BundleWiresTest {
         Bundle bundle = wiredBundle(Arrays.asList(wire));
         c.replay();
         BundleWires bwires = new BundleWires(bundle);
-        bwires.save(BASE_PATH);
         c.verify();
-        Iterator<String> lines = Files.lines(new File("target/bundles/1").toPath()).iterator();
-        Assert.assertEquals(PackageNamespace.PACKAGE_NAMESPACE + "; " + packageFilter, lines.next());
-        Assert.assertEquals(targetBundleId + "; version=" + targetBundleVersion, lines.next());
-        bwires.delete(BASE_PATH);
+        assertWire(bwires, PackageNamespace.PACKAGE_NAMESPACE, packageFilter, targetBundleId, targetBundleVersion);
     }
     
     @Test
     public void testFromFile() throws IOException {
         BundleWires wires = readFromFile();
         assertEquals(1, wires.wiring.size());
-        Entry<String, Set<String>> wire = wires.wiring.entrySet().iterator().next();
-        assertEquals(PackageNamespace.PACKAGE_NAMESPACE + "; " + packageFilter, wire.getKey());
-        assertEquals(targetBundleId + "; version=" + targetBundleVersion, wire.getValue().iterator().next());
+        assertWire(wires, PackageNamespace.PACKAGE_NAMESPACE, packageFilter, targetBundleId, targetBundleVersion);
+    }
+
+    @Test
+    public void testWriteRead() throws IOException {
+        BundleWires wires = readFromFile();
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        wires.collectStrings(strings);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        wires.write(new DataOutputStream(baos), strings);
+
+        BundleWires read = BundleWires.read(ByteBuffer.wrap(baos.toByteArray()), strings.keySet().toArray(new String[0]));
+        assertEquals(1, read.bundleId);
+        assertEquals(1, read.wiring.size());
+        assertWire(read, PackageNamespace.PACKAGE_NAMESPACE, packageFilter, targetBundleId, targetBundleVersion);
     }
     
     @Test
@@ -93,7 +100,7 @@ public class BundleWiresTest {
         candidates.add(matchingCandidate);
         c.replay();
 
-        Set<BundleCapability> goodCandidates = wires.filterCandidates( req, candidates );
+        Set<BundleCapability> goodCandidates = filterCandidates( wires, req, candidates );
         assertEquals(1, goodCandidates.size());
         assertEquals(candidate1, goodCandidates.iterator().next());
         c.verify();
@@ -119,35 +126,19 @@ public class BundleWiresTest {
         c.replay();
 
         BundleWires bwires = new BundleWires(bundle);
-        bwires.save(BASE_PATH);
 
         c.verify();
 
         List<Long> hosts = LongStream.of( bwires.getFragmentHosts() ).boxed().collect( Collectors.toList());
 
+        Assert.assertEquals(3, hosts.size());
         Assert.assertTrue(hosts.contains( host1BundleId ));
         Assert.assertTrue(hosts.contains( host2BundleId ));
         Assert.assertTrue(hosts.contains( host3BundleId ));
 
-        Iterator<String> lines = Files.lines(new File("target/bundles/1").toPath()).iterator();
-
-        // the save order isn't guaranteed (a Set is used internally), so we need to collect the info first
-        Set<String> wirings = new HashSet<>();
-
-        Assert.assertEquals(HostNamespace.HOST_NAMESPACE + "; " + hostFilter, lines.next());
-        wirings.add( lines.next() );
-
-        Assert.assertEquals(HostNamespace.HOST_NAMESPACE + "; " + hostFilter, lines.next());
-        wirings.add( lines.next() );
-
-        Assert.assertEquals(HostNamespace.HOST_NAMESPACE + "; " + hostFilter, lines.next());
-        wirings.add( lines.next() );
-
-        Assert.assertTrue(wirings.contains( host1BundleId + "; version=" + host1Version ));
-        Assert.assertTrue(wirings.contains( host2BundleId + "; version=" + host2Version ));
-        Assert.assertTrue(wirings.contains( host3BundleId + "; version=" + host3Version ));
-
-        bwires.delete(BASE_PATH);
+        assertWire(bwires, HostNamespace.HOST_NAMESPACE, hostFilter, host1BundleId, host1Version);
+        assertWire(bwires, HostNamespace.HOST_NAMESPACE, hostFilter, host2BundleId, host2Version);
+        assertWire(bwires, HostNamespace.HOST_NAMESPACE, hostFilter, host3BundleId, host3Version);
     }
 
     @Test
@@ -168,13 +159,35 @@ public class BundleWiresTest {
 
         BundleWires wires = new BundleWires(bundle);
 
-        Set<BundleCapability> goodCandidates = wires.filterCandidates( req, candidates );
+        Set<BundleCapability> goodCandidates = filterCandidates( wires, req, candidates );
         assertEquals(1, goodCandidates.size());
         assertEquals(candidate1, goodCandidates.iterator().next());
 
         c.verify();
     }
 
+    private static Set<BundleCapability> filterCandidates(BundleWires bwires, BundleRequirement req, List<BundleCapability> candidates) {
+        BundleWires.Wires wires = bwires.getWires(req);
+        Set<BundleCapability> result = new HashSet<>();
+        for (BundleCapability candidate : candidates) {
+            if (bwires.isWired(wires, candidate.getRevision().getBundle().getBundleId(), candidate)) {
+                result.add(candidate);
+            }
+        }
+        return result;
+    }
+
+    private static void assertWire(BundleWires bwires, String namespace, String filter, long bundleId, String version) {
+        BundleWires.Wires wires = bwires.wiring.get(namespace).get(filter);
+        Assert.assertNotNull(wires);
+        for (int i = 0; i < wires.size; i++) {
+            if (wires.bundleIds[i] == bundleId && version.equals(wires.versions[i])) {
+                return;
+            }
+        }
+        Assert.fail("No wire to " + bundleId + "; version=" + version);
+    }
+
     private BundleWires readFromFile() throws IOException {
         File wiringsFile = new File("src/test/resources/wirings/1");
         BufferedReader reader = new BufferedReader(new FileReader(wiringsFile)); 
@@ -18,10 +18,11 @@ package org.apache.karaf.features.extension;
 
 import org.easymock.EasyMock;
 import org.easymock.IMocksControl;
-import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.Constants;
 import org.osgi.framework.namespace.IdentityNamespace;
@@ -31,6 +32,9 @@ import org.osgi.resource.Capability;
 import org.osgi.resource.Namespace;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -42,25 +46,32 @@ import static org.junit.Assert.assertEquals;
 
 public class StoredWiringResolverTest {
     private static final String TEST_RESOURCES_WIRINGS = "target/test-classes/wirings/";
+    private static final String PACKAGE_FILTER_ALT = "(&(osgi.wiring.package=org.osgi.framework.wiring)(version>=1.2.0)(!(version>=2.0.0)))";
 
     private static final int EXPECTED_STOCK_WIRINGS = 3;
     private static final String PACKAGE_FILTER = "(&(osgi.wiring.package=org.osgi.framework)(version>=1.6.0)(!(version>=2.0.0)))";
 
     private IMocksControl c;
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path store;
+
+    private Path legacy;
+
     private StoredWiringResolver wiringResolver;
 
     @Before
-    public void init() {
+    public void init() throws IOException {
         c = EasyMock.createControl();
 
-        wiringResolver = new StoredWiringResolver(new File(TEST_RESOURCES_WIRINGS).toPath());
-        wiringResolver.load();
-    }
-
-    @After
-    public void cleanup() {
-        new File(TEST_RESOURCES_WIRINGS + "25").delete();
+        store = folder.getRoot().toPath().resolve("wiring.bin");
+        legacy = folder.newFolder("wiring").toPath();
+        for (File file : new File(TEST_RESOURCES_WIRINGS).listFiles()) {
+            Files.copy(file.toPath(), legacy.resolve(file.getName()));
+        }
+        wiringResolver = new StoredWiringResolver(store, legacy);
     }
 
     @Test
@@ -70,6 +81,50 @@ public class StoredWiringResolverTest {
         Assert.assertTrue(wiringResolver.wiring.containsKey(1L));
         Assert.assertTrue(wiringResolver.wiring.containsKey(5L));
         Assert.assertTrue(wiringResolver.wiring.containsKey(9L));
+
+        // the legacy files have been migrated to the store
+        Assert.assertTrue(Files.isRegularFile(store));
+        Assert.assertFalse(Files.exists(legacy));
+        Assert.assertFalse(wiringResolver.isDirty());
+
+        StoredWiringResolver reloaded = new StoredWiringResolver(store, legacy);
+        Assert.assertEquals(EXPECTED_STOCK_WIRINGS, reloaded.wiring.size());
+        Assert.assertArrayEquals(new long[] { 1L }, reloaded.wiring.get(5L).getFragmentHosts());
+    }
+
+    @Test
+    public void loadCorrupted() throws IOException {
+        Files.write(store, new byte[] { 1, 2, 3 });
+
+        wiringResolver.load();
+
+        Assert.assertEquals(0, wiringResolver.wiring.size());
+        Assert.assertFalse(Files.exists(store));
+    }
+
+    @Test
+    public void saveLarge() throws IOException {
+        int bundles = 600;
+        Path large = folder.newFolder("large").toPath();
+        for (int id = 1; id <= bundles; id++) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 20; i++) {
+                sb.append("osgi.wiring.package; ").append(i % 2 == 0 ? PACKAGE_FILTER : PACKAGE_FILTER_ALT).append('\n');
+                sb.append((id + i) % bundles).append("; version=1.").append(i).append(".0\n");
+            }
+            Files.write(large.resolve(Integer.toString(id)), sb.toString().getBytes());
+        }
+        Path largeStore = folder.getRoot().toPath().resolve("large.bin");
+
+        StoredWiringResolver migrated = new StoredWiringResolver(largeStore, large);
+        StoredWiringResolver loaded = new StoredWiringResolver(largeStore, large);
+
+        Assert.assertEquals(bundles, migrated.wiring.size());
+        Assert.assertEquals(bundles, loaded.wiring.size());
+        for (long id = 1; id <= bundles; id++) {
+            Assert.assertEquals(migrated.wiring.get(id).wiring.keySet(), loaded.wiring.get(id).wiring.keySet());
+            Assert.assertEquals(2, loaded.wiring.get(id).wiring.get(PackageNamespace.PACKAGE_NAMESPACE).size());
+        }
     }
 
     @Test
@@ -127,14 +182,13 @@ public class StoredWiringResolverTest {
     @Test
     public void updateNew() {
         long newBundleId = 25L;
-        File file = new File(TEST_RESOURCES_WIRINGS + newBundleId);
 
         Bundle bundle = wiredMockBundle(newBundleId, Collections.emptyList() );
 
         c.replay();
 
         // preconditions
-        Assert.assertFalse(file.exists());
+        Assert.assertFalse(wiringResolver.isDirty());
         Assert.assertEquals(EXPECTED_STOCK_WIRINGS, wiringResolver.wiring.size());
         Assert.assertFalse(wiringResolver.wiring.containsKey(newBundleId));
 
@@ -143,15 +197,18 @@ public class StoredWiringResolverTest {
         c.verify();
 
         // assertions
-        Assert.assertTrue(file.exists());
+        Assert.assertTrue(wiringResolver.isDirty());
         Assert.assertEquals(EXPECTED_STOCK_WIRINGS + 1, wiringResolver.wiring.size());
         Assert.assertTrue(wiringResolver.wiring.containsKey(newBundleId));
+
+        wiringResolver.save();
+        Assert.assertFalse(wiringResolver.isDirty());
+        Assert.assertTrue(new StoredWiringResolver(store, legacy).wiring.containsKey(newBundleId));
     }
 
     @Test
     public void updateExisting() {
         long newBundleId = 9L;
-        File file = new File(TEST_RESOURCES_WIRINGS + newBundleId);
 
         BundleWire wire = mockBundleWire(PackageNamespace.PACKAGE_NAMESPACE, PACKAGE_FILTER,
                 mockBundleCapability(25L, "1.7.8"));
@@ -160,7 +217,6 @@ public class StoredWiringResolverTest {
         c.replay();
 
         // preconditions
-        Assert.assertTrue(file.exists());
         Assert.assertEquals(EXPECTED_STOCK_WIRINGS, wiringResolver.wiring.size());
         Assert.assertTrue(wiringResolver.wiring.containsKey(newBundleId));
 
@@ -169,33 +225,41 @@ public class StoredWiringResolverTest {
         c.verify();
 
         // assertions
-        Assert.assertTrue(file.exists());
+        Assert.assertTrue(wiringResolver.isDirty());
         Assert.assertEquals(EXPECTED_STOCK_WIRINGS, wiringResolver.wiring.size());
         Assert.assertTrue(wiringResolver.wiring.containsKey(newBundleId));
+
+        wiringResolver.save();
+        BundleWires.Wires wires = new StoredWiringResolver(store, legacy).wiring.get(newBundleId)
+                .wiring.get(PackageNamespace.PACKAGE_NAMESPACE).get(PACKAGE_FILTER);
+        assertEquals(1, wires.size);
+        assertEquals(25L, wires.bundleIds[0]);
+        assertEquals("1.7.8", wires.versions[0]);
     }
 
     @Test
     public void delete() {
         long newBundleId = 25L;
-        File file = new File(TEST_RESOURCES_WIRINGS + newBundleId);
 
         Bundle bundle = wiredMockBundle(newBundleId, Collections.emptyList() );
 
         c.replay();
 
         wiringResolver.update(bundle);
+        wiringResolver.save();
 
         // preconditions
-        Assert.assertTrue(file.exists());
+        Assert.assertTrue(new StoredWiringResolver(store, legacy).wiring.containsKey(newBundleId));
         Assert.assertEquals(EXPECTED_STOCK_WIRINGS + 1, wiringResolver.wiring.size());
         Assert.assertTrue(wiringResolver.wiring.containsKey(newBundleId));
 
         wiringResolver.delete(bundle);
+        wiringResolver.save();
 
         c.verify();
 
         // assertions
-        Assert.assertFalse(file.exists());
+        Assert.assertFalse(new StoredWiringResolver(store, legacy).wiring.containsKey(newBundleId));
         Assert.assertEquals(EXPECTED_STOCK_WIRINGS, wiringResolver.wiring.size());
         Assert.assertFalse(wiringResolver.wiring.containsKey(newBundleId));
     }
@@ -203,14 +267,12 @@ public class StoredWiringResolverTest {
     @Test
     public void deleteNonExisting() {
         long otherBundleId = 30L;
-        File file = new File(TEST_RESOURCES_WIRINGS + otherBundleId);
 
         Bundle bundle = mockBundle(otherBundleId);
 
         c.replay();
 
         // preconditions
-        Assert.assertFalse(file.exists());
         Assert.assertEquals(EXPECTED_STOCK_WIRINGS, wiringResolver.wiring.size());
         Assert.assertFalse(wiringResolver.wiring.containsKey(otherBundleId));
 
@@ -219,7 +281,7 @@ public class StoredWiringResolverTest {
         c.verify();
 
         // assertions
-        Assert.assertFalse(file.exists());
+        Assert.assertFalse(wiringResolver.isDirty());
         Assert.assertEquals(EXPECTED_STOCK_WIRINGS, wiringResolver.wiring.size());
         Assert.assertFalse(wiringResolver.wiring.containsKey(otherBundleId));
     }
@@ -165,6 +165,26 @@ public class ConfigProperties {
 
     private static final String KARAF_THREAD_MONITORING = "karaf.thread.monitoring";
 
+    /**
+     * Enable the startup profiler, see {@link StartupProfiler}.
+     */
+    static final String KARAF_STARTUP_PROFILE = "karaf.startup.profile";
+
+    /**
+     * The startup profile trace file, defaults to <code>${karaf.log}/startup-profile.json</code>.
+     */
+    static final String KARAF_STARTUP_PROFILE_FILE = "karaf.startup.profile.file";
+
+    /**
+     * Also record a JFR recording of the startup, next to the trace file.
+     */
+    static final String KARAF_STARTUP_PROFILE_JFR = "karaf.startup.profile.jfr";
+
+    /**
+     * The number of threads installing the startup bundles on a clean start, defaults to 1.
+     */
+    private static final String KARAF_STARTUP_INSTALL_THREADS = "karaf.startup.install.threads";
+
     private static final String PROPERTY_LOCK_CLASS_DEFAULT = SimpleFileLock.class.getName();
 
     private static final String SECURITY_PROVIDERS = "org.apache.karaf.security.providers";
@@ -210,6 +230,10 @@ public class ConfigProperties {
     String startupMessage;
     boolean delayConsoleStart;
     boolean threadMonitoring;
+    boolean startupProfile;
+    File startupProfileFile;
+    boolean startupProfileJfr;
+    int startupInstallThreads;
     
     public ConfigProperties() throws Exception {
         this.karafHome = Utils.getKarafHome(ConfigProperties.class, PROP_KARAF_HOME, ENV_KARAF_HOME);
@@ -271,6 +295,11 @@ public class ConfigProperties {
         this.startupMessage = props.getProperty(KARAF_STARTUP_MESSAGE, "Apache Karaf starting up. Press Enter to open the shell now...");
         this.delayConsoleStart = Boolean.parseBoolean(props.getProperty(KARAF_DELAY_CONSOLE, "false"));
         this.threadMonitoring = Boolean.parseBoolean(props.getProperty(KARAF_THREAD_MONITORING, "false"));
+        this.startupProfile = Boolean.parseBoolean(props.getProperty(KARAF_STARTUP_PROFILE, System.getProperty(KARAF_STARTUP_PROFILE, "false")));
+        String profileFile = props.getProperty(KARAF_STARTUP_PROFILE_FILE, System.getProperty(KARAF_STARTUP_PROFILE_FILE));
+        this.startupProfileFile = profileFile != null ? new File(profileFile) : new File(karafLog, "startup-profile.json");
+        this.startupInstallThreads = Integer.parseInt(props.getProperty(KARAF_STARTUP_INSTALL_THREADS, System.getProperty(KARAF_STARTUP_INSTALL_THREADS, "1")));
+        this.startupProfileJfr = Boolean.parseBoolean(props.getProperty(KARAF_STARTUP_PROFILE_JFR, System.getProperty(KARAF_STARTUP_PROFILE_JFR, "false")));
         System.setProperty(KARAF_DELAY_CONSOLE, Boolean.toString(this.delayConsoleStart));
     }
 
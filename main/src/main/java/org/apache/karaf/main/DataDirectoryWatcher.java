@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.main;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Watch the deletion of the data directory, so that the lock monitor does not have to
+ * wait for its next check to halt the instance.  The {@link WatchService} does not see the
+ * changes made by other hosts on shared file systems, so the directory is still checked
+ * when the wait times out.
+ */
+class DataDirectoryWatcher implements Closeable {
+
+    private static final Logger LOG = Logger.getLogger(DataDirectoryWatcher.class.getName());
+
+    private final File dataDir;
+    private final WatchService watcher;
+
+    DataDirectoryWatcher(File dataDir) {
+        this.dataDir = dataDir;
+        WatchService watcher = null;
+        File parent = dataDir.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            try {
+                watcher = FileSystems.getDefault().newWatchService();
+                parent.toPath().register(watcher, StandardWatchEventKinds.ENTRY_DELETE);
+            } catch (IOException | UnsupportedOperationException e) {
+                LOG.log(Level.FINE, "Unable to watch " + parent + ", falling back to polling", e);
+                closeQuietly(watcher);
+                watcher = null;
+            }
+        }
+        this.watcher = watcher;
+    }
+
+    boolean exists() {
+        return dataDir.isDirectory();
+    }
+
+    /**
+     * Wait until the data directory is deleted or the timeout expires.
+     *
+     * @param timeout The maximum time to wait in milliseconds.
+     * @return True if the data directory still exists.
+     * @throws InterruptedException If the calling thread has been interrupted.
+     */
+    boolean await(long timeout) throws InterruptedException {
+        if (watcher == null) {
+            Thread.sleep(timeout);
+            return exists();
+        }
+        Path name = dataDir.toPath().getFileName();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        for (long remaining = timeout; remaining > 0;
+                remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())) {
+            WatchKey key = watcher.poll(remaining, TimeUnit.MILLISECONDS);
+            if (key == null) {
+                break;
+            }
+            boolean deleted = false;
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW || name.equals(event.context())) {
+                    deleted = true;
+                }
+            }
+            key.reset();
+            if (deleted && !exists()) {
+                return false;
+            }
+        }
+        return exists();
+    }
+
+    @Override
+    public void close() {
+        closeQuietly(watcher);
+    }
+
+    private static void closeQuietly(WatchService watcher) {
+        if (watcher != null) {
+            try {
+                watcher.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+
+}
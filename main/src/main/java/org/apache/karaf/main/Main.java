@@ -38,13 +38,19 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.StringTokenizer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.apache.felix.utils.properties.Properties;
 import org.apache.karaf.info.ServerInfo;
 import org.apache.karaf.main.internal.Systemd;
+import org.apache.karaf.main.lock.BlockingLock;
 import org.apache.karaf.main.lock.Lock;
 import org.apache.karaf.main.lock.LockCallBack;
 import org.apache.karaf.main.lock.NoLock;
@@ -95,6 +101,7 @@ public class Main {
     private AutoCloseable shutdownThread;
     private Thread monitorThread;
     private URLClassLoader classLoader;
+    private StartupProfiler profiler;
 
     /**
      * <p>
@@ -235,6 +242,7 @@ public class Main {
     }
 
     public void launch() throws Exception {
+        long launchStart = System.nanoTime();
         boolean clean = Arrays.asList(args).contains("clean");
         boolean cleanall = Arrays.asList(args).contains("cleanall");
         if (clean || cleanall) {
@@ -269,6 +277,9 @@ public class Main {
             config = new ConfigProperties();
         }
         config.performInit();
+        if (config.startupProfile) {
+            profiler = new StartupProfiler(LOG, config.startupProfileFile, config.startupProfileJfr, config.defaultStartLevel, launchStart);
+        }
         if (config.delayConsoleStart) {
             System.out.println(config.startupMessage);
         }
@@ -286,15 +297,24 @@ public class Main {
         ArtifactResolver resolver = new SimpleMavenResolver(bundleDirs);
 
         // Start up the OSGI framework
-        classLoader = createClassLoader(resolver);
-        FrameworkFactory factory = loadFrameworkFactory(classLoader);
-        framework = factory.newFramework(config.props);
+        try (StartupProfiler.Phase phase = phase("class loader")) {
+            classLoader = createClassLoader(resolver);
+        }
+        try (StartupProfiler.Phase phase = phase("framework init")) {
+            FrameworkFactory factory = loadFrameworkFactory(classLoader);
+            framework = factory.newFramework(config.props);
 
-        setLogger();
+            setLogger();
 
-        framework.init();
+            framework.init();
+        }
+        if (profiler != null) {
+            profiler.listen(framework.getBundleContext());
+        }
         framework.getBundleContext().addFrameworkListener(lockCallback);
-        framework.start();
+        try (StartupProfiler.Phase phase = phase("framework start")) {
+            framework.start();
+        }
 
         FrameworkStartLevel sl = framework.adapt(FrameworkStartLevel.class);
         sl.setInitialBundleStartLevel(config.defaultBundleStartlevel);
@@ -305,7 +325,9 @@ public class Main {
             LOG.info("Installing and starting initial bundles");
             File startupPropsFile = new File(config.karafEtc, STARTUP_PROPERTIES_FILE_NAME);
             List<BundleInfo> bundles = readBundlesFromStartupProperties(startupPropsFile);        
-            installAndStartBundles(resolver, framework.getBundleContext(), bundles);
+            try (StartupProfiler.Phase phase = phase("startup bundles")) {
+                installAndStartBundles(resolver, framework.getBundleContext(), bundles);
+            }
             LOG.info("All initial bundles installed and set to start");
         }
 
@@ -313,7 +335,9 @@ public class Main {
         framework.getBundleContext().registerService(ServerInfo.class, serverInfo, null);
 
         activatorManager = new KarafActivatorManager(classLoader, framework);
-        activatorManager.startKarafActivators();
+        try (StartupProfiler.Phase phase = phase("karaf activators")) {
+            activatorManager.startKarafActivators();
+        }
         
         setStartLevel(config.lockStartLevel);
         // Progress bar
@@ -419,64 +443,81 @@ public class Main {
     private void doMonitor() throws Exception {
         lock = createLock();
         File dataDir = new File(System.getProperty(ConfigProperties.PROP_KARAF_DATA));
-        int livenessFailureCount = 0;
-        boolean locked = false;
-        while (!exiting) {
-            if (lock.lock()) {
-                livenessFailureCount = 0;
-                if (!locked) {
-                    lockCallback.lockAcquired();
-                    locked = true;
-                }
-                for (;;) {
-                    if (!dataDir.isDirectory()) {
-                        LOG.info("Data directory does not exist anymore, halting");
-                        framework.stop();
-                        System.exit(-1);
-                        return;
+        try (DataDirectoryWatcher watcher = new DataDirectoryWatcher(dataDir)) {
+            int livenessFailureCount = 0;
+            boolean locked = false;
+            while (!exiting) {
+                boolean waitForLock = false;
+                if (lock.lock()) {
+                    livenessFailureCount = 0;
+                    if (!locked) {
+                        lockCallback.lockAcquired();
+                        locked = true;
                     }
-                    if (!lock.isAlive() || exiting) {
-                        break;
-                    }
-                    try {
-                        Thread.sleep(config.lockDelay);
-                    } catch (InterruptedException e) {
-                        // Ignore
+                    for (;;) {
+                        if (!watcher.exists()) {
+                            LOG.info("Data directory does not exist anymore, halting");
+                            framework.stop();
+                            System.exit(-1);
+                            return;
+                        }
+                        if (!lock.isAlive() || exiting) {
+                            break;
+                        }
+                        try {
+                            // returns early if the data directory is deleted
+                            watcher.await(config.lockDelay);
+                        } catch (InterruptedException e) {
+                            // Ignore
+                        }
                     }
-                }
-                if (!exiting) {
-                    livenessFailureCount++;
-                    if (livenessFailureCount > config.lockLostThreshold) {
-                        locked = false;
-                        lockCallback.lockLost();
+                    if (!exiting) {
+                        livenessFailureCount++;
+                        if (livenessFailureCount > config.lockLostThreshold) {
+                            locked = false;
+                            lockCallback.lockLost();
+                        }
+                    } else {
+                        lockCallback.stopShutdownThread();
                     }
                 } else {
-                    lockCallback.stopShutdownThread();
-                }
-            } else {
-                if (locked) {
-                    livenessFailureCount++;
-                    if (livenessFailureCount <= config.lockLostThreshold) {
-                        lockCallback.waitingForLock();
+                    if (locked) {
+                        livenessFailureCount++;
+                        if (livenessFailureCount <= config.lockLostThreshold) {
+                            lockCallback.waitingForLock();
+                        } else {
+                            locked = false;
+                            lockCallback.lockLost();
+                        }
                     } else {
-                        locked = false;
-                        lockCallback.lockLost();
+                        if (config.lockSlaveBlock) {
+                            LOG.log(Level.SEVERE, "Can't lock, and lock is exclusive");
+                            System.err.println("Can't lock (another instance is running), and lock is exclusive");
+                            System.exit(5);
+                        } else {
+                            lockCallback.waitingForLock();
+                        }
                     }
-                } else {
-                    if (config.lockSlaveBlock) {
-                        LOG.log(Level.SEVERE, "Can't lock, and lock is exclusive");
-                        System.err.println("Can't lock (another instance is running), and lock is exclusive");
-                        System.exit(5);
+                    waitForLock = lock instanceof BlockingLock;
+                }
+                try {
+                    if (waitForLock) {
+                        // take over as soon as the lock is released instead of polling
+                        ((BlockingLock) lock).waitForLock();
                     } else {
-                        lockCallback.waitingForLock();
+                        Thread.sleep(config.lockDelay);
+                    }
+                } catch (InterruptedException e) {
+                    // Ignore
+                } catch (Exception e) {
+                    LOG.log(Level.WARNING, "Error while waiting for the lock, retrying in " + config.lockDelay + " ms", e);
+                    try {
+                        Thread.sleep(config.lockDelay);
+                    } catch (InterruptedException ie) {
+                        // Ignore
                     }
                 }
             }
-            try {
-                Thread.sleep(config.lockDelay);
-            } catch (InterruptedException e) {
-                // Ignore
-            }
         }
     }
 
@@ -595,34 +636,92 @@ public class Main {
     private void installAndStartBundles(ArtifactResolver resolver, BundleContext context, List<BundleInfo> bundles) {
         final URI home = !bundles.isEmpty() ? config.karafHome.toURI() : null;
         final URI base = !bundles.isEmpty() ? config.karafBase.toURI() : null;
-        for (BundleInfo bundleInfo : bundles) {
+        final List<Bundle> installed = new ArrayList<>();
+        int threads = Math.min(config.startupInstallThreads, bundles.size());
+        if (threads > 1) {
+            // install concurrently, the bundles are started afterwards in the startup.properties order
+            AtomicInteger count = new AtomicInteger();
+            ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+                Thread thread = new Thread(r, "Karaf Startup Installer-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
             try {
-                Bundle b;
-                if (bundleInfo.uri.toString().startsWith("reference:file:")) {
-                    URI temp = URI.create(bundleInfo.uri.toString().substring("reference:file:".length()));
-                    URI resolvedURI = resolver.resolve(temp);
-                    final String asciiString = resolvedURI.toASCIIString();
-                    if (asciiString.startsWith(home.toASCIIString()) ||
-                        asciiString.startsWith(base.toASCIIString())) {
-                        b = context.installBundle(URI.create("reference:" + asciiString).toString());
-                    } else {
-                        throw new IllegalArgumentException("Can't resolve bundle '" + bundleInfo.uri + "'");
+                List<Future<Bundle>> futures = new ArrayList<>();
+                for (BundleInfo bundleInfo : bundles) {
+                    futures.add(executor.submit(() -> installBundle(resolver, context, bundleInfo, home, base)));
+                }
+                for (int i = 0; i < bundles.size(); i++) {
+                    try {
+                        installed.add(futures.get(i).get());
+                    } catch (ExecutionException e) {
+                        throw installError(bundles.get(i), e.getCause());
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw installError(bundles.get(i), e);
                     }
-                } else {
-                    URI resolvedURI = resolver.resolve(bundleInfo.uri);
-                    b = context.installBundle(bundleInfo.uri.toString(), resolvedURI.toURL().openStream());
                 }
+            } finally {
+                executor.shutdownNow();
+            }
+        } else {
+            for (BundleInfo bundleInfo : bundles) {
+                try {
+                    installed.add(installBundle(resolver, context, bundleInfo, home, base));
+                } catch (Exception e) {
+                    throw installError(bundleInfo, e);
+                }
+            }
+        }
+        for (int i = 0; i < bundles.size(); i++) {
+            BundleInfo bundleInfo = bundles.get(i);
+            Bundle b = installed.get(i);
+            try {
                 b.adapt(BundleStartLevel.class).setStartLevel(bundleInfo.startLevel);
                 if (isNotFragment(b)) {
                     b.start();
                 }
-            } catch (Exception  e) {
-                throw new RuntimeException("Error installing bundle listed in " + STARTUP_PROPERTIES_FILE_NAME
-                        + " with url: " + bundleInfo.uri + " and startlevel: " + bundleInfo.startLevel, e);
+            } catch (Exception e) {
+                throw installError(bundleInfo, e);
             }
         }
     }
 
+    private Bundle installBundle(ArtifactResolver resolver, BundleContext context, BundleInfo bundleInfo, URI home, URI base) throws Exception {
+        try (StartupProfiler.Phase phase = phase("install " + bundleInfo.uri, "bundle")) {
+            if (bundleInfo.uri.toString().startsWith("reference:file:")) {
+                URI temp = URI.create(bundleInfo.uri.toString().substring("reference:file:".length()));
+                URI resolvedURI = resolver.resolve(temp);
+                final String asciiString = resolvedURI.toASCIIString();
+                if (asciiString.startsWith(home.toASCIIString()) ||
+                    asciiString.startsWith(base.toASCIIString())) {
+                    return context.installBundle(URI.create("reference:" + asciiString).toString());
+                } else {
+                    throw new IllegalArgumentException("Can't resolve bundle '" + bundleInfo.uri + "'");
+                }
+            } else {
+                URI resolvedURI = resolver.resolve(bundleInfo.uri);
+                return context.installBundle(bundleInfo.uri.toString(), resolvedURI.toURL().openStream());
+            }
+        }
+    }
+
+    private static RuntimeException installError(BundleInfo bundleInfo, Throwable cause) {
+        return new RuntimeException("Error installing bundle listed in " + STARTUP_PROPERTIES_FILE_NAME
+                + " with url: " + bundleInfo.uri + " and startlevel: " + bundleInfo.startLevel, cause);
+    }
+
+    /**
+     * Start a startup phase, or return <code>null</code> if the startup profiler is disabled.
+     */
+    private StartupProfiler.Phase phase(String name) {
+        return phase(name, "phase");
+    }
+
+    private StartupProfiler.Phase phase(String name, String category) {
+        return profiler != null ? profiler.begin(name, category) : null;
+    }
+
     private static boolean isNotFragment(Bundle b) {
         String fragmentHostHeader = b.getHeaders().get(Constants.FRAGMENT_HOST);
         return fragmentHostHeader == null || fragmentHostHeader.trim().length() == 0;
@@ -823,6 +922,9 @@ public class Main {
             /* KARAF-5798: instance PID should reflect the current running master */
             InstanceHelper.updateInstancePid(config.karafHome, config.karafBase, true);
             shutdownThread = InstanceHelper.setupShutdown(config, framework);
+            if (profiler != null) {
+                profiler.rampStarted();
+            }
             setStartLevel(config.defaultStartLevel);
         }
 
@@ -0,0 +1,452 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.main;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.Constants;
+import org.osgi.framework.FrameworkEvent;
+import org.osgi.framework.FrameworkListener;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceListener;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.SynchronousBundleListener;
+import org.osgi.framework.startlevel.BundleStartLevel;
+import org.osgi.framework.startlevel.FrameworkStartLevel;
+
+/**
+ * Records a timeline of the container startup: the launcher phases, the
+ * installation and activation of each bundle, the start levels, the
+ * Blueprint containers and SCR components registration and the boot features
+ * stages.  The timeline is written in the Chrome trace event format (which can
+ * be loaded in <code>chrome://tracing</code> or Perfetto) once the boot
+ * features have been installed, and can optionally be completed by a JFR
+ * recording of the same period.
+ */
+class StartupProfiler implements SynchronousBundleListener, FrameworkListener, ServiceListener {
+
+    static final String BOOT_FINISHED = "org.apache.karaf.features.BootFinished";
+    static final String BOOT_FEATURES_STAGES = "boot.features.stages";
+    static final String BOOT_FEATURES_STARTS = "boot.features.starts";
+    static final String BOOT_FEATURES_DURATIONS = "boot.features.durations";
+    static final String FEATURES_BUNDLE = "org.apache.karaf.features.core";
+    static final String BLUEPRINT_CONTAINER = "org.osgi.service.blueprint.container.BlueprintContainer";
+    static final String BLUEPRINT_BUNDLE = "osgi.blueprint.container.symbolicname";
+    static final String COMPONENT_NAME = "component.name";
+
+    private static final long TID_START_LEVELS = -1;
+    private static final long TID_EXTENDERS = -2;
+    private static final long TID_FEATURES = -3;
+
+    private final Logger log;
+    private final File file;
+    private final File jfrFile;
+    private final int defaultStartLevel;
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final long originNanos;
+    private final List<String> events = new ArrayList<>();
+    private final Map<Long, String> threadNames = new TreeMap<>();
+    private final Map<Long, long[]> starting = new ConcurrentHashMap<>();
+    private final Map<Long, Long> started = new ConcurrentHashMap<>();
+    private final Map<Integer, long[]> startLevels = new TreeMap<>();
+    private Object recording;
+    private BundleContext context;
+    private long rampStart;
+    private boolean rampDone;
+    private boolean bootDone;
+    private boolean done;
+
+    /**
+     * @param log the logger
+     * @param file the trace file
+     * @param jfr <code>true</code> to also record a JFR recording next to the trace file
+     * @param defaultStartLevel the start level the container is ready at
+     * @param launchStart the {@link System#nanoTime()} at which the launcher started to initialize
+     */
+    StartupProfiler(Logger log, File file, boolean jfr, int defaultStartLevel, long launchStart) {
+        this.log = log;
+        this.file = file;
+        this.defaultStartLevel = defaultStartLevel;
+        // use the JVM start as origin of the timeline
+        long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+        this.originNanos = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(uptime);
+        this.jfrFile = jfr ? new File(file.getParentFile(), file.getName().replaceFirst("\\.json$", "") + ".jfr") : null;
+        if (jfr) {
+            try {
+                recording = Jfr.start();
+            } catch (Throwable t) {
+                log.log(Level.WARNING, "Unable to start the startup JFR recording", t);
+            }
+        }
+        System.setProperty(ConfigProperties.KARAF_STARTUP_PROFILE_FILE, file.getAbsolutePath());
+        record("jvm", "phase", originNanos, launchStart, -1);
+        record("init", "phase", launchStart, System.nanoTime(), -1);
+    }
+
+    /**
+     * Start a launcher phase on the current thread.
+     *
+     * @param name the phase name
+     * @param category the trace category
+     * @return the phase to close
+     */
+    Phase begin(String name, String category) {
+        return new Phase(name, category);
+    }
+
+    /**
+     * Start listening to the framework events.
+     *
+     * @param context the system bundle context
+     */
+    synchronized void listen(BundleContext context) {
+        this.context = context;
+        context.addBundleListener(this);
+        context.addFrameworkListener(this);
+        try {
+            context.addServiceListener(this, "(|(" + Constants.OBJECTCLASS + "=" + BLUEPRINT_CONTAINER + ")"
+                    + "(" + Constants.OBJECTCLASS + "=" + BOOT_FINISHED + ")"
+                    + "(" + COMPONENT_NAME + "=*))");
+        } catch (InvalidSyntaxException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Mark the beginning of the start level ramp, once the lock has been acquired.
+     */
+    synchronized void rampStarted() {
+        rampStart = System.nanoTime();
+        instant("lock acquired", "phase", rampStart);
+    }
+
+    @Override
+    public void bundleChanged(BundleEvent event) {
+        Bundle bundle = event.getBundle();
+        long now = System.nanoTime();
+        switch (event.getType()) {
+            case BundleEvent.INSTALLED:
+                instant("install " + name(bundle), "bundle", now);
+                break;
+            case BundleEvent.RESOLVED:
+                instant("resolve " + name(bundle), "bundle", now);
+                break;
+            case BundleEvent.STARTING:
+                starting.put(bundle.getBundleId(), new long[] { now, cpu() });
+                break;
+            case BundleEvent.STARTED:
+                long[] start = starting.remove(bundle.getBundleId());
+                if (start != null) {
+                    record("start " + name(bundle), "bundle", start[0], now, start[1] >= 0 ? cpu() - start[1] : -1);
+                    started.put(bundle.getBundleId(), now);
+                    startLevel(bundle, start[0], now);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public void serviceChanged(ServiceEvent event) {
+        if (event.getType() != ServiceEvent.REGISTERED) {
+            return;
+        }
+        ServiceReference<?> reference = event.getServiceReference();
+        long now = System.nanoTime();
+        String[] classes = (String[]) reference.getProperty(Constants.OBJECTCLASS);
+        for (String clazz : classes) {
+            if (BOOT_FINISHED.equals(clazz)) {
+                bootFinished(reference, now);
+                return;
+            }
+        }
+        Bundle bundle = reference.getBundle();
+        Long start = bundle != null ? started.get(bundle.getBundleId()) : null;
+        Object component = reference.getProperty(COMPONENT_NAME);
+        String name = component != null
+                ? "component " + component
+                : "blueprint " + reference.getProperty(BLUEPRINT_BUNDLE);
+        if (start != null) {
+            record(name, "component", start, now, -1, TID_EXTENDERS);
+        } else {
+            instant(name, "component", now);
+        }
+    }
+
+    @Override
+    public void frameworkEvent(FrameworkEvent event) {
+        if (event.getType() == FrameworkEvent.STARTLEVEL_CHANGED) {
+            int level = event.getBundle().adapt(FrameworkStartLevel.class).getStartLevel();
+            if (level >= defaultStartLevel) {
+                long now = System.nanoTime();
+                boolean ready;
+                synchronized (this) {
+                    if (rampDone) {
+                        return;
+                    }
+                    rampDone = true;
+                    if (rampStart > 0) {
+                        record("start level ramp", "phase", rampStart, now, -1, TID_START_LEVELS);
+                    }
+                    // the container is not ready until the boot features are installed
+                    ready = bootDone || !hasFeatures();
+                }
+                if (ready) {
+                    finish(now);
+                } else {
+                    write();
+                }
+            }
+        }
+    }
+
+    private boolean hasFeatures() {
+        for (Bundle bundle : context.getBundles()) {
+            if (FEATURES_BUNDLE.equals(bundle.getSymbolicName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void bootFinished(ServiceReference<?> reference, long now) {
+        Object stages = reference.getProperty(BOOT_FEATURES_STAGES);
+        Object starts = reference.getProperty(BOOT_FEATURES_STARTS);
+        Object durations = reference.getProperty(BOOT_FEATURES_DURATIONS);
+        if (stages instanceof String[] && starts instanceof long[] && durations instanceof long[]) {
+            long offset = System.currentTimeMillis() - TimeUnit.NANOSECONDS.toMillis(now);
+            for (int i = 0; i < ((String[]) stages).length; i++) {
+                long start = TimeUnit.MILLISECONDS.toNanos(((long[]) starts)[i] - offset);
+                long end = start + TimeUnit.MILLISECONDS.toNanos(((long[]) durations)[i]);
+                record("features " + ((String[]) stages)[i], "features", start, end, -1, TID_FEATURES);
+            }
+        }
+        boolean ready;
+        synchronized (this) {
+            bootDone = true;
+            ready = rampDone;
+        }
+        if (ready) {
+            finish(now);
+        }
+    }
+
+    private void finish(long now) {
+        synchronized (this) {
+            if (done) {
+                return;
+            }
+            done = true;
+            record("startup", "ready", originNanos, now, -1, TID_START_LEVELS);
+            context.removeBundleListener(this);
+            context.removeFrameworkListener(this);
+            context.removeServiceListener(this);
+        }
+        write();
+        if (recording != null) {
+            try {
+                Jfr.stop(recording, jfrFile);
+                log.info("Startup JFR recording written to " + jfrFile);
+            } catch (Throwable t) {
+                log.log(Level.WARNING, "Unable to write the startup JFR recording", t);
+            }
+            recording = null;
+        }
+        log.info("Startup profile written to " + file);
+    }
+
+    private void startLevel(Bundle bundle, long start, long end) {
+        BundleStartLevel bsl = bundle.adapt(BundleStartLevel.class);
+        if (bsl == null) {
+            return;
+        }
+        synchronized (this) {
+            long[] span = startLevels.computeIfAbsent(bsl.getStartLevel(), l -> new long[] { start, end, 0 });
+            span[0] = Math.min(span[0], start);
+            span[1] = Math.max(span[1], end);
+            span[2]++;
+        }
+    }
+
+    private static String name(Bundle bundle) {
+        return bundle.getSymbolicName() + " [" + bundle.getBundleId() + "]";
+    }
+
+    private long cpu() {
+        return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : -1;
+    }
+
+    private void record(String name, String category, long start, long end, long cpu) {
+        Thread thread = Thread.currentThread();
+        synchronized (this) {
+            threadNames.putIfAbsent(thread.getId(), thread.getName());
+        }
+        record(name, category, start, end, cpu, thread.getId());
+    }
+
+    private synchronized void record(String name, String category, long start, long end, long cpu, long tid) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"name\":");
+        quote(sb, name);
+        sb.append(",\"cat\":\"").append(category).append("\",\"ph\":\"X\",\"pid\":1,\"tid\":").append(tid)
+                .append(",\"ts\":").append(micros(start))
+                .append(",\"dur\":").append(Math.max(0, TimeUnit.NANOSECONDS.toMicros(end - start)));
+        if (cpu >= 0) {
+            sb.append(",\"args\":{\"cpu\":").append(TimeUnit.NANOSECONDS.toMicros(cpu)).append('}');
+        }
+        sb.append('}');
+        events.add(sb.toString());
+    }
+
+    private void instant(String name, String category, long time) {
+        Thread thread = Thread.currentThread();
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"name\":");
+        quote(sb, name);
+        sb.append(",\"cat\":\"").append(category).append("\",\"ph\":\"i\",\"s\":\"t\",\"pid\":1,\"tid\":")
+                .append(thread.getId()).append(",\"ts\":").append(micros(time)).append('}');
+        synchronized (this) {
+            threadNames.putIfAbsent(thread.getId(), thread.getName());
+            events.add(sb.toString());
+        }
+    }
+
+    private long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos - originNanos);
+    }
+
+    private void write() {
+        List<String> all = new ArrayList<>();
+        synchronized (this) {
+            for (Map.Entry<Integer, long[]> level : startLevels.entrySet()) {
+                long[] span = level.getValue();
+                StringBuilder sb = new StringBuilder();
+                sb.append("{\"name\":\"start level ").append(level.getKey())
+                        .append("\",\"cat\":\"startlevel\",\"ph\":\"X\",\"pid\":1,\"tid\":").append(TID_START_LEVELS)
+                        .append(",\"ts\":").append(micros(span[0]))
+                        .append(",\"dur\":").append(TimeUnit.NANOSECONDS.toMicros(span[1] - span[0]))
+                        .append(",\"args\":{\"bundles\":").append(span[2]).append("}}");
+                all.add(sb.toString());
+            }
+            threadNames.put(TID_START_LEVELS, "Start levels");
+            threadNames.put(TID_EXTENDERS, "Blueprint / SCR");
+            threadNames.put(TID_FEATURES, "Boot features");
+            for (Map.Entry<Long, String> thread : threadNames.entrySet()) {
+                StringBuilder sb = new StringBuilder();
+                sb.append("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":").append(thread.getKey())
+                        .append(",\"args\":{\"name\":");
+                quote(sb, thread.getValue());
+                sb.append("}}");
+                all.add(sb.toString());
+            }
+            all.addAll(events);
+        }
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try {
+            file.getParentFile().mkdirs();
+            try (Writer writer = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8)) {
+                writer.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[\n");
+                for (int i = 0; i < all.size(); i++) {
+                    writer.write(all.get(i));
+                    writer.write(i < all.size() - 1 ? ",\n" : "\n");
+                }
+                writer.write("]}\n");
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Unable to write the startup profile to " + file, e);
+        }
+    }
+
+    private static void quote(StringBuilder sb, String str) {
+        sb.append('"');
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+
+    /**
+     * A launcher phase, recorded with the CPU time of the current thread.
+     */
+    class Phase implements AutoCloseable {
+
+        private final String name;
+        private final String category;
+        private final long start;
+        private final long cpu;
+
+        Phase(String name, String category) {
+            this.name = name;
+            this.category = category;
+            this.start = System.nanoTime();
+            this.cpu = cpu();
+        }
+
+        @Override
+        public void close() {
+            record(name, category, start, System.nanoTime(), cpu >= 0 ? cpu() - cpu : -1);
+        }
+    }
+
+    /**
+     * Isolates the JFR classes which may not be available in the runtime.
+     */
+    private static class Jfr {
+
+        static Object start() throws Exception {
+            jdk.jfr.Recording recording = new jdk.jfr.Recording(jdk.jfr.Configuration.getConfiguration("profile"));
+            recording.setName("Karaf startup");
+            recording.start();
+            return recording;
+        }
+
+        static void stop(Object recording, File file) throws IOException {
+            try (jdk.jfr.Recording r = (jdk.jfr.Recording) recording) {
+                r.stop();
+                r.dump(file.toPath());
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.main.lock;
+
+/**
+ * A lock which can wait for the lock to be released by another instance, instead of
+ * being polled every <code>karaf.lock.delay</code>.
+ */
+public interface BlockingLock extends Lock {
+
+    /**
+     * Block until the lock is acquired.  Once this method returned, {@link #lock()} returns true.
+     *
+     * @throws InterruptedException If the calling thread has been interrupted while waiting.
+     * @throws Exception If the lock can't be acquired.
+     */
+    void waitForLock() throws Exception;
+
+}
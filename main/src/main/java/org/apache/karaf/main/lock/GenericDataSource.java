@@ -118,7 +118,7 @@ public class GenericDataSource implements DataSource {
             public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
                 if (method.getName().equals("close") && method.getParameterCount() == 0) {
                     closed = true;
-                    if (!cache.offer(con)) {
+                    if (cache == null || !cache.offer(con)) {
                         con.close();
                     }
                     return null;
@@ -0,0 +1,492 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.main.lock;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.sql.DataSource;
+
+import org.apache.felix.utils.properties.Properties;
+import org.apache.karaf.main.ConfigProperties;
+import org.apache.karaf.main.util.BootstrapLogManager;
+
+/**
+ * <p>A lease based master/slave lock using JDBC.</p>
+ *
+ * <p>The lease table contains a single row per cluster, holding the current owner, a fencing token
+ * incremented on each acquisition and the lease expiry time:</p>
+ *
+ * <pre>
+ *   CREATE TABLE KARAF_LEASE ( NAME VARCHAR(64) NOT NULL, OWNER VARCHAR(128), TOKEN BIGINT, EXPIRY BIGINT )
+ * </pre>
+ *
+ * <p>Acquiring, renewing and releasing the lease are each done with a single conditional
+ * <code>UPDATE</code> statement on a persistent connection, so a slave only executes one statement per
+ * <code>karaf.lock.delay</code> and a master one statement per renewal:</p>
+ *
+ * <pre>
+ *   UPDATE KARAF_LEASE SET OWNER = ?, TOKEN = TOKEN + 1, EXPIRY = now + lease WHERE NAME = ? AND EXPIRY &lt; now
+ *   UPDATE KARAF_LEASE SET EXPIRY = now + lease WHERE NAME = ? AND OWNER = ? AND TOKEN = ?
+ * </pre>
+ *
+ * <p>A slave takes over as soon as the lease of a dead master has expired, i.e. within one lease period.
+ * The master checks the validity of its lease against the monotonic clock from the time the last successful
+ * renewal was sent: transient database failures are tolerated as long as the lease is valid, and the lock is
+ * reported as lost as soon as it has expired or has been taken by another instance, so that
+ * <code>karaf.lock.lostThreshold</code> can be left to 0. The expiry written in the table uses the
+ * wall clock, so the clocks of the instances must be synchronized, the maximum skew can be configured with
+ * <code>karaf.lock.jdbc.lease.maxClockSkew</code>.</p>
+ *
+ * <p>The lease acquisitions and renewals are exposed through JMX, see {@link LeaseJDBCLockMBean}.</p>
+ */
+public class LeaseJDBCLock implements Lock, LeaseJDBCLockMBean {
+
+    final Logger LOG = Logger.getLogger(this.getClass().getName());
+
+    public static final String PROPERTY_LOCK_JDBC_LEASE_TIME      = "karaf.lock.jdbc.lease";
+    public static final String PROPERTY_LOCK_JDBC_LEASE_CLOCK_SKEW = "karaf.lock.jdbc.lease.maxClockSkew";
+
+    public static final String DEFAULT_TABLE = "KARAF_LEASE";
+    public static final String DEFAULT_CLOCK_SKEW = "0";
+
+    private static final int MAX_OWNER_LENGTH = 128;
+
+    final LeaseStatements statements;
+    final DataSource dataSource;
+    final String owner;
+    final long leaseTime;
+    final long clockSkew;
+    final int validTimeout;
+    final int queryTimeout;
+
+    private Connection connection;
+    private boolean initialized;
+    private PreparedStatement acquireStatement;
+    private PreparedStatement renewStatement;
+    private ObjectName objectName;
+
+    // Current lease, the token is 0 when the lease is not held
+    private volatile long token;
+    private volatile long validUntil;
+
+    // Monotonic time of the first acquisition attempt
+    private long acquireStart = -1;
+
+    // Statistics
+    private volatile long acquisitions;
+    private volatile long lastAcquisitionLatency;
+    private volatile long renewals;
+    private volatile long renewalFailures;
+    private volatile long leasesLost;
+    private volatile long renewalTime;
+    private volatile long maxRenewalTime;
+    private volatile long statementCount;
+    private volatile long connectionCount;
+
+    public LeaseJDBCLock(Properties props) {
+        BootstrapLogManager.configureLogger(LOG);
+        String url = props.getProperty(GenericJDBCLock.PROPERTY_LOCK_URL);
+        String driver = props.getProperty(GenericJDBCLock.PROPERTY_LOCK_JDBC_DRIVER);
+        String user = props.getProperty(GenericJDBCLock.PROPERTY_LOCK_JDBC_USER, GenericJDBCLock.DEFAULT_USER);
+        String password = props.getProperty(GenericJDBCLock.PROPERTY_LOCK_JDBC_PASSWORD, GenericJDBCLock.DEFAULT_PASSWORD);
+        String table = props.getProperty(GenericJDBCLock.PROPERTY_LOCK_JDBC_TABLE, DEFAULT_TABLE);
+        String clusterName = props.getProperty(GenericJDBCLock.PROPERTY_LOCK_JDBC_CLUSTERNAME, GenericJDBCLock.DEFAULT_CLUSTERNAME);
+        int lockDelay = Integer.parseInt(props.getProperty(ConfigProperties.PROPERTY_LOCK_DELAY, ConfigProperties.DEFAULT_LOCK_DELAY));
+        this.leaseTime = Long.parseLong(props.getProperty(PROPERTY_LOCK_JDBC_LEASE_TIME, Long.toString(3L * lockDelay)));
+        this.clockSkew = Long.parseLong(props.getProperty(PROPERTY_LOCK_JDBC_LEASE_CLOCK_SKEW, DEFAULT_CLOCK_SKEW));
+        this.validTimeout = Integer.parseInt(props.getProperty(GenericJDBCLock.PROPERTY_LOCK_JDBC_VALID_TIMEOUT, GenericJDBCLock.DEFAULT_VALID_TIMEOUT));
+        this.queryTimeout = (int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(leaseTime));
+        if (leaseTime <= clockSkew) {
+            throw new IllegalArgumentException("The lease time (" + leaseTime + " ms) must be greater than the maximum clock skew (" + clockSkew + " ms)");
+        }
+
+        String name = props.getProperty("karaf.name", System.getProperty("karaf.name", "karaf"));
+        String owner = name + "-" + UUID.randomUUID().toString().substring(0, 8);
+        this.owner = owner.length() > MAX_OWNER_LENGTH ? owner.substring(owner.length() - MAX_OWNER_LENGTH) : owner;
+
+        this.statements = new LeaseStatements(table, clusterName);
+        this.dataSource = new GenericDataSource(driver, url, user, password, false, validTimeout);
+        init();
+        registerMBean(name);
+    }
+
+    void init() {
+        try {
+            getConnection();
+        } catch (Exception e) {
+            LOG.log(Level.SEVERE, "Error occurred while attempting to obtain connection", e);
+        }
+    }
+
+    /**
+     * Create the lease table and the cluster row if needed.  Concurrent creations by other
+     * instances are ignored.
+     */
+    void createSchema(Connection connection) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        String product = metaData.getDatabaseProductName();
+        if (product != null && product.toLowerCase().contains("oracle")) {
+            statements.setNumberColumnDataType("NUMBER(20)");
+        }
+        if (!tableExists(metaData)) {
+            try (Statement statement = connection.createStatement()) {
+                String stmt = statements.getCreateTableStatement();
+                LOG.info("Executing statement: " + stmt);
+                statement.execute(stmt);
+            } catch (SQLException e) {
+                LOG.log(Level.FINE, "Could not create lease table, assuming it has been created by another instance", e);
+            }
+        }
+        try (PreparedStatement count = connection.prepareStatement(statements.getCountStatement())) {
+            count.setString(1, statements.getClusterName());
+            try (ResultSet rs = count.executeQuery()) {
+                if (rs.next() && rs.getInt(1) > 0) {
+                    return;
+                }
+            }
+        }
+        try (PreparedStatement insert = connection.prepareStatement(statements.getInsertStatement())) {
+            insert.setString(1, statements.getClusterName());
+            insert.executeUpdate();
+        }
+    }
+
+    private boolean tableExists(DatabaseMetaData metaData) throws SQLException {
+        String table = statements.getTableName();
+        for (String name : new String[] { table, table.toUpperCase(), table.toLowerCase() }) {
+            try (ResultSet rs = metaData.getTables(null, null, name, new String[] {"TABLE"})) {
+                if (rs.next()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Acquire the lease if this instance is not the master, or renew it.
+     *
+     * @see org.apache.karaf.main.lock.Lock#lock()
+     */
+    public synchronized boolean lock() throws Exception {
+        if (token != 0) {
+            return renew();
+        }
+        long start = nanoTime();
+        if (acquireStart < 0) {
+            acquireStart = start;
+        }
+        try {
+            if (acquireStatement == null) {
+                acquireStatement = prepare(statements.getAcquireStatement());
+            }
+            long now = getCurrentTimeMillis();
+            acquireStatement.setString(1, owner);
+            acquireStatement.setLong(2, now + leaseTime);
+            acquireStatement.setString(3, statements.getClusterName());
+            acquireStatement.setLong(4, now);
+            statementCount++;
+            if (acquireStatement.executeUpdate() == 0) {
+                return false;
+            }
+            long newToken = readToken();
+            validUntil = start + TimeUnit.MILLISECONDS.toNanos(leaseTime - clockSkew);
+            token = newToken;
+            acquisitions++;
+            lastAcquisitionLatency = TimeUnit.NANOSECONDS.toMillis(nanoTime() - acquireStart);
+            acquireStart = -1;
+            LOG.info("Lease acquired by " + owner + " with token " + newToken);
+            return true;
+        } catch (Exception e) {
+            LOG.log(Level.WARNING, "Failed to acquire database lease", e);
+            checkConnection();
+            return false;
+        }
+    }
+
+    private long readToken() throws Exception {
+        try (PreparedStatement select = prepare(statements.getTokenStatement())) {
+            select.setString(1, statements.getClusterName());
+            select.setString(2, owner);
+            statementCount++;
+            try (ResultSet rs = select.executeQuery()) {
+                if (!rs.next()) {
+                    throw new SQLException("Lease row not found for cluster " + statements.getClusterName());
+                }
+                return rs.getLong(1);
+            }
+        }
+    }
+
+    /**
+     * Extend the lease.  The lease is lost if it is held by another instance, or if it has
+     * expired while the database could not be reached.
+     */
+    private boolean renew() {
+        long start = nanoTime();
+        try {
+            if (renewStatement == null) {
+                renewStatement = prepare(statements.getRenewStatement());
+            }
+            renewStatement.setLong(1, getCurrentTimeMillis() + leaseTime);
+            renewStatement.setString(2, statements.getClusterName());
+            renewStatement.setString(3, owner);
+            renewStatement.setLong(4, token);
+            statementCount++;
+            if (renewStatement.executeUpdate() == 0) {
+                LOG.warning("Lease with token " + token + " has been taken by another instance");
+                lost();
+                return false;
+            }
+            // the token did not change, so no other instance acquired the lease in the meantime
+            long end = nanoTime();
+            validUntil = start + TimeUnit.MILLISECONDS.toNanos(leaseTime - clockSkew);
+            long time = TimeUnit.NANOSECONDS.toMicros(end - start);
+            renewals++;
+            renewalTime += time;
+            maxRenewalTime = Math.max(maxRenewalTime, time);
+            return true;
+        } catch (Exception e) {
+            renewalFailures++;
+            checkConnection();
+            if (nanoTime() - validUntil < 0) {
+                LOG.log(Level.WARNING, "Failed to renew database lease, the lease is still valid", e);
+                return true;
+            }
+            LOG.log(Level.SEVERE, "Failed to renew database lease, the lease has expired", e);
+            lost();
+            return false;
+        }
+    }
+
+    private void lost() {
+        token = 0;
+        leasesLost++;
+    }
+
+    /**
+     * Release the lease so that another instance can acquire it immediately.
+     *
+     * @see org.apache.karaf.main.lock.Lock#release()
+     */
+    public synchronized void release() throws Exception {
+        try {
+            if (token != 0) {
+                try (PreparedStatement release = prepare(statements.getReleaseStatement())) {
+                    release.setString(1, statements.getClusterName());
+                    release.setString(2, owner);
+                    release.setLong(3, token);
+                    statementCount++;
+                    release.executeUpdate();
+                }
+            }
+        } catch (Exception e) {
+            LOG.log(Level.SEVERE, "Exception while releasing lease", e);
+        } finally {
+            token = 0;
+            acquireStart = -1;
+            closeConnection();
+        }
+    }
+
+    /**
+     * Renew the lease.
+     *
+     * @return True, if this instance still holds a valid lease.
+     *
+     * @see org.apache.karaf.main.lock.Lock#isAlive()
+     */
+    public synchronized boolean isAlive() throws Exception {
+        return token != 0 && renew();
+    }
+
+    private PreparedStatement prepare(String sql) throws Exception {
+        PreparedStatement statement = getConnection().prepareStatement(sql);
+        statement.setQueryTimeout(queryTimeout);
+        return statement;
+    }
+
+    private Connection getConnection() throws Exception {
+        if (connection == null) {
+            Connection connection = createConnection();
+            connectionCount++;
+            try {
+                connection.setAutoCommit(true);
+                if (!initialized) {
+                    createSchema(connection);
+                    initialized = true;
+                }
+            } catch (Exception e) {
+                connection.close();
+                throw e;
+            }
+            this.connection = connection;
+        }
+        return connection;
+    }
+
+    /**
+     * This method could be used to inject a mock jdbc connection for testing purposes.
+     */
+    Connection createConnection() throws Exception {
+        return dataSource.getConnection();
+    }
+
+    /**
+     * Validate the connection after a failure, and close it if it is not usable anymore.
+     */
+    private void checkConnection() {
+        boolean valid;
+        try {
+            valid = connection != null && connection.isValid(validTimeout);
+        } catch (Exception e) {
+            valid = false;
+        }
+        if (!valid) {
+            closeConnection();
+        }
+    }
+
+    private void closeConnection() {
+        Connection connection = this.connection;
+        this.connection = null;
+        this.acquireStatement = null;
+        this.renewStatement = null;
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (Exception e) {
+                LOG.log(Level.FINE, "Exception while closing connection", e);
+            }
+        }
+    }
+
+    private void registerMBean(String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            objectName = new ObjectName("org.apache.karaf:type=lock,name=" + ObjectName.quote(name));
+            try {
+                server.registerMBean(this, objectName);
+            } catch (InstanceAlreadyExistsException e) {
+                // the lock is re-created when the framework is restarted
+                server.unregisterMBean(objectName);
+                server.registerMBean(this, objectName);
+            }
+        } catch (Exception e) {
+            LOG.log(Level.WARNING, "Unable to register the lock MBean", e);
+        }
+    }
+
+    ObjectName getObjectName() {
+        return objectName;
+    }
+
+    long getCurrentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    long nanoTime() {
+        return System.nanoTime();
+    }
+
+    @Override
+    public String getOwner() {
+        return owner;
+    }
+
+    @Override
+    public boolean isMaster() {
+        return token != 0 && nanoTime() - validUntil < 0;
+    }
+
+    @Override
+    public long getToken() {
+        return token;
+    }
+
+    @Override
+    public long getLeaseTime() {
+        return leaseTime;
+    }
+
+    @Override
+    public long getLeaseRemaining() {
+        return token != 0 ? Math.max(0, TimeUnit.NANOSECONDS.toMillis(validUntil - nanoTime())) : 0;
+    }
+
+    @Override
+    public long getAcquisitions() {
+        return acquisitions;
+    }
+
+    @Override
+    public long getLastAcquisitionLatency() {
+        return lastAcquisitionLatency;
+    }
+
+    @Override
+    public long getRenewals() {
+        return renewals;
+    }
+
+    @Override
+    public long getRenewalFailures() {
+        return renewalFailures;
+    }
+
+    @Override
+    public long getLeasesLost() {
+        return leasesLost;
+    }
+
+    @Override
+    public long getAverageRenewalTime() {
+        long renewals = this.renewals;
+        return renewals > 0 ? renewalTime / renewals : 0;
+    }
+
+    @Override
+    public long getMaxRenewalTime() {
+        return maxRenewalTime;
+    }
+
+    @Override
+    public long getStatements() {
+        return statementCount;
+    }
+
+    @Override
+    public long getConnections() {
+        return connectionCount;
+    }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.main.lock;
+
+/**
+ * Statistics of the {@link LeaseJDBCLock}, registered as <code>org.apache.karaf:type=lock,name=*</code>.
+ */
+public interface LeaseJDBCLockMBean {
+
+    /**
+     * @return The owner name written in the lease table by this instance.
+     */
+    String getOwner();
+
+    /**
+     * @return True if this instance currently holds a valid lease.
+     */
+    boolean isMaster();
+
+    /**
+     * @return The fencing token of the current lease, incremented on each acquisition, or 0 if the lease is not held.
+     */
+    long getToken();
+
+    /**
+     * @return The lease period in milliseconds.
+     */
+    long getLeaseTime();
+
+    /**
+     * @return The remaining time of the current lease in milliseconds, or 0 if the lease is not held.
+     */
+    long getLeaseRemaining();
+
+    /**
+     * @return The number of times the lease has been acquired.
+     */
+    long getAcquisitions();
+
+    /**
+     * @return The time in milliseconds between the first attempt and the last acquisition of the lease.
+     */
+    long getLastAcquisitionLatency();
+
+    /**
+     * @return The number of successful lease renewals.
+     */
+    long getRenewals();
+
+    /**
+     * @return The number of renewals which failed because of a database error.
+     */
+    long getRenewalFailures();
+
+    /**
+     * @return The number of times the lease has been lost.
+     */
+    long getLeasesLost();
+
+    /**
+     * @return The average duration of a lease renewal in microseconds.
+     */
+    long getAverageRenewalTime();
+
+    /**
+     * @return The maximum duration of a lease renewal in microseconds.
+     */
+    long getMaxRenewalTime();
+
+    /**
+     * @return The number of statements executed against the database.
+     */
+    long getStatements();
+
+    /**
+     * @return The number of database connections opened.
+     */
+    long getConnections();
+
+}
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.main.lock;
+
+/**
+ * <p>This class is used to create the sql statements for the Karaf lease table used by the
+ * {@link LeaseJDBCLock}.</p>
+ *
+ * <p>The table contains one row per cluster:</p>
+ *
+ * <code>
+ *   CREATE TABLE KARAF_LEASE ( NAME VARCHAR(64), OWNER VARCHAR(128), TOKEN BIGINT, EXPIRY BIGINT )
+ * </code>
+ *
+ * <p>All the statements use parameters so that they can be prepared once per connection.</p>
+ */
+public class LeaseStatements {
+
+    private final String tableName;
+    private final String clusterName;
+    private String numberColumnDataType = "BIGINT";
+
+    public LeaseStatements(String tableName, String clusterName) {
+        this.tableName = tableName;
+        this.clusterName = clusterName;
+    }
+
+    public final String getTableName() {
+        return tableName;
+    }
+
+    public final String getClusterName() {
+        return clusterName;
+    }
+
+    public String getNumberColumnDataType() {
+        return numberColumnDataType;
+    }
+
+    public void setNumberColumnDataType(String numberColumnDataType) {
+        this.numberColumnDataType = numberColumnDataType;
+    }
+
+    /**
+     * <code>
+     * CREATE TABLE KARAF_LEASE ( NAME VARCHAR(64) NOT NULL, OWNER VARCHAR(128), TOKEN BIGINT, EXPIRY BIGINT )
+     * </code>
+     *
+     * @return The SQL create table statement.
+     */
+    public String getCreateTableStatement() {
+        return "CREATE TABLE " + tableName + " ( NAME VARCHAR(64) NOT NULL, OWNER VARCHAR(128), TOKEN "
+                + numberColumnDataType + ", EXPIRY " + numberColumnDataType + " )";
+    }
+
+    /**
+     * <code>
+     * SELECT COUNT(*) FROM KARAF_LEASE WHERE NAME = ?
+     * </code>
+     *
+     * @return The SQL select statement.
+     */
+    public String getCountStatement() {
+        return "SELECT COUNT(*) FROM " + tableName + " WHERE NAME = ?";
+    }
+
+    /**
+     * <code>
+     * INSERT INTO KARAF_LEASE (NAME, OWNER, TOKEN, EXPIRY) VALUES (?, 'none', 0, 0)
+     * </code>
+     *
+     * @return The SQL insert statement.
+     */
+    public String getInsertStatement() {
+        return "INSERT INTO " + tableName + " (NAME, OWNER, TOKEN, EXPIRY) VALUES (?, 'none', 0, 0)";
+    }
+
+    /**
+     * Take the lease if it has expired or has been released, incrementing the fencing token.
+     *
+     * <code>
+     * UPDATE KARAF_LEASE SET OWNER = ?, TOKEN = TOKEN + 1, EXPIRY = ? WHERE NAME = ? AND EXPIRY &lt; ?
+     * </code>
+     *
+     * @return The SQL update statement.
+     */
+    public String getAcquireStatement() {
+        return "UPDATE " + tableName + " SET OWNER = ?, TOKEN = TOKEN + 1, EXPIRY = ? WHERE NAME = ? AND EXPIRY < ?";
+    }
+
+    /**
+     * Extend the lease, if and only if it is still held with the given token.
+     *
+     * <code>
+     * UPDATE KARAF_LEASE SET EXPIRY = ? WHERE NAME = ? AND OWNER = ? AND TOKEN = ?
+     * </code>
+     *
+     * @return The SQL update statement.
+     */
+    public String getRenewStatement() {
+        return "UPDATE " + tableName + " SET EXPIRY = ? WHERE NAME = ? AND OWNER = ? AND TOKEN = ?";
+    }
+
+    /**
+     * Release the lease, if and only if it is still held with the given token.
+     *
+     * <code>
+     * UPDATE KARAF_LEASE SET EXPIRY = 0 WHERE NAME = ? AND OWNER = ? AND TOKEN = ?
+     * </code>
+     *
+     * @return The SQL update statement.
+     */
+    public String getReleaseStatement() {
+        return "UPDATE " + tableName + " SET EXPIRY = 0 WHERE NAME = ? AND OWNER = ? AND TOKEN = ?";
+    }
+
+    /**
+     * <code>
+     * SELECT TOKEN FROM KARAF_LEASE WHERE NAME = ? AND OWNER = ?
+     * </code>
+     *
+     * @return The SQL select statement.
+     */
+    public String getTokenStatement() {
+        return "SELECT TOKEN FROM " + tableName + " WHERE NAME = ? AND OWNER = ?";
+    }
+
+}
@@ -21,13 +21,15 @@ package org.apache.karaf.main.lock;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.channels.ClosedByInterruptException;
 import java.nio.channels.FileLock;
+import java.nio.channels.FileLockInterruptionException;
 import org.apache.felix.utils.properties.Properties;
 import java.util.logging.Logger;
 
 import org.apache.karaf.main.util.BootstrapLogManager;
 
-public class SimpleFileLock implements Lock {
+public class SimpleFileLock implements BlockingLock {
 
     private static final Logger LOG = Logger.getLogger(SimpleFileLock.class.getName());
     private static final String PROPERTY_LOCK_DIR = "karaf.lock.dir";
@@ -71,6 +73,36 @@ public class SimpleFileLock implements Lock {
         return lock != null;
     }
 
+    /**
+     * Block in {@link java.nio.channels.FileChannel#lock()} until the instance holding the lock
+     * releases it or dies.
+     */
+    public void waitForLock() throws Exception {
+        RandomAccessFile file;
+        synchronized (this) {
+            if (lock != null) {
+                return;
+            }
+            file = lockFile;
+        }
+        LOG.info("Waiting for lock " + lockPath.getPath());
+        FileLock acquired;
+        try {
+            acquired = file.getChannel().lock();
+        } catch (ClosedByInterruptException | FileLockInterruptionException e) {
+            // the channel has been closed by the interruption
+            Thread.interrupted();
+            synchronized (this) {
+                lockFile = new RandomAccessFile(lockPath, "rw");
+            }
+            throw new InterruptedException("Interrupted while waiting for lock " + lockPath.getPath());
+        }
+        synchronized (this) {
+            lock = acquired;
+        }
+        LOG.info("Lock acquired");
+    }
+
     public synchronized void release() throws Exception {
         if (lock != null && lock.isValid()) {
             LOG.info("Releasing lock " + lockPath.getPath());
@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.main;
+
+import java.io.File;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.karaf.main.util.Utils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DataDirectoryWatcherTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void awaitShouldTimeout() throws Exception {
+        File data = folder.newFolder("data");
+        try (DataDirectoryWatcher watcher = new DataDirectoryWatcher(data)) {
+            // other deletions are ignored
+            folder.newFolder("other").delete();
+            assertTrue(watcher.await(200));
+        }
+    }
+
+    @Test
+    public void awaitShouldReturnWhenTheDirectoryIsDeleted() throws Exception {
+        File data = folder.newFolder("data");
+        new File(data, "cache").mkdirs();
+        try (DataDirectoryWatcher watcher = new DataDirectoryWatcher(data)) {
+            CompletableFuture.runAsync(() -> {
+                try {
+                    Thread.sleep(200);
+                    Utils.deleteDirectory(data);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            long start = System.nanoTime();
+            assertFalse(watcher.await(60000));
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 30000);
+            assertFalse(watcher.exists());
+        }
+    }
+
+}
@@ -19,6 +19,8 @@
 package org.apache.karaf.main;
 
 import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 
 import org.junit.After;
 import org.junit.Assert;
@@ -39,6 +41,9 @@ public class MainStartTest {
 		System.clearProperty("karaf.home");
 		System.clearProperty("karaf.data");
 		System.clearProperty("karaf.log");
+		System.clearProperty("karaf.startup.profile");
+		System.clearProperty("karaf.startup.profile.file");
+		System.clearProperty("karaf.startup.install.threads");
     }
 
     @Test
@@ -70,4 +75,60 @@ public class MainStartTest {
 		Assert.assertEquals(Bundle.ACTIVE, bundle2.getState());
 	}
 
+    @Test
+    public void testConcurrentInstall() throws Exception {
+        File basedir = new File(getClass().getClassLoader().getResource("foo").getPath()).getParentFile();
+        File home = new File(basedir, "test-karaf-home");
+        File data = new File(home, "data" + System.currentTimeMillis());
+        File log = new File(home, "log" + System.currentTimeMillis());
+
+        System.setProperty("karaf.home", home.toString());
+        System.setProperty("karaf.data", data.toString());
+        System.setProperty("karaf.log", log.toString());
+        System.setProperty("karaf.startup.install.threads", "4");
+
+        main = new Main(new String[0]);
+        main.launch();
+        Framework framework = main.getFramework();
+        Assert.assertEquals(3, framework.getBundleContext().getBundles().length);
+
+        // Give the framework some time to start the bundles
+        Thread.sleep(1000);
+
+        Bundle bundle1 = framework.getBundleContext().getBundle("mvn:org.apache.aries.blueprint/org.apache.aries.blueprint.api/1.0.0");
+        Assert.assertEquals(Bundle.ACTIVE, bundle1.getState());
+
+        Bundle bundle2 = framework.getBundleContext().getBundle("pax-url-mvn.jar");
+        Assert.assertEquals(Bundle.ACTIVE, bundle2.getState());
+    }
+
+    @Test
+    public void testStartupProfile() throws Exception {
+        File basedir = new File(getClass().getClassLoader().getResource("foo").getPath()).getParentFile();
+        File home = new File(basedir, "test-karaf-home");
+        File data = new File(home, "data" + System.currentTimeMillis());
+        File log = new File(home, "log" + System.currentTimeMillis());
+        File profile = new File(log, "startup-profile.json");
+
+        System.setProperty("karaf.home", home.toString());
+        System.setProperty("karaf.data", data.toString());
+        System.setProperty("karaf.log", log.toString());
+        System.setProperty("karaf.startup.profile", "true");
+
+        main = new Main(new String[0]);
+        main.launch();
+
+        // the profile is written once the final start level is reached
+        for (int i = 0; i < 100 && !profile.exists(); i++) {
+            Thread.sleep(100);
+        }
+        Assert.assertTrue(profile.exists());
+        Assert.assertEquals(profile.getAbsolutePath(), System.getProperty("karaf.startup.profile.file"));
+        String trace = new String(Files.readAllBytes(profile.toPath()), StandardCharsets.UTF_8);
+        Assert.assertTrue(trace.contains("\"traceEvents\""));
+        Assert.assertTrue(trace.contains("\"name\":\"framework start\""));
+        Assert.assertTrue(trace.contains("\"name\":\"start level ramp\""));
+        Assert.assertTrue(trace.contains("\"cat\":\"ready\""));
+    }
+
 }
@@ -0,0 +1,374 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.main.lock;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.felix.utils.properties.Properties;
+import org.apache.karaf.main.util.BootstrapLogManager;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LeaseJDBCLockTest {
+
+    private static final String CLUSTER = "karaf_cluster";
+
+    Properties props;
+    FakeDatabase database;
+    long millis;
+
+    @BeforeClass
+    public static void setUpTestSuite() {
+        Properties properties = new Properties();
+        properties.put("karaf.bootstrap.log", "target/karaf.log");
+        BootstrapLogManager.setProperties(properties);
+    }
+
+    @Before
+    public void setUp() {
+        props = new Properties();
+        props.put("karaf.lock.jdbc.url", "jdbc:fake:test");
+        props.put("karaf.lock.jdbc.clustername", CLUSTER);
+        props.put("karaf.lock.delay", "1000");
+        database = new FakeDatabase();
+        millis = 1000000;
+    }
+
+    @Test
+    public void initShouldCreateTheTable() throws Exception {
+        createLock();
+        assertTrue(database.tableCreated);
+        assertEquals(0L, database.expiry);
+
+        // the second instance reuses the table and the row
+        createLock();
+        assertEquals(1, database.inserts);
+    }
+
+    @Test
+    public void lockShouldBeExclusive() throws Exception {
+        TestLock master = createLock();
+        TestLock slave = createLock();
+
+        assertTrue(master.lock());
+        assertEquals(1, master.getToken());
+        assertTrue(master.isMaster());
+        assertEquals(3000, master.getLeaseRemaining());
+        assertFalse(slave.lock());
+        assertFalse(slave.isMaster());
+
+        advance(1000);
+        assertTrue(master.isAlive());
+        advance(1000);
+        assertTrue(master.lock());
+        assertFalse(slave.lock());
+        assertEquals(2, master.getRenewals());
+        assertEquals(1, master.getAcquisitions());
+        // a single connection and a single statement per renewal
+        assertEquals(1, master.getConnections());
+        assertEquals(4, master.getStatements());
+        assertEquals(1, database.openConnections(master));
+    }
+
+    @Test
+    public void slaveShouldTakeOverWithinOneLease() throws Exception {
+        TestLock master = createLock();
+        TestLock slave = createLock();
+        assertTrue(master.lock());
+        assertFalse(slave.lock());
+
+        // the master dies
+        advance(2000);
+        assertFalse(slave.lock());
+        advance(1001);
+        assertTrue(slave.lock());
+        assertEquals(2, slave.getToken());
+        assertEquals(3001, slave.getLastAcquisitionLatency());
+
+        // the old master is fenced out
+        assertFalse(master.isAlive());
+        assertEquals(1, master.getLeasesLost());
+        assertEquals(0, master.getToken());
+        assertTrue(slave.isAlive());
+    }
+
+    @Test
+    public void releaseShouldAllowImmediateTakeOver() throws Exception {
+        TestLock master = createLock();
+        TestLock slave = createLock();
+        assertTrue(master.lock());
+        assertFalse(slave.lock());
+
+        master.release();
+        assertFalse(master.isAlive());
+        assertTrue(slave.lock());
+        assertEquals(0, database.openConnections(master));
+    }
+
+    @Test
+    public void databaseFailureShouldBeToleratedWhileTheLeaseIsValid() throws Exception {
+        TestLock master = createLock();
+        assertTrue(master.lock());
+
+        database.down = true;
+        advance(1000);
+        assertTrue(master.isAlive());
+        advance(1000);
+        assertTrue(master.isAlive());
+        assertEquals(2, master.getRenewalFailures());
+        advance(1000);
+        assertFalse(master.isAlive());
+        assertEquals(1, master.getLeasesLost());
+
+        // the connection is re-created once the database is back
+        database.down = false;
+        advance(1);
+        assertTrue(master.lock());
+        assertEquals(2, master.getToken());
+        assertEquals(2, master.getConnections());
+    }
+
+    @Test
+    public void clockSkewShouldShortenTheLocalLease() throws Exception {
+        props.put("karaf.lock.jdbc.lease.maxClockSkew", "500");
+        TestLock master = createLock();
+        assertTrue(master.lock());
+        assertEquals(2500, master.getLeaseRemaining());
+    }
+
+    @Test
+    public void statisticsShouldBeRegistered() throws Exception {
+        TestLock lock = createLock();
+        assertTrue(lock.lock());
+        assertEquals(1L, ManagementFactory.getPlatformMBeanServer().getAttribute(lock.getObjectName(), "Token"));
+        assertEquals(3000L, ManagementFactory.getPlatformMBeanServer().getAttribute(lock.getObjectName(), "LeaseTime"));
+    }
+
+    private void advance(long ms) {
+        millis += ms;
+    }
+
+    private TestLock createLock() {
+        return new TestLock(props);
+    }
+
+    class TestLock extends LeaseJDBCLock {
+
+        TestLock(Properties props) {
+            super(props);
+        }
+
+        @Override
+        Connection createConnection() throws Exception {
+            return database.connect(this);
+        }
+
+        @Override
+        long getCurrentTimeMillis() {
+            return millis;
+        }
+
+        @Override
+        long nanoTime() {
+            return TimeUnit.MILLISECONDS.toNanos(millis);
+        }
+    }
+
+    /**
+     * A minimal database holding the lease row, interpreting the lease statements.
+     */
+    static class FakeDatabase {
+        boolean tableCreated;
+        boolean down;
+        int inserts;
+        boolean rowExists;
+        String owner;
+        long token;
+        long expiry;
+        final Map<Object, Integer> connections = new HashMap<>();
+        final Map<Object, Integer> closed = new HashMap<>();
+
+        int openConnections(Object client) {
+            return connections.getOrDefault(client, 0) - closed.getOrDefault(client, 0);
+        }
+
+        Connection connect(Object client) throws SQLException {
+            if (down) {
+                throw new SQLException("Database is down");
+            }
+            connections.merge(client, 1, Integer::sum);
+            boolean[] isClosed = new boolean[1];
+            return proxy(Connection.class, (method, args) -> {
+                switch (method) {
+                    case "close":
+                        if (!isClosed[0]) {
+                            isClosed[0] = true;
+                            closed.merge(client, 1, Integer::sum);
+                        }
+                        return null;
+                    case "isValid":
+                        return !down && !isClosed[0];
+                    case "getMetaData":
+                        return metaData();
+                    case "createStatement":
+                        return proxy(Statement.class, (m, a) -> {
+                            if (m.equals("execute")) {
+                                check();
+                                assertTrue(((String) a[0]).startsWith("CREATE TABLE KARAF_LEASE"));
+                                tableCreated = true;
+                                return false;
+                            }
+                            return null;
+                        });
+                    case "prepareStatement":
+                        return statement((String) args[0]);
+                    default:
+                        return null;
+                }
+            });
+        }
+
+        private DatabaseMetaData metaData() {
+            return proxy(DatabaseMetaData.class, (method, args) -> {
+                switch (method) {
+                    case "getDatabaseProductName":
+                        return "Fake";
+                    case "getTables":
+                        return resultSet(tableCreated ? new Object[] { "KARAF_LEASE" } : null);
+                    default:
+                        return null;
+                }
+            });
+        }
+
+        private PreparedStatement statement(String sql) {
+            Map<Integer, Object> params = new HashMap<>();
+            return proxy(PreparedStatement.class, (method, args) -> {
+                switch (method) {
+                    case "setString":
+                    case "setLong":
+                        params.put((Integer) args[0], args[1]);
+                        return null;
+                    case "executeQuery":
+                        check();
+                        assertEquals(CLUSTER, params.get(1));
+                        if (sql.startsWith("SELECT COUNT(*)")) {
+                            return resultSet(new Object[] { rowExists ? 1 : 0 });
+                        } else if (sql.startsWith("SELECT TOKEN")) {
+                            return resultSet(params.get(2).equals(owner) ? new Object[] { token } : null);
+                        }
+                        throw new SQLException("Unexpected query " + sql);
+                    case "executeUpdate":
+                        check();
+                        return update(sql, params);
+                    default:
+                        return null;
+                }
+            });
+        }
+
+        private int update(String sql, Map<Integer, Object> params) throws SQLException {
+            if (sql.startsWith("INSERT")) {
+                assertEquals(CLUSTER, params.get(1));
+                rowExists = true;
+                inserts++;
+                return 1;
+            } else if (sql.contains("TOKEN = TOKEN + 1")) {
+                assertEquals(CLUSTER, params.get(3));
+                if (rowExists && expiry < (Long) params.get(4)) {
+                    owner = (String) params.get(1);
+                    token++;
+                    expiry = (Long) params.get(2);
+                    return 1;
+                }
+                return 0;
+            } else if (sql.contains("SET EXPIRY = ?")) {
+                assertEquals(CLUSTER, params.get(2));
+                if (params.get(3).equals(owner) && params.get(4).equals(token)) {
+                    expiry = (Long) params.get(1);
+                    return 1;
+                }
+                return 0;
+            } else if (sql.contains("SET EXPIRY = 0")) {
+                assertEquals(CLUSTER, params.get(1));
+                if (params.get(2).equals(owner) && params.get(3).equals(token)) {
+                    expiry = 0;
+                    return 1;
+                }
+                return 0;
+            }
+            throw new SQLException("Unexpected update " + sql);
+        }
+
+        private void check() throws SQLException {
+            if (down) {
+                throw new SQLException("Database is down");
+            }
+        }
+
+        private ResultSet resultSet(Object[] row) {
+            boolean[] consumed = new boolean[1];
+            return proxy(ResultSet.class, (method, args) -> {
+                switch (method) {
+                    case "next":
+                        boolean next = row != null && !consumed[0];
+                        consumed[0] = true;
+                        return next;
+                    case "getInt":
+                        return ((Number) row[(Integer) args[0] - 1]).intValue();
+                    case "getLong":
+                        return ((Number) row[(Integer) args[0] - 1]).longValue();
+                    default:
+                        return null;
+                }
+            });
+        }
+
+        interface Handler {
+            Object invoke(String method, Object[] args) throws Exception;
+        }
+
+        @SuppressWarnings("unchecked")
+        static <T> T proxy(Class<T> clazz, Handler handler) {
+            return (T) Proxy.newProxyInstance(FakeDatabase.class.getClassLoader(), new Class[] { clazz },
+                    (proxy, method, args) -> {
+                        Object result = handler.invoke(method.getName(), args);
+                        if (result == null && method.getReturnType() == boolean.class) {
+                            return false;
+                        }
+                        return result;
+                    });
+        }
+    }
+}
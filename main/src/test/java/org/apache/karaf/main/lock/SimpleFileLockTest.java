@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.main.lock;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.felix.utils.properties.Properties;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SimpleFileLockTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Process holder;
+    private SimpleFileLock lock;
+
+    @Before
+    public void setUp() throws Exception {
+        // file locks are held per process, so the master is simulated by another jvm
+        File java = new File(System.getProperty("java.home"), "bin/java");
+        holder = new ProcessBuilder(java.getPath(), "-cp", System.getProperty("java.class.path"),
+                Holder.class.getName(), new File(folder.getRoot(), "lock").getPath())
+                .redirectErrorStream(true)
+                .start();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(holder.getInputStream(), StandardCharsets.UTF_8));
+        assertEquals("locked", reader.readLine());
+
+        Properties props = new Properties();
+        props.put("karaf.lock.dir", folder.getRoot().getPath());
+        lock = new SimpleFileLock(props);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        holder.destroyForcibly().waitFor();
+        lock.release();
+    }
+
+    @Test
+    public void waitForLockShouldReturnWhenTheMasterDies() throws Exception {
+        assertFalse(lock.lock());
+
+        CompletableFuture<Void> waiting = CompletableFuture.runAsync(() -> {
+            try {
+                lock.waitForLock();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        Thread.sleep(200);
+        assertFalse(waiting.isDone());
+
+        long start = System.nanoTime();
+        holder.destroyForcibly().waitFor();
+        waiting.get(10, TimeUnit.SECONDS);
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        // the blocking lock returns as soon as the lock is released, not after a polling delay
+        assertTrue("Lock acquired " + elapsed + " ms after the master died", elapsed < 2000);
+
+        assertTrue(lock.lock());
+        assertTrue(lock.isAlive());
+    }
+
+    @Test
+    public void waitForLockShouldBeInterruptible() throws Exception {
+        Thread current = Thread.currentThread();
+        CompletableFuture.runAsync(() -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                // Ignore
+            }
+            current.interrupt();
+        });
+        try {
+            lock.waitForLock();
+            fail("Expected InterruptedException");
+        } catch (InterruptedException e) {
+            // expected
+        }
+        assertFalse(Thread.interrupted());
+
+        // the lock file is still usable
+        holder.destroyForcibly().waitFor();
+        assertTrue(lock.lock());
+    }
+
+    public static class Holder {
+        public static void main(String[] args) throws Exception {
+            try (RandomAccessFile file = new RandomAccessFile(args[0], "rw");
+                 FileLock lock = file.getChannel().lock()) {
+                System.out.println("locked");
+                System.out.flush();
+                // wait until the process is destroyed
+                Thread.sleep(Long.MAX_VALUE);
+            }
+        }
+    }
+
+}
@@ -56,6 +56,18 @@ public class Exports implements Action {
     @Option(name = "-p", description = "Only show package starting with given name", required = false, multiValued = false)
     private String packageFilter;
 
+    @Option(name = "--limit", description = "Maximum number of packages to display", required = false, multiValued = false)
+    int limit = -1;
+
+    @Option(name = "--offset", description = "Number of packages to skip, to display them page by page along with --limit", required = false, multiValued = false)
+    int offset;
+
+    @Option(name = "--output", description = "Output format: table, csv or json", required = false, multiValued = false)
+    String output = "table";
+
+    @Option(name = "--stream", description = "Print the packages as they are listed, the column widths are computed on the first ones", required = false, multiValued = false)
+    boolean stream;
+
     @Reference
     private PackageService packageService;
 
@@ -81,6 +93,10 @@ public class Exports implements Action {
             table.column("ID");
             table.column("Bundle Name");
         }
+        table.limit(limit).offset(offset).output(output);
+        if (stream || table.isMachineOutput()) {
+            table.stream(System.out, !noFormat);
+        }
         for (PackageVersion pVer : exports) {
             for (Bundle bundle : pVer.getBundles()) {
                 if (matchesFilter(pVer, bundle)) {
@@ -110,6 +126,10 @@ public class Exports implements Action {
         table.column(new Col("Package Name"));
         table.column(new Col("Version"));
         table.column(new Col("Exporting bundles (ID)"));
+        table.limit(limit).offset(offset).output(output);
+        if (stream || table.isMachineOutput()) {
+            table.stream(System.out, !noFormat);
+        }
        
         for (String key : packageVersionMap.keySet()) {
             PackageVersion pVer = packageVersionMap.get(key);
@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.scheduler;
+
+import java.util.Date;
+
+/**
+ * Execution statistics of a scheduled job.
+ */
+public interface JobStatistics {
+
+    /**
+     * Upper bounds (exclusive, in milliseconds) of the buckets of the
+     * {@link #getDurationHistogram() duration histogram}, the last bucket
+     * containing the longer executions.
+     */
+    long[] DURATION_BUCKETS = { 10, 100, 1000, 10000, 60000 };
+
+    /**
+     * @return the number of completed executions
+     */
+    long getRuns();
+
+    /**
+     * @return the number of executions which threw an exception
+     */
+    long getFailures();
+
+    /**
+     * @return the number of misfired triggers
+     */
+    long getMisfires();
+
+    /**
+     * @return the number of executions skipped because the previous one was still running
+     */
+    long getSkipped();
+
+    /**
+     * @return the number of executions currently running
+     */
+    int getRunning();
+
+    /**
+     * @return the average execution duration in milliseconds
+     */
+    double getAverageDuration();
+
+    /**
+     * @return the maximum execution duration in milliseconds
+     */
+    long getMaxDuration();
+
+    /**
+     * @return the number of executions per duration bucket, see {@link #DURATION_BUCKETS}
+     */
+    long[] getDurationHistogram();
+
+    /**
+     * @return the last fire time, or <code>null</code>
+     */
+    Date getLastFireTime();
+
+    /**
+     * @return the next fire time, or <code>null</code>
+     */
+    Date getNextFireTime();
+
+    /**
+     * Format a duration histogram, for example <code>&lt;10ms=3 &lt;100ms=1 &gt;=60s=0</code>.
+     *
+     * @param histogram the number of executions per duration bucket, see {@link #DURATION_BUCKETS}
+     * @return the formatted histogram
+     */
+    static String formatHistogram(long[] histogram) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < histogram.length; i++) {
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            long bound = DURATION_BUCKETS[Math.min(i, DURATION_BUCKETS.length - 1)];
+            sb.append(i < DURATION_BUCKETS.length ? "<" : ">=");
+            sb.append(bound >= 1000 ? (bound / 1000) + "s" : bound + "ms");
+            sb.append('=').append(histogram[i]);
+        }
+        return sb.toString();
+    }
+
+}
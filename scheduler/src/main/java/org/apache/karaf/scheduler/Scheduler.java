@@ -16,6 +16,7 @@
  */
 package org.apache.karaf.scheduler;
 
+import java.util.Collections;
 import java.util.Date;
 import java.util.Map;
 
@@ -116,6 +117,16 @@ public interface Scheduler {
      */
     boolean trigger(String jobName) throws SchedulerError;
 
+    /**
+     * Get the execution statistics of the scheduled jobs.
+     *
+     * @return the statistics, indexed by job name
+     * @throws SchedulerError if the statistics can't be retrieved
+     */
+    default Map<String, JobStatistics> getStatistics() throws SchedulerError {
+        return Collections.emptyMap();
+    }
+
     /**
      * Create a schedule options to fire a job immediately and only once.
      *
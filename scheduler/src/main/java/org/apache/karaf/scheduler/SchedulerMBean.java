@@ -23,6 +23,8 @@ public interface SchedulerMBean {
 
     TabularData getJobs() throws MBeanException;
 
+    TabularData getStatistics() throws MBeanException;
+
     void trigger(String name, boolean background) throws MBeanException;
 
     void unschedule(String name) throws MBeanException;
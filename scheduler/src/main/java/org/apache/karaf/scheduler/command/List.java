@@ -16,12 +16,16 @@
  */
 package org.apache.karaf.scheduler.command;
 
+import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.Map;
 
+import org.apache.karaf.scheduler.JobStatistics;
 import org.apache.karaf.scheduler.ScheduleOptions;
 import org.apache.karaf.scheduler.Scheduler;
 import org.apache.karaf.shell.api.action.Action;
 import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.Option;
 import org.apache.karaf.shell.api.action.lifecycle.Reference;
 import org.apache.karaf.shell.api.action.lifecycle.Service;
 import org.apache.karaf.shell.support.table.ShellTable;
@@ -33,8 +37,15 @@ public class List implements Action {
     @Reference
     Scheduler scheduler;
 
+    @Option(name = "-s", aliases = "--statistics", description = "Display the execution statistics of the jobs")
+    boolean statistics;
+
     @Override
     public Object execute() throws Exception {
+        if (statistics) {
+            printStatistics();
+            return null;
+        }
         ShellTable table = new ShellTable();
         table.column("Name");
         table.column("Schedule");
@@ -45,4 +56,32 @@ public class List implements Action {
         table.print(System.out);
         return null;
     }
+
+    private void printStatistics() throws Exception {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        ShellTable table = new ShellTable();
+        table.column("Name");
+        table.column("Runs").alignRight();
+        table.column("Failures").alignRight();
+        table.column("Misfires").alignRight();
+        table.column("Skipped").alignRight();
+        table.column("Running").alignRight();
+        table.column("Avg (ms)").alignRight();
+        table.column("Max (ms)").alignRight();
+        table.column("Durations");
+        table.column("Last Fire");
+        table.column("Next Fire");
+        for (Map.Entry<String, JobStatistics> entry : scheduler.getStatistics().entrySet()) {
+            JobStatistics stats = entry.getValue();
+            table.addRow().addContent(entry.getKey(), stats.getRuns(), stats.getFailures(), stats.getMisfires(),
+                    stats.getSkipped(), stats.getRunning(), String.format("%.1f", stats.getAverageDuration()),
+                    stats.getMaxDuration(), JobStatistics.formatHistogram(stats.getDurationHistogram()),
+                    format(format, stats.getLastFireTime()), format(format, stats.getNextFireTime()));
+        }
+        table.print(System.out);
+    }
+
+    private static String format(SimpleDateFormat format, Date date) {
+        return date != null ? format.format(date) : "";
+    }
 }
@@ -25,6 +25,9 @@ import org.osgi.service.cm.ManagedService;
 
 import java.util.Enumeration;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Services(provides = @ProvideService(Scheduler.class))
 @Managed("org.apache.karaf.scheduler.quartz")
@@ -47,7 +50,8 @@ public class Activator extends BaseActivator implements ManagedService {
                 properties.put(key, value);
             }
         }
-        scheduler = new QuartzScheduler(properties);
+        int concurrency = getInt("karaf.scheduler.executor.concurrency", 0);
+        scheduler = new QuartzScheduler(properties, createExecutor(getString("karaf.scheduler.executor", "quartz")), concurrency);
         register(Scheduler.class, scheduler);
         whiteboardHandler = new WhiteboardHandler(bundleContext, scheduler);
 
@@ -56,6 +60,34 @@ public class Activator extends BaseActivator implements ManagedService {
         registerMBean(mBean, "type=scheduler");
     }
 
+    /**
+     * Create the executor running the jobs.
+     *
+     * @param type <code>quartz</code> to run the jobs on the quartz thread pool,
+     *             <code>virtual</code> to run each execution on its own virtual thread
+     * @return the executor, or <code>null</code> for the quartz thread pool
+     */
+    private ExecutorService createExecutor(String type) {
+        if (type == null || "quartz".equals(type)) {
+            return null;
+        }
+        if (!"virtual".equals(type)) {
+            logger.warn("Unknown scheduler executor {}, using the quartz thread pool", type);
+            return null;
+        }
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (Exception e) {
+            logger.warn("Virtual threads are not available, using a cached thread pool");
+            AtomicInteger count = new AtomicInteger();
+            return Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r, "Karaf Scheduler Job-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
     @Override
     protected void doStop() {
         super.doStop();
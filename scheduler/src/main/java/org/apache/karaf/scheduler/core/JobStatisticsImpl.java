@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.scheduler.core;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.karaf.scheduler.JobStatistics;
+
+/**
+ * Lock-free recorder of the execution statistics of a job.
+ */
+public class JobStatisticsImpl implements JobStatistics {
+
+    private final LongAdder runs = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder misfires = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder totalDuration = new LongAdder();
+    private final LongAccumulator maxDuration = new LongAccumulator(Math::max, 0);
+    private final AtomicLongArray histogram = new AtomicLongArray(DURATION_BUCKETS.length + 1);
+    private final AtomicInteger running = new AtomicInteger();
+    private volatile Date lastFireTime;
+    private volatile Date nextFireTime;
+
+    /**
+     * Try to start an execution.
+     *
+     * @param limit the maximum number of concurrent executions, or <code>0</code>
+     * @return <code>true</code> if the execution can start, <code>false</code> if it has been skipped
+     */
+    boolean start(int limit) {
+        for (;;) {
+            int current = running.get();
+            if (limit > 0 && current >= limit) {
+                skipped.increment();
+                return false;
+            }
+            if (running.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    void end(long durationMillis, boolean failed) {
+        running.decrementAndGet();
+        runs.increment();
+        if (failed) {
+            failures.increment();
+        }
+        totalDuration.add(durationMillis);
+        maxDuration.accumulate(durationMillis);
+        int bucket = 0;
+        while (bucket < DURATION_BUCKETS.length && durationMillis >= DURATION_BUCKETS[bucket]) {
+            bucket++;
+        }
+        histogram.incrementAndGet(bucket);
+    }
+
+    void fired(Date fireTime, Date nextFireTime) {
+        this.lastFireTime = fireTime;
+        this.nextFireTime = nextFireTime;
+    }
+
+    void misfired(Date nextFireTime) {
+        misfires.increment();
+        this.nextFireTime = nextFireTime;
+    }
+
+    @Override
+    public long getRuns() {
+        return runs.sum();
+    }
+
+    @Override
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    @Override
+    public long getMisfires() {
+        return misfires.sum();
+    }
+
+    @Override
+    public long getSkipped() {
+        return skipped.sum();
+    }
+
+    @Override
+    public int getRunning() {
+        return running.get();
+    }
+
+    @Override
+    public double getAverageDuration() {
+        long nb = runs.sum();
+        return nb > 0 ? (double) totalDuration.sum() / nb : 0.0;
+    }
+
+    @Override
+    public long getMaxDuration() {
+        return maxDuration.get();
+    }
+
+    @Override
+    public long[] getDurationHistogram() {
+        long[] result = new long[histogram.length()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = histogram.get(i);
+        }
+        return result;
+    }
+
+    @Override
+    public Date getLastFireTime() {
+        return lastFireTime;
+    }
+
+    @Override
+    public Date getNextFireTime() {
+        return nextFireTime;
+    }
+
+}
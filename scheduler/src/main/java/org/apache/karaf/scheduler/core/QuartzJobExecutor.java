@@ -18,6 +18,9 @@ package org.apache.karaf.scheduler.core;
 
 import java.io.Serializable;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.karaf.scheduler.JobContext;
 import org.quartz.Job;
@@ -30,7 +33,9 @@ import org.slf4j.LoggerFactory;
 /**
  * This component is responsible to launch a {@link org.apache.karaf.scheduler.Job}
  * or {@link Runnable} in a Quartz Scheduler.
- *
+ * <p>
+ * When an executor has been configured, the job is handed over to it, and
+ * the executions exceeding the job concurrency are skipped.
  */
 public class QuartzJobExecutor implements Job {
 
@@ -47,7 +52,35 @@ public class QuartzJobExecutor implements Job {
         final JobDataMap karafContext = (contextKey != null) ? scheduler.getStorage().get(contextKey) : null;
         final Object job = (karafContext != null) ? karafContext.get(QuartzScheduler.DATA_MAP_OBJECT) : context.getJobInstance();
         final Logger logger = (karafContext != null) ? (Logger) karafContext.get(QuartzScheduler.DATA_MAP_LOGGER) : LOGGER;
+        final JobStatisticsImpl statistics = (karafContext != null) ? (JobStatisticsImpl) karafContext.get(QuartzScheduler.DATA_MAP_STATISTICS) : null;
+        final ExecutorService executor = (karafContext != null) ? (ExecutorService) karafContext.get(QuartzScheduler.DATA_MAP_EXECUTOR) : null;
+
+        if (executor == null) {
+            if (statistics != null) {
+                statistics.start(0);
+            }
+            run(job, data, logger, statistics);
+            return;
+        }
+        // the quartz thread only hands the job over, so the concurrency has to be enforced here
+        final int concurrency = karafContext.getInt(QuartzScheduler.DATA_MAP_CONCURRENCY);
+        if (statistics != null && !statistics.start(concurrency)) {
+            logger.debug("Skipping job {} with name {} as the previous execution is still running", job, data.get(QuartzScheduler.DATA_MAP_NAME));
+            return;
+        }
+        try {
+            executor.execute(() -> run(job, data, logger, statistics));
+        } catch (RejectedExecutionException e) {
+            if (statistics != null) {
+                statistics.end(0, true);
+            }
+            logger.warn("Unable to execute job {} with name {} : {}", job, data.get(QuartzScheduler.DATA_MAP_NAME), e.getMessage());
+        }
+    }
 
+    private void run(final Object job, final JobDataMap data, final Logger logger, final JobStatisticsImpl statistics) {
+        final long start = System.nanoTime();
+        boolean failed = false;
         try {
             logger.debug("Executing job {} with name {}", job, data.get(QuartzScheduler.DATA_MAP_NAME));
             if (job instanceof org.apache.karaf.scheduler.Job) {
@@ -62,8 +95,13 @@ public class QuartzJobExecutor implements Job {
                 logger.error("Scheduled job {} is neither a job nor a runnable.", job);
             }
         } catch (final Throwable t) {
+            failed = true;
             // there is nothing we can do here, so we just log
             logger.error("Exception during job execution of " + job + " : " + t.getMessage(), t);
+        } finally {
+            if (statistics != null) {
+                statistics.end(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), failed);
+            }
         }
     }
 
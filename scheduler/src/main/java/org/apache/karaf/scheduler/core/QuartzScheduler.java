@@ -17,13 +17,17 @@
 package org.apache.karaf.scheduler.core;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 
 import org.apache.karaf.scheduler.Job;
+import org.apache.karaf.scheduler.JobStatistics;
 import org.apache.karaf.scheduler.ScheduleOptions;
 import org.apache.karaf.scheduler.Scheduler;
 import org.apache.karaf.scheduler.SchedulerError;
 import org.quartz.*;
 import org.quartz.impl.matchers.GroupMatcher;
+import org.quartz.listeners.TriggerListenerSupport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -53,10 +57,40 @@ public class QuartzScheduler implements Scheduler {
     /** Map key for the logger. */
     static final String DATA_MAP_LOGGER = "QuartzJobScheduler.Logger";
 
+    /** Map key for the job statistics. */
+    static final String DATA_MAP_STATISTICS = "QuartzJobScheduler.Statistics";
+
+    /** Map key for the executor running the jobs. */
+    static final String DATA_MAP_EXECUTOR = "QuartzJobScheduler.Executor";
+
+    /** Map key for the maximum number of concurrent executions of a job. */
+    static final String DATA_MAP_CONCURRENCY = "QuartzJobScheduler.Concurrency";
+
     /** The quartz scheduler. */
     private volatile org.quartz.Scheduler scheduler;
 
+    /** The executor running the jobs, or <code>null</code> to run them on the quartz thread pool. */
+    private final ExecutorService executor;
+
+    /** The maximum number of concurrent executions of a job when using the executor, 0 meaning unbounded. */
+    private final int concurrency;
+
+    /** The statistics, per job name. */
+    private final Map<String, JobStatisticsImpl> statistics = new ConcurrentHashMap<>();
+
     public QuartzScheduler(Properties configuration) {
+        this(configuration, null, 0);
+    }
+
+    /**
+     * @param configuration the quartz configuration
+     * @param executor the executor running the jobs instead of the quartz thread pool, or <code>null</code>
+     * @param concurrency the maximum number of concurrent executions of a job allowing concurrent
+     *                    executions when using the executor, <code>0</code> meaning unbounded
+     */
+    public QuartzScheduler(Properties configuration, ExecutorService executor, int concurrency) {
+        this.executor = executor;
+        this.concurrency = concurrency;
         // SLING-2261 Prevent Quartz from checking for updates
         System.setProperty("org.terracotta.quartz.skipUpdateCheck", Boolean.TRUE.toString());
         ClassLoader cl = Thread.currentThread().getContextClassLoader();
@@ -64,6 +98,7 @@ public class QuartzScheduler implements Scheduler {
             Thread.currentThread().setContextClassLoader(QuartzScheduler.class.getClassLoader());
             KarafStdSchedulerFactory factory = new KarafStdSchedulerFactory(configuration);
             scheduler = factory.getScheduler();
+            scheduler.getListenerManager().addTriggerListener(new StatisticsTriggerListener());
             scheduler.start();
         } catch (Throwable t) {
             throw new RuntimeException("Unable to create quartz scheduler", t);
@@ -80,6 +115,9 @@ public class QuartzScheduler implements Scheduler {
         final org.quartz.Scheduler s = this.scheduler;
         this.scheduler = null;
         this.dispose(s);
+        if (this.executor != null) {
+            this.executor.shutdownNow();
+        }
     }
 
     /**
@@ -115,6 +153,11 @@ public class QuartzScheduler implements Scheduler {
         // non serializable data
         jobContextMap.put(DATA_MAP_OBJECT, job);
         jobContextMap.put(DATA_MAP_LOGGER, this.logger);
+        jobContextMap.put(DATA_MAP_STATISTICS, this.statistics.computeIfAbsent(jobName, n -> new JobStatisticsImpl()));
+        if (this.executor != null) {
+            jobContextMap.put(DATA_MAP_EXECUTOR, this.executor);
+            jobContextMap.put(DATA_MAP_CONCURRENCY, options.canRunConcurrently ? this.concurrency : 1);
+        }
 
         // temporary storage
         jobDataMap.put(DATA_MAP_CONTEXT, jobContextMap);
@@ -281,6 +324,7 @@ public class QuartzScheduler implements Scheduler {
                 final JobDetail jobdetail = s.getJobDetail(key);
                 if (jobdetail != null) {
                     s.deleteJob(key);
+                    this.statistics.remove(jobName);
                     this.logger.debug("Unscheduling job with name {}", jobName);
                     return true;
                 }
@@ -329,4 +373,46 @@ public class QuartzScheduler implements Scheduler {
         return false;
     }
 
+    @Override
+    public Map<String, JobStatistics> getStatistics() throws SchedulerError {
+        Map<String, JobStatistics> result = new TreeMap<>();
+        // the statistics of the unscheduled jobs are removed by unschedule()
+        for (String job : getJobs().keySet()) {
+            result.put(job, statistics.computeIfAbsent(job, n -> new JobStatisticsImpl()));
+        }
+        return result;
+    }
+
+    /**
+     * Record the fire and misfire times of the jobs.
+     */
+    private class StatisticsTriggerListener extends TriggerListenerSupport {
+
+        @Override
+        public String getName() {
+            return "KarafStatistics";
+        }
+
+        @Override
+        public void triggerFired(Trigger trigger, JobExecutionContext context) {
+            JobStatisticsImpl stats = statistics.get(trigger.getJobKey().getName());
+            if (stats != null) {
+                Date next = trigger.getNextFireTime();
+                if (!trigger.getKey().getName().equals(trigger.getJobKey().getName())) {
+                    // manually triggered, keep the next fire time of the job trigger
+                    next = stats.getNextFireTime();
+                }
+                stats.fired(context.getFireTime(), next);
+            }
+        }
+
+        @Override
+        public void triggerMisfired(Trigger trigger) {
+            JobStatisticsImpl stats = statistics.get(trigger.getJobKey().getName());
+            if (stats != null) {
+                stats.misfired(trigger.getNextFireTime());
+            }
+        }
+    }
+
 }
@@ -16,6 +16,7 @@
  */
 package org.apache.karaf.scheduler.core;
 
+import org.apache.karaf.scheduler.JobStatistics;
 import org.apache.karaf.scheduler.ScheduleOptions;
 import org.apache.karaf.scheduler.Scheduler;
 import org.apache.karaf.scheduler.SchedulerMBean;
@@ -58,6 +59,38 @@ public class SchedulerMBeanImpl extends StandardMBean implements SchedulerMBean
         }
     }
 
+    @Override
+    public TabularData getStatistics() throws MBeanException {
+        try {
+            String[] names = new String[]{ "Job", "Runs", "Failures", "Misfires", "Skipped", "Running",
+                    "AverageDuration", "MaxDuration", "DurationHistogram", "LastFireTime", "NextFireTime" };
+            CompositeType statsType = new CompositeType("JobStatistics", "Scheduler job statistics",
+                    names,
+                    new String[]{ "Job Name", "Number of executions", "Number of failed executions",
+                            "Number of misfired triggers", "Number of skipped executions", "Number of running executions",
+                            "Average execution duration (ms)", "Maximum execution duration (ms)",
+                            "Execution duration histogram", "Last fire time", "Next fire time" },
+                    new OpenType[]{ SimpleType.STRING, SimpleType.LONG, SimpleType.LONG, SimpleType.LONG,
+                            SimpleType.LONG, SimpleType.INTEGER, SimpleType.DOUBLE, SimpleType.LONG,
+                            SimpleType.STRING, SimpleType.DATE, SimpleType.DATE });
+            TabularType tableType = new TabularType("JobsStatistics", "Tables of all jobs statistics", statsType, new String[]{ "Job" });
+            TabularData table = new TabularDataSupport(tableType);
+
+            for (Map.Entry<String, JobStatistics> entry : scheduler.getStatistics().entrySet()) {
+                JobStatistics stats = entry.getValue();
+                CompositeData data = new CompositeDataSupport(statsType, names,
+                        new Object[]{ entry.getKey(), stats.getRuns(), stats.getFailures(), stats.getMisfires(),
+                                stats.getSkipped(), stats.getRunning(), stats.getAverageDuration(), stats.getMaxDuration(),
+                                JobStatistics.formatHistogram(stats.getDurationHistogram()),
+                                stats.getLastFireTime(), stats.getNextFireTime() });
+                table.put(data);
+            }
+            return table;
+        } catch (Exception e) {
+            throw new MBeanException(null, e.toString());
+        }
+    }
+
     @Override
     public void trigger(String name, boolean background) throws MBeanException {
         try {
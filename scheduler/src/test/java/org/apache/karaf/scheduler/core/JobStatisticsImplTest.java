@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.scheduler.core;
+
+import java.util.Date;
+
+import org.apache.karaf.scheduler.JobStatistics;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class JobStatisticsImplTest {
+
+    @Test
+    public void testExecutions() {
+        JobStatisticsImpl stats = new JobStatisticsImpl();
+        assertEquals(0.0, stats.getAverageDuration(), 0.0);
+
+        assertTrue(stats.start(0));
+        assertEquals(1, stats.getRunning());
+        stats.end(5, false);
+        assertTrue(stats.start(0));
+        stats.end(150, true);
+        assertTrue(stats.start(0));
+        stats.end(120000, false);
+
+        assertEquals(0, stats.getRunning());
+        assertEquals(3, stats.getRuns());
+        assertEquals(1, stats.getFailures());
+        assertEquals(120000, stats.getMaxDuration());
+        assertEquals((5 + 150 + 120000) / 3.0, stats.getAverageDuration(), 0.001);
+        assertArrayEquals(new long[] {1, 0, 1, 0, 0, 1}, stats.getDurationHistogram());
+        assertEquals("<10ms=1 <100ms=0 <1s=1 <10s=0 <60s=0 >=60s=1",
+                JobStatistics.formatHistogram(stats.getDurationHistogram()));
+    }
+
+    @Test
+    public void testConcurrencyLimit() {
+        JobStatisticsImpl stats = new JobStatisticsImpl();
+        assertTrue(stats.start(2));
+        assertTrue(stats.start(2));
+        assertFalse(stats.start(2));
+        assertEquals(2, stats.getRunning());
+        assertEquals(1, stats.getSkipped());
+
+        stats.end(1, false);
+        assertTrue(stats.start(2));
+        assertEquals(1, stats.getSkipped());
+        // no limit
+        assertTrue(stats.start(0));
+        assertEquals(3, stats.getRunning());
+    }
+
+    @Test
+    public void testFireTimes() {
+        JobStatisticsImpl stats = new JobStatisticsImpl();
+        assertNull(stats.getLastFireTime());
+        Date fired = new Date(1000);
+        Date next = new Date(2000);
+        stats.fired(fired, next);
+        assertEquals(fired, stats.getLastFireTime());
+        assertEquals(next, stats.getNextFireTime());
+
+        Date later = new Date(3000);
+        stats.misfired(later);
+        assertEquals(1, stats.getMisfires());
+        assertEquals(fired, stats.getLastFireTime());
+        assertEquals(later, stats.getNextFireTime());
+    }
+
+}
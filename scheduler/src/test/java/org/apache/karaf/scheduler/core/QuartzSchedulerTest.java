@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.scheduler.core;
+
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import org.apache.karaf.scheduler.JobStatistics;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class QuartzSchedulerTest {
+
+    /** A schedule which never fires, jobs being triggered manually. */
+    private static final String NEVER = "0 0 0 1 1 ? 2099";
+
+    private QuartzScheduler scheduler;
+    private ExecutorService executor;
+
+    private void start(int concurrency) {
+        Properties properties = new Properties();
+        properties.put("org.quartz.scheduler.instanceName", "Test");
+        properties.put("org.quartz.threadPool.class", "org.quartz.simpl.SimpleThreadPool");
+        properties.put("org.quartz.threadPool.threadCount", "4");
+        properties.put("org.quartz.jobStore.class", "org.quartz.simpl.RAMJobStore");
+        AtomicInteger count = new AtomicInteger();
+        executor = Executors.newCachedThreadPool(r -> new Thread(r, "test-executor-" + count.incrementAndGet()));
+        scheduler = new QuartzScheduler(properties, executor, concurrency);
+    }
+
+    @After
+    public void tearDown() {
+        if (scheduler != null) {
+            scheduler.deactivate();
+        }
+    }
+
+    @Test
+    public void testExecutorHandOff() throws Exception {
+        start(0);
+        AtomicReference<String> thread = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        scheduler.schedule((Runnable) () -> {
+            thread.set(Thread.currentThread().getName());
+            done.countDown();
+        }, scheduler.EXPR(NEVER).name("handoff"));
+        assertTrue(scheduler.trigger("handoff"));
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertTrue(thread.get(), thread.get().startsWith("test-executor-"));
+        JobStatistics stats = scheduler.getStatistics().get("handoff");
+        await(() -> stats.getRuns() == 1);
+        assertEquals(0, stats.getFailures());
+        assertEquals(0, stats.getRunning());
+        assertTrue(stats.getLastFireTime() != null);
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        start(0);
+        scheduler.schedule((Runnable) () -> {
+            throw new IllegalStateException("boom");
+        }, scheduler.EXPR(NEVER).name("failure"));
+        assertTrue(scheduler.trigger("failure"));
+
+        JobStatistics stats = scheduler.getStatistics().get("failure");
+        await(() -> stats.getRuns() == 1);
+        assertEquals(1, stats.getFailures());
+    }
+
+    @Test
+    public void testUnscheduleResetsStatistics() throws Exception {
+        start(0);
+        scheduler.schedule((Runnable) () -> { }, scheduler.EXPR(NEVER).name("job"));
+        assertTrue(scheduler.trigger("job"));
+        JobStatistics stats = scheduler.getStatistics().get("job");
+        await(() -> stats.getRuns() == 1);
+
+        // the statistics are kept while the job is scheduled
+        assertTrue(scheduler.getStatistics().get("job") == stats);
+        assertTrue(scheduler.unschedule("job"));
+        assertTrue(scheduler.getStatistics().isEmpty());
+
+        scheduler.schedule((Runnable) () -> { }, scheduler.EXPR(NEVER).name("job"));
+        assertEquals(0, scheduler.getStatistics().get("job").getRuns());
+    }
+
+    @Test
+    public void testConcurrentExecutionsSkipped() throws Exception {
+        start(2);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        Runnable job = () -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                running.decrementAndGet();
+            }
+        };
+        scheduler.schedule(job, scheduler.EXPR(NEVER).name("serial").canRunConcurrently(false));
+        scheduler.schedule(job, scheduler.EXPR(NEVER).name("parallel").canRunConcurrently(true));
+        JobStatistics serial = scheduler.getStatistics().get("serial");
+        JobStatistics parallel = scheduler.getStatistics().get("parallel");
+
+        // a job which can not run concurrently is skipped while running
+        assertTrue(scheduler.trigger("serial"));
+        await(() -> serial.getRunning() == 1);
+        assertTrue(scheduler.trigger("serial"));
+        assertTrue(scheduler.trigger("serial"));
+        await(() -> serial.getSkipped() == 2);
+
+        // a concurrent job is bounded by the configured concurrency
+        for (int i = 0; i < 3; i++) {
+            assertTrue(scheduler.trigger("parallel"));
+        }
+        await(() -> parallel.getRunning() + parallel.getSkipped() == 3);
+        assertEquals(2, parallel.getRunning());
+        assertEquals(1, parallel.getSkipped());
+
+        release.countDown();
+        await(() -> serial.getRuns() == 1 && parallel.getRuns() == 2);
+        assertEquals(0, serial.getRunning());
+        assertEquals(0, parallel.getRunning());
+        assertEquals(3, maxRunning.get());
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 500 && !condition.getAsBoolean(); i++) {
+            Thread.sleep(20);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+}
@@ -19,21 +19,22 @@
 
 package org.apache.karaf.service.command;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.apache.karaf.shell.api.action.lifecycle.Destroy;
+import org.apache.karaf.shell.api.action.lifecycle.Init;
 import org.apache.karaf.shell.api.action.lifecycle.Reference;
 import org.apache.karaf.shell.api.action.lifecycle.Service;
-import org.apache.karaf.shell.api.console.CommandLine;
-import org.apache.karaf.shell.api.console.Completer;
-import org.apache.karaf.shell.api.console.Session;
-import org.apache.karaf.shell.support.completers.StringsCompleter;
+import org.apache.karaf.shell.api.console.Candidate;
+import org.apache.karaf.shell.support.completers.CachedCompleter;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceListener;
 
 @Service
-public class ObjectClassCompleter implements Completer {
+public class ObjectClassCompleter extends CachedCompleter implements ServiceListener {
 
     @Reference
     private BundleContext context;
@@ -42,16 +43,31 @@ public class ObjectClassCompleter implements Completer {
         this.context = context;
     }
 
+    @Init
+    public void init() {
+        context.addServiceListener(this);
+    }
+
+    @Destroy
+    public void destroy() {
+        context.removeServiceListener(this);
+    }
+
     @Override
-    public int complete(final Session session, final CommandLine commandLine, final List<String> candidates) {
+    protected void loadCandidates(List<Candidate> candidates) {
         Map<String, Integer> serviceNamesMap = ListServices.getServiceNamesMap(context);
         Set<String> serviceNames = serviceNamesMap.keySet();
-        List<String> strings = new ArrayList<>();
         for (String name : serviceNames) {
-            strings.add(ObjectClassMatcher.getShortName(name));
+            candidates.add(new Candidate(ObjectClassMatcher.getShortName(name)));
+            candidates.add(new Candidate(name));
+        }
+    }
+
+    @Override
+    public void serviceChanged(ServiceEvent event) {
+        if (event.getType() == ServiceEvent.REGISTERED || event.getType() == ServiceEvent.UNREGISTERING) {
+            invalidate();
         }
-        strings.addAll(serviceNames);
-        return new StringsCompleter(strings).complete(session, commandLine, candidates);
     }
 
 }
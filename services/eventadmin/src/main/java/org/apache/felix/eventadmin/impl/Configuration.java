@@ -29,6 +29,7 @@ import org.apache.felix.eventadmin.impl.adapter.ServiceEventAdapter;
 import org.apache.felix.eventadmin.impl.handler.EventAdminImpl;
 import org.apache.felix.eventadmin.impl.security.SecureEventAdminFactory;
 import org.apache.felix.eventadmin.impl.tasks.DefaultThreadPool;
+import org.apache.felix.eventadmin.impl.tasks.DeliveryStatistics;
 import org.apache.felix.eventadmin.impl.util.LogWrapper;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
@@ -88,6 +89,27 @@ import org.osgi.service.metatype.MetaTypeProvider;
  * all handlers in this package and all subpackages are ignored. If the string neither
  * ends with a dot nor with a start, this is assumed to define an exact class name.</p>
  *
+ * <p>
+ *      <code>org.apache.felix.eventadmin.AsyncQueueSize</code> - The maximum number
+ *          of asynchronous events waiting to be delivered.
+ * </p>
+ *
+ * <p>The default value is 10000. When the limit is reached, threads posting events
+ * are throttled until some events are delivered, or at most for the timeout. Events
+ * are never dropped. A value of 0 disables the limit.</p>
+ *
+ * <p>
+ *      <code>org.apache.felix.eventadmin.Coalesce</code> - Coalescing and sampling
+ *          rules for high-rate topics.
+ * </p>
+ *
+ * <p>The value is a list of rules of the form <code>topic;window=ms;key=property</code> or
+ * <code>topic;sample=n</code>, a rule combining a window and a sample being ignored.
+ * Only the <code>EventHandler</code>s registered with the <code>karaf.event.coalesce=true</code>
+ * service property are affected: they receive a single summary event per topic and window,
+ * or one event out of n. Other handlers still receive every event. Sent events are never
+ * coalesced. By default, no rule is defined.</p>
+ *
  * <p>These properties are read at startup and serve as a default configuration.
  * If a configuration admin is configured, the event admin can be configured
  * through the config admin.</p>
@@ -108,6 +130,8 @@ public class Configuration
     static final String PROP_LOG_LEVEL = "org.apache.felix.eventadmin.LogLevel";
     static final String PROP_ADD_TIMESTAMP = "org.apache.felix.eventadmin.AddTimestamp";
     static final String PROP_ADD_SUBJECT = "org.apache.felix.eventadmin.AddSubject";
+    static final String PROP_ASYNC_QUEUE_SIZE = "org.apache.felix.eventadmin.AsyncQueueSize";
+    static final String PROP_COALESCE = "org.apache.felix.eventadmin.Coalesce";
 
     /** The bundle context. */
     private final BundleContext m_bundleContext;
@@ -132,6 +156,13 @@ public class Configuration
 
     private boolean m_addSubject;
 
+    private int m_asyncQueueSize;
+
+    private String[] m_coalesce;
+
+    // The delivery statistics, kept across configuration updates
+    private final DeliveryStatistics m_statistics = new DeliveryStatistics();
+
     // The thread pool used - this is a member because we need to close it on stop
     private volatile DefaultThreadPool m_sync_pool;
 
@@ -151,6 +182,8 @@ public class Configuration
 
     private ServiceRegistration m_managedServiceReg;
 
+    private ServiceRegistration m_statisticsReg;
+
     public Configuration( BundleContext bundleContext )
     {
         m_bundleContext = bundleContext;
@@ -277,6 +310,10 @@ public class Configuration
                     m_bundleContext.getProperty(PROP_ADD_TIMESTAMP), false);
             m_addSubject = getBooleanProperty(
                     m_bundleContext.getProperty(PROP_ADD_SUBJECT), false);
+            m_asyncQueueSize = getIntProperty(PROP_ASYNC_QUEUE_SIZE,
+                    m_bundleContext.getProperty(PROP_ASYNC_QUEUE_SIZE), 10000, 0);
+            final String valueCoalesce = m_bundleContext.getProperty(PROP_COALESCE);
+            m_coalesce = valueCoalesce != null ? valueCoalesce.split(",") : null;
         }
         else
         {
@@ -323,6 +360,23 @@ public class Configuration
                     config.get(PROP_ADD_TIMESTAMP), false);
             m_addSubject = getBooleanProperty(
                     config.get(PROP_ADD_SUBJECT), false);
+            m_asyncQueueSize = getIntProperty(PROP_ASYNC_QUEUE_SIZE,
+                    config.get(PROP_ASYNC_QUEUE_SIZE), 10000, 0);
+            m_coalesce = null;
+            final Object valueCoalesce = config.get(PROP_COALESCE);
+            if ( valueCoalesce instanceof String )
+            {
+                m_coalesce = ((String) valueCoalesce).split(",");
+            }
+            else if ( valueCoalesce instanceof String[] )
+            {
+                m_coalesce = (String[]) valueCoalesce;
+            }
+            else if ( valueCoalesce != null )
+            {
+                LogWrapper.getLogger().log(LogWrapper.LOG_WARNING,
+                        "Value for property: " + PROP_COALESCE + " is neither a string nor a string array - Using default");
+            }
         }
         // a timeout less or equals to 100 means : disable timeout
         if ( m_timeout <= 100 )
@@ -347,6 +401,8 @@ public class Configuration
                 PROP_TIMEOUT + "=" + m_timeout);
         LogWrapper.getLogger().log(LogWrapper.LOG_DEBUG,
                 PROP_REQUIRE_TOPIC + "=" + m_requireTopic);
+        LogWrapper.getLogger().log(LogWrapper.LOG_DEBUG,
+                PROP_ASYNC_QUEUE_SIZE + "=" + m_asyncQueueSize);
 
         // Note that this uses a lazy thread pool that will create new threads on
         // demand - in case none of its cached threads is free - until threadPoolSize
@@ -380,7 +436,10 @@ public class Configuration
                     m_requireTopic,
                     m_ignoreTopics,
                     m_addTimestamp,
-                    m_addSubject);
+                    m_addSubject,
+                    m_statistics,
+                    m_asyncQueueSize,
+                    m_coalesce);
 
             // Finally, adapt the outside events to our kind of events as per spec
             adaptEvents(m_admin);
@@ -390,10 +449,14 @@ public class Configuration
             // appropriated permissions of each calling bundle
             m_registration = m_bundleContext.registerService(EventAdmin.class.getName(),
                     new SecureEventAdminFactory(m_admin), null);
+
+            // KARAF: expose the delivery statistics through the JMX whiteboard
+            registerStatistics();
         }
         else
         {
-            m_admin.update(m_timeout, m_ignoreTimeout, m_requireTopic, m_ignoreTopics, m_addTimestamp, m_addSubject);
+            m_admin.update(m_timeout, m_ignoreTimeout, m_requireTopic, m_ignoreTopics, m_addTimestamp, m_addSubject,
+                    m_asyncQueueSize, m_coalesce);
         }
 
     }
@@ -421,6 +484,11 @@ public class Configuration
                 m_managedServiceReg.unregister();
                 m_managedServiceReg = null;
             }
+            if ( m_statisticsReg != null )
+            {
+                m_statisticsReg.unregister();
+                m_statisticsReg = null;
+            }
             // We need to unregister manually
             if ( m_registration != null )
             {
@@ -445,6 +513,21 @@ public class Configuration
         }
     }
 
+    private void registerStatistics()
+    {
+        try
+        {
+            Dictionary<String, Object> props = new Hashtable<>();
+            props.put("jmx.objectname", "org.apache.karaf:type=eventadmin,name=" + System.getProperty("karaf.name"));
+            m_statisticsReg = m_bundleContext.registerService(EventAdminStatisticsMBean.class.getName(),
+                    new EventAdminStatistics(m_statistics), props);
+        }
+        catch ( Throwable t )
+        {
+            LogWrapper.getLogger().log(LogWrapper.LOG_WARNING, "Unable to register EventAdmin statistics MBean", t);
+        }
+    }
+
     /**
      * Init the adapters in org.apache.felix.eventadmin.impl.adapter
      */
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.eventadmin.impl;
+
+import javax.management.NotCompliantMBeanException;
+import javax.management.StandardMBean;
+
+import org.apache.felix.eventadmin.impl.tasks.DeliveryStatistics;
+
+/**
+ * Implementation of the EventAdmin statistics MBean.
+ * <p>
+ * KARAF: this class does not exist in Felix EventAdmin.
+ */
+public class EventAdminStatistics extends StandardMBean implements EventAdminStatisticsMBean
+{
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private final DeliveryStatistics m_statistics;
+
+    public EventAdminStatistics(final DeliveryStatistics statistics) throws NotCompliantMBeanException
+    {
+        super(EventAdminStatisticsMBean.class);
+        m_statistics = statistics;
+    }
+
+    @Override
+    public int getQueueSize()
+    {
+        return m_statistics.getQueueSize();
+    }
+
+    @Override
+    public long getMaxQueueSize()
+    {
+        return m_statistics.getMaxQueueSize();
+    }
+
+    @Override
+    public long getPostedEvents()
+    {
+        return m_statistics.getPostedEvents();
+    }
+
+    @Override
+    public long getSentEvents()
+    {
+        return m_statistics.getSentEvents();
+    }
+
+    @Override
+    public long getThrottledEvents()
+    {
+        return m_statistics.getThrottledEvents();
+    }
+
+    @Override
+    public long getTimeouts()
+    {
+        return m_statistics.getTimeouts();
+    }
+
+    @Override
+    public long getCoalescedEvents()
+    {
+        return m_statistics.getCoalescedEvents();
+    }
+
+    @Override
+    public double getAverageDeliveryTime()
+    {
+        final long deliveries = m_statistics.getDeliveries();
+        return deliveries > 0 ? m_statistics.getDeliveryTime() / NANOS_PER_MILLI / deliveries : 0.0;
+    }
+
+    @Override
+    public double getMaxDeliveryTime()
+    {
+        return m_statistics.getMaxDeliveryTime() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getAverageQueueTime()
+    {
+        final long posted = m_statistics.getPostedEvents() - m_statistics.getQueueSize();
+        return posted > 0 ? m_statistics.getQueueTime() / NANOS_PER_MILLI / posted : 0.0;
+    }
+
+    @Override
+    public double getMaxQueueTime()
+    {
+        return m_statistics.getMaxQueueTime() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public void resetStatistics()
+    {
+        m_statistics.reset();
+    }
+}
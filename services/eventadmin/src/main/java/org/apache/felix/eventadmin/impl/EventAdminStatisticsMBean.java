@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.eventadmin.impl;
+
+/**
+ * Statistics of the event delivery.
+ * <p>
+ * KARAF: this interface does not exist in Felix EventAdmin.
+ */
+public interface EventAdminStatisticsMBean
+{
+    /**
+     * Number of asynchronous events waiting to be delivered.
+     */
+    int getQueueSize();
+
+    /**
+     * Maximum number of asynchronous events waiting to be delivered.
+     */
+    long getMaxQueueSize();
+
+    /**
+     * Number of events posted (asynchronous delivery).
+     */
+    long getPostedEvents();
+
+    /**
+     * Number of events sent (synchronous delivery).
+     */
+    long getSentEvents();
+
+    /**
+     * Number of posted events whose sender has been throttled because the queue was full.
+     */
+    long getThrottledEvents();
+
+    /**
+     * Number of handlers denied because they exceeded the timeout.
+     */
+    long getTimeouts();
+
+    /**
+     * Number of posted events not delivered individually to the handlers
+     * accepting coalesced or sampled events.
+     */
+    long getCoalescedEvents();
+
+    /**
+     * Average time in milliseconds to deliver an event to all its handlers.
+     */
+    double getAverageDeliveryTime();
+
+    /**
+     * Maximum time in milliseconds to deliver an event to all its handlers.
+     */
+    double getMaxDeliveryTime();
+
+    /**
+     * Average time in milliseconds a posted event waits before being delivered.
+     */
+    double getAverageQueueTime();
+
+    /**
+     * Maximum time in milliseconds a posted event waits before being delivered.
+     */
+    double getMaxQueueTime();
+
+    /**
+     * Reset the statistics.
+     */
+    void resetStatistics();
+}
@@ -19,12 +19,19 @@
 package org.apache.felix.eventadmin.impl.handler;
 
 import java.security.AccessController;
-import java.util.HashMap;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 import javax.security.auth.Subject;
 
 import org.apache.felix.eventadmin.impl.tasks.AsyncDeliverTasks;
+import org.apache.felix.eventadmin.impl.tasks.CoalesceDeliverTasks;
 import org.apache.felix.eventadmin.impl.tasks.DefaultThreadPool;
+import org.apache.felix.eventadmin.impl.tasks.DeliveryStatistics;
 import org.apache.felix.eventadmin.impl.tasks.SyncDeliverTasks;
 import org.apache.felix.eventadmin.impl.util.Matchers;
 import org.osgi.framework.BundleContext;
@@ -56,6 +63,12 @@ public class EventAdminImpl implements EventAdmin
     // The synchronous event dispatcher
     private final SyncDeliverTasks m_sendManager;
 
+    // The coalescing and sampling of posted events
+    private final CoalesceDeliverTasks m_coalesceManager;
+
+    // The delivery statistics
+    private final DeliveryStatistics m_statistics;
+
     // matchers for ignore topics
     private Matchers.Matcher[] m_ignoreTopics;
 
@@ -74,6 +87,9 @@ public class EventAdminImpl implements EventAdmin
      * @param ignoreTopics The array of topics to ignore.
      * @param addTimestamp True to add timestamp to the event, false else.
      * @param addSubject True to add subject to the event, false else.
+     * @param statistics The delivery statistics.
+     * @param queueSize The maximum number of pending asynchronous events, 0 meaning unbounded.
+     * @param coalesce The coalescing and sampling rules.
      */
     public EventAdminImpl(
             final BundleContext bundleContext,
@@ -84,18 +100,25 @@ public class EventAdminImpl implements EventAdmin
             final boolean requireTopic,
             final String[] ignoreTopics,
             final boolean addTimestamp,
-            final boolean addSubject)
+            final boolean addSubject,
+            final DeliveryStatistics statistics,
+            final int queueSize,
+            final String[] coalesce)
     {
         checkNull(syncPool, "syncPool");
         checkNull(asyncPool, "asyncPool");
+        checkNull(statistics, "statistics");
 
         this.addTimestamp = addTimestamp;
         this.addSubject = addSubject;
         this.tracker = new EventHandlerTracker(bundleContext);
         this.tracker.update(ignoreTimeout, requireTopic);
         this.tracker.open();
+        m_statistics = statistics;
         m_sendManager = new SyncDeliverTasks(syncPool, timeout);
-        m_postManager = new AsyncDeliverTasks(asyncPool, m_sendManager);
+        m_postManager = new AsyncDeliverTasks(asyncPool, m_sendManager, statistics, queueSize, timeout);
+        m_coalesceManager = new CoalesceDeliverTasks(m_postManager, statistics);
+        m_coalesceManager.update(coalesce);
         m_ignoreTopics = Matchers.createEventTopicMatchers(ignoreTopics);
     }
 
@@ -147,20 +170,10 @@ public class EventAdminImpl implements EventAdmin
             needSubject = (subject != null);
         }
         if (needTimeStamp || needSubject) {
-            String[] names = event.getPropertyNames();
-            HashMap<String, Object> map = new HashMap<>(names.length + 1);
-            for (String name : names) {
-                if (!EventConstants.EVENT_TOPIC.equals(name)) {
-                    map.put(name, event.getProperty(name));
-                }
-            }
-            if (needTimeStamp) {
-                map.put(EventConstants.TIMESTAMP, System.currentTimeMillis());
-            }
-            if (needSubject) {
-                map.put(SUBJECT, subject);
-            }
-            event = new Event(event.getTopic(), map);
+            // the Event constructor copies the properties, so only give it a view
+            event = new Event(event.getTopic(), new DecoratedProperties(event,
+                    needTimeStamp ? System.currentTimeMillis() : null,
+                    needSubject ? subject : null));
         }
         return event;
     }
@@ -177,7 +190,17 @@ public class EventAdminImpl implements EventAdmin
     {
         if ( checkTopic( event ) )
         {
-            m_postManager.execute(this.getTracker().getHandlers(event), prepareEvent(event));
+            final EventHandlerTracker tracker = this.getTracker();
+            Collection<EventHandlerProxy> handlers = tracker.getHandlers(event);
+            if ( !handlers.isEmpty() )
+            {
+                final Event prepared = prepareEvent(event);
+                handlers = m_coalesceManager.execute(handlers, prepared, tracker::isCoalescing);
+                if ( !handlers.isEmpty() )
+                {
+                    m_postManager.execute(handlers, prepared);
+                }
+            }
         }
     }
 
@@ -193,7 +216,14 @@ public class EventAdminImpl implements EventAdmin
     {
         if ( checkTopic( event ) )
         {
-            m_sendManager.execute(this.getTracker().getHandlers(event), prepareEvent(event), false);
+            final Collection<EventHandlerProxy> handlers = this.getTracker().getHandlers(event);
+            m_statistics.sent();
+            if ( !handlers.isEmpty() )
+            {
+                final long start = System.nanoTime();
+                m_sendManager.execute(handlers, prepareEvent(event), false);
+                m_statistics.delivered(handlers, System.nanoTime() - start);
+            }
         }
     }
 
@@ -202,6 +232,7 @@ public class EventAdminImpl implements EventAdmin
      */
     public void stop()
     {
+        this.m_coalesceManager.stop();
         this.tracker.close();
         this.tracker = null;
     }
@@ -215,23 +246,109 @@ public class EventAdminImpl implements EventAdmin
      * @param ignoreTopics The array of topic to ignore.
      * @param addTimestamp True to add timestamp to the event, false else.
      * @param addSubject True to add subject to the event, false else.
+     * @param queueSize The maximum number of pending asynchronous events, 0 meaning unbounded.
+     * @param coalesce The coalescing and sampling rules.
      */
     public void update(final int timeout,
                        final String[] ignoreTimeout,
                        final boolean requireTopic,
                        final String[] ignoreTopics,
                        final boolean addTimestamp,
-                       final boolean addSubject)
+                       final boolean addSubject,
+                       final int queueSize,
+                       final String[] coalesce)
     {
         this.addTimestamp = addTimestamp;
         this.addSubject = addSubject;
         this.tracker.close();
         this.tracker.update(ignoreTimeout, requireTopic);
         this.m_sendManager.update(timeout);
+        this.m_postManager.update(queueSize, timeout);
+        this.m_coalesceManager.update(coalesce);
         this.tracker.open();
         this.m_ignoreTopics = Matchers.createEventTopicMatchers(ignoreTopics);
     }
 
+    /**
+     * A read-only view of the properties of an event with an additional
+     * timestamp and subject, avoiding an intermediate copy of the properties
+     * before the new event copies them.
+     */
+    static final class DecoratedProperties extends AbstractMap<String, Object> {
+
+        private final Event event;
+        private final String[] names;
+        private final Long timestamp;
+        private final Subject subject;
+
+        DecoratedProperties(Event event, Long timestamp, Subject subject) {
+            this.event = event;
+            this.names = event.getPropertyNames();
+            this.timestamp = timestamp;
+            this.subject = subject;
+        }
+
+        @Override
+        public Object get(Object key) {
+            if (timestamp != null && EventConstants.TIMESTAMP.equals(key)) {
+                return timestamp;
+            }
+            if (subject != null && SUBJECT.equals(key)) {
+                return subject;
+            }
+            return key instanceof String ? event.getProperty((String) key) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public int size() {
+            return names.length + (timestamp != null ? 1 : 0) + (subject != null ? 1 : 0);
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            return new AbstractSet<Entry<String, Object>>() {
+                @Override
+                public int size() {
+                    return DecoratedProperties.this.size();
+                }
+
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    return new Iterator<Entry<String, Object>>() {
+                        int index;
+
+                        @Override
+                        public boolean hasNext() {
+                            return index < DecoratedProperties.this.size();
+                        }
+
+                        @Override
+                        public Entry<String, Object> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            String key;
+                            int i = index++;
+                            if (i < names.length) {
+                                key = names[i];
+                            } else if (i == names.length && timestamp != null) {
+                                key = EventConstants.TIMESTAMP;
+                            } else {
+                                key = SUBJECT;
+                            }
+                            return new SimpleImmutableEntry<>(key, get(key));
+                        }
+                    };
+                }
+            };
+        }
+    }
+
     /**
      * This is a utility method that will throw a <code>NullPointerException</code>
      * in case that the given object is null. The message will be of the form
@@ -0,0 +1,314 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.eventadmin.impl.handler;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.felix.eventadmin.impl.util.Matchers;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventHandler;
+import org.osgi.util.tracker.ServiceTracker;
+
+/**
+ * The event handler tracker keeps track of all event handler services.
+ * <p>
+ * KARAF: handlers are kept in an immutable topic trie which is rebuilt and
+ * published through a volatile field whenever a handler is added, modified or
+ * removed.  Looking up the handlers of an event is thus lock-free and only
+ * walks the segments of the event topic, the handler filters being compiled
+ * once by the {@link EventHandlerProxy}.
+ *
+ * @author <a href="mailto:dev@felix.apache.org">Felix Project Team</a>
+ */
+public class EventHandlerTracker extends ServiceTracker<EventHandler, EventHandlerProxy> {
+
+    /**
+     * KARAF: service property of the handlers accepting coalesced or sampled events.
+     */
+    public static final String COALESCE = "karaf.event.coalesce";
+
+    /** The registered handlers and their topics, in registration order. */
+    private final Map<EventHandlerProxy, String[]> handlers = new LinkedHashMap<>();
+
+    /** The handlers accepting coalesced or sampled events. */
+    private final Set<EventHandlerProxy> coalescing = new HashSet<>();
+
+    /** The current handler index. */
+    private volatile Index index = new Index(Collections.emptyMap(), Collections.emptySet());
+
+    /** The context for the proxies. */
+    private HandlerContext handlerContext;
+
+    public EventHandlerTracker(final BundleContext context) {
+        super(context, EventHandler.class.getName(), null);
+    }
+
+    /**
+     * Update the timeout configuration.
+     *
+     * @param ignoreTimeout The array of handlers to be called without timeout.
+     * @param requireTopic True if the topic is required, false else.
+     */
+    public void update(final String[] ignoreTimeout, final boolean requireTopic) {
+        final Matchers.Matcher[] ignoreTimeoutMatcher = Matchers.createPackageMatchers(ignoreTimeout);
+        this.handlerContext = new HandlerContext(this.context, ignoreTimeoutMatcher, requireTopic);
+    }
+
+    /**
+     * @see org.osgi.util.tracker.ServiceTracker#addingService(org.osgi.framework.ServiceReference)
+     */
+    @Override
+    public EventHandlerProxy addingService(final ServiceReference<EventHandler> reference) {
+        final EventHandlerProxy proxy = new EventHandlerProxy(this.handlerContext, reference);
+        if (proxy.update()) {
+            this.put(proxy, reference);
+        }
+        return proxy;
+    }
+
+    /**
+     * @see org.osgi.util.tracker.ServiceTracker#modifiedService(org.osgi.framework.ServiceReference, java.lang.Object)
+     */
+    @Override
+    public void modifiedService(final ServiceReference<EventHandler> reference, final EventHandlerProxy proxy) {
+        this.remove(proxy);
+        if (proxy.update()) {
+            this.put(proxy, reference);
+        }
+    }
+
+    /**
+     * @see org.osgi.util.tracker.ServiceTracker#removedService(org.osgi.framework.ServiceReference, java.lang.Object)
+     */
+    @Override
+    public void removedService(final ServiceReference<EventHandler> reference, final EventHandlerProxy proxy) {
+        this.remove(proxy);
+        proxy.dispose();
+    }
+
+    private synchronized void put(final EventHandlerProxy proxy, final ServiceReference<EventHandler> reference) {
+        this.handlers.put(proxy, proxy.getTopics());
+        final Object coalesce = reference.getProperty(COALESCE);
+        if (coalesce != null && Boolean.parseBoolean(coalesce.toString())) {
+            this.coalescing.add(proxy);
+        }
+        this.index = new Index(this.handlers, this.coalescing);
+    }
+
+    private synchronized void remove(final EventHandlerProxy proxy) {
+        this.coalescing.remove(proxy);
+        if (this.handlers.remove(proxy) != null) {
+            this.index = new Index(this.handlers, this.coalescing);
+        }
+    }
+
+    /**
+     * Check if the handler accepts coalesced or sampled events.
+     *
+     * @param proxy The handler
+     * @return True if the handler has been registered with the {@link #COALESCE} property
+     */
+    public boolean isCoalescing(final EventHandlerProxy proxy) {
+        return this.index.coalescing.contains(proxy);
+    }
+
+    /**
+     * Get all handlers for this event.
+     *
+     * @param event The event topic
+     * @return All handlers for the event
+     */
+    public Collection<EventHandlerProxy> getHandlers(final Event event) {
+        final Index index = this.index;
+        final String topic = event.getTopic();
+        List<EventHandlerProxy> result = null;
+
+        // Add all handlers matching everything
+        result = index.add(result, index.matchingAllEvents, event);
+
+        // Walk the topic segments, adding the prefix handlers of each
+        // parent topic and the exact handlers of the last segment
+        Node node = index.root;
+        int start = 0;
+        while (node != null) {
+            final int end = topic.indexOf('/', start);
+            if (end == -1) {
+                node = node.child(topic.substring(start));
+                if (node != null) {
+                    result = index.add(result, node.matchingTopic, event);
+                }
+                break;
+            }
+            node = node.child(topic.substring(start, end));
+            if (node != null) {
+                result = index.add(result, node.matchingPrefixTopic, event);
+            }
+            start = end + 1;
+        }
+        return result != null ? result : Collections.emptyList();
+    }
+
+    /**
+     * Get all handlers which have been denied.
+     *
+     * @return A collection of handlers
+     */
+    public synchronized Collection<EventHandlerProxy> getDeniedHandlers() {
+        final Set<EventHandlerProxy> result = new HashSet<>();
+        for (final EventHandlerProxy proxy : this.handlers.keySet()) {
+            if (proxy.isDenied()) {
+                result.add(proxy);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * An immutable snapshot of the registered handlers.
+     */
+    private static final class Index {
+
+        private static final EventHandlerProxy[] EMPTY = new EventHandlerProxy[0];
+
+        /** Handlers registered without topic or with the <code>*</code> topic. */
+        final EventHandlerProxy[] matchingAllEvents;
+
+        /** The root of the topic trie. */
+        final Node root = new Node();
+
+        /** Handlers which may be found more than once for a single event. */
+        final Set<EventHandlerProxy> multiple = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        /** Handlers accepting coalesced or sampled events. */
+        final Set<EventHandlerProxy> coalescing = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        Index(final Map<EventHandlerProxy, String[]> handlers, final Set<EventHandlerProxy> coalescing) {
+            this.coalescing.addAll(coalescing);
+            final List<EventHandlerProxy> all = new ArrayList<>();
+            for (final Map.Entry<EventHandlerProxy, String[]> entry : handlers.entrySet()) {
+                final EventHandlerProxy proxy = entry.getKey();
+                final String[] topics = entry.getValue();
+                if (topics == null) {
+                    all.add(proxy);
+                    continue;
+                }
+                if (topics.length > 1) {
+                    multiple.add(proxy);
+                }
+                for (final String topic : topics) {
+                    if (topic.endsWith("/*")) {
+                        root.path(topic.substring(0, topic.length() - 2)).prefix.add(proxy);
+                    } else {
+                        root.path(topic).exact.add(proxy);
+                    }
+                }
+            }
+            this.matchingAllEvents = all.toArray(EMPTY);
+            root.freeze();
+        }
+
+        List<EventHandlerProxy> add(List<EventHandlerProxy> result, final EventHandlerProxy[] proxies, final Event event) {
+            for (final EventHandlerProxy proxy : proxies) {
+                if (multiple.contains(proxy) && result != null && result.contains(proxy)) {
+                    continue;
+                }
+                if (proxy.canDeliver(event)) {
+                    if (result == null) {
+                        result = new ArrayList<>(4);
+                    }
+                    result.add(proxy);
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * A topic trie node, representing a topic segment.
+     */
+    private static final class Node {
+
+        private Map<String, Node> children = new HashMap<>();
+
+        /** Handlers registered for the topic ending with this segment. */
+        EventHandlerProxy[] matchingTopic;
+
+        /** Handlers registered for the sub-topics of this node (<code>topic/*</code>). */
+        EventHandlerProxy[] matchingPrefixTopic;
+
+        // only used while building
+        private List<EventHandlerProxy> exact = new ArrayList<>();
+        private List<EventHandlerProxy> prefix = new ArrayList<>();
+
+        Node child(final String segment) {
+            return children.get(segment);
+        }
+
+        Node path(final String topic) {
+            Node node = this;
+            for (final String segment : topic.split("/", -1)) {
+                node = node.children.computeIfAbsent(segment, s -> new Node());
+            }
+            return node;
+        }
+
+        void freeze() {
+            matchingTopic = exact.toArray(Index.EMPTY);
+            matchingPrefixTopic = prefix.toArray(Index.EMPTY);
+            exact = null;
+            prefix = null;
+            if (children.isEmpty()) {
+                children = Collections.emptyMap();
+            } else {
+                children.values().forEach(Node::freeze);
+            }
+        }
+    }
+
+    static final class HandlerContext {
+
+        /** The bundle context. */
+        public final BundleContext bundleContext;
+
+        /** The matchers for ignore timeout handling. */
+        public final Matchers.Matcher[] ignoreTimeoutMatcher;
+
+        /** Is a topic required. */
+        public final boolean requireTopic;
+
+        public HandlerContext(final BundleContext bundleContext,
+                              final Matchers.Matcher[] ignoreTimeoutMatcher,
+                              final boolean requireTopic) {
+            this.bundleContext = bundleContext;
+            this.ignoreTimeoutMatcher = ignoreTimeoutMatcher;
+            this.requireTopic = requireTopic;
+        }
+    }
+}
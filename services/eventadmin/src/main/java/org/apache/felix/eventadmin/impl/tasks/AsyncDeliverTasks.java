@@ -0,0 +1,270 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.eventadmin.impl.tasks;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.felix.eventadmin.impl.handler.EventHandlerProxy;
+import org.apache.felix.eventadmin.impl.util.LogWrapper;
+import org.osgi.service.event.Event;
+
+/**
+ * This is the implementation of the asynchronous event delivery.
+ * <p>
+ * Events posted by a thread are delivered in order: each sending thread has
+ * its own lock-free queue which is drained by at most one thread of the pool
+ * at a time.  The number of queued events is bounded: when the capacity is
+ * reached, the posting thread waits (at most for the configured timeout) for
+ * some events to be delivered.  Events are never dropped, and threads
+ * delivering events are never throttled to avoid dead locks when handlers
+ * post new events.
+ * <p>
+ * KARAF: this class replaces the Felix implementation which synchronizes on
+ * the sender queue and does not bound the number of pending events.
+ *
+ * @author <a href="mailto:dev@felix.apache.org">Felix Project Team</a>
+ */
+public class AsyncDeliverTasks
+{
+    /** Marks the threads currently delivering events. */
+    private static final ThreadLocal<Boolean> DELIVERING = new ThreadLocal<>();
+
+    /** The thread pool to use to spin-off new threads. */
+    private final DefaultThreadPool m_pool;
+
+    /** The deliver task for actually delivering the events. */
+    private final SyncDeliverTasks m_deliver_task;
+
+    /** The delivery statistics. */
+    private final DeliveryStatistics m_statistics;
+
+    /** The sender queues, per thread id. */
+    private final Map<Long, SenderQueue> m_running_threads = new ConcurrentHashMap<>();
+
+    /** Used to wake up throttled posting threads. */
+    private final Object m_lock = new Object();
+
+    /** The number of throttled posting threads. */
+    private volatile int m_waiting;
+
+    /** The maximum number of pending events, 0 meaning unbounded. */
+    private volatile int m_capacity;
+
+    /** The maximum time in milliseconds a posting thread is throttled. */
+    private volatile long m_timeout;
+
+    /**
+     * The constructor of the class that will use the asynchronous.
+     *
+     * @param pool The thread pool used to spin-off new asynchronous event
+     *      dispatching threads in case of timeout or that the asynchronous event
+     *      dispatching thread is used to send a synchronous event
+     * @param deliverTask The SyncDeliverTask
+     * @param statistics The delivery statistics
+     * @param capacity The maximum number of pending events, 0 meaning unbounded
+     * @param timeout The maximum time in milliseconds a posting thread is throttled
+     */
+    public AsyncDeliverTasks(final DefaultThreadPool pool,
+                             final SyncDeliverTasks deliverTask,
+                             final DeliveryStatistics statistics,
+                             final int capacity,
+                             final long timeout)
+    {
+        m_pool = pool;
+        m_deliver_task = deliverTask;
+        m_statistics = statistics;
+        update(capacity, timeout);
+    }
+
+    /**
+     * Update the queue configuration.
+     *
+     * @param capacity The maximum number of pending events, 0 meaning unbounded
+     * @param timeout The maximum time in milliseconds a posting thread is throttled
+     */
+    public void update(final int capacity, final long timeout)
+    {
+        m_capacity = capacity;
+        m_timeout = timeout > 0 ? timeout : 1000;
+        wakeUp();
+    }
+
+    /**
+     * This does not block an unrelated thread used to send a synchronous event.
+     *
+     * @param tasks The event handler dispatch tasks to execute
+     * @param event The event to deliver
+     */
+    public void execute(final Collection<EventHandlerProxy> tasks, final Event event)
+    {
+        throttle();
+        final TaskInfo info = new TaskInfo(tasks, event);
+        m_statistics.posted();
+        final Long threadId = Thread.currentThread().getId();
+        for (;;)
+        {
+            final SenderQueue queue = m_running_threads.computeIfAbsent(threadId, SenderQueue::new);
+            final int size = queue.size.get();
+            if (size < 0)
+            {
+                // the queue is being discarded
+                m_running_threads.remove(threadId, queue);
+                continue;
+            }
+            if (queue.size.compareAndSet(size, size + 1))
+            {
+                queue.tasks.offer(info);
+                if (size == 0 && !m_pool.executeTask(queue))
+                {
+                    // if we can't spin off a thread, we do it synchronously
+                    queue.run();
+                }
+                return;
+            }
+        }
+    }
+
+    private void throttle()
+    {
+        final int capacity = m_capacity;
+        if (capacity <= 0 || m_statistics.getQueueSize() < capacity || DELIVERING.get() != null)
+        {
+            return;
+        }
+        m_statistics.throttled();
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(m_timeout);
+        synchronized (m_lock)
+        {
+            m_waiting++;
+            try
+            {
+                long remaining;
+                while (m_statistics.getQueueSize() >= m_capacity && m_capacity > 0
+                        && (remaining = deadline - System.nanoTime()) > 0)
+                {
+                    TimeUnit.NANOSECONDS.timedWait(m_lock, remaining);
+                }
+            }
+            catch (final InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            finally
+            {
+                m_waiting--;
+            }
+        }
+    }
+
+    private void wakeUp()
+    {
+        if (m_waiting > 0)
+        {
+            synchronized (m_lock)
+            {
+                m_lock.notifyAll();
+            }
+        }
+    }
+
+    private void deliver(final TaskInfo info)
+    {
+        final long start = System.nanoTime();
+        m_statistics.dequeued(start - info.posted);
+        wakeUp();
+        m_deliver_task.execute(info.tasks, info.event, true);
+        m_statistics.delivered(info.tasks, System.nanoTime() - start);
+    }
+
+    /**
+     * The events posted by a given thread.  The size is the number of events
+     * queued or being delivered, or <code>-1</code> once the queue has been
+     * drained and discarded.
+     */
+    private final class SenderQueue implements Runnable
+    {
+        final ConcurrentLinkedQueue<TaskInfo> tasks = new ConcurrentLinkedQueue<>();
+        final AtomicInteger size = new AtomicInteger();
+        private final Long threadId;
+
+        SenderQueue(final Long threadId)
+        {
+            this.threadId = threadId;
+        }
+
+        @Override
+        public void run()
+        {
+            final boolean nested = DELIVERING.get() != null;
+            DELIVERING.set(Boolean.TRUE);
+            try
+            {
+                for (;;)
+                {
+                    TaskInfo info;
+                    while ((info = tasks.poll()) == null)
+                    {
+                        // the size has been incremented but the task is not yet offered
+                        Thread.onSpinWait();
+                    }
+                    try
+                    {
+                        deliver(info);
+                    }
+                    catch (final RuntimeException e)
+                    {
+                        LogWrapper.getLogger().log(LogWrapper.LOG_WARNING,
+                                "Unable to deliver event " + info.event, e);
+                    }
+                    if (size.compareAndSet(1, -1))
+                    {
+                        m_running_threads.remove(threadId, this);
+                        return;
+                    }
+                    size.decrementAndGet();
+                }
+            }
+            finally
+            {
+                if (!nested)
+                {
+                    DELIVERING.remove();
+                }
+            }
+        }
+    }
+
+    private static final class TaskInfo
+    {
+        final Collection<EventHandlerProxy> tasks;
+        final Event event;
+        final long posted = System.nanoTime();
+
+        TaskInfo(final Collection<EventHandlerProxy> tasks, final Event event)
+        {
+            this.tasks = tasks;
+            this.event = event;
+        }
+    }
+}
@@ -0,0 +1,420 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.eventadmin.impl.tasks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import org.apache.felix.eventadmin.impl.handler.EventHandlerProxy;
+import org.apache.felix.eventadmin.impl.util.LogWrapper;
+import org.apache.felix.eventadmin.impl.util.Matchers;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventConstants;
+
+/**
+ * Coalescing and sampling of posted events for high-rate topics.
+ * <p>
+ * Rules are given as <code>topic;window=ms;key=property</code> or
+ * <code>topic;sample=n</code> where the topic may end with <code>/*</code>
+ * to match its sub-topics, as the topics of the event handlers, or use the
+ * wildcards of the ignored topics.  A rule can not both coalesce and sample
+ * events.
+ * Only the handlers registered with the
+ * {@link org.apache.felix.eventadmin.impl.handler.EventHandlerTracker#COALESCE}
+ * service property are affected, other handlers still receive every event.
+ * <ul>
+ *     <li>with a <code>window</code>, the events of a topic are collected for
+ *     the given number of milliseconds and a single summary event is posted
+ *     on the same topic with the {@link #COALESCED}, {@link #COUNT},
+ *     {@link #FIRST}, {@link #LAST} and, if a <code>key</code> is given, the
+ *     {@link #KEYS} properties;</li>
+ *     <li>with a <code>sample</code>, only one event out of <code>n</code> is
+ *     delivered.</li>
+ * </ul>
+ * <p>
+ * KARAF: this class does not exist in Felix EventAdmin.
+ */
+public class CoalesceDeliverTasks
+{
+    /** Set to <code>true</code> on summary events. */
+    public static final String COALESCED = "coalesced";
+
+    /** The number of coalesced events. */
+    public static final String COUNT = "count";
+
+    /** The first coalesced event. */
+    public static final String FIRST = "first";
+
+    /** The last coalesced event. */
+    public static final String LAST = "last";
+
+    /** The distinct values of the rule key property, as a <code>String[]</code>. */
+    public static final String KEYS = "keys";
+
+    private static final int MAX_KEYS = 256;
+
+    /** The asynchronous event dispatcher. */
+    private final AsyncDeliverTasks m_postManager;
+
+    /** The delivery statistics. */
+    private final DeliveryStatistics m_statistics;
+
+    /** The pending windows, per topic. */
+    private final Map<String, Window> m_windows = new ConcurrentHashMap<>();
+
+    private volatile Rule[] m_rules = new Rule[0];
+
+    private volatile ScheduledExecutorService m_timer;
+
+    public CoalesceDeliverTasks(final AsyncDeliverTasks postManager, final DeliveryStatistics statistics)
+    {
+        m_postManager = postManager;
+        m_statistics = statistics;
+    }
+
+    /**
+     * Update the rules.  Pending windows are flushed.
+     *
+     * @param rules The rules, or <code>null</code>
+     */
+    public synchronized void update(final String[] rules)
+    {
+        final List<Rule> list = new ArrayList<>();
+        if (rules != null)
+        {
+            for (final String rule : rules)
+            {
+                try
+                {
+                    final Rule r = Rule.parse(rule);
+                    if (r != null)
+                    {
+                        list.add(r);
+                    }
+                }
+                catch (final IllegalArgumentException e)
+                {
+                    LogWrapper.getLogger().log(LogWrapper.LOG_WARNING,
+                            "Invalid coalescing rule: " + rule + " - Ignoring", e);
+                }
+            }
+        }
+        final boolean windows = list.stream().anyMatch(r -> r.window > 0);
+        if (windows && m_timer == null)
+        {
+            m_timer = Executors.newSingleThreadScheduledExecutor(r -> {
+                final Thread thread = new Thread(r, "EventAdminCoalescer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        m_rules = list.toArray(new Rule[0]);
+        flush();
+        if (!windows && m_timer != null)
+        {
+            m_timer.shutdown();
+            m_timer = null;
+        }
+    }
+
+    /**
+     * Stop the timer, discarding the pending windows.
+     */
+    public synchronized void stop()
+    {
+        m_rules = new Rule[0];
+        m_windows.clear();
+        if (m_timer != null)
+        {
+            m_timer.shutdownNow();
+            m_timer = null;
+        }
+    }
+
+    /**
+     * Coalesce or sample the event for the handlers accepting it.
+     *
+     * @param handlers The handlers matching the event
+     * @param event The event
+     * @param coalescing Tells whether a handler accepts coalesced or sampled events
+     * @return The handlers the event must still be delivered to
+     */
+    public Collection<EventHandlerProxy> execute(final Collection<EventHandlerProxy> handlers,
+                                                 final Event event,
+                                                 final Predicate<EventHandlerProxy> coalescing)
+    {
+        final Rule[] rules = m_rules;
+        if (rules.length == 0)
+        {
+            return handlers;
+        }
+        final String topic = event.getTopic();
+        Rule rule = null;
+        for (final Rule r : rules)
+        {
+            if (r.matcher.match(topic))
+            {
+                rule = r;
+                break;
+            }
+        }
+        if (rule == null)
+        {
+            return handlers;
+        }
+        List<EventHandlerProxy> direct = null;
+        List<EventHandlerProxy> coalesced = null;
+        for (final EventHandlerProxy handler : handlers)
+        {
+            if (coalescing.test(handler))
+            {
+                if (coalesced == null)
+                {
+                    coalesced = new ArrayList<>(handlers.size());
+                    direct = new ArrayList<>(handlers.size());
+                    for (final EventHandlerProxy h : handlers)
+                    {
+                        if (h == handler)
+                        {
+                            break;
+                        }
+                        direct.add(h);
+                    }
+                }
+                coalesced.add(handler);
+            }
+            else if (direct != null)
+            {
+                direct.add(handler);
+            }
+        }
+        if (coalesced == null)
+        {
+            return handlers;
+        }
+        if (rule.window > 0)
+        {
+            window(rule, topic, event, coalesced);
+        }
+        else if (rule.sample(topic))
+        {
+            m_postManager.execute(coalesced, event);
+        }
+        else
+        {
+            m_statistics.coalesced();
+        }
+        return direct;
+    }
+
+    private void window(final Rule rule, final String topic, final Event event, final List<EventHandlerProxy> handlers)
+    {
+        m_windows.compute(topic, (t, window) -> {
+            if (window == null)
+            {
+                window = new Window(rule, event);
+                schedule(t, rule.window);
+            }
+            else
+            {
+                m_statistics.coalesced();
+            }
+            window.add(event, handlers);
+            return window;
+        });
+    }
+
+    private void schedule(final String topic, final long window)
+    {
+        final ScheduledExecutorService timer = m_timer;
+        try
+        {
+            if (timer != null)
+            {
+                timer.schedule(() -> flush(topic), window, TimeUnit.MILLISECONDS);
+            }
+        }
+        catch (final RejectedExecutionException e)
+        {
+            // stopped or being updated, the window will be flushed by update()
+        }
+    }
+
+    private void flush()
+    {
+        for (final String topic : new ArrayList<>(m_windows.keySet()))
+        {
+            flush(topic);
+        }
+    }
+
+    private void flush(final String topic)
+    {
+        final Window window = m_windows.remove(topic);
+        if (window != null)
+        {
+            try
+            {
+                m_postManager.execute(window.handlers, window.toEvent(topic));
+            }
+            catch (final RuntimeException e)
+            {
+                LogWrapper.getLogger().log(LogWrapper.LOG_WARNING,
+                        "Unable to deliver coalesced events for topic " + topic, e);
+            }
+        }
+    }
+
+    /**
+     * The events collected for a topic.  Only accessed while holding the map entry.
+     */
+    private static final class Window
+    {
+        final Set<EventHandlerProxy> handlers = new LinkedHashSet<>();
+        final Set<String> keys;
+        final String key;
+        final Event first;
+        Event last;
+        int count;
+
+        Window(final Rule rule, final Event first)
+        {
+            this.first = first;
+            this.key = rule.key;
+            this.keys = rule.key != null ? new LinkedHashSet<>() : null;
+        }
+
+        void add(final Event event, final Collection<EventHandlerProxy> handlers)
+        {
+            this.last = event;
+            this.count++;
+            this.handlers.addAll(handlers);
+            if (keys != null && keys.size() < MAX_KEYS)
+            {
+                final Object value = event.getProperty(key);
+                if (value != null)
+                {
+                    keys.add(value.toString());
+                }
+            }
+        }
+
+        Event toEvent(final String topic)
+        {
+            final Map<String, Object> props = new HashMap<>();
+            props.put(COALESCED, Boolean.TRUE);
+            props.put(COUNT, count);
+            props.put(FIRST, first);
+            props.put(LAST, last);
+            props.put(EventConstants.TIMESTAMP, System.currentTimeMillis());
+            if (keys != null)
+            {
+                props.put(KEYS, keys.toArray(new String[0]));
+            }
+            return new Event(topic, props);
+        }
+    }
+
+    private static final class Rule
+    {
+        final Matchers.Matcher matcher;
+        final long window;
+        final int sample;
+        final String key;
+        final Map<String, AtomicLong> counters = new ConcurrentHashMap<>();
+
+        Rule(final Matchers.Matcher matcher, final long window, final int sample, final String key)
+        {
+            this.matcher = matcher;
+            this.window = window;
+            this.sample = sample;
+            this.key = key;
+        }
+
+        boolean sample(final String topic)
+        {
+            return sample <= 1
+                    || counters.computeIfAbsent(topic, t -> new AtomicLong()).getAndIncrement() % sample == 0;
+        }
+
+        static Rule parse(final String rule)
+        {
+            final String[] parts = rule.trim().split("\\s*;\\s*");
+            if (parts[0].isEmpty())
+            {
+                return null;
+            }
+            long window = 0;
+            int sample = 0;
+            String key = null;
+            for (int i = 1; i < parts.length; i++)
+            {
+                final int idx = parts[i].indexOf('=');
+                if (idx < 0)
+                {
+                    throw new IllegalArgumentException("Missing value for " + parts[i]);
+                }
+                final String name = parts[i].substring(0, idx).trim();
+                final String value = parts[i].substring(idx + 1).trim();
+                switch (name)
+                {
+                    case "window":
+                        window = Long.parseLong(value);
+                        break;
+                    case "sample":
+                        sample = Integer.parseInt(value);
+                        break;
+                    case "key":
+                        key = value;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown attribute " + name);
+                }
+            }
+            if (window > 0 && sample > 0)
+            {
+                throw new IllegalArgumentException("The window and sample attributes can not be combined");
+            }
+            if (window <= 0 && sample <= 1)
+            {
+                throw new IllegalArgumentException("A positive window or a sample greater than 1 is required");
+            }
+            String topic = parts[0];
+            if (topic.endsWith("/*"))
+            {
+                // the matchers of the ignored topics use the topic*
+                // syntax to match the sub-topics
+                topic = topic.substring(0, topic.length() - 2) + "*";
+            }
+            return new Rule(Matchers.createEventTopicMatchers(new String[] {topic})[0], window, sample, key);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.eventadmin.impl.tasks;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.felix.eventadmin.impl.handler.EventHandlerProxy;
+
+/**
+ * Lock-free counters describing the event delivery.
+ * <p>
+ * KARAF: this class does not exist in Felix EventAdmin.
+ */
+public class DeliveryStatistics
+{
+    private final LongAdder m_sent = new LongAdder();
+    private final LongAdder m_posted = new LongAdder();
+    private final LongAdder m_throttled = new LongAdder();
+    private final LongAdder m_timeouts = new LongAdder();
+    private final LongAdder m_coalesced = new LongAdder();
+    private final LongAdder m_deliveries = new LongAdder();
+    private final LongAdder m_deliveryTime = new LongAdder();
+    private final LongAccumulator m_maxDeliveryTime = new LongAccumulator(Math::max, 0);
+    private final LongAdder m_queueTime = new LongAdder();
+    private final LongAccumulator m_maxQueueTime = new LongAccumulator(Math::max, 0);
+    private final AtomicInteger m_queueSize = new AtomicInteger();
+    private final LongAccumulator m_maxQueueSize = new LongAccumulator(Math::max, 0);
+
+    void posted()
+    {
+        m_posted.increment();
+        m_maxQueueSize.accumulate(m_queueSize.incrementAndGet());
+    }
+
+    void dequeued(final long queueTime)
+    {
+        m_queueSize.decrementAndGet();
+        m_queueTime.add(queueTime);
+        m_maxQueueTime.accumulate(queueTime);
+    }
+
+    void throttled()
+    {
+        m_throttled.increment();
+    }
+
+    void coalesced()
+    {
+        m_coalesced.increment();
+    }
+
+    public void sent()
+    {
+        m_sent.increment();
+    }
+
+    /**
+     * Record the delivery of an event to its handlers.
+     *
+     * @param handlers The handlers the event has been delivered to.
+     * @param time The delivery time in nanoseconds.
+     */
+    public void delivered(final Collection<EventHandlerProxy> handlers, final long time)
+    {
+        m_deliveries.increment();
+        m_deliveryTime.add(time);
+        m_maxDeliveryTime.accumulate(time);
+        for (final EventHandlerProxy handler : handlers)
+        {
+            // handlers are denied when they exceed the timeout
+            if (handler.isDenied())
+            {
+                m_timeouts.increment();
+            }
+        }
+    }
+
+    public int getQueueSize()
+    {
+        return m_queueSize.get();
+    }
+
+    public long getMaxQueueSize()
+    {
+        return m_maxQueueSize.get();
+    }
+
+    public long getPostedEvents()
+    {
+        return m_posted.sum();
+    }
+
+    public long getSentEvents()
+    {
+        return m_sent.sum();
+    }
+
+    public long getThrottledEvents()
+    {
+        return m_throttled.sum();
+    }
+
+    public long getTimeouts()
+    {
+        return m_timeouts.sum();
+    }
+
+    public long getCoalescedEvents()
+    {
+        return m_coalesced.sum();
+    }
+
+    public long getDeliveries()
+    {
+        return m_deliveries.sum();
+    }
+
+    public long getDeliveryTime()
+    {
+        return m_deliveryTime.sum();
+    }
+
+    public long getMaxDeliveryTime()
+    {
+        return m_maxDeliveryTime.get();
+    }
+
+    public long getQueueTime()
+    {
+        return m_queueTime.sum();
+    }
+
+    public long getMaxQueueTime()
+    {
+        return m_maxQueueTime.get();
+    }
+
+    /**
+     * Reset the counters, except the current queue size.
+     */
+    public void reset()
+    {
+        m_sent.reset();
+        m_posted.reset();
+        m_throttled.reset();
+        m_timeouts.reset();
+        m_coalesced.reset();
+        m_deliveries.reset();
+        m_deliveryTime.reset();
+        m_maxDeliveryTime.reset();
+        m_queueTime.reset();
+        m_maxQueueTime.reset();
+        m_maxQueueSize.reset();
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.eventadmin.impl.handler;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventConstants;
+import org.osgi.service.event.EventHandler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EventHandlerTrackerTest {
+
+    private EventHandlerTracker tracker;
+
+    @Before
+    public void setUp() throws Exception {
+        BundleContext context = EasyMock.createNiceMock(BundleContext.class);
+        EasyMock.expect(context.createFilter(EasyMock.anyString()))
+                .andStubAnswer(() -> FrameworkUtil.createFilter((String) EasyMock.getCurrentArguments()[0]));
+        EasyMock.replay(context);
+        tracker = new EventHandlerTracker(context);
+        tracker.update(new String[0], false);
+    }
+
+    @Test
+    public void testExactAndWildcardTopics() {
+        EventHandlerProxy exact = add("org/apache/karaf/Event");
+        EventHandlerProxy parent = add("org/apache/karaf/*");
+        EventHandlerProxy root = add("org/*");
+        EventHandlerProxy other = add("org/apache/felix/*");
+        EventHandlerProxy all = add("*");
+
+        assertHandlers("org/apache/karaf/Event", exact, parent, root, all);
+        assertHandlers("org/apache/karaf/Other", parent, root, all);
+        assertHandlers("org/apache/karaf/Event/Sub", parent, root, all);
+        assertHandlers("org/apache/felix/Event", root, other, all);
+        // a wildcard topic does not match its parent topic
+        assertHandlers("org/apache/karaf", root, all);
+        assertHandlers("org", all);
+        assertHandlers("com/acme/Event", all);
+
+        tracker.removedService(null, parent);
+        assertHandlers("org/apache/karaf/Event", exact, root, all);
+    }
+
+    @Test
+    public void testHandlerMatchedOnce() {
+        EventHandlerProxy proxy = add("org/apache/karaf/Event", "org/apache/karaf/*", "org/*", "*");
+        assertHandlers("org/apache/karaf/Event", proxy);
+        assertHandlers("com/acme/Event", proxy);
+        assertEquals(1, tracker.getHandlers(new Event("org/apache/karaf/Event", Collections.emptyMap())).size());
+    }
+
+    @Test
+    public void testFilterAndCoalescing() {
+        ServiceReference<EventHandler> reference = reference(new String[] {"org/apache/karaf/*"}, "(type=a)", true);
+        EventHandlerProxy proxy = tracker.addingService(reference);
+        assertTrue(tracker.isCoalescing(proxy));
+        assertEquals(Collections.singleton(proxy), handlers("org/apache/karaf/Event", "a"));
+        assertTrue(handlers("org/apache/karaf/Event", "b").isEmpty());
+        assertFalse(tracker.isCoalescing(add("org/apache/karaf/*")));
+    }
+
+    private EventHandlerProxy add(String... topics) {
+        EventHandlerProxy proxy = tracker.addingService(reference(topics, null, false));
+        assertFalse(proxy.isDenied());
+        return proxy;
+    }
+
+    private void assertHandlers(String topic, EventHandlerProxy... expected) {
+        Set<EventHandlerProxy> set = new HashSet<>();
+        Collections.addAll(set, expected);
+        assertEquals(topic, set, handlers(topic, null));
+    }
+
+    private Set<EventHandlerProxy> handlers(String topic, String type) {
+        Collection<EventHandlerProxy> handlers = tracker.getHandlers(
+                new Event(topic, type != null ? Collections.singletonMap("type", type) : Collections.emptyMap()));
+        Set<EventHandlerProxy> result = new HashSet<>(handlers);
+        assertEquals("duplicate handlers for " + topic, result.size(), handlers.size());
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ServiceReference<EventHandler> reference(String[] topics, String filter, boolean coalesce) {
+        Bundle bundle = EasyMock.createNiceMock(Bundle.class);
+        EasyMock.expect(bundle.hasPermission(EasyMock.anyObject())).andStubReturn(true);
+        ServiceReference<EventHandler> reference = EasyMock.createNiceMock(ServiceReference.class);
+        EasyMock.expect(reference.getProperty(EventConstants.EVENT_TOPIC)).andStubReturn(topics);
+        EasyMock.expect(reference.getProperty(EventConstants.EVENT_FILTER)).andStubReturn(filter);
+        EasyMock.expect(reference.getProperty(EventHandlerTracker.COALESCE)).andStubReturn(coalesce ? "true" : null);
+        EasyMock.expect(reference.getBundle()).andStubReturn(bundle);
+        EasyMock.replay(bundle, reference);
+        return reference;
+    }
+
+}
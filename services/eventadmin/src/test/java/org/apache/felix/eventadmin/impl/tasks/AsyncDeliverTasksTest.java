@@ -0,0 +1,227 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.eventadmin.impl.tasks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.felix.eventadmin.impl.handler.EventHandlerProxy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.service.event.Event;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AsyncDeliverTasksTest {
+
+    private static final Collection<EventHandlerProxy> NO_HANDLERS = Collections.emptyList();
+
+    private DefaultThreadPool pool;
+    private DeliveryStatistics statistics;
+
+    @Before
+    public void setUp() {
+        pool = new DefaultThreadPool(8, false);
+        statistics = new DeliveryStatistics();
+    }
+
+    @After
+    public void tearDown() {
+        pool.close();
+    }
+
+    @Test
+    public void testOrderPerSender() throws Exception {
+        Map<String, List<Integer>> received = new ConcurrentHashMap<>();
+        CountDownLatch done = new CountDownLatch(3 * 2000);
+        AsyncDeliverTasks tasks = new AsyncDeliverTasks(pool, new Deliver(event -> {
+            received.computeIfAbsent((String) event.getProperty("sender"), s -> Collections.synchronizedList(new ArrayList<>()))
+                    .add((Integer) event.getProperty("seq"));
+            done.countDown();
+        }), statistics, 100, 1000);
+
+        List<Thread> senders = new ArrayList<>();
+        for (int s = 0; s < 3; s++) {
+            String sender = "sender" + s;
+            senders.add(new Thread(() -> {
+                for (int i = 0; i < 2000; i++) {
+                    tasks.execute(NO_HANDLERS, event("test/order", "sender", sender, "seq", i));
+                }
+            }));
+        }
+        senders.forEach(Thread::start);
+        for (Thread sender : senders) {
+            sender.join();
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertEquals(3, received.size());
+        for (List<Integer> seqs : received.values()) {
+            assertEquals(2000, seqs.size());
+            for (int i = 0; i < seqs.size(); i++) {
+                assertEquals(Integer.valueOf(i), seqs.get(i));
+            }
+        }
+        assertEquals(6000, statistics.getPostedEvents());
+    }
+
+    @Test
+    public void testThrottlingTimeout() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch delivered = new CountDownLatch(3);
+        AsyncDeliverTasks tasks = new AsyncDeliverTasks(pool, new Deliver(event -> {
+            await(release);
+            delivered.countDown();
+        }), statistics, 1, 200);
+
+        // the first event is being delivered, the second one is queued
+        tasks.execute(NO_HANDLERS, event("test/throttle"));
+        awaitQueueSize(0);
+        tasks.execute(NO_HANDLERS, event("test/throttle"));
+        assertEquals(1, statistics.getQueueSize());
+        assertEquals(0, statistics.getThrottledEvents());
+
+        // the queue is full: the sender is throttled until the timeout, the event is not dropped
+        long start = System.nanoTime();
+        tasks.execute(NO_HANDLERS, event("test/throttle"));
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("throttled for " + elapsed + " ms", elapsed >= 150);
+        assertEquals(1, statistics.getThrottledEvents());
+        assertEquals(2, statistics.getQueueSize());
+
+        release.countDown();
+        assertTrue(delivered.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < 500 && statistics.getDeliveries() != 3; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(3, statistics.getDeliveries());
+    }
+
+    @Test
+    public void testNestedDeliveryIsNotThrottled() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch nested = new CountDownLatch(3);
+        AtomicInteger elapsed = new AtomicInteger(-1);
+        AsyncDeliverTasks[] tasks = new AsyncDeliverTasks[1];
+        tasks[0] = new AsyncDeliverTasks(pool, new Deliver(event -> {
+            if ("test/outer".equals(event.getTopic())) {
+                // posting from a delivery thread while the queue is full must not block
+                long start = System.nanoTime();
+                for (int i = 0; i < 3; i++) {
+                    tasks[0].execute(NO_HANDLERS, event("test/nested"));
+                }
+                elapsed.set((int) TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            } else {
+                await(release);
+                nested.countDown();
+            }
+        }), statistics, 1, 5000);
+
+        tasks[0].execute(NO_HANDLERS, event("test/outer"));
+        for (int i = 0; i < 500 && elapsed.get() < 0; i++) {
+            Thread.sleep(10);
+        }
+        assertTrue("nested posts took " + elapsed.get() + " ms", elapsed.get() >= 0 && elapsed.get() < 2000);
+        assertEquals(0, statistics.getThrottledEvents());
+
+        release.countDown();
+        assertTrue(nested.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testDiscardedQueueRace() throws Exception {
+        // the sender queue is drained and discarded after almost every event,
+        // racing with the sender posting the next one
+        int count = 20000;
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(count);
+        AsyncDeliverTasks tasks = new AsyncDeliverTasks(pool, new Deliver(event -> {
+            if ((Integer) event.getProperty("seq") != next.getAndIncrement()) {
+                errors.incrementAndGet();
+            }
+            done.countDown();
+        }), statistics, 0, 1000);
+
+        for (int i = 0; i < count; i++) {
+            tasks.execute(NO_HANDLERS, event("test/race", "seq", i));
+            if (i % 16 == 0) {
+                Thread.yield();
+            }
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertEquals(count, next.get());
+        assertEquals(0, errors.get());
+        assertEquals(0, statistics.getQueueSize());
+    }
+
+    private void awaitQueueSize(int size) throws InterruptedException {
+        for (int i = 0; i < 500 && statistics.getQueueSize() != size; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(size, statistics.getQueueSize());
+    }
+
+    private static Event event(String topic, Object... properties) {
+        Map<String, Object> map = new HashMap<>();
+        for (int i = 0; i < properties.length; i += 2) {
+            map.put((String) properties[i], properties[i + 1]);
+        }
+        return new Event(topic, map);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    interface Handler {
+        void handle(Event event);
+    }
+
+    /**
+     * Delivers the events to a handler instead of the event handler services.
+     */
+    private static class Deliver extends SyncDeliverTasks {
+        private final Handler handler;
+
+        Deliver(Handler handler) {
+            super(null, 0);
+            this.handler = handler;
+        }
+
+        @Override
+        public void execute(Collection<EventHandlerProxy> tasks, Event event, boolean filterAsyncUnordered) {
+            handler.handle(event);
+        }
+    }
+
+}
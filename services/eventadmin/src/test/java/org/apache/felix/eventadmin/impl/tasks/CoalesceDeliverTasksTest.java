@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.eventadmin.impl.tasks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.felix.eventadmin.impl.handler.EventHandlerProxy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.service.event.Event;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CoalesceDeliverTasksTest {
+
+    private final EventHandlerProxy coalescing = new EventHandlerProxy(null, null);
+    private final EventHandlerProxy direct = new EventHandlerProxy(null, null);
+    private final List<EventHandlerProxy> handlers = Arrays.asList(coalescing, direct);
+    private final Set<EventHandlerProxy> accepting = Collections.singleton(coalescing);
+    private final BlockingQueue<Delivery> deliveries = new LinkedBlockingQueue<>();
+
+    private DefaultThreadPool pool;
+    private DeliveryStatistics statistics;
+    private CoalesceDeliverTasks tasks;
+
+    @Before
+    public void setUp() {
+        pool = new DefaultThreadPool(2, false);
+        statistics = new DeliveryStatistics();
+        SyncDeliverTasks deliver = new SyncDeliverTasks(null, 0) {
+            @Override
+            public void execute(Collection<EventHandlerProxy> handlers, Event event, boolean filterAsyncUnordered) {
+                deliveries.add(new Delivery(new ArrayList<>(handlers), event));
+            }
+        };
+        tasks = new CoalesceDeliverTasks(new AsyncDeliverTasks(pool, deliver, statistics, 0, 1000), statistics);
+    }
+
+    @After
+    public void tearDown() {
+        tasks.stop();
+        pool.close();
+    }
+
+    @Test
+    public void testWindow() throws Exception {
+        tasks.update(new String[] {"test/*;window=100;key=id"});
+        Event first = event("test/window/sub", "a");
+        Event last = event("test/window/sub", "a");
+        assertEquals(Collections.singletonList(direct), execute(first));
+        assertEquals(Collections.singletonList(direct), execute(event("test/window/sub", "b")));
+        assertEquals(Collections.singletonList(direct), execute(last));
+
+        Delivery summary = deliveries.poll(5, TimeUnit.SECONDS);
+        assertEquals(Collections.singletonList(coalescing), summary.handlers);
+        assertEquals("test/window/sub", summary.event.getTopic());
+        assertEquals(Boolean.TRUE, summary.event.getProperty(CoalesceDeliverTasks.COALESCED));
+        assertEquals(3, summary.event.getProperty(CoalesceDeliverTasks.COUNT));
+        assertSame(first, summary.event.getProperty(CoalesceDeliverTasks.FIRST));
+        assertSame(last, summary.event.getProperty(CoalesceDeliverTasks.LAST));
+        assertArrayEquals(new String[] {"a", "b"}, (String[]) summary.event.getProperty(CoalesceDeliverTasks.KEYS));
+        assertEquals(2, statistics.getCoalescedEvents());
+        assertNull(deliveries.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testSample() throws Exception {
+        tasks.update(new String[] {"test/sample;sample=3"});
+        for (int i = 0; i < 7; i++) {
+            assertEquals(Collections.singletonList(direct), execute(event("test/sample", Integer.toString(i))));
+        }
+        for (String id : new String[] {"0", "3", "6"}) {
+            Delivery sampled = deliveries.poll(5, TimeUnit.SECONDS);
+            assertEquals(Collections.singletonList(coalescing), sampled.handlers);
+            assertEquals(id, sampled.event.getProperty("id"));
+        }
+        assertNull(deliveries.poll(200, TimeUnit.MILLISECONDS));
+        assertEquals(4, statistics.getCoalescedEvents());
+    }
+
+    @Test
+    public void testUpdateFlushesWindows() throws Exception {
+        tasks.update(new String[] {"test/*;window=60000"});
+        execute(event("test/flush", "a"));
+        execute(event("test/flush", "b"));
+        assertNull(deliveries.poll(100, TimeUnit.MILLISECONDS));
+
+        tasks.update(null);
+        Delivery summary = deliveries.poll(5, TimeUnit.SECONDS);
+        assertEquals(2, summary.event.getProperty(CoalesceDeliverTasks.COUNT));
+        assertNull(summary.event.getProperty(CoalesceDeliverTasks.KEYS));
+
+        // without rule, the events are not coalesced any more
+        assertSame(handlers, execute(event("test/flush", "c")));
+    }
+
+    @Test
+    public void testHandlersNotOptingIn() throws Exception {
+        tasks.update(new String[] {"test/*;window=10", "other/*;sample=2"});
+        List<EventHandlerProxy> handlers = Collections.singletonList(direct);
+        assertSame(handlers, tasks.execute(handlers, event("test/direct", "a"), accepting::contains));
+        assertSame(handlers, tasks.execute(handlers, event("other/direct", "a"), accepting::contains));
+        // topics without rule are not coalesced
+        assertSame(this.handlers, execute(event("unknown/topic", "a")));
+        // a wildcard rule does not match its parent topic
+        assertSame(this.handlers, execute(event("test", "a")));
+        assertNull(deliveries.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testInvalidRules() throws Exception {
+        tasks.update(new String[] {"test/*;window=10;sample=2", "test/*;sample=1", "test/*;unknown=1", "test/*;window"});
+        assertSame(handlers, execute(event("test/invalid", "a")));
+    }
+
+    private Collection<EventHandlerProxy> execute(Event event) {
+        return tasks.execute(handlers, event, accepting::contains);
+    }
+
+    private static Event event(String topic, String id) {
+        return new Event(topic, Collections.singletonMap("id", id));
+    }
+
+    private static class Delivery {
+        final List<EventHandlerProxy> handlers;
+        final Event event;
+
+        Delivery(List<EventHandlerProxy> handlers, Event event) {
+            this.handlers = handlers;
+            this.event = event;
+        }
+    }
+
+}
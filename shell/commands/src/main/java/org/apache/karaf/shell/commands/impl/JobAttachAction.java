@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.shell.commands.impl;
+
+import java.io.PrintStream;
+
+import org.apache.karaf.shell.api.action.Action;
+import org.apache.karaf.shell.api.action.Argument;
+import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.Completion;
+import org.apache.karaf.shell.api.action.Option;
+import org.apache.karaf.shell.api.action.lifecycle.Reference;
+import org.apache.karaf.shell.api.action.lifecycle.Service;
+import org.apache.karaf.shell.support.jobs.Job;
+import org.apache.karaf.shell.support.jobs.JobManager;
+
+@Command(scope = "shell", name = "job-attach", description = "Displays the output of a job, and follows it until the job completes (CTRL-C to detach)")
+@Service
+public class JobAttachAction implements Action {
+
+    @Option(name = "-n", aliases = {"--no-follow"}, description = "Only display the output available", required = false, multiValued = false)
+    boolean noFollow;
+
+    @Argument(index = 0, name = "id", description = "The job id", required = true, multiValued = false)
+    @Completion(JobIdCompleter.class)
+    int id;
+
+    @Reference
+    JobManager jobManager;
+
+    @Override
+    public Object execute() throws Exception {
+        Job job = jobManager.getJob(id);
+        if (job == null) {
+            throw new IllegalArgumentException("Job " + id + " not found");
+        }
+        PrintStream out = System.out;
+        long position = job.getOutputStart();
+        if (position > 0) {
+            out.println("[" + position + " bytes of output discarded]");
+        }
+        try {
+            while (true) {
+                // check the state first, so that the output written before completion is displayed
+                boolean done = job.isDone();
+                position = job.copyOutput(position, out);
+                out.flush();
+                if (done || noFollow) {
+                    break;
+                }
+                job.awaitOutput(position, 500);
+            }
+        } catch (InterruptedException e) {
+            out.println();
+            out.println("Detached from job " + id);
+            return null;
+        }
+        if (job.isDone()) {
+            Throwable exception = job.getException();
+            out.println("Job " + id + " " + job.getState().name().toLowerCase()
+                    + (exception != null ? ": " + exception.getMessage() : ""));
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.shell.commands.impl;
+
+import java.util.List;
+
+import org.apache.karaf.shell.api.action.Action;
+import org.apache.karaf.shell.api.action.Argument;
+import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.Completion;
+import org.apache.karaf.shell.api.action.lifecycle.Reference;
+import org.apache.karaf.shell.api.action.lifecycle.Service;
+import org.apache.karaf.shell.support.jobs.Job;
+import org.apache.karaf.shell.support.jobs.JobManager;
+
+@Command(scope = "shell", name = "job-cancel", description = "Cancels jobs, or removes completed jobs and their output")
+@Service
+public class JobCancelAction implements Action {
+
+    @Argument(index = 0, name = "ids", description = "The job ids", required = true, multiValued = true)
+    @Completion(JobIdCompleter.class)
+    List<Integer> ids;
+
+    @Reference
+    JobManager jobManager;
+
+    @Override
+    public Object execute() throws Exception {
+        for (int id : ids) {
+            Job job = jobManager.getJob(id);
+            if (job == null) {
+                System.err.println("Job " + id + " not found");
+            } else if (job.cancel()) {
+                System.out.println("Job " + id + " cancelled");
+            } else if (jobManager.remove(job)) {
+                System.out.println("Job " + id + " removed");
+            }
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.shell.commands.impl;
+
+import org.apache.karaf.shell.api.action.Action;
+import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.Option;
+import org.apache.karaf.shell.api.action.lifecycle.Reference;
+import org.apache.karaf.shell.api.action.lifecycle.Service;
+import org.apache.karaf.shell.support.jobs.Job;
+import org.apache.karaf.shell.support.jobs.JobManager;
+import org.apache.karaf.shell.support.table.ShellTable;
+
+@Command(scope = "shell", name = "job-list", description = "Lists the jobs executed in the background")
+@Service
+public class JobListAction implements Action {
+
+    @Option(name = "--no-format", description = "Disable table rendered output", required = false, multiValued = false)
+    boolean noFormat;
+
+    @Reference
+    JobManager jobManager;
+
+    @Override
+    public Object execute() throws Exception {
+        ShellTable table = new ShellTable();
+        table.column("Id").alignRight();
+        table.column("User");
+        table.column("State");
+        table.column("Wall time (ms)").alignRight();
+        table.column("CPU time (ms)").alignRight();
+        table.column("Output").alignRight();
+        table.column("Command");
+        for (Job job : jobManager.getJobs()) {
+            long cpu = job.getCpuTime();
+            table.addRow().addContent(
+                    job.getId(),
+                    job.getUser() != null ? job.getUser() : "",
+                    job.getState(),
+                    job.getWallTime().toMillis(),
+                    cpu >= 0 ? Long.toString(cpu / 1000000) : "",
+                    job.getOutputSize(),
+                    job.getCommand());
+        }
+        table.print(System.out, !noFormat);
+        return null;
+    }
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.shell.commands.impl;
+
+import org.apache.karaf.shell.api.action.Action;
+import org.apache.karaf.shell.api.action.Argument;
+import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.Completion;
+import org.apache.karaf.shell.api.action.Parsing;
+import org.apache.karaf.shell.api.action.lifecycle.Reference;
+import org.apache.karaf.shell.api.action.lifecycle.Service;
+import org.apache.karaf.shell.api.console.Session;
+import org.apache.karaf.shell.commands.impl.WatchAction.SubCommandCompleter;
+import org.apache.karaf.shell.commands.impl.WatchAction.WatchParser;
+import org.apache.karaf.shell.support.jobs.Job;
+import org.apache.karaf.shell.support.jobs.JobManager;
+
+@Command(scope = "shell", name = "job-run", description = "Executes a command in the background, use shell:job-attach to display its output")
+@Parsing(WatchParser.class)
+@Service
+public class JobRunAction implements Action {
+
+    @Argument(index = 0, name = "command", description = "The command to execute", required = true, multiValued = false)
+    @Completion(SubCommandCompleter.class)
+    private String command;
+
+    @Reference
+    Session session;
+
+    @Reference
+    JobManager jobManager;
+
+    @Override
+    public Object execute() throws Exception {
+        Job job = jobManager.submit(session, command.trim());
+        System.out.println("Job " + job.getId() + (job.getState() == Job.State.QUEUED ? " queued" : " started"));
+        return null;
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.shell.commands.impl;
+
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.karaf.shell.api.action.Action;
+import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.Completion;
+import org.apache.karaf.shell.api.action.Option;
+import org.apache.karaf.shell.api.action.lifecycle.Reference;
+import org.apache.karaf.shell.api.action.lifecycle.Service;
+import org.apache.karaf.shell.support.completers.StringsCompleter;
+import org.apache.karaf.shell.support.stats.CommandMetrics;
+import org.apache.karaf.shell.support.stats.CommandStatistics;
+import org.apache.karaf.shell.support.table.ShellTable;
+
+@Command(scope = "shell", name = "stats", description = "Displays the execution statistics of the shell commands")
+@Service
+public class StatsAction implements Action {
+
+    @Option(name = "-s", aliases = { "--sort" }, description = "Sort the commands by name, invocations, errors, average or max duration", required = false, multiValued = false)
+    @Completion(value = StringsCompleter.class, values = { "name", "invocations", "errors", "average", "max" })
+    String sort = "name";
+
+    @Option(name = "-t", aliases = { "--slow-threshold" }, description = "Log the commands taking longer than the given duration in milliseconds, 0 to disable", required = false, multiValued = false)
+    Long slowThreshold;
+
+    @Option(name = "--enable", description = "Enable the recording of the statistics", required = false, multiValued = false)
+    boolean enable;
+
+    @Option(name = "--disable", description = "Disable the recording of the statistics", required = false, multiValued = false)
+    boolean disable;
+
+    @Option(name = "--reset", description = "Discard the recorded statistics", required = false, multiValued = false)
+    boolean reset;
+
+    @Option(name = "--no-format", description = "Disable table rendered output", required = false, multiValued = false)
+    boolean noFormat;
+
+    @Reference
+    CommandMetrics metrics;
+
+    @Override
+    public Object execute() throws Exception {
+        if (enable && disable) {
+            throw new IllegalArgumentException("The --enable and --disable options can not be used together");
+        }
+        if (enable || disable || slowThreshold != null || reset) {
+            if (enable || disable) {
+                metrics.setEnabled(enable);
+            }
+            if (slowThreshold != null) {
+                metrics.setSlowThreshold(slowThreshold);
+            }
+            if (reset) {
+                metrics.reset();
+            }
+            return null;
+        }
+
+        List<CommandStatistics> statistics = metrics.getStatistics();
+        statistics.sort(comparator(sort));
+        ShellTable table = new ShellTable();
+        table.column("Command");
+        table.column("Invocations").alignRight();
+        table.column("Errors").alignRight();
+        table.column("Average (ms)").alignRight();
+        table.column("Max (ms)").alignRight();
+        table.column("Histogram");
+        table.column("Last caller");
+        for (CommandStatistics stats : statistics) {
+            table.addRow().addContent(
+                    stats.getCommand(),
+                    stats.getInvocations(),
+                    stats.getErrors(),
+                    String.format("%.3f", stats.getAverageDuration()),
+                    String.format("%.3f", stats.getMaxDuration()),
+                    CommandStatistics.formatHistogram(stats.getDurationHistogram()),
+                    stats.getLastCaller() != null ? stats.getLastCaller() : "");
+        }
+        table.print(System.out, !noFormat);
+        if (!metrics.isEnabled()) {
+            System.out.println("The recording of the statistics is disabled");
+        }
+        return null;
+    }
+
+    private static Comparator<CommandStatistics> comparator(String sort) {
+        switch (sort) {
+            case "name":
+                return Comparator.comparing(CommandStatistics::getCommand);
+            case "invocations":
+                return Comparator.comparingLong(CommandStatistics::getInvocations).reversed();
+            case "errors":
+                return Comparator.comparingLong(CommandStatistics::getErrors).reversed();
+            case "average":
+                return Comparator.comparingDouble(CommandStatistics::getAverageDuration).reversed();
+            case "max":
+                return Comparator.comparingDouble(CommandStatistics::getMaxDuration).reversed();
+            default:
+                throw new IllegalArgumentException("Unknown sort order " + sort + ", expected name, invocations, errors, average or max");
+        }
+    }
+
+}
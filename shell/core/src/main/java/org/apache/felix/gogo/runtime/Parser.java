@@ -26,10 +26,61 @@ import java.util.regex.Pattern;
 // NOTE: this file is included to fix FELIX-5805 but should be removed
 // once the fix is released as part of gogo.
 //
+// KARAF: the parsed programs are cached, see ParseCache.
 //
 public class Parser
 {
 
+    /**
+     * The programs parsed from the most recently used texts, so that commands executed
+     * repeatedly (scripts, ssh exec and batch commands, session.execute() calls in loops)
+     * are not tokenized and parsed again.  The parsed tokens are never modified once built,
+     * they copy the text they come from, so they can be shared between sessions.
+     */
+    static final class ParseCache
+    {
+        static final int SIZE = 256;
+
+        static final class Parsed
+        {
+            final Program program;
+            final List<Token> tokens;
+            final List<Statement> statements;
+
+            Parsed(Program program, List<Token> tokens, List<Statement> statements)
+            {
+                this.program = program;
+                this.tokens = tokens;
+                this.statements = statements;
+            }
+        }
+
+        private static final Map<String, Parsed> entries = new LinkedHashMap<String, Parsed>(SIZE, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Parsed> eldest)
+            {
+                return size() > SIZE;
+            }
+        };
+
+        static Parsed get(String text)
+        {
+            synchronized (entries)
+            {
+                return entries.get(text);
+            }
+        }
+
+        static void put(String text, Parsed entry)
+        {
+            synchronized (entries)
+            {
+                entries.put(text, entry);
+            }
+        }
+    }
+
     public static abstract class Executable extends Token
     {
         public Executable(Token cs)
@@ -192,6 +243,29 @@ public class Parser
     }
 
     public Program program()
+    {
+        // nested programs of closures and sequences are parsed along with their enclosing program
+        if (!stack.isEmpty() || !tokens.isEmpty() || tz.pushed != null)
+        {
+            return parseProgram();
+        }
+        String text = tz.text().toString();
+        ParseCache.Parsed entry = ParseCache.get(text);
+        if (entry == null)
+        {
+            Program program = parseProgram();
+            entry = new ParseCache.Parsed(program, new ArrayList<>(tokens), new ArrayList<>(statements));
+            ParseCache.put(text, entry);
+        }
+        else
+        {
+            tokens.addAll(entry.tokens);
+            statements.addAll(entry.statements);
+        }
+        return entry.program;
+    }
+
+    protected Program parseProgram()
     {
         List<Executable> tokens = new ArrayList<>();
         List<Executable> pipes = null;
@@ -296,7 +370,7 @@ public class Parser
     {
         Token start = start("(", "sequence");
         expectNotNull();
-        Program program = program();
+        Program program = parseProgram();
         Token end = end(")");
         return new Sequence(whole(start, end), program);
     }
@@ -305,7 +379,7 @@ public class Parser
     {
         Token start = start("{", "closure");
         expectNotNull();
-        Program program = program();
+        Program program = parseProgram();
         Token end = end("}");
         return new Closure(whole(start, end), program);
     }
@@ -33,6 +33,9 @@ public class ActionCommand implements org.apache.karaf.shell.api.console.Command
 
     private final ManagerImpl manager;
     private final Class<? extends Action> actionClass;
+    private final ActionMetaData metaData;
+    private volatile Completer scopedCompleter;
+    private volatile Completer globalCompleter;
 
     public ActionCommand(ManagerImpl manager, Class<? extends Action> actionClass) {
         if (actionClass.getAnnotation(Command.class) == null) {
@@ -41,30 +44,45 @@ public class ActionCommand implements org.apache.karaf.shell.api.console.Command
         
         this.manager = manager;
         this.actionClass = actionClass;
+        this.metaData = ActionMetaData.build(actionClass);
     }
 
     public Class<? extends Action> getActionClass() {
         return actionClass;
     }
 
+    public ActionMetaData getMetaData() {
+        return metaData;
+    }
+
     @Override
     public String getScope() {
-        return actionClass.getAnnotation(Command.class).scope();
+        return metaData.getCommand().scope();
     }
 
     @Override
     public String getName() {
-        return actionClass.getAnnotation(Command.class).name();
+        return metaData.getCommand().name();
     }
 
     @Override
     public String getDescription() {
-        return actionClass.getAnnotation(Command.class).description();
+        return metaData.getCommand().description();
     }
 
     @Override
     public Completer getCompleter(boolean scoped) {
-        return new ArgumentCompleter(this, scoped);
+        // the completers only depend on the action class, so they are built once
+        Completer completer = scoped ? scopedCompleter : globalCompleter;
+        if (completer == null) {
+            completer = new ArgumentCompleter(this, scoped);
+            if (scoped) {
+                scopedCompleter = completer;
+            } else {
+                globalCompleter = completer;
+            }
+        }
+        return completer;
     }
 
     @Override
@@ -84,7 +102,7 @@ public class ActionCommand implements org.apache.karaf.shell.api.console.Command
     public Object execute(Session session, List<Object> arguments) throws Exception {
         Action action = createNewAction(session);
         try {
-            if (new DefaultActionPreparator().prepare(action, session, arguments)) {
+            if (new DefaultActionPreparator().prepare(metaData, action, session, arguments)) {
                 return action.execute();
             }
         } finally {
@@ -44,26 +44,22 @@ public class ActionMaskingCallback {
         Map<String, Option> typedOptions = new HashMap<>();
         List<Argument> arguments = new ArrayList<>();
         boolean censor = false;
-        for (Class<?> type = command.getActionClass(); type != null; type = type.getSuperclass()) {
-            for (Field field : type.getDeclaredFields()) {
-                Option option = field.getAnnotation(Option.class);
-                if (option != null) {
-                    if (field.getType() == boolean.class || field.getType() == Boolean.class) {
-                        booleanOptions.add(option.name());
-                        booleanOptions.addAll(Arrays.asList(option.aliases()));
-                    } else {
-                        typedOptions.put(option.name(), option);
-                        Arrays.asList(option.aliases()).forEach(alias -> typedOptions.put(alias, option));
-                        censor |= option.censor();
-                    }
-                }
-                Argument argument = field.getAnnotation(Argument.class);
-                if (argument != null) {
-                    arguments.add(argument);
-                    censor |= argument.censor();
-                }
+        for (Map.Entry<Option, Field> entry : command.getMetaData().getOptions().entrySet()) {
+            Option option = entry.getKey();
+            Field field = entry.getValue();
+            if (field.getType() == boolean.class || field.getType() == Boolean.class) {
+                booleanOptions.add(option.name());
+                booleanOptions.addAll(Arrays.asList(option.aliases()));
+            } else {
+                typedOptions.put(option.name(), option);
+                Arrays.asList(option.aliases()).forEach(alias -> typedOptions.put(alias, option));
+                censor |= option.censor();
             }
         }
+        for (Argument argument : command.getMetaData().getArguments().keySet()) {
+            arguments.add(argument);
+            censor |= argument.censor();
+        }
         arguments.sort(Comparator.comparing(Argument::index));
         return censor ? new ActionMaskingCallback(command, booleanOptions, typedOptions, arguments) : null;
     }
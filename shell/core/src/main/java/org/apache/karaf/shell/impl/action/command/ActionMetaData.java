@@ -0,0 +1,207 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.impl.action.command;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.karaf.shell.api.action.Action;
+import org.apache.karaf.shell.api.action.Argument;
+import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.Option;
+
+/**
+ * The options and arguments of an action class.
+ * They are computed once when the command is registered and shared by the
+ * {@link DefaultActionPreparator}, the {@link ArgumentCompleter} and the
+ * {@link ActionMaskingCallback}, instead of scanning the class on each invocation.
+ */
+public class ActionMetaData {
+
+    private final Class<? extends Action> actionClass;
+    private final Command command;
+    private final Map<Option, Field> options;
+    private final Map<String, Option> optionsByName;
+    private final Map<Argument, Field> arguments;
+    private final List<Argument> orderedArguments;
+    private final List<Field> argumentFields;
+    private final String error;
+
+    private ActionMetaData(Class<? extends Action> actionClass, Command command,
+                           Map<Option, Field> options, Map<String, Option> optionsByName,
+                           Map<Argument, Field> arguments, List<Argument> orderedArguments,
+                           List<Field> argumentFields, String error) {
+        this.actionClass = actionClass;
+        this.command = command;
+        this.options = Collections.unmodifiableMap(options);
+        this.optionsByName = optionsByName;
+        this.arguments = Collections.unmodifiableMap(arguments);
+        this.orderedArguments = Collections.unmodifiableList(orderedArguments);
+        this.argumentFields = Collections.unmodifiableList(argumentFields);
+        this.error = error;
+    }
+
+    public static ActionMetaData build(Class<? extends Action> actionClass) {
+        Map<Option, Field> options = new LinkedHashMap<>();
+        Map<String, Option> optionsByName = new HashMap<>();
+        Map<Argument, Field> arguments = new LinkedHashMap<>();
+        List<Argument> orderedArguments = new ArrayList<>();
+        List<Field> argumentFields = new ArrayList<>();
+        String error = null;
+        for (Class<?> type = actionClass; type != null; type = type.getSuperclass()) {
+            for (Field field : type.getDeclaredFields()) {
+                Option option = field.getAnnotation(Option.class);
+                if (option != null) {
+                    field.setAccessible(true);
+                    options.put(option, field);
+                    optionsByName.putIfAbsent(option.name(), option);
+                    for (String alias : option.aliases()) {
+                        optionsByName.putIfAbsent(alias, option);
+                    }
+                }
+
+                Argument argument = field.getAnnotation(Argument.class);
+                if (argument != null) {
+                    argument = replaceDefaultArgument(field, argument);
+                    int index = argument.index();
+                    while (orderedArguments.size() <= index) {
+                        orderedArguments.add(null);
+                        argumentFields.add(null);
+                    }
+                    if (orderedArguments.get(index) != null) {
+                        // the validation is deferred so that completion still works
+                        if (error == null) {
+                            error = "Duplicate argument index: " + index + " on Action " + actionClass.getName();
+                        }
+                    } else {
+                        field.setAccessible(true);
+                        arguments.put(argument, field);
+                        orderedArguments.set(index, argument);
+                        argumentFields.set(index, field);
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < orderedArguments.size() && error == null; i++) {
+            if (orderedArguments.get(i) == null) {
+                error = "Missing argument for index: " + i + " on Action " + actionClass.getName();
+            }
+        }
+        return new ActionMetaData(actionClass, actionClass.getAnnotation(Command.class),
+                options, optionsByName, arguments, orderedArguments, argumentFields, error);
+    }
+
+    public Class<? extends Action> getActionClass() {
+        return actionClass;
+    }
+
+    public Command getCommand() {
+        return command;
+    }
+
+    public Map<Option, Field> getOptions() {
+        return options;
+    }
+
+    /**
+     * @param name the name or an alias of the option
+     * @return the option, or <code>null</code>
+     */
+    public Option getOption(String name) {
+        return optionsByName.get(name);
+    }
+
+    public Map<Argument, Field> getArguments() {
+        return arguments;
+    }
+
+    public List<Argument> getOrderedArguments() {
+        return orderedArguments;
+    }
+
+    /**
+     * @return the argument fields indexed by argument index, <code>null</code> for missing indexes
+     */
+    public List<Field> getArgumentFields() {
+        return argumentFields;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the argument indexes are duplicated or not contiguous
+     */
+    public void validate() {
+        if (error != null) {
+            throw new IllegalArgumentException(error);
+        }
+    }
+
+    private static Argument replaceDefaultArgument(Field field, Argument argument) {
+        if (Argument.DEFAULT.equals(argument.name())) {
+            final Argument delegate = argument;
+            final String name = field.getName();
+            argument = new Argument() {
+                public String name() {
+                    return name;
+                }
+
+                public String description() {
+                    return delegate.description();
+                }
+
+                public boolean required() {
+                    return delegate.required();
+                }
+
+                public int index() {
+                    return delegate.index();
+                }
+
+                public boolean multiValued() {
+                    return delegate.multiValued();
+                }
+
+                public String valueToShowInHelp() {
+                    return delegate.valueToShowInHelp();
+                }
+
+                public Class<? extends Annotation> annotationType() {
+                    return delegate.annotationType();
+                }
+
+                @Override
+                public boolean censor() {
+                    return delegate.censor();
+                }
+
+                @Override
+                public char mask() {
+                    return delegate.mask();
+                }
+            };
+        }
+        return argument;
+    }
+
+}
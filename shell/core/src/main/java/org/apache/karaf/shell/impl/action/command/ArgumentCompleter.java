@@ -45,13 +45,9 @@ import org.apache.karaf.shell.support.completers.NullCompleter;
 import org.apache.karaf.shell.support.completers.StringsCompleter;
 import org.apache.karaf.shell.support.completers.UriCompleter;
 import org.apache.karaf.shell.support.converter.GenericType;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 public class ArgumentCompleter implements Completer {
 
-    private static final Logger LOGGER = LoggerFactory.getLogger(ArgumentCompleter.class);
-
     final ActionCommand command;
     final CandidateCompleter commandCompleter;
     final CandidateCompleter optionsCompleter;
@@ -73,30 +69,24 @@ public class ArgumentCompleter implements Completer {
             commandCompleter.addCandidate(name, cmd.description(), actionClass.getName());
         }
         // Build options completer
-        for (Class<?> type = actionClass; type != null; type = type.getSuperclass()) {
-            for (Field field : type.getDeclaredFields()) {
-                Option option = field.getAnnotation(Option.class);
-                if (option != null) {
-                    fields.put(option, field);
-                    options.put(option.name(), option);
-                    String[] aliases = option.aliases();
-                    if (aliases != null) {
-                        for (String alias : aliases) {
-                            options.put(alias, option);
-                        }
-                    }
-                }
-                Argument argument = field.getAnnotation(Argument.class);
-                if (argument != null) {
-                    Integer key = argument.index();
-                    if (arguments.containsKey(key)) {
-                        LOGGER.warn("Duplicate @Argument annotations on class " + type.getName() + " for index: " + key + " see: " + field);
-                    } else {
-                        arguments.put(key, field);
-                    }
+        ActionMetaData metaData = command.getMetaData();
+        for (Map.Entry<Option, Field> entry : metaData.getOptions().entrySet()) {
+            Option option = entry.getKey();
+            fields.put(option, entry.getValue());
+            options.put(option.name(), option);
+            String[] aliases = option.aliases();
+            if (aliases != null) {
+                for (String alias : aliases) {
+                    options.put(alias, option);
                 }
             }
         }
+        List<Field> argumentFields = metaData.getArgumentFields();
+        for (int index = 0; index < argumentFields.size(); index++) {
+            if (argumentFields.get(index) != null) {
+                arguments.put(index, argumentFields.get(index));
+            }
+        }
         options.put(HelpOption.HELP.name(), HelpOption.HELP);
 
         optionsCompleter = new CandidateCompleter();
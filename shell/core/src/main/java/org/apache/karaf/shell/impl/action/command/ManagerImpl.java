@@ -18,7 +18,10 @@
  */
 package org.apache.karaf.shell.impl.action.command;
 
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Dictionary;
@@ -29,6 +32,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.karaf.shell.api.action.Action;
 import org.apache.karaf.shell.api.action.Command;
@@ -54,6 +58,7 @@ public class ManagerImpl implements Manager {
     private final Registry dependencies;
     private final Registry registrations;
     private final Map<Class<?>, Object> instances = new HashMap<>();
+    private final Map<Class<?>, Injector> injectors = new ConcurrentHashMap<>();
     private final boolean allowCustomServices;
 
     public ManagerImpl(Registry dependencies, Registry registrations) {
@@ -77,75 +82,63 @@ public class ManagerImpl implements Manager {
                 throw new IllegalArgumentException("Class " + clazz.getName() + " is not annotated with @Service");
             }
         }
-        T instance = clazz.newInstance();
+        Injector injector = getInjector(clazz);
+        T instance = injector.newInstance(clazz);
         // Inject services
-        for (Class<?> cl = clazz; cl != Object.class; cl = cl.getSuperclass()) {
-            for (Field field : cl.getDeclaredFields()) {
-                Reference ref = field.getAnnotation(Reference.class);
-                if (ref != null) {
-                    GenericType type = new GenericType(field.getGenericType());
-                    Object value;
-                    if (type.getRawClass() == List.class) {
-                        Set<Object> set =
-                            new HashSet<>(registry.getServices(type.getActualTypeArgument(0).getRawClass()));
-                        if (registry != this.dependencies) {
-                            set.addAll(this.dependencies.getServices(type.getActualTypeArgument(0).getRawClass()));
-                        }
-                        value = new ArrayList<>(set);
-                    } else {
-                        value = registry.getService(type.getRawClass());
-                        if (value == null && registry != this.dependencies) {
-                            value = this.dependencies.getService(type.getRawClass());
-                        }
-                    }
-                    if (!allowCustomServices && value == null && !ref.optional()) {
-                        throw new IllegalStateException("No service matching " + field.getType().getName());
-                    }
-                    field.setAccessible(true);
-                    field.set(instance, value);
+        for (ReferenceField ref : injector.references) {
+            GenericType type = ref.type;
+            Object value;
+            if (type.getRawClass() == List.class) {
+                Set<Object> set =
+                    new HashSet<>(registry.getServices(type.getActualTypeArgument(0).getRawClass()));
+                if (registry != this.dependencies) {
+                    set.addAll(this.dependencies.getServices(type.getActualTypeArgument(0).getRawClass()));
+                }
+                value = new ArrayList<>(set);
+            } else {
+                value = registry.getService(type.getRawClass());
+                if (value == null && registry != this.dependencies) {
+                    value = this.dependencies.getService(type.getRawClass());
                 }
             }
+            if (!allowCustomServices && value == null && !ref.reference.optional()) {
+                throw new IllegalStateException("No service matching " + ref.field.getType().getName());
+            }
+            ref.field.set(instance, value);
         }
         // Inject configuration properties
-        ConfigurationAdmin configAdmin = registry.getService(ConfigurationAdmin.class);
-        if (configAdmin == null && registry != this.dependencies) {
-            configAdmin = this.dependencies.getService(ConfigurationAdmin.class);
-        }
-        for (Class<?> cl = clazz; cl != Object.class; cl = cl.getSuperclass()) {
-            for (Field field : cl.getDeclaredFields()) {
+        if (!injector.configs.isEmpty()) {
+            ConfigurationAdmin configAdmin = registry.getService(ConfigurationAdmin.class);
+            if (configAdmin == null && registry != this.dependencies) {
+                configAdmin = this.dependencies.getService(ConfigurationAdmin.class);
+            }
+            for (Field field : injector.configs) {
                 Config cfg = field.getAnnotation(Config.class);
-                if (cfg != null) {
-                    Map<String, Object> props = new LinkedHashMap<>();
-                    if (configAdmin != null) {
-                        try {
-                            Configuration configuration = configAdmin.getConfiguration(cfg.pid(), "?");
-                            if (configuration != null) {
-                                Dictionary<String, Object> dict = configuration.getProperties();
-                                if (dict != null) {
-                                    Enumeration<String> keys = dict.keys();
-                                    while (keys.hasMoreElements()) {
-                                        String key = keys.nextElement();
-                                        props.put(key, dict.get(key));
-                                    }
+                Map<String, Object> props = new LinkedHashMap<>();
+                if (configAdmin != null) {
+                    try {
+                        Configuration configuration = configAdmin.getConfiguration(cfg.pid(), "?");
+                        if (configuration != null) {
+                            Dictionary<String, Object> dict = configuration.getProperties();
+                            if (dict != null) {
+                                Enumeration<String> keys = dict.keys();
+                                while (keys.hasMoreElements()) {
+                                    String key = keys.nextElement();
+                                    props.put(key, dict.get(key));
                                 }
                             }
-                        } catch (Exception e) {
-                            LOGGER.warn("Unable to retrieve configuration for PID {}", cfg.pid(), e);
                         }
-                    } else {
-                        LOGGER.debug("ConfigurationAdmin service not available, injecting empty map for PID {}", cfg.pid());
+                    } catch (Exception e) {
+                        LOGGER.warn("Unable to retrieve configuration for PID {}", cfg.pid(), e);
                     }
-                    field.setAccessible(true);
-                    field.set(instance, props);
+                } else {
+                    LOGGER.debug("ConfigurationAdmin service not available, injecting empty map for PID {}", cfg.pid());
                 }
+                field.set(instance, props);
             }
         }
-        for (Method method : clazz.getDeclaredMethods()) {
-            Init ann = method.getAnnotation(Init.class);
-            if (ann != null && method.getParameterTypes().length == 0 && method.getReturnType() == void.class) {
-                method.setAccessible(true);
-                method.invoke(instance);
-            }
+        for (Method method : injector.inits) {
+            method.invoke(instance);
         }
         return instance;
     }
@@ -158,15 +151,19 @@ public class ManagerImpl implements Manager {
                 throw new IllegalArgumentException("Class " + clazz.getName() + " is not annotated with @Service");
             }
         }
-        for (Method method : clazz.getDeclaredMethods()) {
-            Destroy ann = method.getAnnotation(Destroy.class);
-            if (ann != null && method.getParameterTypes().length == 0 && method.getReturnType() == void.class) {
-                method.setAccessible(true);
-                method.invoke(instance);
-            }
+        for (Method method : getInjector(clazz).destroys) {
+            method.invoke(instance);
         }
     }
 
+    /**
+     * Get the injection metadata of the given class, computed once per class
+     * instead of scanning its fields and methods for each instance.
+     */
+    Injector getInjector(Class<?> clazz) {
+        return injectors.computeIfAbsent(clazz, Injector::new);
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public void register(Class<?> clazz) {
@@ -182,6 +179,7 @@ public class ManagerImpl implements Manager {
                 throw new IllegalArgumentException("Command " + clazz.getName() + " is not annotated with @Command");
             }
             Object command = new ActionCommand(this, (Class<? extends Action>) clazz);
+            getInjector(clazz);
             synchronized (instances) {
                 instances.put(clazz, command);
             }
@@ -211,6 +209,7 @@ public class ManagerImpl implements Manager {
         synchronized (instances) {
             object = instances.remove(clazz);
         }
+        injectors.remove(clazz);
         if (object != null) {
             registrations.unregister(object);
             if (object instanceof Completer) {
@@ -222,4 +221,88 @@ public class ManagerImpl implements Manager {
             }
         }
     }
+
+    static final class ReferenceField {
+        final Field field;
+        final Reference reference;
+        final GenericType type;
+
+        ReferenceField(Field field, Reference reference) {
+            this.field = field;
+            this.reference = reference;
+            this.type = new GenericType(field.getGenericType());
+        }
+    }
+
+    /**
+     * The constructor, the <code>@Reference</code> and <code>@Config</code> fields and the
+     * <code>@Init</code> and <code>@Destroy</code> methods of a class, made accessible once.
+     */
+    static final class Injector {
+        final Constructor<?> constructor;
+        final List<ReferenceField> references = new ArrayList<>();
+        final List<Field> configs = new ArrayList<>();
+        final List<Method> inits = new ArrayList<>();
+        final List<Method> destroys = new ArrayList<>();
+
+        Injector(Class<?> clazz) {
+            Constructor<?> ctor;
+            try {
+                ctor = clazz.getDeclaredConstructor();
+                ctor.setAccessible(true);
+            } catch (NoSuchMethodException | RuntimeException e) {
+                // let Class#newInstance report the error
+                ctor = null;
+            }
+            this.constructor = ctor;
+            for (Class<?> cl = clazz; cl != null && cl != Object.class; cl = cl.getSuperclass()) {
+                for (Field field : cl.getDeclaredFields()) {
+                    Reference ref = field.getAnnotation(Reference.class);
+                    if (ref != null) {
+                        field.setAccessible(true);
+                        references.add(new ReferenceField(field, ref));
+                    }
+                    if (field.getAnnotation(Config.class) != null) {
+                        field.setAccessible(true);
+                        configs.add(field);
+                    }
+                }
+            }
+            // lifecycle methods are inherited so that base classes can register listeners, but like
+            // overridden methods, the ones of the nearest class declaring any replace the superclass
+            // ones: a subclass declaring its own method must call the superclass one if needed
+            inits.addAll(getLifecycleMethods(clazz, Init.class));
+            destroys.addAll(getLifecycleMethods(clazz, Destroy.class));
+        }
+
+        private static List<Method> getLifecycleMethods(Class<?> clazz, Class<? extends Annotation> annotation) {
+            List<Method> methods = new ArrayList<>();
+            for (Class<?> cl = clazz; cl != null && cl != Object.class && methods.isEmpty(); cl = cl.getSuperclass()) {
+                for (Method method : cl.getDeclaredMethods()) {
+                    if (method.getParameterTypes().length == 0 && method.getReturnType() == void.class
+                            && !method.isBridge() && method.getAnnotation(annotation) != null) {
+                        method.setAccessible(true);
+                        methods.add(method);
+                    }
+                }
+            }
+            return methods;
+        }
+
+        @SuppressWarnings({"unchecked", "deprecation"})
+        <T> T newInstance(Class<? extends T> clazz) throws Exception {
+            if (constructor == null) {
+                return clazz.newInstance();
+            }
+            try {
+                return (T) constructor.newInstance();
+            } catch (InvocationTargetException e) {
+                Throwable t = e.getCause();
+                if (t instanceof Exception) {
+                    throw (Exception) t;
+                }
+                throw e;
+            }
+        }
+    }
 }
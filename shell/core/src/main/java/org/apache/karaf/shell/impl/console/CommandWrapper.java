@@ -25,13 +25,20 @@ import org.apache.felix.service.command.CommandSession;
 import org.apache.felix.service.command.Function;
 import org.apache.karaf.shell.api.console.Command;
 import org.apache.karaf.shell.api.console.Session;
+import org.apache.karaf.shell.support.stats.CommandMetrics;
 
 public class CommandWrapper implements Function {
 
     private final Command command;
+    private final CommandMetrics metrics;
 
     public CommandWrapper(Command command) {
+        this(command, null);
+    }
+
+    public CommandWrapper(Command command, CommandMetrics metrics) {
         this.command = command;
+        this.metrics = metrics;
     }
 
     public Command getCommand() {
@@ -50,6 +57,9 @@ public class CommandWrapper implements Function {
                 arguments.set(i, (org.apache.karaf.shell.api.console.Function) (s, a) -> closure.execute(commandSession, a));
             }
         }
+        if (metrics != null) {
+            return metrics.execute(command, session, arguments);
+        }
         return command.execute(session, arguments);
     }
 
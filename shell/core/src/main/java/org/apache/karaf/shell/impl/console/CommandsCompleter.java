@@ -34,6 +34,7 @@ import org.apache.karaf.shell.api.console.Candidate;
 import org.apache.karaf.shell.api.console.Command;
 import org.apache.karaf.shell.api.console.CommandLine;
 import org.apache.karaf.shell.api.console.Completer;
+import org.apache.karaf.shell.api.console.Registry;
 import org.apache.karaf.shell.api.console.Session;
 import org.apache.karaf.shell.api.console.SessionFactory;
 import org.apache.karaf.shell.impl.console.osgi.secured.SecuredCommand;
@@ -59,6 +60,7 @@ public class CommandsCompleter extends org.apache.karaf.shell.support.completers
         }
     };
     private final List<Command> commands = new ArrayList<>();
+    private long version = -1;
 
     public CommandsCompleter(SessionFactory factory, Session session) {
         this.factory = factory;
@@ -215,11 +217,17 @@ public class CommandsCompleter extends org.apache.karaf.shell.support.completers
     protected Map<String, Completer>[] checkData() {
         // Copy the set to avoid concurrent modification exceptions
         // TODO: fix that in gogo instead
-        Collection<Command> commands;
+        Collection<Command> commands = null;
         boolean update;
+        Registry registry = factory.getRegistry();
+        long version = registry instanceof RegistryImpl ? ((RegistryImpl) registry).getVersion() : -1;
         synchronized (this) {
-            commands = factory.getRegistry().getCommands();
-            update = !commands.equals(this.commands);
+            if (version >= 0 && version == this.version) {
+                update = false;
+            } else {
+                commands = registry.getCommands();
+                update = !commands.equals(this.commands);
+            }
         }
         if (update) {
             // get command aliases
@@ -254,6 +262,11 @@ public class CommandsCompleter extends org.apache.karaf.shell.support.completers
                 this.localCompleters.putAll(local);
             }
         }
+        if (version >= 0) {
+            synchronized (this) {
+                this.version = version;
+            }
+        }
         synchronized (this) {
             return new Map[] {
                     new HashMap<>(this.globalCompleters),
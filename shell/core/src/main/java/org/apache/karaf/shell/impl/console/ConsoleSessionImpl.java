@@ -66,6 +66,7 @@ import org.apache.karaf.shell.support.completers.UriCompleter;
 import org.apache.karaf.util.filesstream.FilesStream;
 import org.jline.builtins.Completers;
 import org.jline.reader.*;
+import org.jline.reader.impl.history.DefaultHistory;
 import org.jline.terminal.Size;
 import org.jline.terminal.Terminal.Signal;
 import org.jline.terminal.impl.DumbTerminal;
@@ -79,6 +80,8 @@ public class ConsoleSessionImpl implements Session {
     public static final String SHELL_INIT_SCRIPT = "karaf.shell.init.script";
     public static final String SHELL_HISTORY_MAXSIZE = "karaf.shell.history.maxSize";
     public static final String SHELL_HISTORY_FILE_MAXSIZE = "karaf.shell.history.file.maxSize";
+    public static final String SHELL_HISTORY_SHARED = "karaf.shell.history.shared";
+    public static final String SHELL_HISTORY_PER_USER = "karaf.shell.history.perUser";
     public static final String PROMPT = "PROMPT";
     public static final String DEFAULT_PROMPT = "\u001B[1m${USER}\u001B[0m@${APPLICATION}(${SUBSHELL})> ";
     public static final String RPROMPT = "RPROMPT";
@@ -174,6 +177,8 @@ public class ConsoleSessionImpl implements Session {
                 .highlighter(new org.apache.felix.gogo.jline.Highlighter(session))
                 .parser(new KarafParser(this))
                 .completer(completer)
+                .history(Boolean.parseBoolean(System.getProperty(SHELL_HISTORY_SHARED, "true"))
+                        ? new SharedHistory() : new DefaultHistory())
                 .build();
 
         // History
@@ -302,6 +307,10 @@ public class ConsoleSessionImpl implements Session {
         if (!instanceName.equals("root")) {
             historyFilePath += ("." + instanceName);
         }
+        String user = ShellUtil.getCurrentUserName();
+        if (Boolean.getBoolean(SHELL_HISTORY_PER_USER) && user != null) {
+            historyFilePath += ("." + user.replaceAll("[^A-Za-z0-9._-]", "_"));
+        }
         String defaultHistoryPath = new File(System.getProperty("user.home"), historyFilePath).toString();
         if (!Files.isWritable(Paths.get(System.getProperty("karaf.history", defaultHistoryPath)))) {
             defaultHistoryPath = new File(System.getProperty("karaf.home"), historyFilePath).toString();
@@ -347,6 +356,9 @@ public class ConsoleSessionImpl implements Session {
                     // ignore
                 }
             }
+            if (reader.getHistory() instanceof SharedHistory) {
+                ((SharedHistory) reader.getHistory()).close();
+            }
 
             running = false;
             if (thread != Thread.currentThread() && thread != null) {
@@ -711,6 +723,7 @@ public class ConsoleSessionImpl implements Session {
 
         private final List<Command> commands = new ArrayList<>();
         private final Map<String, ActionMaskingCallback> regexs = new HashMap<>();
+        private long version = -1;
 
         @Override
         public String display(String line) {
@@ -723,11 +736,17 @@ public class ConsoleSessionImpl implements Session {
         }
 
         private String compute(String line) {
-            Collection<Command> commands;
+            Collection<Command> commands = null;
             boolean update;
+            Registry registry = factory.getRegistry();
+            long version = registry instanceof RegistryImpl ? ((RegistryImpl) registry).getVersion() : -1;
             synchronized (this) {
-                commands = factory.getRegistry().getCommands();
-                update = !commands.equals(this.commands);
+                if (version >= 0 && version == this.version) {
+                    update = false;
+                } else {
+                    commands = registry.getCommands();
+                    update = !commands.equals(this.commands);
+                }
             }
             if (update) {
                 Map<String, ActionMaskingCallback> regexs = new HashMap<>();
@@ -746,6 +765,11 @@ public class ConsoleSessionImpl implements Session {
                     this.regexs.putAll(regexs);
                 }
             }
+            if (version >= 0) {
+                synchronized (this) {
+                    this.version = version;
+                }
+            }
             try {
                 ParsedLine pl = reader.getParser().parse(line, line.length());
                 String cmd = resolveCommand(pl.words().get(0));
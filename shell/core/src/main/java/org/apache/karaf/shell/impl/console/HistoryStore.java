@@ -0,0 +1,375 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.impl.console;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import org.jline.reader.History;
+
+/**
+ * An append-only history file shared by all the sessions using it.
+ * <p>
+ * The file uses the JLine history format, one <code>millis:escaped command</code> line per entry.
+ * Only the offsets of the entries are kept in memory, the entries themselves are read from the file
+ * when needed.  Entries are appended with a single write, without rewriting the file, and the entries
+ * appended by other processes are indexed as well.  When the file holds twice the maximum number of
+ * entries, it is compacted to keep the last ones.  A file compacted by another process is detected
+ * with its file key and reopened.
+ */
+final class HistoryStore {
+
+    private static final Map<Path, HistoryStore> STORES = new HashMap<>();
+
+    private final Path file;
+    private int references;
+    /** Channel used for positional reads */
+    private FileChannel channel;
+    /** Channel used for appends, each entry being written at the end of the file with a single write */
+    private FileChannel writer;
+    /** Logical index of the first entry */
+    private int first;
+    /** Number of indexed entries */
+    private int count;
+    /** Offsets of the indexed entries in the file */
+    private long[] offsets = new long[256];
+    /** Number of bytes indexed, the end of the last complete entry */
+    private long indexed;
+    /** Key of the opened file, to detect its replacement, or <code>null</code> if not supported */
+    private Object fileKey;
+
+    private HistoryStore(Path file) {
+        this.file = file;
+    }
+
+    static HistoryStore acquire(Path file) throws IOException {
+        Path key = file.toAbsolutePath().normalize();
+        synchronized (STORES) {
+            HistoryStore store = STORES.get(key);
+            if (store == null) {
+                store = new HistoryStore(key);
+                store.open();
+                STORES.put(key, store);
+            }
+            store.references++;
+            return store;
+        }
+    }
+
+    void release() {
+        synchronized (STORES) {
+            if (--references == 0) {
+                STORES.remove(file);
+                synchronized (this) {
+                    closeChannel();
+                }
+            }
+        }
+    }
+
+    synchronized int first() throws IOException {
+        refresh();
+        return first;
+    }
+
+    synchronized int size() throws IOException {
+        refresh();
+        return count;
+    }
+
+    synchronized History.Entry get(int index) throws IOException {
+        int i = index - first;
+        if (i < 0 || i >= count) {
+            throw new IndexOutOfBoundsException("Index: " + index);
+        }
+        long start = offsets[i];
+        long end = i + 1 < count ? offsets[i + 1] : indexed;
+        ByteBuffer buffer = ByteBuffer.allocate((int) (end - start - 1));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, start + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file " + file);
+            }
+        }
+        return parse(index, new String(buffer.array(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Append an entry to the file.
+     *
+     * @param time the time of the entry.
+     * @param line the command.
+     * @param maxEntries the maximum number of entries kept when compacting the file.
+     * @throws IOException if the entry can not be written.
+     */
+    synchronized void append(Instant time, String line, int maxEntries) throws IOException {
+        refresh();
+        ByteBuffer buffer = ByteBuffer.wrap(format(time, line).getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            writer.write(buffer);
+        }
+        refresh();
+        if (maxEntries > 0 && count > 2 * maxEntries) {
+            compact(maxEntries);
+        }
+    }
+
+    /**
+     * Remove all the entries.
+     *
+     * @throws IOException if the file can not be truncated.
+     */
+    synchronized void purge() throws IOException {
+        refresh();
+        writer.truncate(0);
+        first += count;
+        count = 0;
+        indexed = 0;
+    }
+
+    /**
+     * Index the entries added since the last call, by this store or by another process.
+     */
+    private void refresh() throws IOException {
+        if (channel == null) {
+            throw new IOException("History file " + file + " is closed");
+        }
+        if (fileKey != null && !Objects.equals(fileKey, readFileKey())) {
+            // the file has been replaced by another process, appending to the old one would lose the entries
+            closeChannel();
+            open();
+            first += count;
+            count = 0;
+            indexed = 0;
+        }
+        long size = channel.size();
+        if (size < indexed) {
+            // the file has been truncated or replaced by another process
+            first += count;
+            count = 0;
+            indexed = 0;
+        }
+        if (size == indexed) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long position = indexed;
+        long start = indexed;
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    if (count == offsets.length) {
+                        offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                    }
+                    offsets[count++] = start;
+                    start = position + i + 1;
+                }
+            }
+            position += read;
+        }
+        // an incomplete last line is indexed once its end is written
+        indexed = start;
+    }
+
+    private void compact(int maxEntries) throws IOException {
+        int skip = count - maxEntries;
+        // the history may be shared by several processes, each one uses its own temporary file
+        Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName() + ".", ".tmp", ownerOnly());
+        try {
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                long position = offsets[skip];
+                while (position < indexed) {
+                    position += channel.transferTo(position, indexed - position, out);
+                }
+            }
+            closeChannel();
+            try {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                // reopen the current file if it could not be replaced
+                open();
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        first += skip;
+        count = 0;
+        indexed = 0;
+        refresh();
+    }
+
+    private void open() throws IOException {
+        if (!Files.exists(file)) {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            createFile(file);
+        }
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            writer = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            fileKey = readFileKey();
+        } catch (IOException e) {
+            closeChannel();
+            throw e;
+        }
+    }
+
+    private Object readFileKey() {
+        try {
+            return Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+        } catch (IOException e) {
+            // the file is being replaced, keep the current one until the next refresh
+            return fileKey;
+        }
+    }
+
+    /**
+     * Create the file readable by its owner only, as it may contain sensitive commands.
+     */
+    private static void createFile(Path path) throws IOException {
+        Files.createFile(path, ownerOnly());
+    }
+
+    private static FileAttribute<?>[] ownerOnly() {
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            return new FileAttribute<?>[] { PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")) };
+        } else {
+            return new FileAttribute<?>[0];
+        }
+    }
+
+    private void closeChannel() {
+        for (FileChannel ch : new FileChannel[] {channel, writer}) {
+            if (ch != null) {
+                try {
+                    ch.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+        channel = null;
+        writer = null;
+    }
+
+    static void write(OutputStream out, History.Entry entry) throws IOException {
+        out.write(format(entry.time(), entry.line()).getBytes(StandardCharsets.UTF_8));
+    }
+
+    static String format(Instant time, String line) {
+        StringBuilder sb = new StringBuilder(line.length() + 16);
+        sb.append(time.toEpochMilli()).append(':');
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            switch (c) {
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                default:
+                    sb.append(c);
+                    break;
+            }
+        }
+        return sb.append('\n').toString();
+    }
+
+    static History.Entry parse(int index, String data) {
+        Instant time = Instant.EPOCH;
+        String line = data;
+        int idx = data.indexOf(':');
+        if (idx > 0) {
+            try {
+                time = Instant.ofEpochMilli(Long.parseLong(data.substring(0, idx)));
+                line = data.substring(idx + 1);
+            } catch (NumberFormatException e) {
+                // entry written without timestamp
+            }
+        }
+        StringBuilder sb = new StringBuilder(line.length());
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\\' && i + 1 < line.length()) {
+                char n = line.charAt(++i);
+                sb.append(n == 'n' ? '\n' : n == 'r' ? '\r' : n);
+            } else {
+                sb.append(c);
+            }
+        }
+        return new EntryImpl(index, time, sb.toString());
+    }
+
+    static final class EntryImpl implements History.Entry {
+        private final int index;
+        private final Instant time;
+        private final String line;
+
+        EntryImpl(int index, Instant time, String line) {
+            this.index = index;
+            this.time = time;
+            this.line = line;
+        }
+
+        @Override
+        public int index() {
+            return index;
+        }
+
+        @Override
+        public Instant time() {
+            return time;
+        }
+
+        @Override
+        public String line() {
+            return line;
+        }
+
+        @Override
+        public String toString() {
+            return index + ": " + line;
+        }
+    }
+}
@@ -19,22 +19,35 @@
 package org.apache.karaf.shell.impl.console;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.karaf.shell.api.console.Command;
 import org.apache.karaf.shell.api.console.Registry;
 import org.apache.karaf.shell.api.console.Session;
 
+/**
+ * A registry of services and commands.
+ * <p>
+ * Modifications are made while holding the lock on {@link #services} and publish an immutable
+ * {@link Snapshot}, so that lookups do not take any lock and only scan the services once per type.
+ * The {@link #getVersion() version} is incremented on each modification and allows callers to
+ * cache data computed from the registry content.
+ */
 public class RegistryImpl implements Registry {
 
+    private static final Object[] EMPTY = new Object[0];
+
     protected final Registry parent;
     protected final Map<Object, Object> services = new LinkedHashMap<>();
     protected Session session;
     private final Map<String, List<Command>> commands = new HashMap<>();
+    private volatile Snapshot snapshot = new Snapshot(0, EMPTY, Collections.emptyMap());
 
     public RegistryImpl(Registry parent) {
         this.parent = parent;
@@ -44,7 +57,31 @@ public class RegistryImpl implements Registry {
         this.parent = parent;
         this.session = session;
     }
-    
+
+    /**
+     * The version of this registry content, including the parent registry one.
+     * It changes each time a service is registered or unregistered, or when the
+     * visibility of the services is {@link #invalidate() invalidated}.
+     *
+     * @return the current version
+     */
+    public long getVersion() {
+        long version = snapshot.version;
+        if (parent instanceof RegistryImpl) {
+            version += ((RegistryImpl) parent).getVersion();
+        }
+        return version;
+    }
+
+    /**
+     * Increment the version, to be called when the visibility of the services changes.
+     */
+    protected void invalidate() {
+        synchronized (services) {
+            publish();
+        }
+    }
+
     @Override
     public List<Command> getCommands() {
         return getServices(Command.class);
@@ -58,11 +95,9 @@ public class RegistryImpl implements Registry {
                 return command;
             }
         }
-        synchronized (services) {
-            List<Command> cmds = commands.get(scope + ":" + name);
-            if (cmds != null && !cmds.isEmpty()) {
-                return cmds.get(0);
-            }
+        List<Command> cmds = snapshot.commands.get(scope + ":" + name);
+        if (cmds != null && !cmds.isEmpty()) {
+            return cmds.get(0);
         }
         return null;
     }
@@ -71,6 +106,7 @@ public class RegistryImpl implements Registry {
     public <T> void register(Callable<T> factory, Class<T> clazz) {
         synchronized (services) {
             services.put(factory, new Factory<>(clazz, factory));
+            publish();
         }
     }
 
@@ -83,6 +119,7 @@ public class RegistryImpl implements Registry {
                 String key = cmd.getScope() + ":" + cmd.getName();
                 commands.computeIfAbsent(key, k -> new ArrayList<>()).add(cmd);
             }
+            publish();
         }
     }
 
@@ -101,27 +138,33 @@ public class RegistryImpl implements Registry {
                     }
                 }
             }
+            publish();
         }
     }
 
+    /**
+     * Publish a new snapshot, must be called while holding the lock on {@link #services}.
+     */
+    private void publish() {
+        Map<String, List<Command>> cmds = new HashMap<>();
+        for (Map.Entry<String, List<Command>> entry : commands.entrySet()) {
+            cmds.put(entry.getKey(), Collections.unmodifiableList(new ArrayList<>(entry.getValue())));
+        }
+        snapshot = new Snapshot(snapshot.version + 1, services.values().toArray(), cmds);
+    }
+
     @Override
     public <T> T getService(Class<T> clazz) {
-        synchronized (services) {
-            for (Object service : services.values()) {
+        for (Object service : snapshot.lookup(clazz)) {
+            if (isVisible(service)) {
                 if (service instanceof Factory) {
-                    if (clazz.isAssignableFrom(((Factory<?>) service).clazz)) {
-                        if (isVisible(service)) {
-                            try {
-                                return clazz.cast(((Factory<?>) service).callable.call());
-                            } catch (Exception e) {
-                                // TODO: log exception
-                            }
-                        }
-                    }
-                } else if (clazz.isInstance(service)) {
-                    if (isVisible(service)) {
-                        return clazz.cast(service);
+                    try {
+                        return clazz.cast(((Factory<?>) service).callable.call());
+                    } catch (Exception e) {
+                        // TODO: log exception
                     }
+                } else {
+                    return clazz.cast(service);
                 }
             }
         }
@@ -134,22 +177,16 @@ public class RegistryImpl implements Registry {
     @Override
     public <T> List<T> getServices(Class<T> clazz) {
         List<T> list = new ArrayList<>();
-        synchronized (services) {
-            for (Object service : services.values()) {
+        for (Object service : snapshot.lookup(clazz)) {
+            if (isVisible(service)) {
                 if (service instanceof Factory) {
-                    if (clazz.isAssignableFrom(((Factory<?>) service).clazz)) {
-                        if (isVisible(service)) {
-                            try {
-                                list.add(clazz.cast(((Factory<?>) service).callable.call()));
-                            } catch (Exception e) {
-                                // TODO: log exception
-                            }
-                        }
-                    }
-                } else if (clazz.isInstance(service)) {
-                    if (isVisible(service)) {
-                        list.add(clazz.cast(service));
+                    try {
+                        list.add(clazz.cast(((Factory<?>) service).callable.call()));
+                    } catch (Exception e) {
+                        // TODO: log exception
                     }
+                } else {
+                    list.add(clazz.cast(service));
                 }
             }
         }
@@ -161,19 +198,9 @@ public class RegistryImpl implements Registry {
 
     @Override
     public boolean hasService(Class<?> clazz) {
-        synchronized (services) {
-            for (Object service : services.values()) {
-                if (service instanceof Factory) {
-                    if (clazz.isAssignableFrom(((Factory<?>) service).clazz)) {
-                        if (isVisible(service)) {
-                            return true;
-                        }
-                    }
-                } else if (clazz.isInstance(service)) {
-                    if (isVisible(service)) {
-                        return true;
-                    }
-                }
+        for (Object service : snapshot.lookup(clazz)) {
+            if (isVisible(service)) {
+                return true;
             }
         }
         if (parent != null) {
@@ -198,4 +225,42 @@ public class RegistryImpl implements Registry {
 
     }
 
+    /**
+     * An immutable view of the registry content, with the services indexed by type on demand.
+     */
+    static final class Snapshot {
+
+        final long version;
+        final Object[] services;
+        final Map<String, List<Command>> commands;
+        final Map<Class<?>, Object[]> index = new ConcurrentHashMap<>();
+
+        Snapshot(long version, Object[] services, Map<String, List<Command>> commands) {
+            this.version = version;
+            this.services = services;
+            this.commands = commands;
+        }
+
+        /**
+         * @return the services and factories matching the given type, in registration order
+         */
+        Object[] lookup(Class<?> clazz) {
+            Object[] matching = index.get(clazz);
+            if (matching == null) {
+                List<Object> list = new ArrayList<>();
+                for (Object service : services) {
+                    if (service instanceof Factory
+                            ? clazz.isAssignableFrom(((Factory<?>) service).clazz)
+                            : clazz.isInstance(service)) {
+                        list.add(service);
+                    }
+                }
+                matching = list.isEmpty() ? EMPTY : list.toArray();
+                index.put(clazz, matching);
+            }
+            return matching;
+        }
+
+    }
+
 }
@@ -45,12 +45,16 @@ import org.apache.karaf.shell.impl.console.commands.ExitCommand;
 import org.apache.karaf.shell.impl.console.commands.Procedural;
 import org.apache.karaf.shell.impl.console.commands.SubShellCommand;
 import org.apache.karaf.shell.impl.console.commands.help.HelpCommand;
+import org.apache.karaf.shell.support.jobs.JobManager;
+import org.apache.karaf.shell.support.stats.CommandMetrics;
 
 public class SessionFactoryImpl extends RegistryImpl implements SessionFactory, Registry {
 
     final CommandProcessorImpl commandProcessor;
     final ThreadIO threadIO;
     final Map<String, SubShellCommand> subshells = new HashMap<>();
+    final JobManager jobManager;
+    final CommandMetrics metrics = new CommandMetrics();
     boolean closed;
 
     public SessionFactoryImpl(ThreadIO threadIO) {
@@ -67,6 +71,9 @@ public class SessionFactoryImpl extends RegistryImpl implements SessionFactory,
                 return SessionFactoryImpl.this.redirect(session, path, mode);
             }
         };
+        jobManager = new JobManager(this);
+        register(jobManager);
+        register(metrics);
         register(new ExitCommand());
         new HelpCommand(this);
         register(new ShellCommand("addCommand", "Add a command", commandProcessor, "addCommand"));
@@ -97,6 +104,10 @@ public class SessionFactoryImpl extends RegistryImpl implements SessionFactory,
         return session.currentDir().resolve(path);
     }
 
+    public CommandMetrics getMetrics() {
+        return metrics;
+    }
+
     public CommandProcessorImpl getCommandProcessor() {
         return commandProcessor;
     }
@@ -128,7 +139,7 @@ public class SessionFactoryImpl extends RegistryImpl implements SessionFactory,
     }
 
     protected Function wrap(Command command) {
-        return new CommandWrapper(command);
+        return new CommandWrapper(command, metrics);
     }
 
     @Override
@@ -183,6 +194,7 @@ public class SessionFactoryImpl extends RegistryImpl implements SessionFactory,
     public void stop() {
         synchronized (commandProcessor) {
             closed = true;
+            jobManager.close();
             commandProcessor.stop();
         }
     }
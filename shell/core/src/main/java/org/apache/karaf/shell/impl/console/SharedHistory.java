@@ -0,0 +1,423 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.impl.console;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+import org.jline.reader.History;
+import org.jline.reader.LineReader;
+import org.jline.reader.impl.history.DefaultHistory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A JLine {@link History} backed by a {@link HistoryStore} shared by all the sessions using the same
+ * history file.  Commands are appended to the file as soon as they are entered, so that they are
+ * immediately available to the other sessions, and no entry is kept in memory.
+ * The session can navigate and search the last {@link LineReader#HISTORY_SIZE} entries.
+ */
+public class SharedHistory implements History {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SharedHistory.class);
+
+    private LineReader reader;
+    private HistoryStore store;
+    private int index;
+
+    @Override
+    public void attach(LineReader reader) {
+        if (this.reader != reader) {
+            this.reader = reader;
+            try {
+                load();
+            } catch (IOException e) {
+                LOGGER.warn("Unable to open history file", e);
+            }
+        }
+    }
+
+    @Override
+    public void load() throws IOException {
+        Path path = getPath();
+        close();
+        if (path != null) {
+            store = HistoryStore.acquire(path);
+            moveToEnd();
+        }
+    }
+
+    /**
+     * Release the history file.
+     */
+    public void close() {
+        if (store != null) {
+            store.release();
+            store = null;
+        }
+    }
+
+    private Path getPath() {
+        Object obj = reader != null ? reader.getVariable(LineReader.HISTORY_FILE) : null;
+        if (obj instanceof Path) {
+            return (Path) obj;
+        } else if (obj instanceof File) {
+            return ((File) obj).toPath();
+        } else if (obj != null) {
+            return Paths.get(obj.toString());
+        }
+        return null;
+    }
+
+    @Override
+    public void save() {
+        // entries are written as soon as they are added
+    }
+
+    @Override
+    public void write(Path file, boolean incremental) throws IOException {
+        export(file, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    @Override
+    public void append(Path file, boolean incremental) throws IOException {
+        export(file, StandardOpenOption.APPEND);
+    }
+
+    private void export(Path file, StandardOpenOption option) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, option)) {
+            for (Entry entry : this) {
+                HistoryStore.write(out, entry);
+            }
+        }
+    }
+
+    @Override
+    public void read(Path file, boolean checkDuplicates) throws IOException {
+        try (BufferedReader br = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String data;
+            while ((data = br.readLine()) != null) {
+                Entry entry = HistoryStore.parse(0, data);
+                if (!checkDuplicates || !entry.line().equals(lastLine())) {
+                    internalAdd(entry.time(), entry.line());
+                }
+            }
+        }
+    }
+
+    @Override
+    public void purge() throws IOException {
+        if (store != null) {
+            store.purge();
+        }
+        index = 0;
+    }
+
+    @Override
+    public int size() {
+        return last() - first() + 1;
+    }
+
+    @Override
+    public int index() {
+        return index;
+    }
+
+    @Override
+    public int first() {
+        if (store == null) {
+            return 0;
+        }
+        try {
+            int first = store.first();
+            int size = store.size();
+            return first + Math.max(0, size - getInt(LineReader.HISTORY_SIZE, DefaultHistory.DEFAULT_HISTORY_SIZE));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public int last() {
+        if (store == null) {
+            return -1;
+        }
+        try {
+            return store.first() + store.size() - 1;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public String get(int index) {
+        return entry(index).line();
+    }
+
+    private Entry entry(int index) {
+        if (store == null || index < first()) {
+            throw new IndexOutOfBoundsException("Index: " + index);
+        }
+        try {
+            return store.get(index);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private String lastLine() {
+        int last = last();
+        return last >= first() ? get(last) : null;
+    }
+
+    @Override
+    public void add(Instant time, String line) {
+        Objects.requireNonNull(time);
+        Objects.requireNonNull(line);
+        if (getBoolean(LineReader.DISABLE_HISTORY, false)) {
+            return;
+        }
+        if (isSet(LineReader.Option.HISTORY_IGNORE_SPACE) && line.startsWith(" ")) {
+            return;
+        }
+        if (isSet(LineReader.Option.HISTORY_REDUCE_BLANKS)) {
+            line = line.trim();
+        }
+        if (isSet(LineReader.Option.HISTORY_IGNORE_DUPS) && line.equals(lastLine())) {
+            return;
+        }
+        if (matchPatterns(getString(LineReader.HISTORY_IGNORE, ""), line)) {
+            return;
+        }
+        internalAdd(time, line);
+    }
+
+    private void internalAdd(Instant time, String line) {
+        if (store != null) {
+            try {
+                store.append(time, line, getInt(LineReader.HISTORY_FILE_SIZE, DefaultHistory.DEFAULT_HISTORY_FILE_SIZE));
+            } catch (IOException e) {
+                LOGGER.warn("Unable to save history", e);
+            }
+        }
+        moveToEnd();
+    }
+
+    private static boolean matchPatterns(String patterns, String line) {
+        if (patterns == null || patterns.isEmpty()) {
+            return false;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < patterns.length(); i++) {
+            char ch = patterns.charAt(i);
+            if (ch == '\\' && i + 1 < patterns.length()) {
+                ch = patterns.charAt(++i);
+                sb.append(Pattern.quote(String.valueOf(ch)));
+            } else if (ch == ':') {
+                sb.append('|');
+            } else if (ch == '*') {
+                sb.append('.').append('*');
+            } else {
+                sb.append(Pattern.quote(String.valueOf(ch)));
+            }
+        }
+        return line.matches(sb.toString());
+    }
+
+    @Override
+    public ListIterator<Entry> iterator(int index) {
+        int first = first();
+        int last = last();
+        return new ListIterator<Entry>() {
+            int cursor = index;
+
+            @Override
+            public boolean hasNext() {
+                return cursor <= last;
+            }
+
+            @Override
+            public Entry next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return entry(cursor++);
+            }
+
+            @Override
+            public boolean hasPrevious() {
+                return cursor > first;
+            }
+
+            @Override
+            public Entry previous() {
+                if (!hasPrevious()) {
+                    throw new NoSuchElementException();
+                }
+                return entry(--cursor);
+            }
+
+            @Override
+            public int nextIndex() {
+                return cursor - first;
+            }
+
+            @Override
+            public int previousIndex() {
+                return cursor - first - 1;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void set(Entry entry) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void add(Entry entry) {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    @Override
+    public String current() {
+        if (index < first() || index > last()) {
+            return "";
+        }
+        return get(index);
+    }
+
+    @Override
+    public boolean previous() {
+        if (index <= first()) {
+            return false;
+        }
+        index--;
+        return true;
+    }
+
+    @Override
+    public boolean next() {
+        if (index > last()) {
+            return false;
+        }
+        index++;
+        return true;
+    }
+
+    @Override
+    public boolean moveToFirst() {
+        int first = first();
+        if (size() > 0 && index != first) {
+            index = first;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean moveToLast() {
+        int last = last();
+        if (last >= first() && index != last) {
+            index = last;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean moveTo(int index) {
+        if (index >= first() && index <= last()) {
+            this.index = index;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void moveToEnd() {
+        index = last() + 1;
+    }
+
+    @Override
+    public void resetIndex() {
+        index = Math.max(first(), Math.min(index, last() + 1));
+    }
+
+    private boolean isSet(LineReader.Option option) {
+        return reader != null && reader.isSet(option);
+    }
+
+    private boolean getBoolean(String name, boolean def) {
+        Object v = reader != null ? reader.getVariable(name) : null;
+        if (v instanceof Boolean) {
+            return (Boolean) v;
+        } else if (v != null) {
+            String s = v.toString();
+            return s.isEmpty() || s.equalsIgnoreCase("on") || s.equalsIgnoreCase("1") || s.equalsIgnoreCase("true");
+        }
+        return def;
+    }
+
+    private int getInt(String name, int def) {
+        Object v = reader != null ? reader.getVariable(name) : null;
+        if (v instanceof Number) {
+            return ((Number) v).intValue();
+        } else if (v != null) {
+            try {
+                return Integer.parseInt(v.toString());
+            } catch (NumberFormatException e) {
+                // ignore
+            }
+        }
+        return def;
+    }
+
+    private String getString(String name, String def) {
+        Object v = reader != null ? reader.getVariable(name) : null;
+        return v != null ? v.toString() : def;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Entry e : this) {
+            sb.append(e.toString()).append("\n");
+        }
+        return sb.toString();
+    }
+}
@@ -19,6 +19,7 @@
 package org.apache.karaf.shell.impl.console.osgi;
 
 import java.io.Closeable;
+import java.util.Hashtable;
 import java.util.concurrent.CopyOnWriteArraySet;
 
 import org.apache.felix.gogo.runtime.threadio.ThreadIOImpl;
@@ -29,6 +30,7 @@ import org.apache.karaf.shell.impl.action.command.ManagerImpl;
 import org.apache.karaf.shell.impl.action.osgi.CommandExtender;
 import org.apache.karaf.shell.impl.console.SessionFactoryImpl;
 import org.apache.karaf.shell.impl.console.osgi.secured.SecuredSessionFactoryImpl;
+import org.apache.karaf.shell.support.stats.CommandMetricsMBean;
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceReference;
@@ -48,6 +50,7 @@ public class Activator implements BundleActivator {
     private SessionFactoryImpl sessionFactory;
     private ServiceRegistration<SessionFactory> sessionFactoryRegistration;
     private ServiceRegistration<CommandProcessor> commandProcessorRegistration;
+    private ServiceRegistration<CommandMetricsMBean> metricsRegistration;
 
     private CommandExtender actionExtender;
 
@@ -95,6 +98,7 @@ public class Activator implements BundleActivator {
         filterTracker.open();
         LoggingCommandSessionListener loggingCommandSessionListener = new LoggingCommandSessionListener();
         loggingCommandSessionListener.setFilters(listeners);
+        sessionFactory.getMetrics().setFilters(listeners);
         sessionFactory.getCommandProcessor().addListener(loggingCommandSessionListener);
 
         try {
@@ -110,6 +114,10 @@ public class Activator implements BundleActivator {
         sessionFactoryRegistration = context.registerService(SessionFactory.class, sessionFactory, null);
         commandProcessorRegistration = context.registerService(CommandProcessor.class, sessionFactory.getCommandProcessor(), null);
 
+        Hashtable<String, Object> props = new Hashtable<>();
+        props.put("jmx.objectname", "org.apache.karaf:type=shell,name=" + System.getProperty("karaf.name"));
+        metricsRegistration = context.registerService(CommandMetricsMBean.class, new CommandMetricsMBeanImpl(sessionFactory.getMetrics()), props);
+
         actionExtender = new CommandExtender(sessionFactory);
         actionExtender.start(context);
 
@@ -133,6 +141,7 @@ public class Activator implements BundleActivator {
     @Override
     public void stop(BundleContext context) throws Exception {
         filterTracker.close();
+        metricsRegistration.unregister();
         commandProcessorRegistration.unregister();
         sessionFactoryRegistration.unregister();
         if (localConsoleManager != null) {
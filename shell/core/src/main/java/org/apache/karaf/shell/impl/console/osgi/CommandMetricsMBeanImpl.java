@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.impl.console.osgi;
+
+import javax.management.MBeanException;
+import javax.management.NotCompliantMBeanException;
+import javax.management.StandardMBean;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+import org.apache.karaf.shell.support.stats.CommandMetrics;
+import org.apache.karaf.shell.support.stats.CommandMetricsMBean;
+import org.apache.karaf.shell.support.stats.CommandStatistics;
+
+/**
+ * Implementation of the CommandMetricsMBean.
+ */
+public class CommandMetricsMBeanImpl extends StandardMBean implements CommandMetricsMBean {
+
+    private final CommandMetrics metrics;
+
+    public CommandMetricsMBeanImpl(CommandMetrics metrics) throws NotCompliantMBeanException {
+        super(CommandMetricsMBean.class);
+        this.metrics = metrics;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return metrics.isEnabled();
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        metrics.setEnabled(enabled);
+    }
+
+    @Override
+    public long getSlowThreshold() {
+        return metrics.getSlowThreshold();
+    }
+
+    @Override
+    public void setSlowThreshold(long slowThreshold) {
+        metrics.setSlowThreshold(slowThreshold);
+    }
+
+    @Override
+    public TabularData getStatistics() throws MBeanException {
+        try {
+            String[] names = new String[]{ "Command", "Invocations", "Errors", "AverageDuration", "MaxDuration",
+                    "DurationHistogram", "LastCaller", "LastInvocation" };
+            CompositeType statsType = new CompositeType("CommandStatistics", "Shell command statistics",
+                    names,
+                    new String[]{ "Command name", "Number of invocations", "Number of failed invocations",
+                            "Average execution duration (ms)", "Maximum execution duration (ms)",
+                            "Execution duration histogram", "User of the last invocation", "Last invocation time" },
+                    new OpenType[]{ SimpleType.STRING, SimpleType.LONG, SimpleType.LONG, SimpleType.DOUBLE,
+                            SimpleType.DOUBLE, SimpleType.STRING, SimpleType.STRING, SimpleType.DATE });
+            TabularType tableType = new TabularType("CommandsStatistics", "Tables of all commands statistics", statsType, new String[]{ "Command" });
+            TabularData table = new TabularDataSupport(tableType);
+
+            for (CommandStatistics stats : metrics.getStatistics()) {
+                CompositeData data = new CompositeDataSupport(statsType, names,
+                        new Object[]{ stats.getCommand(), stats.getInvocations(), stats.getErrors(),
+                                stats.getAverageDuration(), stats.getMaxDuration(),
+                                CommandStatistics.formatHistogram(stats.getDurationHistogram()),
+                                stats.getLastCaller(), stats.getLastInvocation() });
+                table.put(data);
+            }
+            return table;
+        } catch (Exception e) {
+            throw new MBeanException(null, e.toString());
+        }
+    }
+
+    @Override
+    public void resetStatistics() {
+        metrics.reset();
+    }
+
+}
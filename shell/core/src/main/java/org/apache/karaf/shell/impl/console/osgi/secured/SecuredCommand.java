@@ -83,7 +83,7 @@ public class SecuredCommand implements Command, Function {
                 arguments.set(i, v.toString());
             }
         }
-        return execute(session, arguments);
+        return factory.getMetrics().execute(this, session, arguments);
     }
 
     static class VersatileFunction implements org.apache.felix.service.command.Function,
@@ -327,6 +327,8 @@ public class SecuredSessionFactoryImpl extends SessionFactoryImpl implements Con
                     }
                     break;
             }
+            // the visible commands have changed
+            invalidate();
         } catch (Exception e) {
             LOGGER.error("Problem processing Configuration Event {}", event, e);
         }
@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.support.completers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.karaf.shell.api.console.Candidate;
+import org.apache.karaf.shell.api.console.CommandLine;
+import org.apache.karaf.shell.api.console.Completer;
+import org.apache.karaf.shell.api.console.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Base class for completers whose candidates are expensive to compute.
+ * <p>
+ * The candidates are kept in a snapshot, sorted so that they are looked up by prefix,
+ * and reused by the following completions. Subclasses call {@link #invalidate()} when
+ * the candidates change, usually from a bundle, service or configuration listener
+ * registered in an <code>@Init</code> method: the next completion still returns
+ * immediately from the current snapshot while a new one is loaded in the background.
+ * Only the first completion waits for the candidates to be loaded.
+ */
+public abstract class CachedCompleter implements Completer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CachedCompleter.class);
+
+    private final Executor executor;
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicBoolean loading = new AtomicBoolean();
+    private volatile Snapshot snapshot;
+
+    protected CachedCompleter() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    protected CachedCompleter(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Compute the candidates.  Candidates with the same value are only kept once.
+     *
+     * @param candidates the list to add the candidates to.
+     * @throws Exception if the candidates can not be computed, the previous ones are kept.
+     */
+    protected abstract void loadCandidates(List<Candidate> candidates) throws Exception;
+
+    /**
+     * Mark the candidates as stale, they will be reloaded by the next completion.
+     */
+    public void invalidate() {
+        version.incrementAndGet();
+    }
+
+    @Override
+    public int complete(Session session, CommandLine commandLine, List<String> candidates) {
+        String prefix = getPrefix(commandLine);
+        for (Candidate candidate : getCandidates(prefix)) {
+            candidates.add(candidate.complete() ? candidate.value() + " " : candidate.value());
+        }
+        return candidates.isEmpty() ? -1 : commandLine.getBufferPosition() - commandLine.getArgumentPosition();
+    }
+
+    @Override
+    public void completeCandidates(Session session, CommandLine commandLine, List<Candidate> candidates) {
+        candidates.addAll(getCandidates(getPrefix(commandLine)));
+    }
+
+    /**
+     * Retrieve the candidates starting with the given prefix, ignoring case, from the current snapshot.
+     *
+     * @param prefix the prefix.
+     * @return the matching candidates, sorted by value.
+     */
+    public List<Candidate> getCandidates(String prefix) {
+        Snapshot current = snapshot;
+        if (current == null) {
+            current = load();
+        } else if (current.version != version.get() && loading.compareAndSet(false, true)) {
+            try {
+                executor.execute(() -> {
+                    try {
+                        load();
+                    } finally {
+                        loading.set(false);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                loading.set(false);
+            }
+        }
+        return current.lookup(prefix);
+    }
+
+    private static String getPrefix(CommandLine commandLine) {
+        String buffer = commandLine.getCursorArgument();
+        return buffer != null ? buffer.substring(0, commandLine.getArgumentPosition()) : "";
+    }
+
+    private synchronized Snapshot load() {
+        long current = version.get();
+        if (snapshot != null && snapshot.version == current) {
+            return snapshot;
+        }
+        List<Candidate> candidates = new ArrayList<>();
+        try {
+            loadCandidates(candidates);
+            snapshot = new Snapshot(current, candidates);
+        } catch (Exception e) {
+            LOGGER.debug("Unable to load completion candidates", e);
+            if (snapshot == null) {
+                snapshot = new Snapshot(current, Collections.emptyList());
+            }
+        }
+        return snapshot;
+    }
+
+    private static final class Snapshot {
+        final long version;
+        final String[] values;
+        final Candidate[] candidates;
+
+        Snapshot(long version, List<Candidate> list) {
+            this.version = version;
+            Set<String> seen = new HashSet<>();
+            List<Candidate> unique = new ArrayList<>(list.size());
+            for (Candidate candidate : list) {
+                if (candidate.value() != null && seen.add(candidate.value())) {
+                    unique.add(candidate);
+                }
+            }
+            unique.sort((c1, c2) -> String.CASE_INSENSITIVE_ORDER.compare(c1.value(), c2.value()));
+            this.candidates = unique.toArray(new Candidate[0]);
+            this.values = new String[candidates.length];
+            for (int i = 0; i < candidates.length; i++) {
+                values[i] = candidates[i].value();
+            }
+        }
+
+        List<Candidate> lookup(String prefix) {
+            if (prefix.isEmpty()) {
+                return Arrays.asList(candidates);
+            }
+            int index = Arrays.binarySearch(values, prefix, String.CASE_INSENSITIVE_ORDER);
+            if (index < 0) {
+                index = -index - 1;
+            } else {
+                // several values may be equal ignoring case
+                while (index > 0 && values[index - 1].equalsIgnoreCase(prefix)) {
+                    index--;
+                }
+            }
+            List<Candidate> result = new ArrayList<>();
+            while (index < values.length && values[index].regionMatches(true, 0, prefix, 0, prefix.length())) {
+                result.add(candidates[index++]);
+            }
+            return result;
+        }
+    }
+
+}
@@ -0,0 +1,253 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.support.jobs;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.Future;
+
+/**
+ * A command executed in the background by the {@link JobManager}.
+ * <p>
+ * The output of the command is spooled on disk, and can be read while the command is running or
+ * once it has completed.  The CPU time is the one consumed by the threads running the command.
+ */
+public final class Job {
+
+    public enum State {
+        QUEUED, RUNNING, DONE, FAILED, CANCELLED
+    }
+
+    private final int id;
+    private final String command;
+    private final String user;
+    private final Instant submitted;
+    final OutputSpool spool;
+    Future<?> future;
+
+    private volatile State state = State.QUEUED;
+    private volatile Instant started;
+    private volatile Instant finished;
+    private volatile Object result;
+    private volatile Throwable exception;
+    private volatile boolean cancelled;
+    private volatile ThreadGroup group;
+    private long cpuStart;
+    private volatile long cpuTime = -1;
+
+    Job(int id, String command, String user, OutputSpool spool) {
+        this.id = id;
+        this.command = command;
+        this.user = user;
+        this.spool = spool;
+        this.submitted = Instant.now();
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    /**
+     * The user who submitted the job, or <code>null</code> if unknown.
+     */
+    public String getUser() {
+        return user;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public boolean isDone() {
+        State s = state;
+        return s == State.DONE || s == State.FAILED || s == State.CANCELLED;
+    }
+
+    public Instant getSubmitted() {
+        return submitted;
+    }
+
+    public Instant getStarted() {
+        return started;
+    }
+
+    public Instant getFinished() {
+        return finished;
+    }
+
+    /**
+     * The result of the command, if it has completed successfully.
+     */
+    public Object getResult() {
+        return result;
+    }
+
+    /**
+     * The exception thrown by the command, if it has failed.
+     */
+    public Throwable getException() {
+        return exception;
+    }
+
+    /**
+     * The elapsed time since the job has been started, or its execution time once completed.
+     */
+    public Duration getWallTime() {
+        Instant start = started;
+        if (start == null) {
+            return Duration.ZERO;
+        }
+        Instant end = finished;
+        return Duration.between(start, end != null ? end : Instant.now());
+    }
+
+    /**
+     * The CPU time consumed by the command in nanoseconds, or -1 if it is not available.
+     */
+    public long getCpuTime() {
+        ThreadGroup g = group;
+        if (state == State.RUNNING && g != null) {
+            long time = cpuTime(g);
+            return time >= 0 ? time - cpuStart : -1;
+        }
+        return cpuTime;
+    }
+
+    /**
+     * The position of the first byte of output still available, older output being discarded.
+     */
+    public long getOutputStart() {
+        return spool.start();
+    }
+
+    /**
+     * The number of bytes written by the command.
+     */
+    public long getOutputSize() {
+        return spool.end();
+    }
+
+    /**
+     * Copy the output of the command available from the given position.
+     *
+     * @param position the position to copy from.
+     * @param out the stream to copy to.
+     * @return the position following the last byte copied.
+     * @throws IOException if the output can not be read.
+     */
+    public long copyOutput(long position, OutputStream out) throws IOException {
+        return spool.copyTo(position, out);
+    }
+
+    /**
+     * Wait until the command writes output after the given position, or completes.
+     *
+     * @return <code>true</code> if output is available after the position.
+     */
+    public boolean awaitOutput(long position, long timeout) throws InterruptedException {
+        return spool.await(position, timeout);
+    }
+
+    /**
+     * Cancel the job: a queued job will not be started, and the threads of a running job are interrupted.
+     *
+     * @return <code>true</code> if the job was queued or running.
+     */
+    public boolean cancel() {
+        synchronized (this) {
+            if (state == State.QUEUED) {
+                state = State.CANCELLED;
+                finished = Instant.now();
+                if (future != null) {
+                    future.cancel(false);
+                }
+                spool.close();
+                return true;
+            }
+            if (state != State.RUNNING) {
+                return false;
+            }
+            cancelled = true;
+        }
+        ThreadGroup g = group;
+        if (g != null) {
+            g.interrupt();
+        }
+        return true;
+    }
+
+    synchronized boolean start() {
+        if (state != State.QUEUED) {
+            return false;
+        }
+        group = Thread.currentThread().getThreadGroup();
+        cpuStart = Math.max(0, cpuTime(group));
+        started = Instant.now();
+        state = State.RUNNING;
+        return true;
+    }
+
+    /**
+     * Record the CPU time, before the threads of the command are stopped.
+     */
+    void stopping() {
+        long time = cpuTime(group);
+        cpuTime = time >= 0 ? time - cpuStart : -1;
+    }
+
+    synchronized void finish(Object result, Throwable exception) {
+        this.result = result;
+        this.exception = exception;
+        finished = Instant.now();
+        state = cancelled ? State.CANCELLED : exception != null ? State.FAILED : State.DONE;
+        group = null;
+        spool.close();
+    }
+
+    private static long cpuTime(ThreadGroup group) {
+        ThreadMXBean mxBean = ManagementFactory.getThreadMXBean();
+        if (group == null || !mxBean.isThreadCpuTimeSupported() || !mxBean.isThreadCpuTimeEnabled()) {
+            return -1;
+        }
+        Thread[] threads = new Thread[group.activeCount() + 16];
+        int count = group.enumerate(threads, true);
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            long time = mxBean.getThreadCpuTime(threads[i].getId());
+            if (time > 0) {
+                total += time;
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        return "Job[" + id + ", " + state + ", " + command + "]";
+    }
+
+}
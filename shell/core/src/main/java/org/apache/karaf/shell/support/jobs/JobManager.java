@@ -0,0 +1,277 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.support.jobs;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.AccessController;
+import java.security.PrivilegedActionException;
+import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.security.auth.Subject;
+
+import org.apache.karaf.shell.api.console.Session;
+import org.apache.karaf.shell.api.console.SessionFactory;
+import org.apache.karaf.shell.support.ShellUtil;
+import org.apache.karaf.util.jaas.JaasHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executes commands in the background, independently of the session which submitted them.
+ * <p>
+ * Each job is executed in its own headless session, on a bounded pool of threads, with the subject
+ * of the submitter.  Its output is spooled to a file of a bounded size, so that the session can
+ * be closed while the job is running, and the output can be read later from another session.
+ * Each thread of the pool belongs to its own thread group, which holds the threads started by the
+ * job: they are interrupted when the job is cancelled, and their CPU time is accounted to the job.
+ * <p>
+ * The completed jobs are kept, with their output, until they are removed or until more than the
+ * maximum number of completed jobs are kept.
+ * <p>
+ * Users only see their own jobs, unless they have the administrator role.
+ */
+public class JobManager {
+
+    public static final String MAX_CONCURRENT_JOBS = "karaf.shell.jobs.maxConcurrent";
+    public static final String SPOOL_SIZE = "karaf.shell.jobs.spoolSize";
+    public static final String MAX_COMPLETED_JOBS = "karaf.shell.jobs.maxCompleted";
+    public static final String ADMIN_ROLE = "karaf.shell.jobs.adminRole";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JobManager.class);
+
+    private final SessionFactory sessionFactory;
+    private final Path directory;
+    private final long spoolSize;
+    private final int maxCompleted;
+    private final String adminRole = System.getProperty(ADMIN_ROLE, "admin");
+    private final ThreadPoolExecutor executor;
+    private final AtomicInteger ids = new AtomicInteger();
+    private final Map<Integer, Job> jobs = new LinkedHashMap<>();
+
+    public JobManager(SessionFactory sessionFactory) {
+        this(sessionFactory, getDefaultDirectory(),
+                Integer.getInteger(MAX_CONCURRENT_JOBS, 4),
+                Long.getLong(SPOOL_SIZE, 1024 * 1024),
+                Integer.getInteger(MAX_COMPLETED_JOBS, 32));
+    }
+
+    public JobManager(SessionFactory sessionFactory, Path directory, int maxConcurrent, long spoolSize, int maxCompleted) {
+        this.sessionFactory = sessionFactory;
+        this.directory = directory;
+        this.spoolSize = spoolSize;
+        this.maxCompleted = maxCompleted;
+        AtomicInteger threads = new AtomicInteger();
+        ThreadGroup parent = Thread.currentThread().getThreadGroup();
+        this.executor = new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    String name = "Karaf shell job " + threads.incrementAndGet();
+                    ThreadGroup group = new ThreadGroup(parent, name);
+                    group.setDaemon(true);
+                    Thread thread = new Thread(group, r, name);
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    private static Path getDefaultDirectory() {
+        String data = System.getProperty("karaf.data");
+        return data != null ? Paths.get(data, "jobs") : Paths.get(System.getProperty("java.io.tmpdir"), "karaf-jobs");
+    }
+
+    /**
+     * Submit a command to be executed in the background.
+     *
+     * @param session the submitting session, used to initialize the scope of the job session.
+     * @param command the command to execute.
+     * @return the job.
+     * @throws IOException if the output spool can not be created.
+     */
+    public Job submit(Session session, String command) throws IOException {
+        Subject subject = Subject.getSubject(AccessController.getContext());
+        Map<String, Object> variables = new HashMap<>();
+        if (session != null) {
+            for (String name : new String[] {Session.SCOPE, Session.SUBSHELL}) {
+                if (session.get(name) != null) {
+                    variables.put(name, session.get(name));
+                }
+            }
+        }
+        int id = ids.incrementAndGet();
+        Files.createDirectories(directory);
+        Job job = new Job(id, command, ShellUtil.getCurrentUserName(), new OutputSpool(directory.resolve("job-" + id + ".out"), spoolSize));
+        synchronized (jobs) {
+            jobs.put(id, job);
+        }
+        synchronized (job) {
+            job.future = executor.submit(() -> run(job, subject, variables));
+        }
+        return job;
+    }
+
+    private void run(Job job, Subject subject, Map<String, Object> variables) {
+        if (!job.start()) {
+            return;
+        }
+        Object result = null;
+        Throwable exception = null;
+        PrintStream out = new PrintStream(job.spool, true);
+        try (Session session = sessionFactory.create(new ByteArrayInputStream(new byte[0]), out, out)) {
+            variables.forEach(session::put);
+            try {
+                if (subject != null) {
+                    try {
+                        result = JaasHelper.doAs(subject, (PrivilegedExceptionAction<Object>) () -> session.execute(job.getCommand()));
+                    } catch (PrivilegedActionException e) {
+                        throw e.getException();
+                    }
+                } else {
+                    result = session.execute(job.getCommand());
+                }
+            } catch (Throwable t) {
+                exception = t;
+                ShellUtil.logException(session, t);
+            } finally {
+                out.flush();
+                job.stopping();
+            }
+        } catch (Throwable t) {
+            LOGGER.debug("Error closing the session of job {}", job.getId(), t);
+        } finally {
+            job.finish(result, exception);
+            // clear the interruption of a cancelled job before the thread is reused
+            Thread.interrupted();
+            evict();
+        }
+    }
+
+    /**
+     * The jobs visible by the current user, ordered by id.
+     */
+    public List<Job> getJobs() {
+        List<Job> visible = new ArrayList<>();
+        synchronized (jobs) {
+            for (Job job : jobs.values()) {
+                if (isVisible(job)) {
+                    visible.add(job);
+                }
+            }
+        }
+        return visible;
+    }
+
+    /**
+     * The job with the given id, or <code>null</code> if there is none or if it is not visible by the current user.
+     */
+    public Job getJob(int id) {
+        Job job;
+        synchronized (jobs) {
+            job = jobs.get(id);
+        }
+        return job != null && isVisible(job) ? job : null;
+    }
+
+    /**
+     * A job is visible by the user who submitted it, and by the administrators.
+     */
+    private boolean isVisible(Job job) {
+        return Objects.equals(job.getUser(), ShellUtil.getCurrentUserName()) || JaasHelper.currentUserHasRole(adminRole);
+    }
+
+    /**
+     * Remove a completed job and its output.
+     *
+     * @return <code>true</code> if the job has been removed, <code>false</code> if it is not completed.
+     */
+    public boolean remove(Job job) {
+        if (!job.isDone()) {
+            return false;
+        }
+        synchronized (jobs) {
+            jobs.remove(job.getId());
+        }
+        job.spool.delete();
+        return true;
+    }
+
+    private void evict() {
+        List<Job> evicted = new ArrayList<>();
+        synchronized (jobs) {
+            int completed = 0;
+            for (Job job : jobs.values()) {
+                if (job.isDone()) {
+                    completed++;
+                }
+            }
+            for (Iterator<Job> it = jobs.values().iterator(); it.hasNext() && completed > maxCompleted; ) {
+                Job job = it.next();
+                if (job.isDone()) {
+                    it.remove();
+                    evicted.add(job);
+                    completed--;
+                }
+            }
+        }
+        for (Job job : evicted) {
+            job.spool.delete();
+        }
+    }
+
+    /**
+     * Cancel all the jobs and delete their output.
+     */
+    public void close() {
+        executor.shutdownNow();
+        List<Job> all;
+        synchronized (jobs) {
+            all = new ArrayList<>(jobs.values());
+        }
+        for (Job job : all) {
+            job.cancel();
+        }
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (jobs) {
+            for (Job job : jobs.values()) {
+                job.spool.delete();
+            }
+            jobs.clear();
+        }
+    }
+
+}
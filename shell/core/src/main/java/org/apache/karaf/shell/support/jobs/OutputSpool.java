@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.support.jobs;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A ring buffer on disk keeping the last bytes written to it.
+ * <p>
+ * Positions are absolute: the byte at position <code>p</code> is the <code>p</code>-th byte ever
+ * written, and is available as long as <code>p &gt;= start()</code>.
+ */
+final class OutputSpool extends OutputStream {
+
+    private final Path file;
+    private final long capacity;
+    private final FileChannel channel;
+    private long written;
+    private boolean closed;
+
+    OutputSpool(Path file, long capacity) throws IOException {
+        this.file = file;
+        this.capacity = capacity;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Output spool closed");
+        }
+        if (len > capacity) {
+            // only the end of the data is kept
+            off += len - capacity;
+            written += len - capacity;
+            len = (int) capacity;
+        }
+        while (len > 0) {
+            long position = written % capacity;
+            int count = (int) Math.min(len, capacity - position);
+            ByteBuffer buffer = ByteBuffer.wrap(b, off, count);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, position + buffer.position() - off);
+            }
+            off += count;
+            len -= count;
+            written += count;
+        }
+        notifyAll();
+    }
+
+    /**
+     * The position of the oldest byte still available.
+     */
+    synchronized long start() {
+        return Math.max(0, written - capacity);
+    }
+
+    /**
+     * The number of bytes written.
+     */
+    synchronized long end() {
+        return written;
+    }
+
+    /**
+     * Copy the available bytes from the given position, or from the oldest available byte if the given
+     * one has been overwritten.
+     *
+     * @param position the position to copy from.
+     * @param out the stream to copy to.
+     * @return the position following the last byte copied.
+     * @throws IOException if the spool can not be read.
+     */
+    long copyTo(long position, OutputStream out) throws IOException {
+        byte[] bytes = new byte[8192];
+        while (true) {
+            int count;
+            synchronized (this) {
+                position = Math.max(position, start());
+                long offset = position % capacity;
+                count = (int) Math.min(Math.min(bytes.length, written - position), capacity - offset);
+                if (count <= 0) {
+                    return position;
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, count);
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, offset + buffer.position()) < 0) {
+                        throw new IOException("Unexpected end of file " + file);
+                    }
+                }
+            }
+            out.write(bytes, 0, count);
+            position += count;
+        }
+    }
+
+    /**
+     * Wait until bytes are written after the given position, or the spool is closed.
+     *
+     * @return <code>true</code> if bytes are available after the position.
+     */
+    synchronized boolean await(long position, long timeout) throws InterruptedException {
+        if (written <= position && !closed) {
+            wait(timeout);
+        }
+        return written > position;
+    }
+
+    /**
+     * Stop accepting writes, the bytes written can still be read.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Close and delete the spool file.
+     */
+    synchronized void delete() {
+        close();
+        try {
+            channel.close();
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+}
@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.support.stats;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.karaf.shell.api.console.Command;
+import org.apache.karaf.shell.api.console.CommandLoggingFilter;
+import org.apache.karaf.shell.api.console.Session;
+import org.apache.karaf.shell.support.ShellUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records the execution statistics of the shell commands, whatever the session they are executed
+ * from (local console, ssh, web console or headless sessions).
+ * <p>
+ * When disabled, executing a command only costs a volatile read.  When a slow command threshold is
+ * defined, the commands which take longer are logged with their command line, filtered by the
+ * {@link CommandLoggingFilter}s to hide the passwords, and their caller.
+ */
+public class CommandMetrics {
+
+    public static final String ENABLED = "karaf.shell.stats.enabled";
+    public static final String SLOW_THRESHOLD = "karaf.shell.stats.slowThreshold";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CommandMetrics.class);
+
+    private final ConcurrentMap<String, CommandStatistics> statistics = new ConcurrentHashMap<>();
+    private volatile boolean enabled;
+    private volatile long slowThreshold;
+    private volatile Collection<CommandLoggingFilter> filters = Collections.emptyList();
+
+    public CommandMetrics() {
+        this(Boolean.parseBoolean(System.getProperty(ENABLED, "true")), Long.getLong(SLOW_THRESHOLD, 0));
+    }
+
+    public CommandMetrics(boolean enabled, long slowThreshold) {
+        this.enabled = enabled;
+        this.slowThreshold = slowThreshold;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * The duration in milliseconds above which commands are logged, or <code>0</code> if they are not.
+     */
+    public long getSlowThreshold() {
+        return slowThreshold;
+    }
+
+    public void setSlowThreshold(long slowThreshold) {
+        this.slowThreshold = Math.max(0, slowThreshold);
+    }
+
+    /**
+     * The filters applied to the command line of the slow commands before they are logged.
+     */
+    public void setFilters(Collection<CommandLoggingFilter> filters) {
+        this.filters = filters;
+    }
+
+    /**
+     * Execute a command, recording its duration and outcome.
+     *
+     * @param command the command to execute.
+     * @param session the session executing the command.
+     * @param arguments the arguments of the command.
+     * @return the result of the command.
+     * @throws Exception if the command failed.
+     */
+    public Object execute(Command command, Session session, List<Object> arguments) throws Exception {
+        if (!enabled) {
+            return command.execute(session, arguments);
+        }
+        long threshold = slowThreshold;
+        // the command may modify its arguments, so keep them for the slow command log
+        List<Object> logged = threshold > 0 ? new ArrayList<>(arguments) : null;
+        boolean failed = true;
+        long start = System.nanoTime();
+        try {
+            Object result = command.execute(session, arguments);
+            failed = false;
+            return result;
+        } finally {
+            long duration = System.nanoTime() - start;
+            String name = command.getScope() + ":" + command.getName();
+            String caller = ShellUtil.getCurrentUserName();
+            CommandStatistics stats = statistics.get(name);
+            if (stats == null) {
+                stats = statistics.computeIfAbsent(name, CommandStatistics::new);
+            }
+            stats.record(duration, failed, caller, System.currentTimeMillis());
+            if (logged != null && duration >= TimeUnit.MILLISECONDS.toNanos(threshold)) {
+                LOGGER.warn("Slow command executed by {} in {} ms{}: {}",
+                        caller != null ? caller : "unknown user",
+                        TimeUnit.NANOSECONDS.toMillis(duration),
+                        failed ? " (failed)" : "",
+                        commandLine(name, logged));
+            }
+        }
+    }
+
+    CharSequence commandLine(String name, List<Object> arguments) {
+        StringBuilder sb = new StringBuilder(name);
+        for (Object argument : arguments) {
+            sb.append(' ').append(argument);
+        }
+        CharSequence command = sb;
+        for (CommandLoggingFilter filter : filters) {
+            command = filter.filter(command);
+        }
+        return command;
+    }
+
+    /**
+     * The statistics of the commands executed since the last reset, ordered by command name.
+     */
+    public List<CommandStatistics> getStatistics() {
+        List<CommandStatistics> result = new ArrayList<>(statistics.values());
+        result.sort(Comparator.comparing(CommandStatistics::getCommand));
+        return result;
+    }
+
+    /**
+     * The statistics of the given command, or <code>null</code> if it has not been executed.
+     *
+     * @param command the qualified name of the command, <code>scope:name</code>.
+     */
+    public CommandStatistics getStatistics(String command) {
+        return statistics.get(command);
+    }
+
+    /**
+     * Discard all the statistics.
+     */
+    public void reset() {
+        statistics.clear();
+    }
+
+}
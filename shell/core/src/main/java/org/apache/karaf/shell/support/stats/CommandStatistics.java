@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.support.stats;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free recorder of the execution statistics of a command.
+ */
+public final class CommandStatistics {
+
+    /**
+     * Upper bounds (exclusive, in milliseconds) of the buckets of the
+     * {@link #getDurationHistogram() duration histogram}, the last bucket
+     * containing the longer executions.
+     */
+    public static final long[] DURATION_BUCKETS = { 1, 10, 100, 1000, 10000, 60000 };
+
+    private static final long[] DURATION_BUCKETS_NANOS = new long[DURATION_BUCKETS.length];
+
+    static {
+        for (int i = 0; i < DURATION_BUCKETS.length; i++) {
+            DURATION_BUCKETS_NANOS[i] = TimeUnit.MILLISECONDS.toNanos(DURATION_BUCKETS[i]);
+        }
+    }
+
+    private final String command;
+    private final LongAdder invocations = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder totalDuration = new LongAdder();
+    private final LongAccumulator maxDuration = new LongAccumulator(Math::max, 0);
+    private final AtomicLongArray histogram = new AtomicLongArray(DURATION_BUCKETS.length + 1);
+    private volatile String lastCaller;
+    private volatile long lastInvocation;
+
+    CommandStatistics(String command) {
+        this.command = command;
+    }
+
+    void record(long durationNanos, boolean failed, String caller, long time) {
+        invocations.increment();
+        if (failed) {
+            errors.increment();
+        }
+        totalDuration.add(durationNanos);
+        maxDuration.accumulate(durationNanos);
+        int bucket = 0;
+        while (bucket < DURATION_BUCKETS_NANOS.length && durationNanos >= DURATION_BUCKETS_NANOS[bucket]) {
+            bucket++;
+        }
+        histogram.incrementAndGet(bucket);
+        lastCaller = caller;
+        lastInvocation = time;
+    }
+
+    /**
+     * @return the qualified name of the command, <code>scope:name</code>
+     */
+    public String getCommand() {
+        return command;
+    }
+
+    /**
+     * @return the number of completed invocations
+     */
+    public long getInvocations() {
+        return invocations.sum();
+    }
+
+    /**
+     * @return the number of invocations which threw an exception
+     */
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    /**
+     * @return the average execution duration in milliseconds
+     */
+    public double getAverageDuration() {
+        long nb = invocations.sum();
+        return nb > 0 ? toMillis(totalDuration.sum()) / nb : 0.0;
+    }
+
+    /**
+     * @return the maximum execution duration in milliseconds
+     */
+    public double getMaxDuration() {
+        return toMillis(maxDuration.get());
+    }
+
+    /**
+     * @return the number of invocations per duration bucket, see {@link #DURATION_BUCKETS}
+     */
+    public long[] getDurationHistogram() {
+        long[] result = new long[histogram.length()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = histogram.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * @return the user who executed the command last, or <code>null</code> if unknown
+     */
+    public String getLastCaller() {
+        return lastCaller;
+    }
+
+    /**
+     * @return the time of the last invocation, or <code>null</code>
+     */
+    public Date getLastInvocation() {
+        long time = lastInvocation;
+        return time > 0 ? new Date(time) : null;
+    }
+
+    /**
+     * Format the duration histogram, for example <code>&lt;1ms=3 &lt;10ms=1 &gt;=60s=0</code>.
+     */
+    public static String formatHistogram(long[] histogram) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < histogram.length; i++) {
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            if (i < DURATION_BUCKETS.length) {
+                sb.append('<').append(formatDuration(DURATION_BUCKETS[i]));
+            } else {
+                sb.append(">=").append(formatDuration(DURATION_BUCKETS[i - 1]));
+            }
+            sb.append('=').append(histogram[i]);
+        }
+        return sb.toString();
+    }
+
+    private static String formatDuration(long millis) {
+        return millis >= 1000 ? (millis / 1000) + "s" : millis + "ms";
+    }
+
+    static double toMillis(long nanos) {
+        return nanos / 1000000.0;
+    }
+
+}
@@ -49,6 +49,11 @@ public class Col {
     
     int size = 0;
 
+    /**
+     * Set once the size has been computed for a streamed table.
+     */
+    boolean fixed;
+
     boolean wrap;
     boolean bold;
     boolean cyan;
@@ -132,7 +137,7 @@ public class Col {
 	}
     
     protected void updateSize(int cellSize) {
-        if (this.size <= cellSize) {
+        if (!fixed && this.size <= cellSize) {
             this.size = getClippedSize(cellSize);
         }
     }
@@ -28,9 +28,33 @@ import java.nio.charset.CharsetEncoder;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
 
+/**
+ * A table printed on the console.
+ * <p>
+ * By default, the rows are kept in memory and the table is printed by {@link #print(PrintStream)}
+ * once all of them have been added, so that the columns fit the widest cell. For large listings,
+ * {@link #stream(PrintStream, boolean)} prints the rows as they are added: the column widths are
+ * computed on the first rows and the rows are not kept once printed.
+ */
 public class ShellTable {
 
+    /**
+     * Output of the table.
+     */
+    public enum Output {
+        /** Aligned columns, for humans */
+        TABLE,
+        /** Comma separated values, with a header line */
+        CSV,
+        /** A JSON array with an object per row, keyed by the column headers */
+        JSON
+    }
+
+    /** Number of rows used to compute the column widths of a streamed table */
+    public static final int DEFAULT_SAMPLE_SIZE = 100;
+
     private static final char SEP_HORIZONTAL = '─';
     private static final char SEP_VERTICAL = '│';
     private static final char SEP_CROSS = '┼';
@@ -50,6 +74,21 @@ public class ShellTable {
     private int size;
     private String emptyTableText;
     private boolean forceAscii;
+    private Output output = Output.TABLE;
+    private int limit = -1;
+    private int offset;
+    private int added;
+    private int displayed;
+    private int truncated;
+
+    // streaming
+    private PrintStream streamOut;
+    private Charset streamCharset;
+    private boolean streamFormat;
+    private int sampleSize;
+    private boolean streaming;
+    private boolean unicode;
+    private int dataRows;
 
     public ShellTable() {
 
@@ -83,9 +122,94 @@ public class ShellTable {
 
     public Row addRow() {
         Row row = new Row();
+        if (added++ < offset) {
+            // detached row, skipped
+            return row;
+        }
+        if (limit >= 0 && displayed >= limit) {
+            truncated++;
+            return row;
+        }
+        displayed++;
+        if (streamOut != null) {
+            // the previous rows are complete
+            flush();
+        }
         rows.add(row);
         return row;
     }
+
+    /**
+     * Only display the given number of rows, the rows added afterwards are ignored.
+     *
+     * @param limit the maximum number of rows, or -1 for no limit.
+     * @return the shell table.
+     */
+    public ShellTable limit(int limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * Skip the given number of rows, to display a table page by page along with {@link #limit(int)}.
+     *
+     * @param offset the number of rows to skip.
+     * @return the shell table.
+     */
+    public ShellTable offset(int offset) {
+        this.offset = Math.max(0, offset);
+        return this;
+    }
+
+    public ShellTable output(Output output) {
+        this.output = output;
+        return this;
+    }
+
+    /**
+     * Set the output, as given by a command option.
+     *
+     * @param output <code>table</code>, <code>csv</code> or <code>json</code>, ignoring case.
+     * @return the shell table.
+     */
+    public ShellTable output(String output) {
+        try {
+            return output(Output.valueOf(output.toUpperCase(Locale.ENGLISH)));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unsupported output " + output + ", valid values are table, csv and json");
+        }
+    }
+
+    /**
+     * Tell if the output is meant to be consumed by scripts rather than displayed.
+     *
+     * @return <code>true</code> for the csv and json outputs.
+     */
+    public boolean isMachineOutput() {
+        return output != Output.TABLE;
+    }
+
+    /**
+     * Print the rows as they are added instead of keeping them in memory. The column widths
+     * are computed on the first {@link #DEFAULT_SAMPLE_SIZE} rows, the columns with a maximum
+     * size use it as their width, and longer cells displayed afterwards are cut.
+     * The table must be completed with {@link #print(PrintStream)}.
+     *
+     * @param out the stream to print to.
+     * @param format <code>false</code> to disable the table rendered output.
+     * @return the shell table.
+     */
+    public ShellTable stream(PrintStream out, boolean format) {
+        return stream(out, null, format, DEFAULT_SAMPLE_SIZE);
+    }
+
+    public ShellTable stream(PrintStream out, Charset charset, boolean format, int sampleSize) {
+        this.streamOut = out;
+        this.streamCharset = charset;
+        this.streamFormat = format;
+        this.sampleSize = sampleSize;
+        return this;
+    }
     
     public ShellTable forceAscii() {
         forceAscii = true;
@@ -112,6 +236,33 @@ public class ShellTable {
     }
 
     public void print(PrintStream out, Charset charset, boolean format)  {
+        if (streamOut != null) {
+            out = streamOut;
+            charset = streamCharset;
+            format = streamFormat;
+        }
+        if (output != Output.TABLE) {
+            printData(out);
+            if (output == Output.JSON) {
+                out.println("]");
+            }
+            if (streamOut != null) {
+                rows.clear();
+            }
+            streaming = false;
+            dataRows = 0;
+            return;
+        }
+        if (streaming) {
+            printRows(out, format);
+            rows.clear();
+            streaming = false;
+            if (format && truncated > 0) {
+                out.println("(" + truncated + " more rows)");
+            }
+            return;
+        }
+
         boolean unicode = supportsUnicode(out, charset);
         String separator = unicode ? this.separator : DEFAULT_SEPARATOR_ASCII;
 
@@ -141,6 +292,17 @@ public class ShellTable {
             out.println();
         }
 
+        printRows(out, rows, separator, format);
+
+        if (format && rows.size() == 0 && emptyTableText != null) {
+            out.println(emptyTableText);
+        }
+        if (format && truncated > 0) {
+            out.println("(" + truncated + " more rows)");
+        }
+    }
+
+    private void printRows(PrintStream out, List<Row> rows, String separator, boolean format) {
         for (Row row : rows) {
             if (!format) {
                 if (separator == null || separator.equals(DEFAULT_SEPARATOR) ||
@@ -151,10 +313,118 @@ public class ShellTable {
                 out.println(row.getContent(cols, separator));
             }
         }
+    }
 
-        if (format && rows.size() == 0 && emptyTableText != null) {
-            out.println(emptyTableText);
+    private void printRows(PrintStream out, boolean format) {
+        for (Row row : rows) {
+            row.formatContent(cols);
+        }
+        printRows(out, rows, unicode ? this.separator : DEFAULT_SEPARATOR_ASCII, format);
+    }
+
+    /**
+     * Print the complete rows of a streamed table.
+     */
+    private void flush() {
+        if (output != Output.TABLE) {
+            printData(streamOut);
+            rows.clear();
+            return;
+        }
+        if (streaming) {
+            printRows(streamOut, streamFormat);
+            rows.clear();
+        } else if (rows.size() >= sampleSize) {
+            // compute the column widths on the sample and freeze them
+            for (Col col : cols) {
+                if (col.maxSize != -1) {
+                    col.size = col.maxSize;
+                }
+            }
+            print(streamOut, streamCharset, streamFormat);
+            unicode = supportsUnicode(streamOut, streamCharset);
+            for (Col col : cols) {
+                col.fixed = true;
+            }
+            rows.clear();
+            streaming = true;
+        }
+    }
+
+    /**
+     * Print the raw content of the rows, bypassing the formatting of the columns.
+     */
+    private void printData(PrintStream out) {
+        if (!streaming) {
+            if (output == Output.CSV) {
+                List<Object> headers = new ArrayList<>();
+                for (Col col : cols) {
+                    headers.add(col.getHeader());
+                }
+                out.println(toCsv(headers));
+            } else {
+                out.println("[");
+            }
+            streaming = true;
+        }
+        for (Row row : rows) {
+            List<Object> data = row.getData();
+            if (output == Output.CSV) {
+                out.println(toCsv(data));
+            } else {
+                StringBuilder sb = new StringBuilder();
+                if (dataRows++ > 0) {
+                    sb.append(',');
+                }
+                sb.append('{');
+                for (int i = 0; i < cols.size(); i++) {
+                    if (i > 0) {
+                        sb.append(',');
+                    }
+                    StringUtil.appendJson(sb, cols.get(i).getHeader());
+                    sb.append(':');
+                    Object value = i < data.size() ? data.get(i) : null;
+                    if (isNotFinite(value)) {
+                        // JSON has no literal for NaN and infinities
+                        sb.append("null");
+                    } else if (value instanceof Number || value instanceof Boolean) {
+                        sb.append(value);
+                    } else if (value == null) {
+                        sb.append("null");
+                    } else {
+                        StringUtil.appendJson(sb, value.toString());
+                    }
+                }
+                sb.append('}');
+                out.println(sb);
+            }
+        }
+    }
+
+    private static boolean isNotFinite(Object value) {
+        if (value instanceof Double) {
+            return ((Double) value).isNaN() || ((Double) value).isInfinite();
+        }
+        if (value instanceof Float) {
+            return ((Float) value).isNaN() || ((Float) value).isInfinite();
+        }
+        return false;
+    }
+
+    private static String toCsv(List<Object> values) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            String str = values.get(i) != null ? values.get(i).toString() : "";
+            if (str.indexOf(',') >= 0 || str.indexOf('"') >= 0 || str.indexOf('\n') >= 0 || str.indexOf('\r') >= 0) {
+                sb.append('"').append(str.replace("\"", "\"\"")).append('"');
+            } else {
+                sb.append(str);
+            }
         }
+        return sb.toString();
     }
 
     private boolean supportsUnicode(PrintStream out, Charset charset) {
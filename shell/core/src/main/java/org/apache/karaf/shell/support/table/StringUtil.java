@@ -45,4 +45,42 @@ class StringUtil {
            return string + repeat(string+string, times/2);
         }
     }
+
+    /**
+     * Append a string as a quoted JSON string.
+     *
+     * @param sb The builder to append to.
+     * @param string The string.
+     */
+    public static void appendJson(StringBuilder sb, String string) {
+        sb.append('"');
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < ' ') {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                    break;
+            }
+        }
+        sb.append('"');
+    }
 }
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.gogo.runtime;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.felix.gogo.runtime.Parser.Closure;
+import org.apache.felix.gogo.runtime.Parser.Program;
+import org.apache.felix.gogo.runtime.Parser.Statement;
+import org.apache.felix.gogo.runtime.threadio.ThreadIOImpl;
+import org.apache.felix.service.command.CommandSession;
+import org.apache.felix.service.command.Function;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ParserTest {
+
+    @Test
+    public void testProgramIsCached() {
+        String text = "each [1 2 3] { echo $it | grep 2 } ; bundle:list -t 0";
+        Parser first = new Parser(text);
+        Program program = first.program();
+        List<Statement> statements = first.statements();
+        assertEquals(4, statements.size());
+
+        Parser second = new Parser(new StringBuilder(text));
+        assertSame(program, second.program());
+        assertEquals(statements, second.statements());
+        assertEquals(first.tokens(), second.tokens());
+
+        assertNotSame(program, new Parser(text + " ").program());
+    }
+
+    @Test
+    public void testErrorsAreNotCached() {
+        for (int i = 0; i < 2; i++) {
+            try {
+                new Parser("echo { foo").program();
+                fail("Expected an EOFError");
+            } catch (EOFError e) {
+                assertEquals("}", e.repair());
+            }
+        }
+    }
+
+    @Test
+    public void testNestedProgramsAreNotCached() {
+        Program program = new Parser("each [1 2] { echo $it } ; (echo 3)").program();
+        Statement statement = (Statement) program.tokens().get(0);
+        Closure closure = (Closure) statement.tokens().get(2);
+        assertEquals("echo $it", closure.program().toString());
+        assertNull(Parser.ParseCache.get("echo $it"));
+        assertNull(Parser.ParseCache.get("echo 3"));
+    }
+
+    @Test
+    public void testCachedParseIsFaster() {
+        String text = "x = 0 ; each [1 2 3 4 5] { y = ($it) ; echo $y | grep $x } ; bundle:list -t 0 --no-format";
+        // warm up both paths
+        measure(text, false, 20000);
+        measure(text, true, 20000);
+        long parsed = measure(text, false, 50000);
+        long cached = measure(text, true, 50000);
+        assertTrue("Cached parses took " + cached + " ms, full parses " + parsed + " ms", cached < parsed);
+    }
+
+    @Test
+    public void testCachedProgramsExecute() throws Exception {
+        Commands commands = new Commands();
+        CommandProcessorImpl processor = new CommandProcessorImpl(new ThreadIOImpl());
+        processor.addCommand("test", commands);
+        PrintStream out = new PrintStream(new ByteArrayOutputStream());
+        CommandSession session = processor.createSession(new ByteArrayInputStream(new byte[0]), out, out);
+        try {
+            for (int i = 0; i < 3; i++) {
+                assertEquals(Arrays.asList("hello 1", "hello 2"), session.execute("each [1 2] { hello $it }"));
+                assertEquals("hello b", session.execute("hello a | hello b"));
+            }
+        } finally {
+            session.close();
+        }
+        // pipelines are not run in-thread, each stage is a job of the session executor
+        assertFalse(commands.threads.isEmpty());
+        assertFalse(commands.threads.contains(Thread.currentThread()));
+    }
+
+    private static long measure(String text, boolean cached, int count) {
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            Parser parser = new Parser(text);
+            if (cached) {
+                parser.program();
+            } else {
+                parser.parseProgram();
+            }
+        }
+        return (System.nanoTime() - start) / 1000000;
+    }
+
+    public static class Commands {
+        final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+        public List<Object> each(CommandSession session, List<Object> values, Function function) throws Exception {
+            List<Object> results = new ArrayList<>();
+            for (Object value : values) {
+                results.add(function.execute(session, Collections.singletonList(value)));
+            }
+            return results;
+        }
+
+        public String hello(String name) {
+            threads.add(Thread.currentThread());
+            return "hello " + name;
+        }
+    }
+}
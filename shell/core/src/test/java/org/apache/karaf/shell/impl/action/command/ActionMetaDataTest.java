@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.impl.action.command;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.karaf.shell.api.action.Action;
+import org.apache.karaf.shell.api.action.Argument;
+import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.Option;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ActionMetaDataTest {
+
+    @Command(scope = "test", name = "base")
+    public static class BaseCommand implements Action {
+        @Option(name = "-v", aliases = "--verbose")
+        boolean verbose;
+
+        @Override
+        public Object execute() throws Exception {
+            return null;
+        }
+    }
+
+    @Command(scope = "test", name = "meta")
+    public static class MetaCommand extends BaseCommand {
+        @Option(name = "-n", aliases = { "--name" })
+        String name;
+
+        @Argument(index = 1, name = "values", multiValued = true)
+        List<Integer> values;
+
+        @Argument
+        String first;
+    }
+
+    @Command(scope = "test", name = "duplicate")
+    public static class DuplicateCommand implements Action {
+        @Argument(index = 0)
+        String first;
+
+        @Argument(index = 0)
+        String second;
+
+        @Override
+        public Object execute() throws Exception {
+            return null;
+        }
+    }
+
+    @Test
+    public void testBuild() throws Exception {
+        ActionMetaData metaData = ActionMetaData.build(MetaCommand.class);
+        assertEquals("meta", metaData.getCommand().name());
+        assertEquals(2, metaData.getOptions().size());
+        assertEquals("-n", metaData.getOption("--name").name());
+        assertEquals("-v", metaData.getOption("--verbose").name());
+        assertNull(metaData.getOption("--unknown"));
+        assertEquals(2, metaData.getOrderedArguments().size());
+        assertEquals("first", metaData.getOrderedArguments().get(0).name());
+        assertEquals("values", metaData.getOrderedArguments().get(1).name());
+        assertEquals("values", metaData.getArgumentFields().get(1).getName());
+        metaData.validate();
+    }
+
+    @Test
+    public void testPrepareWithMetaData() throws Exception {
+        ActionMetaData metaData = ActionMetaData.build(MetaCommand.class);
+        MetaCommand action = new MetaCommand();
+        List<Object> params = new ArrayList<>(Arrays.asList("--verbose", "--name", "foo", "bar", "1", "2"));
+        assertTrue(new DefaultActionPreparator().prepare(metaData, action, null, params));
+        assertTrue(action.verbose);
+        assertEquals("foo", action.name);
+        assertEquals("bar", action.first);
+        assertEquals(Arrays.asList(1, 2), action.values);
+    }
+
+    @Test
+    public void testDuplicateArgumentIndex() {
+        // the error is reported when the command is executed, not when it is registered
+        ActionMetaData metaData = ActionMetaData.build(DuplicateCommand.class);
+        assertEquals(1, metaData.getOrderedArguments().size());
+        assertThrows(IllegalArgumentException.class, metaData::validate);
+        assertThrows(IllegalArgumentException.class,
+                () -> new DefaultActionPreparator().prepare(new DuplicateCommand(), null, new ArrayList<>()));
+    }
+
+}
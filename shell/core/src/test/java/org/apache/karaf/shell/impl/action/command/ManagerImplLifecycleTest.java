@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.impl.action.command;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.karaf.shell.api.action.lifecycle.Destroy;
+import org.apache.karaf.shell.api.action.lifecycle.Init;
+import org.apache.karaf.shell.api.console.Registry;
+import org.junit.Test;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+public class ManagerImplLifecycleTest {
+
+    public static class Base {
+        final List<String> calls = new ArrayList<>();
+
+        @Init
+        public void init() {
+            calls.add("base-init");
+        }
+
+        @Destroy
+        public void destroy() {
+            calls.add("base-destroy");
+        }
+    }
+
+    public static class Inheriting extends Base {
+    }
+
+    public static class Overriding extends Base {
+        @Init
+        @Override
+        public void init() {
+            super.init();
+            calls.add("init");
+        }
+    }
+
+    public static class Chaining extends Base {
+        @Init
+        public void start() {
+            super.init();
+            calls.add("start");
+        }
+
+        @Destroy
+        public void stop() {
+            calls.add("stop");
+            super.destroy();
+        }
+    }
+
+    @Test
+    public void testInheritedMethods() throws Exception {
+        assertEquals(Arrays.asList("base-init", "base-destroy"), lifecycle(Inheriting.class));
+    }
+
+    @Test
+    public void testOverriddenMethods() throws Exception {
+        assertEquals(Arrays.asList("base-init", "init", "base-destroy"), lifecycle(Overriding.class));
+    }
+
+    @Test
+    public void testSuperclassMethodsCalledOnce() throws Exception {
+        // the subclass methods call the superclass ones, which must not be invoked again
+        assertEquals(Arrays.asList("base-init", "start", "stop", "base-destroy"), lifecycle(Chaining.class));
+    }
+
+    private List<String> lifecycle(Class<? extends Base> clazz) throws Exception {
+        Registry registry = createMock(Registry.class);
+        replay(registry);
+        ManagerImpl manager = new ManagerImpl(registry, registry, true);
+        Base instance = manager.instantiate(clazz, registry);
+        manager.release(instance);
+        verify(registry);
+        return instance.calls;
+    }
+
+}
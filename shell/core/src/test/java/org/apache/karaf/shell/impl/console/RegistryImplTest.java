@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.impl.console;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.karaf.shell.api.console.Command;
+import org.apache.karaf.shell.api.console.Completer;
+import org.apache.karaf.shell.api.console.Parser;
+import org.apache.karaf.shell.api.console.Session;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RegistryImplTest {
+
+    @Test
+    public void testLookups() {
+        RegistryImpl parent = new RegistryImpl(null);
+        RegistryImpl registry = new RegistryImpl(parent);
+        TestCommand cmd1 = new TestCommand("test", "cmd1");
+        TestCommand cmd2 = new TestCommand("test", "cmd2");
+        parent.register(cmd1);
+        registry.register(cmd2);
+        registry.register("a string");
+        registry.register(() -> 42, Integer.class);
+
+        assertEquals(Arrays.asList(cmd2, cmd1), registry.getCommands());
+        assertSame(cmd1, registry.getCommand("test", "cmd1"));
+        assertSame(cmd2, registry.getCommand("test", "cmd2"));
+        assertNull(parent.getCommand("test", "cmd2"));
+        assertEquals("a string", registry.getService(CharSequence.class));
+        assertEquals(Integer.valueOf(42), registry.getService(Number.class));
+        assertTrue(registry.hasService(Command.class));
+        assertFalse(registry.hasService(Long.class));
+        assertEquals(Collections.emptyList(), registry.getServices(Long.class));
+
+        registry.unregister(cmd2);
+        assertEquals(Collections.singletonList(cmd1), registry.getCommands());
+        assertNull(registry.getCommand("test", "cmd2"));
+    }
+
+    @Test
+    public void testVersion() {
+        RegistryImpl parent = new RegistryImpl(null);
+        RegistryImpl registry = new RegistryImpl(parent);
+        long version = registry.getVersion();
+        TestCommand cmd = new TestCommand("test", "cmd");
+
+        registry.register(cmd);
+        assertNotEquals(version, version = registry.getVersion());
+        parent.register("service");
+        assertNotEquals(version, version = registry.getVersion());
+        registry.getCommands();
+        assertEquals(version, registry.getVersion());
+        registry.unregister(cmd);
+        assertNotEquals(version, registry.getVersion());
+    }
+
+    static class TestCommand implements Command {
+        private final String scope;
+        private final String name;
+
+        TestCommand(String scope, String name) {
+            this.scope = scope;
+            this.name = name;
+        }
+
+        @Override
+        public String getScope() {
+            return scope;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String getDescription() {
+            return name;
+        }
+
+        @Override
+        public Completer getCompleter(boolean scoped) {
+            return null;
+        }
+
+        @Override
+        public Parser getParser() {
+            return null;
+        }
+
+        @Override
+        public Object execute(Session session, List<Object> arguments) throws Exception {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.impl.console;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.jline.reader.History;
+import org.jline.reader.LineReader;
+import org.jline.reader.LineReaderBuilder;
+import org.jline.terminal.impl.DumbTerminal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SharedHistoryTest {
+
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        Files.createDirectories(Paths.get("target"));
+        file = Files.createTempFile(Paths.get("target"), "history", ".txt");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void testSharedAcrossSessions() throws IOException {
+        SharedHistory h1 = createHistory(500, 10000);
+        SharedHistory h2 = createHistory(500, 10000);
+        h1.add("bundle:list");
+        h2.add("feature:list");
+        h1.add("echo \"multi\nline\"");
+
+        for (SharedHistory h : Arrays.asList(h1, h2)) {
+            assertEquals(3, h.size());
+            assertEquals(Arrays.asList("bundle:list", "feature:list", "echo \"multi\nline\""), lines(h));
+        }
+        assertEquals(3, Files.readAllLines(file).size());
+
+        // navigate back from the end
+        h2.moveToEnd();
+        assertEquals("", h2.current());
+        assertTrue(h2.previous());
+        assertEquals("echo \"multi\nline\"", h2.current());
+        assertTrue(h2.previous());
+        assertTrue(h2.previous());
+        assertEquals("bundle:list", h2.current());
+        assertFalse(h2.previous());
+
+        h1.close();
+        h2.close();
+        SharedHistory h3 = createHistory(500, 10000);
+        assertEquals(3, h3.size());
+        h3.close();
+    }
+
+    @Test
+    public void testJLineFormat() throws IOException {
+        Files.write(file, "1000:first\n2000:with \\\\ and\\nnewline\nno timestamp\n".getBytes(StandardCharsets.UTF_8));
+        SharedHistory h = createHistory(500, 10000);
+        List<String> lines = lines(h);
+        assertEquals(Arrays.asList("first", "with \\ and\nnewline", "no timestamp"), lines);
+        assertEquals(Instant.ofEpochMilli(2000), h.iterator(h.first() + 1).next().time());
+
+        // entries appended by another process
+        Files.write(file, "3000:external\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        assertEquals("external", h.get(h.last()));
+        h.close();
+    }
+
+    @Test
+    public void testCompaction() throws IOException {
+        SharedHistory h = createHistory(500, 5);
+        for (int i = 0; i < 11; i++) {
+            h.add("cmd" + i);
+        }
+        assertEquals(5, h.size());
+        assertEquals(6, h.first());
+        assertEquals(Arrays.asList("cmd6", "cmd7", "cmd8", "cmd9", "cmd10"), lines(h));
+        assertEquals(5, Files.readAllLines(file).size());
+        h.close();
+    }
+
+    @Test
+    public void testCompactionTempFile() throws IOException {
+        // temporary file of a compaction running in another process
+        Path other = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(other, "other".getBytes(StandardCharsets.UTF_8));
+        try {
+            SharedHistory h = createHistory(500, 2);
+            for (int i = 0; i < 5; i++) {
+                h.add("cmd" + i);
+            }
+            assertEquals(Arrays.asList("cmd3", "cmd4"), lines(h));
+            h.close();
+            assertEquals("other", new String(Files.readAllBytes(other), StandardCharsets.UTF_8));
+            try (Stream<Path> files = Files.list(file.getParent())) {
+                assertEquals(1, files.filter(p -> p.getFileName().toString().startsWith(file.getFileName() + ".")).count());
+            }
+        } finally {
+            Files.delete(other);
+        }
+    }
+
+    @Test
+    public void testReplacedByAnotherProcess() throws IOException {
+        SharedHistory h = createHistory(500, 10000);
+        h.add("a");
+        h.add("b");
+        h.add("c");
+
+        // another process compacts the file and moves the new one into place
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temp, "1000:b\n1000:c\n1000:external\n".getBytes(StandardCharsets.UTF_8));
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+
+        h.add("d");
+        assertEquals(Arrays.asList("b", "c", "external", "d"), lines(h));
+        assertEquals(4, Files.readAllLines(file).size());
+        h.close();
+    }
+
+    @Test
+    public void testSessionWindowAndPurge() throws IOException {
+        SharedHistory h = createHistory(2, 10000);
+        h.add("a");
+        h.add("b");
+        h.add("b");
+        h.add("c");
+        assertEquals(Arrays.asList("b", "c"), lines(h));
+        assertTrue(h.moveToFirst());
+        assertEquals("b", h.current());
+
+        h.purge();
+        assertEquals(0, h.size());
+        assertEquals(0, Files.size(file));
+        h.add("d");
+        assertEquals(Arrays.asList("d"), lines(h));
+        h.close();
+    }
+
+    private SharedHistory createHistory(int size, int fileSize) throws IOException {
+        DumbTerminal terminal = new DumbTerminal(new ByteArrayInputStream(new byte[0]), new ByteArrayOutputStream());
+        SharedHistory history = new SharedHistory();
+        LineReader reader = LineReaderBuilder.builder()
+                .terminal(terminal)
+                .history(history)
+                .variable(LineReader.HISTORY_FILE, file)
+                .variable(LineReader.HISTORY_SIZE, size)
+                .variable(LineReader.HISTORY_FILE_SIZE, fileSize)
+                .build();
+        history.attach(reader);
+        return history;
+    }
+
+    private static List<String> lines(History history) {
+        List<String> lines = new ArrayList<>();
+        for (History.Entry entry : history) {
+            lines.add(entry.line());
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.support.completers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.apache.karaf.shell.api.console.Candidate;
+import org.apache.karaf.shell.support.parsing.CommandLineImpl;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class CachedCompleterTest {
+
+    @Test
+    public void testPrefixLookup() {
+        TestCompleter completer = new TestCompleter(Runnable::run, "foo", "bar", "Foo-bar", "foobar", "foo", "baz");
+        assertEquals(Arrays.asList("foo", "Foo-bar", "foobar"), values(completer.getCandidates("foo")));
+        assertEquals(Arrays.asList("bar", "baz"), values(completer.getCandidates("BA")));
+        assertEquals(5, completer.getCandidates("").size());
+        assertEquals(0, completer.getCandidates("qux").size());
+        assertEquals(1, completer.loads);
+
+        List<String> strings = new ArrayList<>();
+        int index = completer.complete(null, new CommandLineImpl(new String[] {"cmd", "ba"}, 1, 2, 6, "cmd ba"), strings);
+        assertEquals(Arrays.asList("bar ", "baz "), strings);
+        assertEquals(4, index);
+    }
+
+    @Test
+    public void testInvalidation() {
+        List<Runnable> tasks = new ArrayList<>();
+        TestCompleter completer = new TestCompleter(tasks::add, "foo");
+        assertEquals(Arrays.asList("foo"), values(completer.getCandidates("")));
+
+        // the stale snapshot is returned while the candidates are reloaded in the background
+        completer.values = new String[] {"foo", "bar"};
+        completer.invalidate();
+        assertEquals(Arrays.asList("foo"), values(completer.getCandidates("")));
+        assertEquals(Arrays.asList("foo"), values(completer.getCandidates("")));
+        assertEquals(1, tasks.size());
+        tasks.remove(0).run();
+        assertEquals(Arrays.asList("bar", "foo"), values(completer.getCandidates("")));
+        assertEquals(0, tasks.size());
+        assertEquals(2, completer.loads);
+    }
+
+    @Test
+    public void testFailureKeepsCandidates() {
+        TestCompleter completer = new TestCompleter(Runnable::run, "foo");
+        completer.getCandidates("");
+        completer.values = null;
+        completer.invalidate();
+        completer.getCandidates("");
+        assertEquals(Arrays.asList("foo"), values(completer.getCandidates("")));
+    }
+
+    private static List<String> values(List<Candidate> candidates) {
+        List<String> values = new ArrayList<>();
+        for (Candidate candidate : candidates) {
+            values.add(candidate.value());
+        }
+        return values;
+    }
+
+    static class TestCompleter extends CachedCompleter {
+        String[] values;
+        int loads;
+
+        TestCompleter(Executor executor, String... values) {
+            super(executor);
+            this.values = values;
+        }
+
+        @Override
+        protected void loadCandidates(List<Candidate> candidates) throws Exception {
+            loads++;
+            if (values == null) {
+                throw new IllegalStateException("unavailable");
+            }
+            for (String value : values) {
+                candidates.add(new Candidate(value));
+            }
+        }
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.support.jobs;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.PrivilegedExceptionAction;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.security.auth.Subject;
+
+import org.apache.felix.gogo.runtime.threadio.ThreadIOImpl;
+import org.apache.karaf.jaas.boot.principal.RolePrincipal;
+import org.apache.karaf.jaas.boot.principal.UserPrincipal;
+import org.apache.karaf.shell.api.console.Command;
+import org.apache.karaf.shell.api.console.Completer;
+import org.apache.karaf.shell.api.console.Parser;
+import org.apache.karaf.shell.api.console.Session;
+import org.apache.karaf.shell.impl.console.SessionFactoryImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class JobManagerTest {
+
+    private ThreadIOImpl threadIO;
+    private SessionFactoryImpl sessionFactory;
+    private Path directory;
+    private JobManager jobManager;
+
+    @Before
+    public void setUp() throws Exception {
+        threadIO = new ThreadIOImpl();
+        threadIO.start();
+        sessionFactory = new SessionFactoryImpl(threadIO);
+        sessionFactory.register(new TestCommand("block"));
+        sessionFactory.register(new TestCommand("fail"));
+        directory = Files.createTempDirectory(Paths.get("target"), "jobs");
+        jobManager = new JobManager(sessionFactory, directory, 1, 1024, 1);
+    }
+
+    @After
+    public void tearDown() {
+        jobManager.close();
+        sessionFactory.stop();
+        threadIO.stop();
+    }
+
+    @Test
+    public void testOutput() throws Exception {
+        Job job = jobManager.submit(null, "echo hello ; echo world");
+        await(job);
+        assertEquals(Job.State.DONE, job.getState());
+        assertEquals("hello\nworld\n", output(job, 0));
+        assertEquals(12, job.getOutputSize());
+        assertTrue(job.getWallTime().toNanos() > 0);
+        assertTrue(job.getCpuTime() != 0);
+        assertEquals(job, jobManager.getJob(job.getId()));
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        Job job = jobManager.submit(null, "test:fail");
+        await(job);
+        assertEquals(Job.State.FAILED, job.getState());
+        assertEquals("boom", job.getException().getMessage());
+        assertTrue(output(job, 0).contains("boom"));
+    }
+
+    @Test
+    public void testCancelAndQueue() throws Exception {
+        Job running = jobManager.submit(null, "test:block");
+        Job queued = jobManager.submit(null, "echo done");
+        for (int i = 0; i < 100 && running.getState() != Job.State.RUNNING; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(Job.State.RUNNING, running.getState());
+        // a single job runs at a time
+        assertEquals(Job.State.QUEUED, queued.getState());
+        assertFalse(jobManager.remove(running));
+
+        assertTrue(running.cancel());
+        await(running);
+        assertEquals(Job.State.CANCELLED, running.getState());
+        await(queued);
+        assertEquals(Job.State.DONE, queued.getState());
+        assertEquals("done\n", output(queued, 0));
+
+        // only the last completed job is kept
+        assertNull(jobManager.getJob(running.getId()));
+        assertTrue(jobManager.remove(queued));
+        assertTrue(jobManager.getJobs().isEmpty());
+        assertFalse(Files.exists(directory.resolve("job-" + queued.getId() + ".out")));
+    }
+
+    @Test
+    public void testVisibility() throws Exception {
+        Subject alice = subject("alice", "viewer");
+        Subject bob = subject("bob", "viewer");
+        Subject admin = subject("karaf", "admin");
+        Job aliceJob = Subject.doAs(alice, (PrivilegedExceptionAction<Job>) () -> jobManager.submit(null, "test:block"));
+        Job bobJob = Subject.doAs(bob, (PrivilegedExceptionAction<Job>) () -> jobManager.submit(null, "echo bob"));
+        assertEquals("alice", aliceJob.getUser());
+
+        // users only see their own jobs
+        Subject.doAs(alice, (PrivilegedExceptionAction<Void>) () -> {
+            assertEquals(Collections.singletonList(aliceJob), jobManager.getJobs());
+            assertEquals(aliceJob, jobManager.getJob(aliceJob.getId()));
+            assertNull(jobManager.getJob(bobJob.getId()));
+            return null;
+        });
+        Subject.doAs(bob, (PrivilegedExceptionAction<Void>) () -> {
+            assertEquals(Collections.singletonList(bobJob), jobManager.getJobs());
+            assertNull(jobManager.getJob(aliceJob.getId()));
+            return null;
+        });
+        assertTrue(jobManager.getJobs().isEmpty());
+
+        // administrators see all the jobs
+        Subject.doAs(admin, (PrivilegedExceptionAction<Void>) () -> {
+            assertEquals(Arrays.asList(aliceJob, bobJob), jobManager.getJobs());
+            assertEquals(bobJob, jobManager.getJob(bobJob.getId()));
+            return null;
+        });
+    }
+
+    @Test
+    public void testSpool() throws Exception {
+        OutputSpool spool = new OutputSpool(directory.resolve("spool"), 10);
+        spool.write("0123456".getBytes(StandardCharsets.UTF_8));
+        assertEquals(0, spool.start());
+        spool.write("789abc".getBytes(StandardCharsets.UTF_8));
+        assertEquals(3, spool.start());
+        assertEquals(13, spool.end());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(13, spool.copyTo(0, out));
+        assertEquals("3456789abc", out.toString("UTF-8"));
+        out.reset();
+        assertEquals(13, spool.copyTo(11, out));
+        assertEquals("bc", out.toString("UTF-8"));
+
+        // larger than the spool
+        spool.write("ABCDEFGHIJKLMNOPQRSTUVWXYZ".getBytes(StandardCharsets.UTF_8));
+        out.reset();
+        spool.copyTo(0, out);
+        assertEquals("QRSTUVWXYZ", out.toString("UTF-8"));
+
+        assertFalse(spool.await(39, 10));
+        spool.close();
+        assertFalse(spool.await(39, 10000));
+        spool.delete();
+    }
+
+    private static Subject subject(String user, String role) {
+        Subject subject = new Subject();
+        subject.getPrincipals().add(new UserPrincipal(user));
+        subject.getPrincipals().add(new RolePrincipal(role));
+        return subject;
+    }
+
+    private static void await(Job job) throws InterruptedException {
+        for (int i = 0; i < 500 && !job.isDone(); i++) {
+            Thread.sleep(20);
+        }
+        assertTrue(job.isDone());
+    }
+
+    private static String output(Job job, long position) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        job.copyOutput(position, out);
+        return out.toString("UTF-8");
+    }
+
+    private static class TestCommand implements Command {
+        private final String name;
+
+        TestCommand(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getScope() {
+            return "test";
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String getDescription() {
+            return name;
+        }
+
+        @Override
+        public Completer getCompleter(boolean scoped) {
+            return null;
+        }
+
+        @Override
+        public Parser getParser() {
+            return null;
+        }
+
+        @Override
+        public Object execute(Session session, List<Object> arguments) throws Exception {
+            if ("fail".equals(name)) {
+                throw new IllegalStateException("boom");
+            }
+            Thread.sleep(30000);
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.support.stats;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.felix.gogo.runtime.threadio.ThreadIOImpl;
+import org.apache.karaf.shell.api.console.Command;
+import org.apache.karaf.shell.api.console.Completer;
+import org.apache.karaf.shell.api.console.Parser;
+import org.apache.karaf.shell.api.console.Session;
+import org.apache.karaf.shell.impl.console.SessionFactoryImpl;
+import org.apache.karaf.shell.support.RegexCommandLoggingFilter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CommandMetricsTest {
+
+    private ThreadIOImpl threadIO;
+    private SessionFactoryImpl sessionFactory;
+    private CommandMetrics metrics;
+    private Session session;
+
+    @Before
+    public void setUp() {
+        threadIO = new ThreadIOImpl();
+        threadIO.start();
+        sessionFactory = new SessionFactoryImpl(threadIO);
+        sessionFactory.register(new TestCommand("ok"));
+        sessionFactory.register(new TestCommand("fail"));
+        metrics = sessionFactory.getMetrics();
+        PrintStream out = new PrintStream(new ByteArrayOutputStream());
+        session = sessionFactory.create(new ByteArrayInputStream(new byte[0]), out, out);
+    }
+
+    @After
+    public void tearDown() {
+        session.close();
+        sessionFactory.stop();
+        threadIO.stop();
+    }
+
+    @Test
+    public void testStatistics() throws Exception {
+        session.execute("test:ok 1 ; test:ok 2");
+        try {
+            session.execute("test:fail");
+            fail("The command should have failed");
+        } catch (IllegalStateException e) {
+            assertEquals("boom", e.getMessage());
+        }
+
+        CommandStatistics ok = metrics.getStatistics("test:ok");
+        assertEquals(2, ok.getInvocations());
+        assertEquals(0, ok.getErrors());
+        assertTrue(ok.getMaxDuration() > 0);
+        assertTrue(ok.getAverageDuration() <= ok.getMaxDuration());
+        assertEquals(2, sum(ok.getDurationHistogram()));
+        assertNotNull(ok.getLastInvocation());
+
+        CommandStatistics failed = metrics.getStatistics("test:fail");
+        assertEquals(1, failed.getInvocations());
+        assertEquals(1, failed.getErrors());
+
+        assertEquals(sessionFactory.getRegistry().getService(CommandMetrics.class), metrics);
+        metrics.reset();
+        assertTrue(metrics.getStatistics().isEmpty());
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        metrics.setEnabled(false);
+        session.execute("test:ok");
+        assertNull(metrics.getStatistics("test:ok"));
+        metrics.setEnabled(true);
+        session.execute("test:ok");
+        assertEquals(1, metrics.getStatistics("test:ok").getInvocations());
+    }
+
+    @Test
+    public void testSlowThreshold() throws Exception {
+        metrics.setSlowThreshold(1);
+        session.execute("test:ok 20");
+        CommandStatistics ok = metrics.getStatistics("test:ok");
+        assertEquals(1, ok.getInvocations());
+        assertTrue(ok.getMaxDuration() >= 20);
+        metrics.setSlowThreshold(-1);
+        assertEquals(0, metrics.getSlowThreshold());
+    }
+
+    @Test
+    public void testFilteredCommandLine() {
+        assertEquals("jaas:useradd bob secret",
+                metrics.commandLine("jaas:useradd", Arrays.asList("bob", "secret")).toString());
+        RegexCommandLoggingFilter filter = new RegexCommandLoggingFilter();
+        filter.setPattern("(jaas:useradd|jaas:passwd) +\\S+ +(\\S+)");
+        filter.setGroup(2);
+        metrics.setFilters(Collections.singletonList(filter));
+        assertEquals("jaas:useradd bob *****",
+                metrics.commandLine("jaas:useradd", Arrays.asList("bob", "secret")).toString());
+    }
+
+    @Test
+    public void testHistogram() {
+        CommandStatistics stats = new CommandStatistics("test:histogram");
+        stats.record(500000L, false, "karaf", 1L);
+        stats.record(5000000L, false, "karaf", 2L);
+        stats.record(120000000000L, true, null, 3L);
+        assertArrayEquals(new long[] {1, 1, 0, 0, 0, 0, 1}, stats.getDurationHistogram());
+        assertEquals("<1ms=1 <10ms=1 <100ms=0 <1s=0 <10s=0 <60s=0 >=60s=1",
+                CommandStatistics.formatHistogram(stats.getDurationHistogram()));
+        assertEquals(120000.0, stats.getMaxDuration(), 0.0);
+        assertEquals(1, stats.getErrors());
+        assertNull(stats.getLastCaller());
+    }
+
+    private static long sum(long[] values) {
+        long sum = 0;
+        for (long value : values) {
+            sum += value;
+        }
+        return sum;
+    }
+
+    private static class TestCommand implements Command {
+        private final String name;
+
+        TestCommand(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getScope() {
+            return "test";
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String getDescription() {
+            return name;
+        }
+
+        @Override
+        public Completer getCompleter(boolean scoped) {
+            return null;
+        }
+
+        @Override
+        public Parser getParser() {
+            return null;
+        }
+
+        @Override
+        public Object execute(Session session, List<Object> arguments) throws Exception {
+            if ("fail".equals(name)) {
+                throw new IllegalStateException("boom");
+            }
+            if (!arguments.isEmpty()) {
+                Thread.sleep(Long.parseLong(arguments.get(0).toString()));
+            }
+            return null;
+        }
+    }
+
+}
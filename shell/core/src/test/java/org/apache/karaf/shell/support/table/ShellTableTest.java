@@ -180,6 +180,80 @@ public class ShellTableTest {
         assertEquals(String.format("%s%n","my first column value\tmy second column value is quite long"), baos.toString());
     }
 
+    @Test
+    public void testLimitAndOffset() {
+        ShellTable table = new ShellTable().limit(2).offset(1).forceAscii();
+        table.column("col1");
+        for (int i = 0; i < 5; i++) {
+            table.addRow().addContent("value" + i);
+        }
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        table.print(new PrintStream(baos), true);
+        assertEquals("col1\n------\nvalue1\nvalue2\n(2 more rows)\n", getString(baos));
+    }
+
+    @Test
+    public void testStream() {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ShellTable table = new ShellTable().forceAscii();
+        table.stream(new PrintStream(baos), null, true, 2);
+        table.column("col1");
+        table.column("col2");
+        table.addRow().addContent("a", "b");
+        assertEquals("", getString(baos));
+        table.addRow().addContent("aaa", "b");
+        table.addRow().addContent("c", "d");
+        // the widths are computed on the first two rows, a row is printed once the next one is added
+        assertEquals("col1 | col2\n-----+-----\na    | b\naaa  | b\n", getString(baos));
+        table.addRow().addContent("cccccc", "d");
+        table.print(System.out);
+        assertEquals("col1 | col2\n-----+-----\na    | b\naaa  | b\nc    | d\nccc  | d\n", getString(baos));
+    }
+
+    @Test
+    public void testCsv() {
+        ShellTable table = new ShellTable().output("csv");
+        table.column("col1");
+        table.column("col2");
+        table.addRow().addContent("a,b", 1);
+        table.addRow().addContent("say \"hello\"", null);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        table.print(new PrintStream(baos), true);
+        assertEquals("col1,col2\n\"a,b\",1\n\"say \"\"hello\"\"\",\n", getString(baos));
+    }
+
+    @Test
+    public void testJson() {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ShellTable table = new ShellTable().output("json");
+        table.stream(new PrintStream(baos), true);
+        table.column("col1");
+        table.column("col2");
+        table.addRow().addContent("a\"b", 1);
+        table.addRow().addContent("c", true);
+        table.print(System.out);
+        assertEquals("[\n{\"col1\":\"a\\\"b\",\"col2\":1}\n,{\"col1\":\"c\",\"col2\":true}\n]\n", getString(baos));
+    }
+
+    @Test
+    public void testJsonNonFiniteNumbers() {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ShellTable table = new ShellTable().output("json");
+        table.column("col1");
+        table.column("col2");
+        table.column("col3");
+        table.addRow().addContent(Double.NaN, Float.POSITIVE_INFINITY, 1.5);
+        table.addRow().addContent(Double.NEGATIVE_INFINITY, Float.NaN, 2.5f);
+        table.print(new PrintStream(baos), true);
+        assertEquals("[\n{\"col1\":null,\"col2\":null,\"col3\":1.5}\n,{\"col1\":null,\"col2\":null,\"col3\":2.5}\n]\n",
+                getString(baos));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidOutput() {
+        new ShellTable().output("xml");
+    }
+
     private static String getString(ByteArrayOutputStream stream) {
         return stream.toString().replace("\r\n", "\n");
     }
@@ -22,7 +22,13 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Duration;
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.karaf.shell.api.action.lifecycle.Manager;
 import org.apache.karaf.shell.api.console.CommandLoggingFilter;
@@ -40,6 +46,7 @@ import org.apache.sshd.core.CoreModuleProperties;
 import org.apache.sshd.scp.server.ScpCommandFactory;
 import org.apache.sshd.server.SshServer;
 import org.apache.sshd.server.forward.AcceptAllForwardingFilter;
+import org.apache.sshd.server.subsystem.SubsystemFactory;
 import org.apache.sshd.sftp.server.SftpSubsystemFactory;
 import org.osgi.framework.ServiceReference;
 import org.osgi.service.cm.ConfigurationAdmin;
@@ -62,6 +69,9 @@ public class Activator extends BaseActivator implements ManagedService {
     ServiceTracker<Session, Session> sessionTracker;
     SessionFactory sessionFactory;
     SshServer server;
+    ExecSessionPool execSessionPool;
+    ExecMetrics execMetrics;
+    ExecutorService execExecutor;
 
     @Override
     protected void doOpen() throws Exception {
@@ -114,6 +124,9 @@ public class Activator extends BaseActivator implements ManagedService {
         sessionFactory.getRegistry().getService(Manager.class).register(SshAction.class);
         if (Boolean.parseBoolean(bundleContext.getProperty("karaf.startRemoteShell"))) {
             createAndRunSshServer();
+            if (server != null) {
+                registerMBean(new SshExecMBeanImpl(execMetrics, execSessionPool), "type=ssh");
+            }
         }
     }
 
@@ -148,6 +161,14 @@ public class Activator extends BaseActivator implements ManagedService {
             }
             server = null;
         }
+        if (execExecutor != null) {
+            execExecutor.shutdown();
+            execExecutor = null;
+        }
+        if (execSessionPool != null) {
+            execSessionPool.close();
+            execSessionPool = null;
+        }
         super.doStop();
     }
 
@@ -173,6 +194,12 @@ public class Activator extends BaseActivator implements ManagedService {
         String welcomeBanner        = getString("welcomeBanner", null);
         String moduliUrl            = getString("moduli-url", null);
         boolean sftpEnabled         = getBoolean("sftpEnabled", true);
+        int execThreads             = getInt("sshExecThreads", 0);
+        int execSessionPoolSize     = getInt("sshExecSessionPool", 0);
+        long execSessionIdleTimeout = getLong("sshExecSessionIdleTimeout", 300000);
+        boolean batchEnabled        = getBoolean("sshBatchEnabled", false);
+        int batchConcurrency        = getInt("sshBatchConcurrency", 1);
+        int batchMaxOutput          = getInt("sshBatchMaxOutput", BatchSubsystemFactory.DEFAULT_MAX_OUTPUT);
 
         Path serverPrivateKeyPath = Paths.get(privateHostKey);
         Path serverPublicKeyPath = Paths.get(publicHostKey);
@@ -190,12 +217,36 @@ public class Activator extends BaseActivator implements ManagedService {
         server.setSignatureFactories(SshUtils.buildSigAlgorithms(sigAlgorithms));
         server.setShellFactory(new ShellFactoryImpl(sessionFactory));
 
+        AtomicInteger execThreadCount = new AtomicInteger();
+        ThreadFactory execThreadFactory = r -> {
+            Thread thread = new Thread(r, "Karaf ssh exec " + execThreadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        execExecutor = execThreads > 0
+                ? Executors.newFixedThreadPool(execThreads, execThreadFactory)
+                : Executors.newCachedThreadPool(execThreadFactory);
+        execSessionPool = execSessionPoolSize > 0
+                ? new ExecSessionPool(sessionFactory, execSessionPoolSize, execSessionIdleTimeout)
+                : null;
+        execMetrics = new ExecMetrics();
+        ExecSessionPool pool = execSessionPool;
+        Executor executor = execExecutor;
+        ExecMetrics metrics = execMetrics;
+
+        List<SubsystemFactory> subsystems = new ArrayList<>();
         if (sftpEnabled) {
-            server.setCommandFactory(new ScpCommandFactory.Builder().withDelegate((channel, cmd) -> new ShellCommand(sessionFactory, cmd)).build());
-            server.setSubsystemFactories(Collections.singletonList(new SftpSubsystemFactory()));
+            server.setCommandFactory(new ScpCommandFactory.Builder().withDelegate((channel, cmd) -> new ShellCommand(sessionFactory, cmd, pool, executor, metrics)).build());
+            subsystems.add(new SftpSubsystemFactory());
             server.setFileSystemFactory(new VirtualFileSystemFactory(Paths.get(System.getProperty("karaf.base"))));
         } else {
-            server.setCommandFactory((channel, cmd) -> new ShellCommand(sessionFactory, cmd));
+            server.setCommandFactory((channel, cmd) -> new ShellCommand(sessionFactory, cmd, pool, executor, metrics));
+        }
+        if (batchEnabled) {
+            subsystems.add(new BatchSubsystemFactory(sessionFactory, batchConcurrency, batchMaxOutput));
+        }
+        if (!subsystems.isEmpty()) {
+            server.setSubsystemFactories(subsystems);
         }
         server.setKeyPairProvider(keyPairProvider);
         server.setPasswordAuthenticator(authenticator);
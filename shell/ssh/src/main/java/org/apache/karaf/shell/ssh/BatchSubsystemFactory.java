@@ -0,0 +1,394 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.ssh;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.PrivilegedActionException;
+import java.security.PrivilegedExceptionAction;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.security.auth.Subject;
+
+import org.apache.felix.service.command.CommandSession;
+import org.apache.felix.service.command.Converter;
+import org.apache.karaf.shell.api.console.Session;
+import org.apache.karaf.shell.api.console.SessionFactory;
+import org.apache.karaf.util.jaas.JaasHelper;
+import org.apache.karaf.util.json.JsonReader;
+import org.apache.karaf.util.json.JsonWriter;
+import org.apache.sshd.server.Environment;
+import org.apache.sshd.server.ExitCallback;
+import org.apache.sshd.server.channel.ChannelSession;
+import org.apache.sshd.server.command.Command;
+import org.apache.sshd.server.subsystem.SubsystemFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * SSHD subsystem executing a stream of commands on a single channel, for example
+ * with <code>ssh -p 8101 karaf@localhost -s karaf-batch &lt; commands.json</code>.
+ * <p>
+ * Each request is a JSON object on a single line:
+ * <pre>{"id":1,"command":"bundle:list -t 0"}</pre>
+ * and each response is a JSON object on a single line:
+ * <pre>{"id":1,"status":0,"out":"...","err":"","duration":12}</pre>
+ * with an additional <code>error</code> member holding the message of the exception
+ * if the command failed.  The status is 1 if the command failed, else 0, and the result
+ * of the command, if any, is printed to its output.
+ * <p>
+ * The output and error of each command are each limited to a maximum number of bytes.
+ * A command exceeding it, for example <code>log:tail</code>, is interrupted and fails,
+ * and its output is truncated.
+ * <p>
+ * Requests can be sent without waiting for the responses.  With a concurrency of 1,
+ * the commands are executed in order in a single shell session, so that variables are
+ * kept from one command to the next.  With a greater concurrency, the commands are
+ * dispatched on several sessions and the responses may come out of order.
+ */
+public class BatchSubsystemFactory implements SubsystemFactory {
+
+    public static final String NAME = "karaf-batch";
+
+    public static final int DEFAULT_MAX_OUTPUT = 1024 * 1024;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchSubsystemFactory.class);
+
+    private final SessionFactory sessionFactory;
+    private final int concurrency;
+    private final int maxOutput;
+
+    public BatchSubsystemFactory(SessionFactory sessionFactory, int concurrency, int maxOutput) {
+        this.sessionFactory = sessionFactory;
+        this.concurrency = Math.max(1, concurrency);
+        this.maxOutput = maxOutput > 0 ? maxOutput : DEFAULT_MAX_OUTPUT;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public Command createSubsystem(ChannelSession channel) {
+        return new BatchSubsystem();
+    }
+
+    public class BatchSubsystem implements Command {
+
+        private InputStream in;
+        private OutputStream out;
+        private OutputStream err;
+        private ExitCallback callback;
+        private Environment env;
+        private Subject subject;
+        private Writer writer;
+        private final List<Worker> workers = new CopyOnWriteArrayList<>();
+        private final BlockingQueue<Worker> available = new ArrayBlockingQueue<>(concurrency);
+        private ExecutorService executor;
+        private Thread thread;
+        private volatile boolean closed;
+
+        @Override
+        public void setInputStream(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public void setOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void setErrorStream(OutputStream err) {
+            this.err = err;
+        }
+
+        @Override
+        public void setExitCallback(ExitCallback callback) {
+            this.callback = callback;
+        }
+
+        @Override
+        public void start(ChannelSession channel, Environment env) throws IOException {
+            this.env = env;
+            this.subject = channel.getServerSession() != null
+                    ? channel.getServerSession().getAttribute(KarafJaasAuthenticator.SUBJECT_ATTRIBUTE_KEY) : null;
+            this.writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            for (int i = 0; i < concurrency; i++) {
+                Worker worker = new Worker();
+                workers.add(worker);
+                available.add(worker);
+            }
+            if (concurrency > 1) {
+                executor = Executors.newFixedThreadPool(concurrency, r -> {
+                    Thread thread = new Thread(r, "Karaf ssh batch worker");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            thread = new Thread(this::run, "Karaf ssh batch");
+            thread.start();
+        }
+
+        private void run() {
+            int exitStatus = 0;
+            try {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+                String line;
+                while (!closed && (line = reader.readLine()) != null) {
+                    if (line.trim().isEmpty()) {
+                        continue;
+                    }
+                    Map<?, ?> request;
+                    try {
+                        request = (Map<?, ?>) JsonReader.read(new StringReader(line));
+                        if (!(request.get("command") instanceof String)) {
+                            throw new IllegalArgumentException("missing command");
+                        }
+                    } catch (Exception e) {
+                        Map<String, Object> response = new LinkedHashMap<>();
+                        response.put("id", null);
+                        response.put("status", -1);
+                        response.put("error", "Invalid request: " + e.getMessage());
+                        respond(response);
+                        continue;
+                    }
+                    Object id = request.get("id");
+                    if (id instanceof Double && (Double) id == Math.rint((Double) id)) {
+                        // numbers are parsed as doubles, give back integer ids as sent
+                        id = ((Double) id).longValue();
+                    }
+                    String command = (String) request.get("command");
+                    Worker worker = available.take();
+                    Object requestId = id;
+                    if (executor != null) {
+                        executor.execute(() -> execute(worker, requestId, command));
+                    } else {
+                        execute(worker, requestId, command);
+                    }
+                }
+                // wait for the pending commands
+                for (int i = 0; i < concurrency; i++) {
+                    available.take();
+                }
+            } catch (Exception e) {
+                if (!closed) {
+                    LOGGER.warn("Error in ssh batch subsystem", e);
+                    exitStatus = 1;
+                }
+            } finally {
+                close();
+                callback.onExit(exitStatus);
+            }
+        }
+
+        private void execute(Worker worker, Object id, String command) {
+            try {
+                respond(worker.execute(id, command));
+            } catch (IOException e) {
+                LOGGER.debug("Unable to send ssh batch response", e);
+                closed = true;
+            } finally {
+                available.add(worker);
+            }
+        }
+
+        private void respond(Map<String, Object> response) throws IOException {
+            synchronized (writer) {
+                JsonWriter.write(writer, response);
+                writer.write('\n');
+                writer.flush();
+            }
+        }
+
+        @Override
+        public void destroy(ChannelSession channel) {
+            closed = true;
+            if (thread != null && thread != Thread.currentThread()) {
+                thread.interrupt();
+            }
+            close();
+        }
+
+        private void close() {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            for (Worker worker : workers) {
+                worker.close();
+            }
+        }
+
+        /**
+         * A shell session executing one command at a time, with its output captured.
+         */
+        private class Worker {
+
+            private final ExecSessionPool.SwitchableOutputStream out = new ExecSessionPool.SwitchableOutputStream();
+            private final ExecSessionPool.SwitchableOutputStream err = new ExecSessionPool.SwitchableOutputStream();
+            private Session session;
+
+            Map<String, Object> execute(Object id, String command) {
+                LimitedOutputStream stdout = new LimitedOutputStream(maxOutput, Thread.currentThread());
+                LimitedOutputStream stderr = new LimitedOutputStream(maxOutput, Thread.currentThread());
+                out.delegate = stdout;
+                err.delegate = stderr;
+                long start = System.nanoTime();
+                int status = 0;
+                String error = null;
+                try {
+                    Object result;
+                    if (subject != null) {
+                        try {
+                            result = JaasHelper.doAs(subject, (PrivilegedExceptionAction<Object>) () -> doExecute(command));
+                        } catch (PrivilegedActionException e) {
+                            throw e.getException();
+                        }
+                    } else {
+                        result = doExecute(command);
+                    }
+                    if (result != null) {
+                        session.getConsole().println(format(result));
+                    }
+                } catch (Throwable t) {
+                    status = 1;
+                    error = t.getMessage() != null ? t.getMessage() : t.getClass().getName();
+                    if (session != null) {
+                        session.put(Session.LAST_EXCEPTION, t);
+                    }
+                    LOGGER.debug("Error executing ssh batch command", t);
+                } finally {
+                    if (session != null) {
+                        session.getConsole().flush();
+                    }
+                    out.delegate = null;
+                    err.delegate = null;
+                    if (stdout.exceeded || stderr.exceeded) {
+                        // clear the interruption of a command exceeding the limit
+                        Thread.interrupted();
+                        status = 1;
+                        error = "Output exceeds the limit of " + maxOutput + " bytes";
+                    }
+                }
+                Map<String, Object> response = new LinkedHashMap<>();
+                response.put("id", id);
+                response.put("status", status);
+                response.put("out", new String(stdout.toByteArray(), StandardCharsets.UTF_8));
+                response.put("err", new String(stderr.toByteArray(), StandardCharsets.UTF_8));
+                response.put("duration", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                if (error != null) {
+                    response.put("error", error);
+                }
+                return response;
+            }
+
+            private CharSequence format(Object result) throws Exception {
+                Object commandSession = session.get(".commandSession");
+                if (commandSession instanceof CommandSession) {
+                    return ((CommandSession) commandSession).format(result, Converter.INSPECT);
+                }
+                return String.valueOf(result);
+            }
+
+            private Object doExecute(String command) throws Exception {
+                if (session == null) {
+                    session = sessionFactory.create(new ByteArrayInputStream(new byte[0]),
+                            new PrintStream(out, true, "UTF-8"), new PrintStream(err, true, "UTF-8"));
+                    for (Map.Entry<String, String> e : env.getEnv().entrySet()) {
+                        session.put(e.getKey(), e.getValue());
+                    }
+                    if (subject != null) {
+                        session.put(Subject.class.getName(), subject);
+                    }
+                    String scriptFileName = System.getProperty(ShellCommand.EXEC_INIT_SCRIPT);
+                    if (scriptFileName == null) {
+                        scriptFileName = System.getProperty(ShellCommand.SHELL_INIT_SCRIPT);
+                    }
+                    ShellCommand.executeScript(scriptFileName, session);
+                }
+                return session.execute(command);
+            }
+
+            void close() {
+                Session session = this.session;
+                if (session != null) {
+                    try {
+                        session.close();
+                    } catch (Exception e) {
+                        LOGGER.debug("Unable to close ssh batch session", e);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Buffer of the output of a command, interrupting the command when its size exceeds the limit.
+     */
+    static class LimitedOutputStream extends ByteArrayOutputStream {
+
+        private final int limit;
+        private final Thread thread;
+        volatile boolean exceeded;
+
+        LimitedOutputStream(int limit, Thread thread) {
+            this.limit = limit;
+            this.thread = thread;
+        }
+
+        @Override
+        public synchronized void write(int b) {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            if (exceeded) {
+                return;
+            }
+            if (count + len > limit) {
+                super.write(b, off, limit - count);
+                exceeded = true;
+                thread.interrupt();
+            } else {
+                super.write(b, off, len);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ */
+package org.apache.karaf.shell.ssh;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free recorder of the timings of the SSH exec requests.
+ */
+public class ExecMetrics {
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder pooled = new LongAdder();
+    private final LongAdder totalDuration = new LongAdder();
+    private final LongAdder totalSetupDuration = new LongAdder();
+    private final LongAccumulator maxDuration = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Record a completed exec request.
+     *
+     * @param failed <code>true</code> if the exit status is not 0
+     * @param reused <code>true</code> if the request used an already initialized pooled session
+     * @param durationNanos the duration of the whole request
+     * @param setupNanos the duration of the session setup, including the init script
+     */
+    void record(boolean failed, boolean reused, long durationNanos, long setupNanos) {
+        requests.increment();
+        if (failed) {
+            failures.increment();
+        }
+        if (reused) {
+            pooled.increment();
+        }
+        totalDuration.add(durationNanos);
+        totalSetupDuration.add(setupNanos);
+        maxDuration.accumulate(durationNanos);
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    /**
+     * @return the number of requests executed on an already initialized pooled session
+     */
+    public long getPooledRequests() {
+        return pooled.sum();
+    }
+
+    /**
+     * @return the average duration of the requests in milliseconds
+     */
+    public double getAverageDuration() {
+        long nb = requests.sum();
+        return nb > 0 ? toMillis(totalDuration.sum()) / nb : 0.0;
+    }
+
+    /**
+     * @return the average duration of the session setup in milliseconds
+     */
+    public double getAverageSetupDuration() {
+        long nb = requests.sum();
+        return nb > 0 ? toMillis(totalSetupDuration.sum()) / nb : 0.0;
+    }
+
+    /**
+     * @return the maximum duration of the requests in milliseconds
+     */
+    public double getMaxDuration() {
+        return toMillis(maxDuration.get());
+    }
+
+    public void reset() {
+        requests.reset();
+        failures.reset();
+        pooled.reset();
+        totalDuration.reset();
+        totalSetupDuration.reset();
+        maxDuration.reset();
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1000000.0;
+    }
+
+}
@@ -0,0 +1,350 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.ssh;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.security.Principal;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.security.auth.Subject;
+
+import org.apache.karaf.shell.api.console.Session;
+import org.apache.karaf.shell.api.console.SessionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>A pool of sessions used to run the commands of SSH exec requests.</p>
+ * <p>Creating a session and evaluating the exec init script dominates the latency of short
+ * commands such as <code>ssh karaf@localhost bundle:list</code>. Idle sessions are kept per
+ * user, once the init script has been evaluated, and are bound to the streams of the next exec
+ * request of the same user. The variables and the current directory are restored when a
+ * session is released.</p>
+ */
+public class ExecSessionPool implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExecSessionPool.class);
+
+    private final SessionFactory sessionFactory;
+    private final int maxIdle;
+    private final long idleTimeout;
+    private final Map<String, Deque<PooledSession>> idle = new HashMap<>();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+    private boolean closed;
+
+    /**
+     * @param sessionFactory the factory used to create the sessions
+     * @param maxIdle the maximum number of idle sessions kept per user
+     * @param idleTimeout the time in milliseconds after which an idle session is closed
+     */
+    public ExecSessionPool(SessionFactory sessionFactory, int maxIdle, long idleTimeout) {
+        this.sessionFactory = sessionFactory;
+        this.maxIdle = maxIdle;
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Compute the pool key of a subject: sessions are only shared between subjects
+     * having the same principals, so that the init script has been evaluated with
+     * the same user and roles.
+     *
+     * @param subject the authenticated subject
+     * @return the key, or <code>null</code> if the subject has no principal
+     */
+    public static String getKey(Subject subject) {
+        if (subject == null || subject.getPrincipals().isEmpty()) {
+            return null;
+        }
+        Set<String> names = new TreeSet<>();
+        for (Principal principal : subject.getPrincipals()) {
+            names.add(principal.getClass().getName() + ":" + principal.getName());
+        }
+        return String.join(",", names);
+    }
+
+    /**
+     * Get an idle session for the given key, or create a new one.
+     * The session must be given back with {@link #release(PooledSession)} or {@link #discard(PooledSession)}.
+     *
+     * @param key the pool key
+     * @return the session, {@link PooledSession#isInitialized() initialized} if it has been used before
+     */
+    public PooledSession acquire(String key) {
+        List<PooledSession> expired = new ArrayList<>();
+        PooledSession session = null;
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Session pool has been closed");
+            }
+            evict(expired);
+            Deque<PooledSession> sessions = idle.get(key);
+            if (sessions != null) {
+                session = sessions.pollFirst();
+                if (sessions.isEmpty()) {
+                    idle.remove(key);
+                }
+            }
+        }
+        close(expired);
+        if (session != null) {
+            reused.incrementAndGet();
+            return session;
+        }
+        created.incrementAndGet();
+        return new PooledSession(key);
+    }
+
+    /**
+     * Give back a session after a successful use.  The session is reset and kept
+     * if it has been initialized and the pool is not full, else it is closed.
+     *
+     * @param session the session
+     */
+    public void release(PooledSession session) {
+        session.bind(null, null, null);
+        if (session.isInitialized()) {
+            try {
+                session.reset();
+            } catch (Exception e) {
+                LOGGER.debug("Unable to reset exec session", e);
+                discard(session);
+                return;
+            }
+            List<PooledSession> expired = new ArrayList<>();
+            synchronized (this) {
+                evict(expired);
+                Deque<PooledSession> sessions = idle.computeIfAbsent(session.key, k -> new ArrayDeque<>());
+                if (!closed && sessions.size() < maxIdle) {
+                    session.lastUsed = System.currentTimeMillis();
+                    sessions.addFirst(session);
+                    session = null;
+                } else if (sessions.isEmpty()) {
+                    idle.remove(session.key);
+                }
+            }
+            close(expired);
+        }
+        if (session != null) {
+            discard(session);
+        }
+    }
+
+    /**
+     * Close a session which must not be reused, for example after the client disconnected.
+     *
+     * @param session the session
+     */
+    public void discard(PooledSession session) {
+        session.bind(null, null, null);
+        session.getSession().close();
+    }
+
+    public long getCreated() {
+        return created.get();
+    }
+
+    public long getReused() {
+        return reused.get();
+    }
+
+    public synchronized int getIdle() {
+        return idle.values().stream().mapToInt(Collection::size).sum();
+    }
+
+    @Override
+    public void close() {
+        List<PooledSession> sessions = new ArrayList<>();
+        synchronized (this) {
+            closed = true;
+            idle.values().forEach(sessions::addAll);
+            idle.clear();
+        }
+        close(sessions);
+    }
+
+    private void evict(List<PooledSession> expired) {
+        long limit = System.currentTimeMillis() - idleTimeout;
+        for (Iterator<Deque<PooledSession>> it = idle.values().iterator(); it.hasNext();) {
+            Deque<PooledSession> sessions = it.next();
+            // the most recently used sessions are first
+            while (!sessions.isEmpty() && sessions.peekLast().lastUsed < limit) {
+                expired.add(sessions.pollLast());
+            }
+            if (sessions.isEmpty()) {
+                it.remove();
+            }
+        }
+    }
+
+    private void close(List<PooledSession> sessions) {
+        for (PooledSession session : sessions) {
+            try {
+                session.getSession().close();
+            } catch (Exception e) {
+                LOGGER.debug("Unable to close exec session", e);
+            }
+        }
+    }
+
+    /**
+     * A session created on switchable streams, so that it can be bound to the streams of
+     * successive exec requests.
+     */
+    public class PooledSession {
+
+        private final String key;
+        private final SwitchableInputStream in = new SwitchableInputStream();
+        private final SwitchableOutputStream out = new SwitchableOutputStream();
+        private final SwitchableOutputStream err = new SwitchableOutputStream();
+        private final Session session;
+        private Map<String, Object> variables;
+        private Path currentDir;
+        private long lastUsed;
+
+        PooledSession(String key) {
+            this.key = key;
+            this.session = sessionFactory.create(in, new PrintStream(out, true), new PrintStream(err, true));
+        }
+
+        public Session getSession() {
+            return session;
+        }
+
+        /**
+         * @return <code>true</code> if the init script has already been evaluated in this session
+         */
+        public boolean isInitialized() {
+            return variables != null;
+        }
+
+        /**
+         * Record the state of the session once the init script has been evaluated,
+         * it will be restored each time the session is released.
+         *
+         * @param transientVariables the variables specific to the current request
+         */
+        @SuppressWarnings("unchecked")
+        public void initialized(Collection<String> transientVariables) {
+            Map<String, Object> vars = new HashMap<>();
+            for (String name : (Set<String>) session.get(null)) {
+                Object value = session.get(name);
+                if (value != null && !transientVariables.contains(name)) {
+                    vars.put(name, value);
+                }
+            }
+            variables = vars;
+            currentDir = session.currentDir();
+        }
+
+        /**
+         * Bind the session to the streams of an exec request, or to empty streams if <code>null</code>.
+         */
+        public void bind(InputStream in, OutputStream out, OutputStream err) {
+            this.in.delegate = in;
+            this.out.delegate = out;
+            this.err.delegate = err;
+        }
+
+        @SuppressWarnings("unchecked")
+        void reset() {
+            for (String name : new HashSet<>((Set<String>) session.get(null))) {
+                if (!variables.containsKey(name)) {
+                    session.put(name, null);
+                }
+            }
+            variables.forEach(session::put);
+            session.currentDir(currentDir);
+        }
+    }
+
+    static class SwitchableInputStream extends InputStream {
+
+        volatile InputStream delegate;
+
+        @Override
+        public int read() throws IOException {
+            InputStream in = delegate;
+            return in != null ? in.read() : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            InputStream in = delegate;
+            return in != null ? in.read(b, off, len) : -1;
+        }
+
+        @Override
+        public int available() throws IOException {
+            InputStream in = delegate;
+            return in != null ? in.available() : 0;
+        }
+    }
+
+    static class SwitchableOutputStream extends OutputStream {
+
+        volatile OutputStream delegate;
+
+        @Override
+        public void write(int b) throws IOException {
+            OutputStream os = delegate;
+            if (os != null) {
+                os.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            OutputStream os = delegate;
+            if (os != null) {
+                os.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            OutputStream os = delegate;
+            if (os != null) {
+                os.flush();
+            }
+        }
+
+        @Override
+        public void close() {
+            // the streams of the requests are closed by the exec command
+        }
+    }
+
+}
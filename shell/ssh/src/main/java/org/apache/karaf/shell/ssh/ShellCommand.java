@@ -26,7 +26,11 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 import javax.security.auth.Subject;
 
@@ -64,13 +68,41 @@ public class ShellCommand implements Command {
     private ExitCallback callback;
     private ServerSession serverSession;
     private SessionFactory sessionFactory;
+    private final ExecSessionPool sessionPool;
+    private final Executor executor;
+    private final ExecMetrics metrics;
     private Environment env;
     private Session session;
     private Thread commandThread;
+    private volatile boolean destroyed;
 
     public ShellCommand(SessionFactory sessionFactory, String command) {
+        this(sessionFactory, command, null, null);
+    }
+
+    /**
+     * @param sessionFactory the session factory
+     * @param command the command to execute
+     * @param sessionPool the pool of exec sessions, or <code>null</code> to create a session for each request
+     * @param executor the executor running the command, or <code>null</code> to start a new thread
+     */
+    public ShellCommand(SessionFactory sessionFactory, String command, ExecSessionPool sessionPool, Executor executor) {
+        this(sessionFactory, command, sessionPool, executor, null);
+    }
+
+    /**
+     * @param sessionFactory the session factory
+     * @param command the command to execute
+     * @param sessionPool the pool of exec sessions, or <code>null</code> to create a session for each request
+     * @param executor the executor running the command, or <code>null</code> to start a new thread
+     * @param metrics the recorder of the request timings, or <code>null</code>
+     */
+    public ShellCommand(SessionFactory sessionFactory, String command, ExecSessionPool sessionPool, Executor executor, ExecMetrics metrics) {
         this.sessionFactory = sessionFactory;
         this.command = command;
+        this.sessionPool = sessionPool;
+        this.executor = executor;
+        this.metrics = metrics;
     }
 
     public void setInputStream(InputStream in) {
@@ -93,41 +125,48 @@ public class ShellCommand implements Command {
     public void start(ChannelSession channelSession, Environment environment) throws IOException {
         this.serverSession = channelSession.getServerSession();
         this.env = environment;
-        new Thread(this::run).start();
+        if (executor != null) {
+            executor.execute(this::run);
+        } else {
+            new Thread(this::run).start();
+        }
     }
 
     public void run() {
-        commandThread = Thread.currentThread();
+        synchronized (this) {
+            commandThread = Thread.currentThread();
+        }
+        long start = System.nanoTime();
+        long[] executionStart = { start };
         int exitStatus = 0;
+        ExecSessionPool.PooledSession pooled = null;
+        boolean reused = false;
         try {
-            session = sessionFactory.create(in, new PrintStream(out, true), new PrintStream(err, true));
+            Subject subject = this.serverSession != null ? this.serverSession.getAttribute(KarafJaasAuthenticator.SUBJECT_ATTRIBUTE_KEY) : null;
+            String key = sessionPool != null ? ExecSessionPool.getKey(subject) : null;
+            if (key != null) {
+                pooled = sessionPool.acquire(key);
+                pooled.bind(in, out, err);
+                reused = pooled.isInitialized();
+                session = pooled.getSession();
+            } else {
+                session = sessionFactory.create(in, new PrintStream(out, true), new PrintStream(err, true));
+            }
             for (Map.Entry<String,String> e : env.getEnv().entrySet()) {
                 session.put(e.getKey(), e.getValue());
             }
+            final ExecSessionPool.PooledSession ps = pooled;
             try {
-                Subject subject = this.serverSession != null ? this.serverSession.getAttribute(KarafJaasAuthenticator.SUBJECT_ATTRIBUTE_KEY) : null;
                 Object result;
                 if (subject != null) {
                     session.put(Subject.class.getName(), subject);
                     try {
-                        result = JaasHelper.doAs(subject, (PrivilegedExceptionAction<Object>) () -> {
-                            String scriptFileName = System.getProperty(EXEC_INIT_SCRIPT);
-                            if (scriptFileName == null) {
-                                scriptFileName = System.getProperty(SHELL_INIT_SCRIPT);
-                            }
-                            executeScript(scriptFileName, session);
-                            return session.execute(command);
-                        });
+                        result = JaasHelper.doAs(subject, (PrivilegedExceptionAction<Object>) () -> execute(ps, executionStart));
                     } catch (PrivilegedActionException e) {
                         throw e.getException();
                     }
                 } else {
-                    String scriptFileName = System.getProperty(EXEC_INIT_SCRIPT);
-                    if (scriptFileName == null) {
-                        scriptFileName = System.getProperty(SHELL_INIT_SCRIPT);
-                    }
-                    executeScript(scriptFileName, session);
-                    result = session.execute(command);
+                    result = execute(ps, executionStart);
                 }
                 if (result != null)
                 {
@@ -145,8 +184,41 @@ public class ShellCommand implements Command {
             }
         } catch (Exception e) {
             exitStatus = 1;
+            destroyed = true;
             LOGGER.error("Unable to start shell", e);
         } finally {
+            boolean discard;
+            synchronized (this) {
+                // the session and the thread may be reused by another request once released,
+                // so destroy() must not close or interrupt them anymore
+                discard = destroyed;
+                commandThread = null;
+                if (pooled != null) {
+                    session = null;
+                }
+            }
+            if (executor != null) {
+                // clear a pending interrupt before the thread is given back to the executor
+                Thread.interrupted();
+            }
+            if (pooled != null) {
+                if (discard) {
+                    sessionPool.discard(pooled);
+                } else {
+                    sessionPool.release(pooled);
+                }
+            }
+            long end = System.nanoTime();
+            if (metrics != null) {
+                metrics.record(exitStatus != 0, reused, end - start, executionStart[0] - start);
+            }
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Exec request completed with status {} in {} ms (session setup: {} ms, {} session)",
+                        exitStatus,
+                        TimeUnit.NANOSECONDS.toMillis(end - start),
+                        TimeUnit.NANOSECONDS.toMillis(executionStart[0] - start),
+                        reused ? "pooled" : "new");
+            }
             callback.onExit(exitStatus);
             StreamUtils.close(in, out, err);
             if (serverSession != null) {
@@ -155,21 +227,46 @@ public class ShellCommand implements Command {
         }
     }
 
+    private Object execute(ExecSessionPool.PooledSession pooled, long[] executionStart) throws Exception {
+        // pooled sessions have already evaluated the init script
+        if (pooled == null || !pooled.isInitialized()) {
+            String scriptFileName = System.getProperty(EXEC_INIT_SCRIPT);
+            if (scriptFileName == null) {
+                scriptFileName = System.getProperty(SHELL_INIT_SCRIPT);
+            }
+            executeScript(scriptFileName, session);
+            if (pooled != null) {
+                Set<String> transientVariables = new HashSet<>(env.getEnv().keySet());
+                transientVariables.add(Subject.class.getName());
+                pooled.initialized(transientVariables);
+            }
+        }
+        executionStart[0] = System.nanoTime();
+        return session.execute(command);
+    }
+
     @Override
     public void destroy(ChannelSession channelSession) throws Exception {
+        Session session;
+        Thread thread;
+        synchronized (this) {
+            destroyed = true;
+            session = this.session;
+            thread = this.commandThread;
+        }
         if (session != null) {
             session.close();
         }
-        if (commandThread != null && commandThread != Thread.currentThread()) {
-            commandThread.interrupt();
+        if (thread != null && thread != Thread.currentThread()) {
+            thread.interrupt();
         }
     }
 
-    private void executeScript(String names, Session session) {
+    static void executeScript(String names, Session session) {
         FilesStream.stream(names).forEach(p -> doExecuteScript(session, p));
     }
 
-    private void doExecuteScript(Session session, Path scriptFileName) {
+    private static void doExecuteScript(Session session, Path scriptFileName) {
         try {
             String script = String.join("\n",
                     Files.readAllLines(scriptFileName));
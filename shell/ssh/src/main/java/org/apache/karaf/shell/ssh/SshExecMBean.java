@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ */
+package org.apache.karaf.shell.ssh;
+
+/**
+ * Statistics of the SSH exec requests and of the exec session pool.
+ */
+public interface SshExecMBean {
+
+    /**
+     * @return the number of completed exec requests
+     */
+    long getRequests();
+
+    /**
+     * @return the number of exec requests with a non zero exit status
+     */
+    long getFailures();
+
+    /**
+     * @return the average duration of the exec requests in milliseconds
+     */
+    double getAverageDuration();
+
+    /**
+     * @return the maximum duration of the exec requests in milliseconds
+     */
+    double getMaxDuration();
+
+    /**
+     * @return the average duration in milliseconds of the session setup, including the init script
+     */
+    double getAverageSetupDuration();
+
+    /**
+     * @return the number of exec requests executed on an already initialized pooled session
+     */
+    long getPooledRequests();
+
+    /**
+     * @return the number of sessions created by the exec session pool, or 0 if the pool is disabled
+     */
+    long getPoolCreatedSessions();
+
+    /**
+     * @return the number of times the exec session pool reused a session, or 0 if the pool is disabled
+     */
+    long getPoolReusedSessions();
+
+    /**
+     * @return the number of idle sessions in the exec session pool, or 0 if the pool is disabled
+     */
+    int getPoolIdleSessions();
+
+    /**
+     * Discard the statistics of the exec requests.
+     */
+    void resetStatistics();
+
+}
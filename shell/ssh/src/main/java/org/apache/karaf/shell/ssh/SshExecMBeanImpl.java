@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ */
+package org.apache.karaf.shell.ssh;
+
+import javax.management.NotCompliantMBeanException;
+import javax.management.StandardMBean;
+
+/**
+ * Implementation of the SshExecMBean.
+ */
+public class SshExecMBeanImpl extends StandardMBean implements SshExecMBean {
+
+    private final ExecMetrics metrics;
+    private final ExecSessionPool pool;
+
+    public SshExecMBeanImpl(ExecMetrics metrics, ExecSessionPool pool) throws NotCompliantMBeanException {
+        super(SshExecMBean.class);
+        this.metrics = metrics;
+        this.pool = pool;
+    }
+
+    @Override
+    public long getRequests() {
+        return metrics.getRequests();
+    }
+
+    @Override
+    public long getFailures() {
+        return metrics.getFailures();
+    }
+
+    @Override
+    public double getAverageDuration() {
+        return metrics.getAverageDuration();
+    }
+
+    @Override
+    public double getMaxDuration() {
+        return metrics.getMaxDuration();
+    }
+
+    @Override
+    public double getAverageSetupDuration() {
+        return metrics.getAverageSetupDuration();
+    }
+
+    @Override
+    public long getPooledRequests() {
+        return metrics.getPooledRequests();
+    }
+
+    @Override
+    public long getPoolCreatedSessions() {
+        return pool != null ? pool.getCreated() : 0;
+    }
+
+    @Override
+    public long getPoolReusedSessions() {
+        return pool != null ? pool.getReused() : 0;
+    }
+
+    @Override
+    public int getPoolIdleSessions() {
+        return pool != null ? pool.getIdle() : 0;
+    }
+
+    @Override
+    public void resetStatistics() {
+        metrics.reset();
+    }
+
+}
@@ -0,0 +1,222 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.ssh;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.felix.service.command.CommandSession;
+import org.apache.felix.service.command.Converter;
+import org.apache.karaf.shell.api.console.Session;
+import org.apache.karaf.shell.api.console.SessionFactory;
+import org.apache.karaf.util.json.JsonReader;
+import org.apache.sshd.server.Environment;
+import org.apache.sshd.server.channel.ChannelSession;
+import org.apache.sshd.server.command.Command;
+import org.apache.sshd.server.session.ServerSession;
+import org.easymock.EasyMock;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BatchSubsystemFactoryTest {
+
+    private final AtomicInteger created = new AtomicInteger();
+
+    @Test
+    public void testSequential() throws Exception {
+        String out = run(1,
+                "{\"id\":1,\"command\":\"set foo bar\"}",
+                "",
+                "{\"id\":2,\"command\":\"echo foo\"}",
+                "not json",
+                "{\"id\":\"three\",\"command\":\"fail\"}");
+        List<Map<?, ?>> responses = parse(out);
+
+        Assert.assertEquals(4, responses.size());
+        Assert.assertTrue(out.contains("{\"id\":1,\"status\":0,"));
+        Assert.assertEquals(1L, ((Number) responses.get(0).get("id")).longValue());
+        Assert.assertEquals(0L, ((Number) responses.get(0).get("status")).longValue());
+
+        // variables are kept between commands
+        Assert.assertEquals("bar\n", responses.get(1).get("out"));
+        Assert.assertEquals("", responses.get(1).get("err"));
+        Assert.assertNotNull(responses.get(1).get("duration"));
+
+        Assert.assertNull(responses.get(2).get("id"));
+        Assert.assertEquals(-1L, ((Number) responses.get(2).get("status")).longValue());
+
+        Assert.assertEquals("three", responses.get(3).get("id"));
+        Assert.assertEquals(1L, ((Number) responses.get(3).get("status")).longValue());
+        Assert.assertEquals("boom", responses.get(3).get("error"));
+        Assert.assertEquals("failing\n", responses.get(3).get("err"));
+
+        Assert.assertEquals(1, created.get());
+    }
+
+    @Test
+    public void testResult() throws Exception {
+        List<Map<?, ?>> responses = parse(run(1,
+                "{\"id\":1,\"command\":\"add 1 1\"}",
+                "{\"id\":2,\"command\":\"add 2 -2\"}"));
+
+        // the result is printed and does not change the status
+        Assert.assertEquals(2, responses.size());
+        Assert.assertEquals(0L, ((Number) responses.get(0).get("status")).longValue());
+        Assert.assertEquals("<2>\n", responses.get(0).get("out"));
+        Assert.assertEquals(0L, ((Number) responses.get(1).get("status")).longValue());
+        Assert.assertEquals("<0>\n", responses.get(1).get("out"));
+    }
+
+    @Test
+    public void testOutputLimit() throws Exception {
+        List<Map<?, ?>> responses = parse(run(1, 100,
+                "{\"id\":1,\"command\":\"flood\"}",
+                "{\"id\":2,\"command\":\"echo foo\"}"));
+
+        // the endless command is interrupted, and the next one is executed normally
+        Assert.assertEquals(2, responses.size());
+        Assert.assertEquals(1L, ((Number) responses.get(0).get("status")).longValue());
+        Assert.assertEquals("Output exceeds the limit of 100 bytes", responses.get(0).get("error"));
+        Assert.assertEquals(100, ((String) responses.get(0).get("out")).length());
+        Assert.assertEquals(0L, ((Number) responses.get(1).get("status")).longValue());
+        Assert.assertEquals("foo\n", responses.get(1).get("out"));
+    }
+
+    @Test
+    public void testConcurrent() throws Exception {
+        String[] requests = new String[20];
+        for (int i = 0; i < requests.length; i++) {
+            requests[i] = "{\"id\":" + i + ",\"command\":\"echo " + i + "\"}";
+        }
+        List<Map<?, ?>> responses = parse(run(4, requests));
+
+        Assert.assertEquals(requests.length, responses.size());
+        for (Map<?, ?> response : responses) {
+            Assert.assertEquals(((Number) response.get("id")).intValue() + "\n", response.get("out"));
+        }
+        Assert.assertTrue(created.get() <= 4);
+    }
+
+    private String run(int concurrency, String... requests) throws Exception {
+        return run(concurrency, BatchSubsystemFactory.DEFAULT_MAX_OUTPUT, requests);
+    }
+
+    private String run(int concurrency, int maxOutput, String... requests) throws Exception {
+        SessionFactory sessionFactory = EasyMock.createMock(SessionFactory.class);
+        EasyMock.expect(sessionFactory.create(
+                EasyMock.anyObject(InputStream.class),
+                EasyMock.anyObject(PrintStream.class),
+                EasyMock.anyObject(PrintStream.class)))
+                .andAnswer(() -> createSession((PrintStream) EasyMock.getCurrentArguments()[1],
+                        (PrintStream) EasyMock.getCurrentArguments()[2])).anyTimes();
+
+        Environment env = EasyMock.createMock(Environment.class);
+        EasyMock.expect(env.getEnv()).andReturn(Collections.emptyMap()).anyTimes();
+
+        ChannelSession channelSession = EasyMock.createMock(ChannelSession.class);
+        ServerSession serverSession = EasyMock.createMock(ServerSession.class);
+        EasyMock.expect(channelSession.getServerSession()).andReturn(serverSession).anyTimes();
+        EasyMock.expect(serverSession.getAttribute(KarafJaasAuthenticator.SUBJECT_ATTRIBUTE_KEY)).andReturn(null).anyTimes();
+
+        EasyMock.replay(sessionFactory, env, channelSession, serverSession);
+
+        Command command = new BatchSubsystemFactory(sessionFactory, concurrency, maxOutput).createSubsystem(channelSession);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        command.setInputStream(new ByteArrayInputStream((String.join("\n", requests) + "\n").getBytes(StandardCharsets.UTF_8)));
+        command.setOutputStream(out);
+        command.setErrorStream(new ByteArrayOutputStream());
+        CountDownLatch exited = new CountDownLatch(1);
+        int[] status = { -1 };
+        command.setExitCallback((exitStatus, message, closeImmediately) -> {
+            status[0] = exitStatus;
+            exited.countDown();
+        });
+        command.start(channelSession, env);
+
+        Assert.assertTrue(exited.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(0, status[0]);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private List<Map<?, ?>> parse(String out) throws Exception {
+        List<Map<?, ?>> responses = new ArrayList<>();
+        for (String line : out.split("\n")) {
+            responses.add((Map<?, ?>) JsonReader.read(new StringReader(line)));
+        }
+        return responses;
+    }
+
+    private Session createSession(PrintStream out, PrintStream err) {
+        created.incrementAndGet();
+        Map<String, Object> variables = new HashMap<>();
+        CommandSession commandSession = EasyMock.createMock(CommandSession.class);
+        EasyMock.expect(commandSession.format(EasyMock.anyObject(), EasyMock.eq(Converter.INSPECT)))
+                .andAnswer(() -> "<" + EasyMock.getCurrentArguments()[0] + ">").anyTimes();
+        EasyMock.replay(commandSession);
+        variables.put(".commandSession", commandSession);
+        return (Session) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { Session.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "get":
+                            return variables.get(args[0]);
+                        case "put":
+                            return variables.put((String) args[0], args[1]);
+                        case "getConsole":
+                            return out;
+                        case "close":
+                            return null;
+                        case "execute":
+                            String[] cmd = args[0].toString().split(" ");
+                            switch (cmd[0]) {
+                                case "set":
+                                    variables.put(cmd[1], cmd[2]);
+                                    return null;
+                                case "echo":
+                                    out.println(variables.getOrDefault(cmd[1], cmd[1]));
+                                    return null;
+                                case "add":
+                                    return Integer.parseInt(cmd[1]) + Integer.parseInt(cmd[2]);
+                                case "flood":
+                                    while (!Thread.currentThread().isInterrupted()) {
+                                        out.println("line");
+                                    }
+                                    throw new InterruptedException();
+                                default:
+                                    err.println("failing");
+                                    throw new IllegalStateException("boom");
+                            }
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.ssh;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Proxy;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.security.auth.Subject;
+
+import org.apache.karaf.jaas.boot.principal.RolePrincipal;
+import org.apache.karaf.jaas.boot.principal.UserPrincipal;
+import org.apache.karaf.shell.api.console.Session;
+import org.apache.karaf.shell.api.console.SessionFactory;
+import org.easymock.EasyMock;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ExecSessionPoolTest {
+
+    private final List<FakeSession> sessions = new ArrayList<>();
+    private SessionFactory sessionFactory;
+
+    @Before
+    public void setUp() {
+        sessionFactory = EasyMock.createMock(SessionFactory.class);
+        EasyMock.expect(sessionFactory.create(
+                EasyMock.anyObject(InputStream.class),
+                EasyMock.anyObject(PrintStream.class),
+                EasyMock.anyObject(PrintStream.class)))
+                .andAnswer(() -> {
+                    FakeSession session = new FakeSession((PrintStream) EasyMock.getCurrentArguments()[1]);
+                    sessions.add(session);
+                    return session.proxy;
+                }).anyTimes();
+        EasyMock.replay(sessionFactory);
+    }
+
+    @Test
+    public void testKey() {
+        Assert.assertNull(ExecSessionPool.getKey(null));
+        Assert.assertNull(ExecSessionPool.getKey(new Subject()));
+        Assert.assertEquals(
+                ExecSessionPool.getKey(subject("karaf", "admin", "ssh")),
+                ExecSessionPool.getKey(subject("karaf", "ssh", "admin")));
+        Assert.assertNotEquals(
+                ExecSessionPool.getKey(subject("karaf", "admin", "ssh")),
+                ExecSessionPool.getKey(subject("karaf", "ssh")));
+        Assert.assertNotEquals(
+                ExecSessionPool.getKey(subject("karaf", "ssh")),
+                ExecSessionPool.getKey(subject("other", "ssh")));
+    }
+
+    @Test
+    public void testReuse() throws Exception {
+        ExecSessionPool pool = new ExecSessionPool(sessionFactory, 2, 60000);
+
+        ExecSessionPool.PooledSession first = pool.acquire("karaf");
+        Assert.assertFalse(first.isInitialized());
+        ByteArrayOutputStream out1 = new ByteArrayOutputStream();
+        first.bind(null, out1, null);
+        Session session = first.getSession();
+        session.put("SCOPE", "shell:*");
+        session.put("TERM", "xterm");
+        first.initialized(Collections.singleton("TERM"));
+        session.put("foo", "bar");
+        session.put("SCOPE", "bundle:*");
+        session.currentDir(Paths.get("/tmp"));
+        session.getConsole().print("first");
+        pool.release(first);
+
+        // the output of an idle session is discarded
+        session.getConsole().print("lost");
+        Assert.assertEquals("first", out1.toString());
+
+        ExecSessionPool.PooledSession second = pool.acquire("karaf");
+        Assert.assertSame(first, second);
+        Assert.assertTrue(second.isInitialized());
+        Assert.assertEquals("shell:*", session.get("SCOPE"));
+        Assert.assertNull(session.get("foo"));
+        Assert.assertNull(session.get("TERM"));
+        Assert.assertEquals(Paths.get("/"), session.currentDir());
+        ByteArrayOutputStream out2 = new ByteArrayOutputStream();
+        second.bind(null, out2, null);
+        session.getConsole().print("second");
+        Assert.assertEquals("second", out2.toString());
+
+        // sessions are not shared between keys
+        ExecSessionPool.PooledSession other = pool.acquire("other");
+        Assert.assertNotSame(first, other);
+        Assert.assertEquals(2, pool.getCreated());
+        Assert.assertEquals(1, pool.getReused());
+    }
+
+    @Test
+    public void testMaxIdle() {
+        ExecSessionPool pool = new ExecSessionPool(sessionFactory, 1, 60000);
+        ExecSessionPool.PooledSession s1 = pool.acquire("karaf");
+        ExecSessionPool.PooledSession s2 = pool.acquire("karaf");
+        ExecSessionPool.PooledSession s3 = pool.acquire("karaf");
+        s1.initialized(Collections.emptySet());
+        s2.initialized(Collections.emptySet());
+        pool.release(s1);
+        pool.release(s2);
+        // not initialized, the init script did not complete
+        pool.release(s3);
+        Assert.assertEquals(1, pool.getIdle());
+        Assert.assertFalse(sessions.get(0).closed);
+        Assert.assertTrue(sessions.get(1).closed);
+        Assert.assertTrue(sessions.get(2).closed);
+
+        pool.close();
+        Assert.assertEquals(0, pool.getIdle());
+        Assert.assertTrue(sessions.get(0).closed);
+    }
+
+    @Test
+    public void testDiscardAndExpiry() throws Exception {
+        ExecSessionPool pool = new ExecSessionPool(sessionFactory, 2, 0);
+        ExecSessionPool.PooledSession s1 = pool.acquire("karaf");
+        s1.initialized(Collections.emptySet());
+        pool.discard(s1);
+        Assert.assertTrue(sessions.get(0).closed);
+
+        ExecSessionPool.PooledSession s2 = pool.acquire("karaf");
+        s2.initialized(Collections.emptySet());
+        pool.release(s2);
+        Assert.assertEquals(1, pool.getIdle());
+        Thread.sleep(10);
+        ExecSessionPool.PooledSession s3 = pool.acquire("karaf");
+        Assert.assertNotSame(s2, s3);
+        Assert.assertTrue(sessions.get(1).closed);
+        Assert.assertEquals(0, pool.getReused());
+    }
+
+    private static Subject subject(String user, String... roles) {
+        Subject subject = new Subject();
+        subject.getPrincipals().add(new UserPrincipal(user));
+        for (String role : roles) {
+            subject.getPrincipals().add(new RolePrincipal(role));
+        }
+        return subject;
+    }
+
+    static class FakeSession {
+        final Map<String, Object> variables = new HashMap<>();
+        Path currentDir = Paths.get("/");
+        boolean closed;
+        final Session proxy;
+
+        FakeSession(PrintStream console) {
+            proxy = (Session) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { Session.class },
+                    (p, method, args) -> {
+                        switch (method.getName()) {
+                            case "get":
+                                return args[0] == null ? new HashMap<>(variables).keySet() : variables.get(args[0]);
+                            case "put":
+                                return args[1] == null ? variables.remove(args[0]) : variables.put((String) args[0], args[1]);
+                            case "currentDir":
+                                if (args == null) {
+                                    return currentDir;
+                                }
+                                currentDir = (Path) args[0];
+                                return null;
+                            case "getConsole":
+                                return console;
+                            case "execute":
+                                if (closed) {
+                                    throw new IllegalStateException("session is closed");
+                                }
+                                return null;
+                            case "close":
+                                closed = true;
+                                return null;
+                            default:
+                                throw new UnsupportedOperationException(method.getName());
+                        }
+                    });
+        }
+    }
+}
@@ -22,10 +22,17 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
+import javax.security.auth.Subject;
+
+import org.apache.karaf.jaas.boot.principal.UserPrincipal;
 import org.apache.karaf.shell.api.console.Session;
 import org.apache.karaf.shell.api.console.SessionFactory;
 import org.apache.sshd.server.Environment;
@@ -106,4 +113,75 @@ public class ShellCommandTest {
 
         EasyMock.verify(session);
     }
+
+    @Test
+    public void testPooledSessionIsNotDestroyedAfterRelease() throws Exception {
+        List<ExecSessionPoolTest.FakeSession> sessions = new ArrayList<>();
+        SessionFactory sessionFactory = EasyMock.createMock(SessionFactory.class);
+        EasyMock.expect(sessionFactory.create(
+                EasyMock.anyObject(InputStream.class),
+                EasyMock.anyObject(PrintStream.class),
+                EasyMock.anyObject(PrintStream.class)))
+                .andAnswer(() -> {
+                    ExecSessionPoolTest.FakeSession session = new ExecSessionPoolTest.FakeSession((PrintStream) EasyMock.getCurrentArguments()[1]);
+                    sessions.add(session);
+                    return session.proxy;
+                }).anyTimes();
+
+        Subject subject = new Subject();
+        subject.getPrincipals().add(new UserPrincipal("karaf"));
+        ChannelSession channelSession = EasyMock.createMock(ChannelSession.class);
+        ServerSession serverSession = EasyMock.createMock(ServerSession.class);
+        EasyMock.expect(channelSession.getServerSession()).andReturn(serverSession).anyTimes();
+        EasyMock.expect(serverSession.getAttribute(KarafJaasAuthenticator.SUBJECT_ATTRIBUTE_KEY)).andReturn(subject).anyTimes();
+        EasyMock.expect(serverSession.close(false)).andReturn(null).anyTimes();
+        Environment env = EasyMock.createMock(Environment.class);
+        EasyMock.expect(env.getEnv()).andReturn(Collections.emptyMap()).anyTimes();
+        EasyMock.replay(sessionFactory, channelSession, serverSession, env);
+
+        ExecSessionPool pool = new ExecSessionPool(sessionFactory, 1, 60000);
+        ExecMetrics metrics = new ExecMetrics();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            for (int i = 0; i < 2; i++) {
+                ExitCallback exitCallback = EasyMock.createMock(ExitCallback.class);
+                exitCallback.onExit(0);
+                EasyMock.expectLastCall().once();
+                EasyMock.replay(exitCallback);
+
+                ShellCommand shellCommand = new ShellCommand(sessionFactory, "bundle:list", pool, executor, metrics);
+                shellCommand.setInputStream(new ByteArrayInputStream(new byte[0]));
+                shellCommand.setOutputStream(new ByteArrayOutputStream());
+                shellCommand.setErrorStream(new ByteArrayOutputStream());
+                shellCommand.setExitCallback(exitCallback);
+                shellCommand.start(channelSession, env);
+                // wait for the command to complete
+                executor.submit(() -> { }).get(5, TimeUnit.SECONDS);
+                // the channel is closed once the exit status has been sent
+                shellCommand.destroy(channelSession);
+
+                EasyMock.verify(exitCallback);
+                Assert.assertFalse("The executor thread should not be interrupted",
+                        executor.submit(() -> Thread.currentThread().isInterrupted()).get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Assert.assertEquals(1, pool.getCreated());
+        Assert.assertEquals(1, pool.getReused());
+        Assert.assertEquals(1, pool.getIdle());
+        Assert.assertFalse(sessions.get(0).closed);
+
+        SshExecMBean mbean = new SshExecMBeanImpl(metrics, pool);
+        Assert.assertEquals(2, mbean.getRequests());
+        Assert.assertEquals(0, mbean.getFailures());
+        Assert.assertEquals(1, mbean.getPooledRequests());
+        Assert.assertEquals(1, mbean.getPoolCreatedSessions());
+        Assert.assertEquals(1, mbean.getPoolReusedSessions());
+        Assert.assertEquals(1, mbean.getPoolIdleSessions());
+        Assert.assertTrue(mbean.getMaxDuration() >= mbean.getAverageDuration());
+        mbean.resetStatistics();
+        Assert.assertEquals(0, mbean.getRequests());
+    }
 }
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.system.commands;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.felix.utils.json.JSONParser;
+import org.apache.karaf.shell.api.action.Action;
+import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.Option;
+import org.apache.karaf.shell.api.action.lifecycle.Service;
+import org.apache.karaf.shell.support.table.ShellTable;
+
+/**
+ * Display a summary of the startup profile recorded by the launcher when
+ * <code>karaf.startup.profile</code> is enabled.
+ */
+@Command(scope = "system", name = "startup-report", description = "Displays the startup profile (requires karaf.startup.profile=true in etc/config.properties).")
+@Service
+public class StartupReport implements Action {
+
+    @Option(name = "-f", aliases = { "--file" }, description = "The startup profile file (defaults to the last recorded profile)", required = false, multiValued = false)
+    String file;
+
+    @Option(name = "-n", aliases = { "--top" }, description = "The number of slowest bundles and components to display (defaults to 10)", required = false, multiValued = false)
+    int top = 10;
+
+    @Override
+    public Object execute() throws Exception {
+        File profile = file != null ? new File(file) : getDefaultFile();
+        if (!profile.isFile()) {
+            System.err.println("No startup profile found at " + profile + ", restart with karaf.startup.profile=true in etc/config.properties");
+            return null;
+        }
+        List<Map<String, Object>> events = new ArrayList<>();
+        try (InputStream is = Files.newInputStream(profile.toPath())) {
+            for (Object event : (List<?>) new JSONParser(is).getParsed().get("traceEvents")) {
+                Map<String, Object> map = (Map<String, Object>) event;
+                if ("X".equals(map.get("ph"))) {
+                    events.add(map);
+                }
+            }
+        }
+
+        Map<String, Object> ready = events.stream().filter(e -> "ready".equals(e.get("cat"))).findFirst().orElse(null);
+        if (ready != null) {
+            System.out.printf("Container ready in %d ms%n", millis(ready, "dur"));
+        } else {
+            System.out.println("Container not ready yet, or the boot features installation failed");
+        }
+        System.out.println("Profile: " + profile.getAbsolutePath());
+        System.out.println();
+
+        print("Phases", category(events, "phase"), events.size(), false);
+        print("Boot features", category(events, "features"), events.size(), false);
+        print("Start levels", category(events, "startlevel"), events.size(), false);
+        print("Slowest bundles", category(events, "bundle"), top, true);
+        print("Slowest components (since bundle start)", category(events, "component"), top, true);
+        return null;
+    }
+
+    private static File getDefaultFile() {
+        String file = System.getProperty("karaf.startup.profile.file");
+        return file != null ? new File(file) : new File(System.getProperty("karaf.log"), "startup-profile.json");
+    }
+
+    private static List<Map<String, Object>> category(List<Map<String, Object>> events, String category) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (Map<String, Object> event : events) {
+            if (category.equals(event.get("cat"))) {
+                result.add(event);
+            }
+        }
+        return result;
+    }
+
+    private static void print(String title, List<Map<String, Object>> events, int max, boolean slowest) {
+        if (events.isEmpty()) {
+            return;
+        }
+        if (slowest) {
+            events.sort(Comparator.comparingLong((Map<String, Object> e) -> micros(e, "dur")).reversed());
+        } else {
+            events.sort(Comparator.comparingLong(e -> micros(e, "ts")));
+        }
+        System.out.println(title);
+        ShellTable table = new ShellTable();
+        table.column("Name");
+        table.column("Start (ms)").alignRight();
+        table.column("Duration (ms)").alignRight();
+        table.column("CPU (ms)").alignRight();
+        for (Map<String, Object> event : events.subList(0, Math.min(max, events.size()))) {
+            Map<?, ?> args = (Map<?, ?>) event.get("args");
+            Object cpu = args != null ? args.get("cpu") : null;
+            table.addRow().addContent(event.get("name"), millis(event, "ts"), millis(event, "dur"),
+                    cpu instanceof Number ? ((Number) cpu).longValue() / 1000 : "");
+        }
+        table.print(System.out);
+        System.out.println();
+    }
+
+    private static long micros(Map<String, Object> event, String key) {
+        Object value = event.get(key);
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+
+    private static long millis(Map<String, Object> event, String key) {
+        return micros(event, key) / 1000;
+    }
+
+}
@@ -21,10 +21,8 @@
  */
 package org.apache.karaf.webconsole.gogo;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.PipedInputStream;
@@ -32,8 +30,13 @@ import java.io.PipedOutputStream;
 import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.security.AccessControlContext;
 import java.security.AccessController;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.zip.GZIPOutputStream;
 
 import javax.security.auth.Subject;
@@ -62,8 +65,13 @@ public class GogoPlugin extends AbstractServlet {
     public static final int TERM_WIDTH = 120;
     public static final int TERM_HEIGHT = 39;
 
+    /** Time in milliseconds a terminal waits for its WebSocket connection */
+    static final long TOKEN_TIMEOUT = 30000;
+
     private BundleContext bundleContext;
     private SessionFactory sessionFactory;
+    private boolean webSocket;
+    private final Map<String, SessionTerminal> pending = new ConcurrentHashMap<>();
 
     public void setBundleContext(BundleContext bundleContext) {
         this.bundleContext = bundleContext;
@@ -78,9 +86,24 @@ public class GogoPlugin extends AbstractServlet {
     }
 
     public void stop() {
+        for (SessionTerminal terminal : pending.values()) {
+            terminal.close();
+        }
+        pending.clear();
         this.logger.info(LABEL + " plugin deactivated");
     }
 
+    @Override
+    public void init() throws ServletException {
+        super.init();
+        try {
+            webSocket = GogoWebSocket.register(getServletContext(), this);
+        } catch (NoClassDefFoundError e) {
+            // no WebSocket API available, the terminal uses HTTP polling
+            webSocket = false;
+        }
+    }
+
     @Override
     public void renderContent(HttpServletRequest request, HttpServletResponse response) throws IOException {
         PrintWriter pw = response.getWriter();
@@ -90,7 +113,8 @@ public class GogoPlugin extends AbstractServlet {
         pw.println("<script src=\"" + appRoot + "/gogo/res/ui/gogo.js\" type=\"text/javascript\"></script>");
         pw.println("<div id='console'><div id='term'></div></div>");
         pw.println("<script type=\"text/javascript\"><!--");
-        pw.println("window.onload = function() { gogo.Terminal(document.getElementById(\"term\"), " + TERM_WIDTH + ", " + TERM_HEIGHT + "); }");
+        String webSocketPath = webSocket ? "\"" + request.getContextPath() + GogoWebSocket.PATH + "\"" : "null";
+        pw.println("window.onload = function() { gogo.Terminal(document.getElementById(\"term\"), " + TERM_WIDTH + ", " + TERM_HEIGHT + ", " + webSocketPath + "); }");
         pw.println("--></script>");
     }
 
@@ -127,6 +151,14 @@ public class GogoPlugin extends AbstractServlet {
 
     @Override
     protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        if (webSocket && request.getParameter("ws") != null) {
+            // the WebSocket endpoint is not protected by the web console, the terminal is created
+            // by this authenticated request and handed over with a single use token
+            String token = register(new SessionTerminal());
+            response.setHeader("Content-Type", "text/plain");
+            response.getOutputStream().write(token.getBytes(StandardCharsets.UTF_8));
+            return;
+        }
         String encoding = request.getHeader("Accept-Encoding");
         boolean supportsGzip = (encoding != null && encoding.toLowerCase().contains("gzip"));
         SessionTerminal st = (SessionTerminal) request.getSession(true).getAttribute("terminal");
@@ -156,12 +188,56 @@ public class GogoPlugin extends AbstractServlet {
         }
     }
 
+    private String register(SessionTerminal terminal) {
+        long now = System.currentTimeMillis();
+        for (Iterator<SessionTerminal> it = pending.values().iterator(); it.hasNext();) {
+            SessionTerminal st = it.next();
+            if (st.created + TOKEN_TIMEOUT < now) {
+                it.remove();
+                st.close();
+            }
+        }
+        String token = UUID.randomUUID().toString();
+        pending.put(token, terminal);
+        return token;
+    }
+
+    /**
+     * Get the terminal registered with the given token, the token can only be used once.
+     *
+     * @param token the token
+     * @return the terminal, or <code>null</code> if the token is unknown or expired
+     */
+    SessionTerminal claim(String token) {
+        SessionTerminal terminal = token != null ? pending.remove(token) : null;
+        if (terminal != null && terminal.created + TOKEN_TIMEOUT < System.currentTimeMillis()) {
+            terminal.close();
+            return null;
+        }
+        return terminal;
+    }
+
+    /**
+     * Receives the rows of a {@link SessionTerminal} screen as they change.
+     */
+    public interface TerminalListener {
+
+        /**
+         * @param rows the changed rows, as returned by {@link Terminal#changes(boolean)}
+         */
+        void update(String rows) throws IOException;
+
+        void closed();
+    }
+
     public class SessionTerminal implements Runnable {
 
         private Terminal terminal;
         private PipedOutputStream in;
         private PipedInputStream out;
-        private boolean closed;
+        private volatile boolean closed;
+        private volatile TerminalListener listener;
+        private final long created = System.currentTimeMillis();
 
         public SessionTerminal() throws IOException {
             try {
@@ -207,52 +283,93 @@ public class GogoPlugin extends AbstractServlet {
         }
 
         public String handle(String str, boolean forceDump) throws IOException {
+            input(str);
+            try {
+                return terminal.dump(10, forceDump);
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException(e.toString());
+            }
+        }
+
+        /**
+         * Send keys to the shell.
+         *
+         * @param str the keys, as encoded by the web page
+         */
+        public void input(String str) throws IOException {
             try {
                 if (str != null && str.length() > 0) {
                     String d = terminal.pipe(str);
-                    for (byte b : d.getBytes()) {
-                        in.write(b);
-                    }
+                    in.write(d.getBytes(StandardCharsets.UTF_8));
                     in.flush();
                 }
             } catch (IOException e) {
                 closed = true;
                 throw e;
             }
+        }
+
+        /**
+         * Push the screen to the given listener: the whole screen first, and then the rows
+         * changed by the output of the shell.
+         *
+         * @param listener the listener
+         */
+        public synchronized void attach(TerminalListener listener) throws IOException {
+            this.listener = listener;
+            flush(true);
+        }
+
+        private synchronized void flush(boolean full) throws IOException {
+            if (listener != null) {
+                String rows = terminal.changes(full);
+                if (rows != null) {
+                    listener.update(rows);
+                }
+            }
+        }
+
+        public void close() {
+            closed = true;
             try {
-                return terminal.dump(10, forceDump);
-            } catch (InterruptedException e) {
-                throw new InterruptedIOException(e.toString());
+                in.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            try {
+                out.close();
+            } catch (IOException e) {
+                // ignore
             }
         }
 
         public void run() {
             try {
-                for (; ; ) {
-                    byte[] buf = new byte[8192];
-                    int l = out.read(buf);
-                    InputStreamReader r = new InputStreamReader(new ByteArrayInputStream(buf, 0, l));
-                    StringBuilder sb = new StringBuilder();
-                    for (; ; ) {
-                        int c = r.read();
-                        if (c == -1) {
-                            break;
-                        }
-                        sb.append((char) c);
-                    }
-                    if (sb.length() > 0) {
-                        terminal.write(sb.toString());
-                    }
+                byte[] buf = new byte[8192];
+                int l;
+                while ((l = out.read(buf)) >= 0) {
+                    // the terminal decodes UTF-8 itself, across reads
+                    terminal.write(new String(buf, 0, l, StandardCharsets.ISO_8859_1));
                     String s = terminal.read();
                     if (s != null && s.length() > 0) {
-                        for (byte b : s.getBytes()) {
-                            in.write(b);
-                        }
+                        in.write(s.getBytes(StandardCharsets.UTF_8));
+                        in.flush();
+                    }
+                    // coalesce the updates while more output is pending
+                    if (out.available() == 0) {
+                        flush(false);
                     }
                 }
             } catch (IOException e) {
+                if (!closed) {
+                    logger.debug("Error in web console terminal", e);
+                }
+            } finally {
                 closed = true;
-                e.printStackTrace();
+                TerminalListener l = listener;
+                if (l != null) {
+                    l.closed();
+                }
             }
         }
 
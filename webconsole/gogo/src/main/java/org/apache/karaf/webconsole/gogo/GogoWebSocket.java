@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.webconsole.gogo;
+
+import java.io.IOException;
+import java.util.List;
+
+import jakarta.servlet.ServletContext;
+import jakarta.websocket.CloseReason;
+import jakarta.websocket.DeploymentException;
+import jakarta.websocket.Endpoint;
+import jakarta.websocket.EndpointConfig;
+import jakarta.websocket.MessageHandler;
+import jakarta.websocket.RemoteEndpoint;
+import jakarta.websocket.Session;
+import jakarta.websocket.server.ServerContainer;
+import jakarta.websocket.server.ServerEndpointConfig;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * WebSocket endpoint streaming a {@link GogoPlugin.SessionTerminal}: the keys are received
+ * as text messages and the changed rows of the screen are sent as soon as the shell
+ * writes them, instead of being polled.
+ * <p>
+ * The endpoint is not protected by the web console, so the terminal is created by an
+ * authenticated request to the plugin and claimed with the token given in the
+ * <code>token</code> query parameter.
+ */
+public class GogoWebSocket extends Endpoint {
+
+    public static final String PATH = "/gogo-terminal";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GogoWebSocket.class);
+
+    private final GogoPlugin plugin;
+    private GogoPlugin.SessionTerminal terminal;
+
+    public GogoWebSocket(GogoPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Register the endpoint in the WebSocket container of the given context.
+     *
+     * @return <code>true</code> if the endpoint has been registered
+     */
+    static boolean register(ServletContext context, GogoPlugin plugin) {
+        ServerContainer container = (ServerContainer) context.getAttribute(ServerContainer.class.getName());
+        if (container == null) {
+            return false;
+        }
+        ServerEndpointConfig config = ServerEndpointConfig.Builder.create(GogoWebSocket.class, PATH)
+                .configurator(new ServerEndpointConfig.Configurator() {
+                    @Override
+                    public <T> T getEndpointInstance(Class<T> endpointClass) {
+                        return endpointClass.cast(new GogoWebSocket(plugin));
+                    }
+                })
+                .build();
+        try {
+            container.addEndpoint(config);
+            return true;
+        } catch (DeploymentException | IllegalStateException e) {
+            LOGGER.warn("Unable to register the web console terminal WebSocket endpoint, using HTTP polling", e);
+            return false;
+        }
+    }
+
+    @Override
+    public void onOpen(Session session, EndpointConfig config) {
+        List<String> tokens = session.getRequestParameterMap().get("token");
+        terminal = tokens != null && !tokens.isEmpty() ? plugin.claim(tokens.get(0)) : null;
+        if (terminal == null) {
+            close(session, new CloseReason(CloseReason.CloseCodes.VIOLATED_POLICY, "Invalid token"));
+            return;
+        }
+        session.setMaxIdleTimeout(0);
+        GogoPlugin.SessionTerminal st = terminal;
+        session.addMessageHandler(String.class, (MessageHandler.Whole<String>) keys -> {
+            try {
+                st.input(keys);
+            } catch (IOException e) {
+                close(session, new CloseReason(CloseReason.CloseCodes.GOING_AWAY, "Shell closed"));
+            }
+        });
+        RemoteEndpoint.Basic remote = session.getBasicRemote();
+        try {
+            st.attach(new GogoPlugin.TerminalListener() {
+                @Override
+                public void update(String rows) throws IOException {
+                    remote.sendText(rows);
+                }
+
+                @Override
+                public void closed() {
+                    close(session, new CloseReason(CloseReason.CloseCodes.NORMAL_CLOSURE, "Shell closed"));
+                }
+            });
+        } catch (IOException e) {
+            LOGGER.debug("Unable to send the web console terminal screen", e);
+            close(session, new CloseReason(CloseReason.CloseCodes.CLOSED_ABNORMALLY, e.getMessage()));
+        }
+    }
+
+    @Override
+    public void onClose(Session session, CloseReason closeReason) {
+        if (terminal != null) {
+            terminal.close();
+        }
+    }
+
+    @Override
+    public void onError(Session session, Throwable thr) {
+        LOGGER.debug("Error in web console terminal WebSocket", thr);
+    }
+
+    private static void close(Session session, CloseReason reason) {
+        try {
+            if (session.isOpen()) {
+                session.close(reason);
+            }
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+}
@@ -98,6 +98,9 @@ public class Terminal {
 
     private AtomicBoolean dirty = new AtomicBoolean(true);
 
+    private int[] sent;
+    private boolean sent_inverse;
+
     public Terminal() {
         this(80, 24);
     }
@@ -1748,65 +1751,20 @@ public class Terminal {
             StringBuilder sb = new StringBuilder();
             int prev_attr = -1;
             int cx = Math.min(this.cx, width - 1);
-            int cy = this.cy;
             sb.append("<div><pre class='term'>");
             for (int y = 0; y < height; y++) {
                 int wx = 0;
                 for (int x = 0; x < width; x++) {
-                    int d = screen[y * width + x];
-                    int c = d & 0xffff;
+                    int d = cell(x, y, cx);
                     int a = d >> 16;
-                    if (cy == y && cx == x && vt100_mode_cursor) {
-                        a = a & 0xfff0 | 0x000c;
-                    }
                     if (a != prev_attr) {
                         if (prev_attr != -1) {
                             sb.append("</span>");
                         }
-                        int bg = a & 0x000f;
-                        int fg = (a & 0x00f0) >> 4;
-                        boolean inv = (a & 0x0200) != 0;
-                        boolean inv2 = vt100_mode_inverse;
-                        if (inv && !inv2 || inv2 && !inv) {
-                            int i = fg;
-                            fg = bg;
-                            bg = i;
-                        }
-                        if ((a & 0x0400) != 0) {
-                            fg = 0x0c;
-                        }
-                        String ul;
-                        if ((a & 0x0100) != 0) {
-                            ul = " ul";
-                        } else {
-                            ul = "";
-                        }
-                        String b;
-                        if ((a & 0x0800) != 0) {
-                            b = " b";
-                        } else {
-                            b = "";
-                        }
-                        sb.append("<span class='f").append(fg).append(" b").append(bg).append(ul).append(b).append("'>");
+                        appendStyle(sb, a);
                         prev_attr = a;
                     }
-                    switch (c) {
-                        case '&':
-                            sb.append("&amp;");
-                            break;
-                        case '<':
-                            sb.append("&lt;");
-                            break;
-                        case '>':
-                            sb.append("&gt;");
-                            break;
-                        default:
-                            wx += utf8_charwidth(c);
-                            if (wx <= width) {
-                                sb.append((char) c);
-                            }
-                            break;
-                    }
+                    wx = appendChar(sb, d & 0xffff, wx);
                 }
                 sb.append("\n");
             }
@@ -1816,6 +1774,115 @@ public class Terminal {
         return null;
     }
 
+    /**
+     * Render the rows which changed since the previous call, one per line, prefixed
+     * with the row index and a colon.  Unlike {@link #dump(long, boolean)}, the rows
+     * which did not change are neither rendered nor sent again.
+     *
+     * @param full <code>true</code> to render all the rows
+     * @return the changed rows, or <code>null</code> if nothing changed
+     */
+    public synchronized String changes(boolean full) {
+        if (sent == null || sent.length != width * height || sent_inverse != vt100_mode_inverse) {
+            sent = new int[width * height];
+            sent_inverse = vt100_mode_inverse;
+            full = true;
+        }
+        int cx = Math.min(this.cx, width - 1);
+        StringBuilder sb = null;
+        for (int y = 0; y < height; y++) {
+            boolean changed = full;
+            for (int x = 0; x < width; x++) {
+                int d = cell(x, y, cx);
+                if (sent[y * width + x] != d) {
+                    sent[y * width + x] = d;
+                    changed = true;
+                }
+            }
+            if (changed) {
+                if (sb == null) {
+                    sb = new StringBuilder();
+                }
+                sb.append(y).append(':');
+                int prev_attr = -1;
+                int wx = 0;
+                for (int x = 0; x < width; x++) {
+                    int d = sent[y * width + x];
+                    int a = d >> 16;
+                    if (a != prev_attr) {
+                        if (prev_attr != -1) {
+                            sb.append("</span>");
+                        }
+                        appendStyle(sb, a);
+                        prev_attr = a;
+                    }
+                    wx = appendChar(sb, d & 0xffff, wx);
+                }
+                sb.append("</span>\n");
+            }
+        }
+        return sb != null ? sb.toString() : null;
+    }
+
+    private int cell(int x, int y, int cx) {
+        int d = screen[y * width + x];
+        if (cy == y && cx == x && vt100_mode_cursor) {
+            int a = d >> 16;
+            a = a & 0xfff0 | 0x000c;
+            d = (a << 16) | (d & 0xffff);
+        }
+        return d;
+    }
+
+    private void appendStyle(StringBuilder sb, int a) {
+        int bg = a & 0x000f;
+        int fg = (a & 0x00f0) >> 4;
+        boolean inv = (a & 0x0200) != 0;
+        boolean inv2 = vt100_mode_inverse;
+        if (inv && !inv2 || inv2 && !inv) {
+            int i = fg;
+            fg = bg;
+            bg = i;
+        }
+        if ((a & 0x0400) != 0) {
+            fg = 0x0c;
+        }
+        String ul;
+        if ((a & 0x0100) != 0) {
+            ul = " ul";
+        } else {
+            ul = "";
+        }
+        String b;
+        if ((a & 0x0800) != 0) {
+            b = " b";
+        } else {
+            b = "";
+        }
+        sb.append("<span class='f").append(fg).append(" b").append(bg).append(ul).append(b).append("'>");
+    }
+
+    private int appendChar(StringBuilder sb, int c, int wx) {
+        switch (c) {
+            case '&':
+                sb.append("&amp;");
+                break;
+            case '<':
+                sb.append("&lt;");
+                break;
+            case '>':
+                sb.append("&gt;");
+                break;
+            default:
+                wx += utf8_charwidth(c);
+                if (wx <= width) {
+                    sb.append((char) c);
+                }
+                break;
+        }
+        return wx;
+    }
+
     public String toString() {
         StringBuilder sb = new StringBuilder();
         for (int y = 0; y < height; y++) {
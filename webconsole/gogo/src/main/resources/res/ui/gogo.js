@@ -22,7 +22,7 @@
 
 gogo = { };
 
-gogo.Terminal_ctor = function(div, width, height) {
+gogo.Terminal_ctor = function(div, width, height, wsPath) {
 
    var query0 = "w=" + width + "&h=" + height;
    var query1 = query0 + "&k=";
@@ -33,6 +33,8 @@ gogo.Terminal_ctor = function(div, width, height) {
    var sending = 0;
    var rmax = 1;
    var force = 1;
+   var ws = null;
+   var rows = [];
 
    var dstat = document.createElement('pre');
    var sled = document.createElement('span');
@@ -55,7 +57,7 @@ gogo.Terminal_ctor = function(div, width, height) {
            var r = new XMLHttpRequest();
            var send = "";
            while (keybuf.length > 0) {
-               send += keybuf.pop();
+               send += encodeURIComponent(keybuf.pop());
            }
            var query = query1 + send;
            if (force) {
@@ -89,7 +91,84 @@ gogo.Terminal_ctor = function(div, width, height) {
        }
    }
 
+   function connect() {
+       var r = new XMLHttpRequest();
+       r.open("POST", "gogo", true);
+       r.setRequestHeader('Content-Type', 'application/x-www-form-urlencoded');
+       r.onreadystatechange = function () {
+           if (r.readyState == 4) {
+               if (r.status == 200) {
+                   openSocket(r.responseText);
+               } else {
+                   debug("Connection error status:" + r.status);
+               }
+           }
+       }
+       r.send("ws=1");
+   }
+
+   function openSocket(token) {
+       var opened = false;
+       var url = (window.location.protocol == "https:" ? "wss://" : "ws://")
+           + window.location.host + wsPath + "?token=" + encodeURIComponent(token);
+       ws = new WebSocket(url);
+       ws.onopen = function() {
+           opened = true;
+           sled.className = 'on';
+           while (keybuf.length > 0) {
+               ws.send(keybuf.pop());
+           }
+       };
+       ws.onmessage = function(ev) {
+           render(ev.data);
+       };
+       ws.onerror = function() {
+           if (!opened) {
+               // fall back to polling
+               ws = null;
+               dterm.innerHTML = "";
+               timeout = window.setTimeout(update, 1);
+           }
+       };
+       ws.onclose = function() {
+           if (opened) {
+               sled.className = 'off';
+               debug("Connection closed ts:" + ((new Date).getTime()));
+           }
+       };
+   }
+
+   function render(data) {
+       if (rows.length == 0) {
+           var pre = document.createElement('pre');
+           pre.className = 'term';
+           for (var y = 0; y < height; y++) {
+               rows.push(pre.appendChild(document.createElement('div')));
+           }
+           dterm.innerHTML = "";
+           dterm.appendChild(pre);
+       }
+       var lines = data.split("\n");
+       for (var i = 0; i < lines.length; i++) {
+           var idx = lines[i].indexOf(':');
+           if (idx > 0) {
+               var row = rows[parseInt(lines[i].substring(0, idx))];
+               if (row) {
+                   row.innerHTML = lines[i].substring(idx + 1);
+               }
+           }
+       }
+   }
+
    function queue(s) {
+       if (ws != null) {
+           if (ws.readyState == 1) {
+               ws.send(s);
+           } else {
+               keybuf.unshift(s);
+           }
+           return;
+       }
        keybuf.unshift(s);
        if (sending == 0) {
            window.clearTimeout(timeout);
@@ -187,7 +266,7 @@ gogo.Terminal_ctor = function(div, width, height) {
 //              "ev.which=" + ev.which + ", ev.ctrlKey=" + ev.ctrlKey + ", " +
 //              "kc=" + kc + ", k=" + k);
 
-        queue(encodeURIComponent(k));
+        queue(k);
 
         ev.cancelBubble = true;
         if (ev.stopPropagation) ev.stopPropagation();
@@ -232,14 +311,18 @@ gogo.Terminal_ctor = function(div, width, height) {
        div.appendChild(d);
        document.onkeypress = keypress;
        document.onkeydown = keydown;
-       timeout = window.setTimeout(update, 100);
+       if (wsPath && typeof(WebSocket) != "undefined") {
+           connect();
+       } else {
+           timeout = window.setTimeout(update, 100);
+       }
    }
 
    init();
 
 }
 
-gogo.Terminal = function(div, width, height) {
-   return new this.Terminal_ctor(div, width, height);
+gogo.Terminal = function(div, width, height, wsPath) {
+   return new this.Terminal_ctor(div, width, height, wsPath);
 }
 